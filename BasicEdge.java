@@ -281,7 +281,8 @@ public final class BasicEdge implements AbstractEdge<BasicAngle, BytePoint, Basi
         BytePoint m0 = ends[1].subtract(ends[0]); // the direction vector for this edge
         BytePoint m1 = e.ends[1].subtract(e.ends[0]); // the direction vector for e
         
-        return (Math.signum((ends[0].subtract(e.ends[0])).crossProduct(m1)) != Math.signum((ends[1].subtract(e.ends[0])).crossProduct(m1)) && Math.signum((e.ends[1].subtract(ends[0])).crossProduct(m0)) != Math.signum((e.ends[0].subtract(ends[0]).crossProduct(m0))));
+        // exact signs, so colinear points really give 0
+        return ((ends[0].subtract(e.ends[0])).crossSign(m1) != (ends[1].subtract(e.ends[0])).crossSign(m1) && (e.ends[1].subtract(ends[0])).crossSign(m0) != (e.ends[0].subtract(ends[0]).crossSign(m0)));
     }
 
 
@@ -324,9 +325,10 @@ public final class BasicEdge implements AbstractEdge<BasicAngle, BytePoint, Basi
     public boolean tooClose(BytePoint p) {
         BytePoint u = UNIT_LENGTH.getAsVector(angle());
         BytePoint v = p.subtract(ends[0]);
-        double d = v.testCross(u);
-        if (-TOO_CLOSE < d && d < TOO_CLOSE) {
-            if (Math.signum(v.dotProduct(u)) != Math.signum(p.subtract(ends[1]).dotProduct(u))) return true;
+        // testCross is minus crossProduct, and we compare
+        // it with a symmetric interval, so use crossProduct
+        if (v.compareCross(u,-TOO_CLOSE) > 0 && v.compareCross(u,TOO_CLOSE) < 0) {
+            if (v.dotSign(u) != p.subtract(ends[1]).dotSign(u)) return true;
         }
         return false;
     }
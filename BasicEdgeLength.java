@@ -190,6 +190,13 @@ final public class BasicEdgeLength implements AbstractEdgeLength<BasicAngle, Byt
         return orientationPool.get(i);
     }
 
+    /*
+    * return the number of Orientations for edges of this length
+    */
+    public int numOrientations() {
+        return orientationPool.size();
+    }
+
     /*
     * return the quantum triangle associated with this edge length
     */
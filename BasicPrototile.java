@@ -23,6 +23,17 @@ public class BasicPrototile implements AbstractPrototile<BasicAngle, BytePoint,
     private final Orientation[] orientations;
     private final Orientation[] flipOrientations;
 
+    // the vertices of this prototile in standard position, 
+    // as in place(ZERO_VECTOR,0,false).
+    private final BytePoint[] baseVertices;
+
+    // the angles of the edges of place(ZERO_VECTOR,0,flip),
+    // as in BasicTriangle.directions.  place() rotates these
+    // instead of calling BytePoint.unitize().
+    // null if this came from an old serialized file.
+    private final int[] directionAngles;
+    private final int[] flipDirectionAngles;
+
     public static final ImmutableList<BasicPrototile> ALL_PROTOTILES;
     public static final ImmutableList<BasicEdgeLength> EDGE_LENGTHS = BasicEdgeLength.ALL_EDGE_LENGTHS;
 
@@ -71,6 +82,35 @@ public class BasicPrototile implements AbstractPrototile<BasicAngle, BytePoint,
                              orientations[1].getOpposite(), //
                              orientations[0].getOpposite()  //
                                                               };  
+        baseVertices = new BytePoint[] { //
+                             lengths[2].getAsVector(angles[1]), //
+                             BytePoint.ZERO_VECTOR, //
+                             lengths[0].getAsVector(BasicAngle.createBasicAngle(0)) //
+                                                              };
+        directionAngles = directionAngles(baseVertices,lengths);
+        BytePoint[] flipped = new BytePoint[3];
+        for (int j = 0; j < 3; j++) 
+            flipped[j] = BytePoint.createBytePoint(baseVertices[2-j],true,BasicAngle.createBasicAngle(0),BytePoint.ZERO_VECTOR);
+        flipDirectionAngles = directionAngles(flipped,flipLengths);
+    }
+
+    // the angles of the unit vectors from v[0] to v[1],
+    // v[1] to v[2], and v[2] to v[0].  e are the edge lengths.
+    private static int[] directionAngles(BytePoint[] v, BasicEdgeLength[] e) {
+        BytePoint[] edges = new BytePoint[] {v[1].subtract(v[0]), v[2].subtract(v[1]), v[0].subtract(v[2])};
+        BasicEdgeLength[] l = new BasicEdgeLength[] {e[2], e[0], e[1]};
+        int[] output = new int[3];
+        for (int j = 0; j < 3; j++) {
+            output[j] = -1;
+            for (int i = 0; i < 2*BasicAngle.ANGLE_SUM; i++) {
+                if (l[j].getAsVector(BasicAngle.createBasicAngle(i)).equals(edges[j])) {
+                    output[j] = i;
+                    break;
+                }
+            }
+            if (output[j] == -1) throw new IllegalArgumentException("Can't find the angle of edge " + edges[j] + ".");
+        }
+        return output;
     }
 
     static { // initialize ALL_PROTOTILES
@@ -444,8 +484,13 @@ public class BasicPrototile implements AbstractPrototile<BasicAngle, BytePoint,
         Orientation[] newOrientations = (flip)? flipOrientations : orientations;
         BasicEdgeLength[] newLengths = (flip)? flipLengths : lengths;
         for (int j = 0; j < 3; j++)
-            vertices[j] = BytePoint.createBytePoint(vertices[j],flip,a,p);
-        return BasicTriangle.createBasicTriangle(newAngles, vertices, newOrientations, newLengths, this, flip);
+            vertices[j] = (j == 1) ? p : BytePoint.createBytePoint(vertices[j],flip,a,p);
+        int[] d = (flip)? flipDirectionAngles : directionAngles;
+        if (d == null) return BasicTriangle.createBasicTriangle(newAngles, vertices, newOrientations, newLengths, this, flip);
+        BytePoint[] directions = new BytePoint[3];
+        for (int j = 0; j < 3; j++)
+            directions[j] = BasicEdge.UNIT_LENGTH.getAsVector(BasicAngle.createBasicAngle(d[j]+a.getAsInt()));
+        return BasicTriangle.createBasicTriangle(newAngles, vertices, newOrientations, newLengths, this, flip, directions);
     }
 
     /*
@@ -456,17 +501,30 @@ public class BasicPrototile implements AbstractPrototile<BasicAngle, BytePoint,
     * e. flip tells us whether or not to reflect this.
     */
     public BasicTriangle place(BasicEdge e, boolean secondEdge, boolean flip) {
-        BasicEdgeLength l = e.getLength();
-        BytePoint[] ends = e.getEnds();
-        BytePoint e0 = ends[0];
-        BytePoint e1 = ends[1].subtract(e0);
-        BytePoint shift;
-        BasicAngle turn;
-        // set preTurn equal to the angle between e1 and the positive x-axis
-        BasicAngle preTurn = e.angle();
+        int i = matchingEdge(e.getLength(),secondEdge);
+        BasicAngle turn = turn(e,i,flip);
+        return place(shift(e,i,flip,turn),turn,flip);
+    }
+
+    /*
+    * The vertex that place(e,secondEdge,flip) would put opposite e,
+    * without making the rest of the triangle.  
+    * EmptyBoundaryPatch uses this to reject most placements 
+    * before it builds them.
+    */
+    public BytePoint otherVertex(BasicEdge e, boolean secondEdge, boolean flip) {
+        int i = matchingEdge(e.getLength(),secondEdge);
+        BasicAngle turn = turn(e,i,flip);
+        BytePoint shift = shift(e,i,flip,turn);
+        // vertex i is opposite edge i, and the root vertex goes to shift
+        return (i == 1) ? shift : BytePoint.createBytePoint(baseVertices[i],flip,turn,shift);
+    }
+
+    // find the index of the edge matching length l.
+    // if secondEdge, go past the first one.
+    private int matchingEdge(BasicEdgeLength l, boolean secondEdge) {
         int i;
         boolean yet = !secondEdge; // we might have to go past the first matching edge
-        // find the index of the edge matching length l
         for (i = 0; i < 3; i++) {
             if (l.equals(lengths[i])) {
                 if (yet) {
@@ -476,31 +534,53 @@ public class BasicPrototile implements AbstractPrototile<BasicAngle, BytePoint,
                 }
             }
         }
+        if (i == 3) throw new IllegalArgumentException("Prototile " + this + " has no " + ((secondEdge)? "second " : "") + "edge of length " + l + ".");
+        return i;
+    }
+
+    // the rotation that puts edge i against e
+    private BasicAngle turn(BasicEdge e, int i, boolean flip) {
+        // preTurn is the angle between e and the positive x-axis
+        BasicAngle preTurn = e.angle();
+        if (!flip) {
+            if (i == 0) {
+                return preTurn;
+            } else if (i == 1) {
+                return preTurn.minus(angles[2].supplement());
+            } else {
+                return preTurn.minus(angles[1].piPlus());
+            }
+        } else {
+            if (i == 0) {
+                return preTurn;
+            } else if (i == 1) {
+                return preTurn.minus(angles[2].piPlus());
+            } else {
+                return preTurn.minus(angles[1].supplement());
+            }
+        }
+    }
 
+    // the position of the root vertex when edge i goes against e
+    private BytePoint shift(BasicEdge e, int i, boolean flip, BasicAngle turn) {
+        BytePoint e0 = e.getEnds()[0];
         if (!flip) {
             if (i == 0) {
-                shift = e0;
-                turn = preTurn;
+                return e0;
             } else if (i == 1) {
-                turn = preTurn.minus(angles[2].supplement());
-                shift = e0.subtract(lengths[0].getAsVector(turn));
+                return e0.subtract(lengths[0].getAsVector(turn));
             } else {
-                turn = preTurn.minus(angles[1].piPlus());
-                shift = e0.subtract(lengths[2].getAsVector(turn.plus(angles[1])));
+                return e0.subtract(lengths[2].getAsVector(turn.plus(angles[1])));
             }
         } else {
             if (i == 0) {
-                turn = preTurn;
-                shift = e0.add(lengths[0].getAsVector(turn));
+                return e0.add(lengths[0].getAsVector(turn));
             } else if (i == 1) {
-                turn = preTurn.minus(angles[2].piPlus());
-                shift = e0.subtract(lengths[2].getAsVector(turn.plus(angles[1].supplement())));
+                return e0.subtract(lengths[2].getAsVector(turn.plus(angles[1].supplement())));
             } else {
-                turn = preTurn.minus(angles[1].supplement());
-                shift = e0;
+                return e0;
             }
         }
-    return place(shift,turn,flip);
     }
 
     // create an outline of the inflated prototile.  
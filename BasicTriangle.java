@@ -53,11 +53,30 @@ public final class BasicTriangle implements AbstractTriangle<BasicAngle, BytePoi
                                      };
     }
 
+    // this one is for when we already know the directions.
+    // it doesn't copy p, so don't change it afterwards.
+    private BasicTriangle(BasicAngle[] a, BytePoint[] p, Orientation[] o, BasicEdgeLength[] e, BasicPrototile P, boolean f, BytePoint[] d) {
+        angles = a;
+        vertices = p;
+        orientations = o;
+        edgeLengths = e;
+        prototile = P;
+        flip = f;
+        directions = d;
+    }
+
     // public static factory methods.
     public static BasicTriangle createBasicTriangle(BasicAngle[] a, BytePoint[] p, Orientation[] o, BasicEdgeLength[] e, BasicPrototile P, boolean f) {
         return new BasicTriangle(a,p,o,e,P,f);
     }
 
+    // d holds the unit vectors along the edges, as in the other
+    // factory method.  BasicPrototile.place() works them out
+    // from angles, which is much cheaper than unitize().
+    public static BasicTriangle createBasicTriangle(BasicAngle[] a, BytePoint[] p, Orientation[] o, BasicEdgeLength[] e, BasicPrototile P, boolean f, BytePoint[] d) {
+        return new BasicTriangle(a,p,o,e,P,f,d);
+    }
+
     // create a new BasicTriangle by applying a transformation to this one
     public BasicTriangle move(boolean ref, BasicAngle rot, BytePoint shift) {
         // we're going to get the output by placing a prototile
@@ -104,6 +123,21 @@ public final class BasicTriangle implements AbstractTriangle<BasicAngle, BytePoi
         return output;
     }
 
+    /*
+    * Put the two edges that have p as an endpoint into output,
+    * in the same order that they have in getEdges().
+    * This saves making the third edge, and lets the caller
+    * reuse output.  p must be a vertex of this triangle.
+    */
+    public BasicEdge[] getEdgesAt(BytePoint p, BasicEdge[] output) {
+        int count = 0;
+        if (!vertices[0].equals(p)) output[count++] = BasicEdge.createBasicEdge(edgeLengths[0],orientations[0],new BytePoint[] {vertices[1],vertices[2]});
+        if (!vertices[1].equals(p)) output[count++] = BasicEdge.createBasicEdge(edgeLengths[1],orientations[1],new BytePoint[] {vertices[2],vertices[0]});
+        if (!vertices[2].equals(p)) output[count++] = BasicEdge.createBasicEdge(edgeLengths[2],orientations[2],new BytePoint[] {vertices[0],vertices[1]});
+        if (count != 2) throw new IllegalArgumentException(p + " is not a vertex of\n" + this);
+        return output;
+    }
+
     // Given two points on the triangle, return the third.  
     public BytePoint getOtherVertex(BytePoint vertex1, BytePoint vertex2) {
 
@@ -227,7 +261,7 @@ public final class BasicTriangle implements AbstractTriangle<BasicAngle, BytePoi
     */
     public boolean contains(BytePoint p) {
         for (int i = 0; i < 3; i++) {
-            if ((vertices[i].subtract(p)).crossProduct(directions[i]) < -BasicEdge.TOO_CLOSE)
+            if ((vertices[i].subtract(p)).compareCross(directions[i],-BasicEdge.TOO_CLOSE) < 0)
                 return false;
         }
         return true;
@@ -237,7 +271,7 @@ public final class BasicTriangle implements AbstractTriangle<BasicAngle, BytePoi
     public boolean covers(BytePoint p) {
         if (p.equals(vertices[0])||p.equals(vertices[1])||p.equals(vertices[2])) return false;
         for (int i = 0; i < 3; i++) {
-            if ((vertices[i].subtract(p)).crossProduct(directions[i]) < 0)//-BasicEdge.TOO_CLOSE)
+            if ((vertices[i].subtract(p)).crossSign(directions[i]) < 0)//-BasicEdge.TOO_CLOSE)
                 return false;
         }
         return true;
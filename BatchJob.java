@@ -0,0 +1,89 @@
+/*************************************************************************
+ *  Compilation:  javac BatchJob.java
+ *
+ *  One search from BatchSearch, run on the threads in a SearchContext.
+ *  BatchSearch.JobLoader loads a separate copy of this, and of
+ *  everything it uses, for each search.  It has to be public,
+ *  because BatchSearch lives in a different class loader.
+ *
+ *************************************************************************/
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public final class BatchJob implements Callable<String> {
+
+    private final SearchContext context;
+
+    // completed patches and the number of them
+    private final List<ImmutablePatch> found = Collections.synchronizedList(new ArrayList<ImmutablePatch>());
+    private final AtomicLong count = new AtomicLong(0L);
+
+    // public constructor, so that BatchSearch can find it
+    public BatchJob(SearchContext context) {
+        if (context.getTile() != Preinitializer.MY_TILE || !context.getInfl().equals(Preinitializer.INFL))
+            throw new IllegalArgumentException("BatchJob for " + context + " loaded with tile " + Preinitializer.MY_TILE + ", INFL " + Preinitializer.INFL + ".");
+        this.context = context;
+    }
+
+    // solve p, spawning if it runs for too long.
+    // return the descendents.
+    private Callable<List<EmptyBoundaryPatch>> task(final EmptyBoundaryPatch p, final Timer timer) {
+        return new Callable<List<EmptyBoundaryPatch>>() {
+            public List<EmptyBoundaryPatch> call() {
+                final AtomicBoolean die = new AtomicBoolean(false);
+                p.setKillSwitch(die);
+                TimerTask kill = new TimerTask() {
+                    public void run() {
+                        if (context.getPool().getQueue().size() < Preinitializer.SPAWN_MAX_SIZE) die.lazySet(true);
+                    }
+                };
+                timer.schedule(kill, Preinitializer.SPAWN_MIN_TIME, Preinitializer.SPAWN_MIN_TIME);
+                List<EmptyBoundaryPatch> descendents = new ArrayList<>(p.solve());
+                kill.cancel();
+                found.addAll(p.getLocalCompletedPatches());
+                count.addAndGet(p.getNumCompleted());
+                p.nullThemAll();
+                return descendents;
+            }
+        };
+    }
+
+    public String call() throws Exception {
+
+        long start = System.currentTimeMillis();
+        Timer timer = new Timer(true);
+        CompletionService<List<EmptyBoundaryPatch>> service = new ExecutorCompletionService<>(context.getPool());
+        int outstanding = 0;
+        EmptyBoundaryWorkUnitFactory factory = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+        while (factory.notDone()) {
+            service.submit(task(factory.nextPatch(), timer));
+            outstanding++;
+        }
+        while (outstanding > 0) {
+            List<EmptyBoundaryPatch> descendents = service.take().get();
+            outstanding--;
+            for (EmptyBoundaryPatch p : descendents) {
+                service.submit(task(p, timer));
+                outstanding++;
+            }
+        }
+        timer.cancel();
+
+        String summary = String.format("%s: %d completed patches in %.1f s", context, count.get(), (System.currentTimeMillis() - start)/1000.0);
+        if (found.size() > 0) {
+            String infl = context.getInfl().toString().replaceAll("[\\[\\] ]","");
+            String filename = String.format("batch/tile%d-infl%s.chk", context.getTile(), infl);
+            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
+                out.writeObject(new TriangleResults(found));
+            }
+            summary += ", written to " + filename;
+        }
+        System.out.println(summary);
+        return summary;
+
+    }
+
+} // end of class BatchJob
@@ -0,0 +1,129 @@
+/*************************************************************************
+ *  Compilation:  javac BatchSearch.java
+ *  Execution:    java BatchSearch [-interleave] tile:infl [tile:infl ...]
+ *
+ *  Run a queue of searches in one JVM, without recompiling
+ *  Preinitializer for each one.  Each search is a tile number and
+ *  an inflation factor, written like 0:-1,1,1 for tile 0 and
+ *  INFL = (-1, 1, 1).
+ *
+ *  All of the geometry (Initializer, PuzzleBoundary, BasicPrototile,
+ *  and so on) is worked out when the classes are loaded, so each
+ *  search gets its own JobLoader, which loads its own copy of every
+ *  class in the search.  SearchContext tells each copy of
+ *  Preinitializer which (tile, INFL) it belongs to.  The searches
+ *  share one thread pool.
+ *
+ *  By default the searches run one after another.  With -interleave
+ *  they all run at once, on the same threads.  Either way, the
+ *  completed patches for each search are written to
+ *  batch/tile<tile>-infl<infl>.chk, and SEARCH_MODE works as usual.
+ *
+ *  This runs locally; Server and Client still do one search at a time.
+ *
+ *  The pool threads hold on to each search's CompatibilityTuners,
+ *  so the classes of finished searches don't get garbage collected.
+ *  That's a few MB per search.
+ *
+ *************************************************************************/
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class BatchSearch {
+
+    // private constructor
+    private BatchSearch() {
+    }
+
+    // a class loader that loads the search classes itself, rather
+    // than asking its parent, so that each search has its own copies.
+    // SearchContext and BatchSearch are shared.
+    static class JobLoader extends URLClassLoader {
+
+        JobLoader(URL classes, ClassLoader parent) {
+            super(new URL[] {classes}, parent);
+        }
+
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals("SearchContext") || name.startsWith("BatchSearch")) return super.loadClass(name, resolve);
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try {
+                        c = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) resolveClass(c);
+                return c;
+            }
+        }
+
+    } // end of class JobLoader
+
+    // turn something like 0:-1,1,1 into a tile and an INFL
+    private static SearchContext parse(String job, ThreadPoolExecutor pool) {
+        String[] fields = job.split(":");
+        if (fields.length != 2) throw new IllegalArgumentException("Can't read search " + job + ". Use tile:infl, like 0:-1,1,1.");
+        List<Integer> infl = new ArrayList<>();
+        for (String c : fields[1].split(",")) infl.add(Integer.valueOf(c.trim()));
+        return SearchContext.createSearchContext(Integer.parseInt(fields[0].trim()), infl, pool);
+    }
+
+    // set up a search in its own class loader, ready to run
+    @SuppressWarnings("unchecked")
+    private static Callable<String> prepare(SearchContext context, URL classes) throws Exception {
+        JobLoader loader = new JobLoader(classes, BatchSearch.class.getClassLoader());
+        context.initialize(loader);
+        Class<?> job = loader.loadClass("BatchJob");
+        return (Callable<String>) job.getConstructor(SearchContext.class).newInstance(context);
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        boolean interleave = false;
+        List<String> jobs = new ArrayList<>();
+        for (String a : args) {
+            if (a.equals("-interleave")) {
+                interleave = true;
+            } else {
+                jobs.add(a);
+            }
+        }
+        if (jobs.isEmpty()) {
+            System.out.println("usage: java BatchSearch [-interleave] tile:infl [tile:infl ...]");
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1L, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>());
+        URL classes = BatchSearch.class.getProtectionDomain().getCodeSource().getLocation();
+        new File("batch").mkdirs();
+
+        List<SearchContext> contexts = new ArrayList<>();
+        for (String j : jobs) contexts.add(parse(j, pool));
+
+        List<String> summaries = new ArrayList<>();
+        if (interleave) {
+            // one thread per search to hand out its patches
+            // and collect the results; the real work is in pool
+            ExecutorService coordinators = Executors.newCachedThreadPool();
+            List<Future<String>> futures = new ArrayList<>();
+            for (SearchContext c : contexts) futures.add(coordinators.submit(prepare(c, classes)));
+            for (Future<String> f : futures) summaries.add(f.get());
+            coordinators.shutdown();
+        } else {
+            for (SearchContext c : contexts) summaries.add(prepare(c, classes).call());
+        }
+        pool.shutdown();
+
+        System.out.println();
+        for (String s : summaries) System.out.println(s);
+
+    }
+
+} // end of class BatchSearch
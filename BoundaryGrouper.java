@@ -0,0 +1,239 @@
+/*************************************************************************
+ *  Compilation:  javac BoundaryGrouper.java
+ *  Execution:    java BoundaryGrouper [-variants] output index input [input ...]
+ *
+ *  Group completed patches by what they look like from the outside.
+ *
+ *  When we build substitution rules, what matters about a completed
+ *  patch is usually just its boundary: the edge breakdown on each
+ *  side of the big triangle, and which of the Orientations on those
+ *  sides the patch identifies with each other (or with each other's
+ *  opposites).  Lots of patches have the same boundary and different
+ *  insides, and PatchEnsemble compares all of them with each other.
+ *
+ *  So we compute a boundary signature for each patch, keep the first
+ *  patch with each signature, and count the rest.  With -variants we
+ *  also remember the number of each of the rest (in the order that we
+ *  saw them), so we can find them again in the original results.
+ *  Without the original results there's nothing to find them in, so
+ *  the rest are gone for good.
+ *
+ *  The signature is the edge lengths on each side, followed by a
+ *  label for each Orientation on the boundary and for its opposite:
+ *  the number of its class in the OrientationPartition, with the
+ *  classes numbered in the order we first meet them.  So the labels
+ *  don't depend on Orientation IDs.  We keep a 128-bit fingerprint
+ *  of the signature, as in PatchDeduplicator.
+ *
+ *  The index file lists the groups: signature fingerprint, number of
+ *  patches, the number of the representative, the edge lengths, and
+ *  the variants if we kept them.  The representative's number is its
+ *  place in the output (the segments, read in order, counting from
+ *  0), and the variants' numbers are their places in the input.
+ *
+ *  A BoundaryGrouper is also a ResultSink.Filter, so the Server can
+ *  do this as it goes; see Preinitializer.GROUP_RESULTS.  It has to
+ *  be the last Filter, or the patches that the ones after it drop
+ *  would throw off the representatives' numbers.
+ *
+ *************************************************************************/
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.*;
+import java.util.*;
+
+public class BoundaryGrouper implements ResultSink.Filter {
+
+    // the patches with one boundary signature
+    static final class Group {
+
+        final PatchDeduplicator.Fingerprint signature;
+        final String lengths;       // the edge lengths, for the index
+        final long representative;  // the first patch's place in the output
+        long count = 1;
+
+        // the numbers of the other patches, if we're keeping them
+        long[] variants = null;
+        int numVariants = 0;
+
+        Group(PatchDeduplicator.Fingerprint signature, String lengths, long representative) {
+            this.signature = signature;
+            this.lengths = lengths;
+            this.representative = representative;
+        }
+
+        void addVariant(long n) {
+            if (variants == null) variants = new long[4];
+            if (numVariants == variants.length) variants = Arrays.copyOf(variants, 2*variants.length);
+            variants[numVariants++] = n;
+        }
+
+    } // end of class Group
+
+    // keep the numbers of the variants?
+    private final boolean keepVariants;
+
+    // where to write the index when we're done, or null
+    private final File indexFile;
+
+    // the groups, in the order we found them
+    private final Map<PatchDeduplicator.Fingerprint,Group> groups = new LinkedHashMap<>();
+
+    // the number of patches we've seen, and the number we've kept
+    private long seen = 0;
+    private long kept = 0;
+
+    // private constructor
+    private BoundaryGrouper(boolean keepVariants, File indexFile) {
+        this.keepVariants = keepVariants;
+        this.indexFile = indexFile;
+    }
+
+    // public static factory method.
+    // indexFile can be null.
+    public static BoundaryGrouper createBoundaryGrouper(boolean keepVariants, File indexFile) {
+        return new BoundaryGrouper(keepVariants, indexFile);
+    }
+
+    // the boundary signature of p
+    public static int[] signature(ImmutablePatch p) {
+        EdgeBreakdown[] sides = new EdgeBreakdown[] {p.getEdge0(), p.getEdge1(), p.getEdge2()};
+
+        // the class of each Orientation
+        Map<Orientation,Integer> classes = new HashMap<>();
+        int k = 0;
+        for (ImmutableSet<Orientation> c : p.getOrientationPartition().getClasses()) {
+            for (Orientation o : c) classes.put(o, k);
+            k++;
+        }
+
+        List<Integer> output = new ArrayList<>();
+        for (EdgeBreakdown b : sides) {
+            output.add(b.size());
+            for (BasicEdgeLength l : b.getLengths()) output.add(BasicEdgeLength.ALL_EDGE_LENGTHS.indexOf(l));
+        }
+        Map<Integer,Integer> labels = new HashMap<>();
+        for (EdgeBreakdown b : sides) {
+            for (Orientation o : b.getOrientations()) {
+                output.add(label(classes.get(o), labels));
+                output.add(label(classes.get(o.getOpposite()), labels));
+            }
+        }
+
+        int[] signature = new int[output.size()];
+        for (int i = 0; i < signature.length; i++) signature[i] = output.get(i);
+        return signature;
+    }
+
+    // the label of class c: the order in which we met it, or -1 if
+    // the Orientation isn't in the partition
+    private static int label(Integer c, Map<Integer,Integer> labels) {
+        if (c == null) return -1;
+        Integer l = labels.get(c);
+        if (l == null) {
+            l = labels.size();
+            labels.put(c, l);
+        }
+        return l;
+    }
+
+    // the fingerprint of the boundary signature of p
+    public static PatchDeduplicator.Fingerprint fingerprint(ImmutablePatch p) {
+        int[] s = signature(p);
+        Hasher h = Hashing.murmur3_128().newHasher();
+        h.putInt(s.length);
+        for (int x : s) h.putInt(x);
+        return PatchDeduplicator.Fingerprint.of(h);
+    }
+
+    // the edge lengths on the sides of p, for the index
+    private static String lengths(ImmutablePatch p) {
+        String output = "";
+        for (EdgeBreakdown b : new EdgeBreakdown[] {p.getEdge0(), p.getEdge1(), p.getEdge2()}) {
+            output += (output.length() == 0) ? "" : " ";
+            for (int i = 0; i < b.size(); i++) output += ((i == 0) ? "" : ",") + BasicEdgeLength.ALL_EDGE_LENGTHS.indexOf(b.getLengths()[i]);
+        }
+        return output;
+    }
+
+    // add p.  return true if it's the first with its signature.
+    // not thread-safe.
+    public boolean add(ImmutablePatch p) {
+        long n = seen++;
+        PatchDeduplicator.Fingerprint f = fingerprint(p);
+        Group g = groups.get(f);
+        if (g == null) {
+            groups.put(f, new Group(f, lengths(p), kept++));
+            return true;
+        }
+        g.count++;
+        if (keepVariants) g.addVariant(n);
+        return false;
+    }
+
+    // for ResultSink
+    public boolean keep(ImmutablePatch p) {
+        return add(p);
+    }
+
+    // the number of patches we've seen
+    public long seen() {
+        return seen;
+    }
+
+    // the number of groups
+    public int size() {
+        return groups.size();
+    }
+
+    // write the index, if we have somewhere to write it
+    public void close() throws IOException {
+        if (indexFile == null) return;
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(indexFile)))) {
+            out.println("# signature count representative lengths [variants]");
+            for (Group g : groups.values()) {
+                StringBuilder line = new StringBuilder(g.signature + " " + g.count + " " + g.representative + " " + g.lengths);
+                if (g.numVariants > 0) {
+                    line.append(" [");
+                    for (int i = 0; i < g.numVariants; i++) line.append((i == 0) ? "" : " ").append(g.variants[i]);
+                    line.append("]");
+                }
+                out.println(line);
+            }
+        }
+    }
+
+    public String toString() {
+        return "BoundaryGrouper (" + groups.size() + " groups, " + seen + " patches)";
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        boolean variants = false;
+        int first = 0;
+        if (args.length > 0 && args[0].equals("-variants")) {
+            variants = true;
+            first = 1;
+        }
+        if (args.length < first + 3) {
+            System.out.println("usage: java BoundaryGrouper [-variants] output index input [input ...]");
+            System.out.println("output is a file name pattern with %08d in it, ending in .chk or " + ResultStore.SUFFIX + ".");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        BoundaryGrouper grouper = createBoundaryGrouper(variants, new File(args[first+1]));
+        ResultSink sink = ResultSink.createResultSink(args[first], 10000, Long.MAX_VALUE);
+        sink.addFilter(grouper);
+        for (int i = first + 2; i < args.length; i++) {
+            for (ImmutablePatch p : ResultStore.read(args[i])) sink.add(p);
+            System.out.println("Read " + args[i] + ".");
+        }
+        sink.close();
+        System.out.println(String.format("%d patches in %d groups, %d representatives written in %.1f s.", grouper.seen(), grouper.size(), sink.written(), (System.currentTimeMillis() - start)/1000.0));
+
+    }
+
+} // end of class BoundaryGrouper
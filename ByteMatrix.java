@@ -154,12 +154,30 @@ final public class ByteMatrix implements Serializable {
     public byte[] rowTimes(byte[] i) {
         ByteMatrix A = this;
         if (i.length != A.M) throw new IllegalArgumentException("Illegal matrix dimensions.");
-        byte[] row = new byte[A.N];
+        return PointKernels.KERNELS.rowTimes(A.data,i);
+    }
+
+    // same as above, for short coordinates
+    public short[] rowTimes(short[] i) {
+        ByteMatrix A = this;
+        if (i.length != A.M) throw new IllegalArgumentException("Illegal matrix dimensions.");
+        short[] row = new short[A.N];
         for (int k = 0; k < A.N; k++) {
-            row[k] = (byte) 0;
-            for (int l = 0; l < A.M; l++) {
-                row[k] = (byte) (row[k] + i[l]*A.data[l][k]);
-            }
+            int sum = 0;
+            for (int l = 0; l < A.M; l++) sum += i[l]*A.data[l][k];
+            row[k] = (short) sum;
+        }
+        return row;
+    }
+
+    // same as above, for int coordinates.
+    // nothing gets truncated here.
+    public int[] rowTimes(int[] i) {
+        ByteMatrix A = this;
+        if (i.length != A.M) throw new IllegalArgumentException("Illegal matrix dimensions.");
+        int[] row = new int[A.N];
+        for (int k = 0; k < A.N; k++) {
+            for (int l = 0; l < A.M; l++) row[k] += i[l]*A.data[l][k];
         }
         return row;
     }
@@ -2,6 +2,9 @@
 *    This class implements a point.
 *    It uses a representation as a vector of integers.  
 *    -- modified to use bytes to save memory
+*    -- bytes aren't enough for big inflation factors, so the
+*       coordinates can also be shorts or ints.  Initializer
+*       picks the narrowest width that will do (see WIDTH).
 */
 
 import com.google.common.collect.*;
@@ -9,6 +12,7 @@ import com.google.common.base.*;
 import com.google.common.cache.*;
 import java.io.Serializable;
 import java.lang.Math;
+import java.util.Arrays;
 
 final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Serializable {
 
@@ -26,6 +30,16 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
 
     public static final ByteMatrix INFL = Initializer.INFL;
 
+    // the number of bits in each coordinate: 8, 16, or 32
+    public static final int WIDTH = Initializer.POINT_WIDTH;
+
+    // if true, throw an exception whenever a coordinate 
+    // is too big for WIDTH bits, instead of wrapping around
+    private static final boolean CHECK_OVERFLOW = Preinitializer.CHECK_POINT_OVERFLOW;
+
+    // the inner loops for byte coordinates
+    private static final PointKernels KERNELS = PointKernels.KERNELS;
+
     public static final BytePoint ZERO_VECTOR;
 
     public static final BytePoint UNIT_VECTOR;
@@ -55,50 +69,117 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
     }
 
     // A vector identifying the point.  
+    // Only the one that matches WIDTH is used; the others are null.
+    // WIDTH is a constant, so the JIT throws away the branches
+    // for the other two.
     private final byte[] point;
+    private final short[] shortPoint;
+    private final int[] intPoint;
 
     // Constructor methods.
     private BytePoint(byte[] vector) {
         point = vector;
+        shortPoint = null;
+        intPoint = null;
+    }
+
+    private BytePoint(short[] vector) {
+        point = null;
+        shortPoint = vector;
+        intPoint = null;
     }
 
-    private BytePoint() {
-        point = new byte[length];
+    private BytePoint(int[] vector) {
+        point = null;
+        shortPoint = null;
+        intPoint = vector;
     }
 
     // public static factory method 
     static public BytePoint createBytePoint(byte[] vector) {
-        return new BytePoint(vector);
+        if (WIDTH == 8) return new BytePoint(vector);
+        int[] wide = new int[vector.length];
+        for (int i = 0; i < vector.length; i++) wide[i] = vector[i];
+        return fromInts(wide);
         //return POOL.getCanonicalVersion(vector);
     }
 
+    // public static factory method, for int coordinates
+    static public BytePoint createBytePoint(int[] vector) {
+        return fromInts(vector);
+    }
+
     // public static factory method
     static public BytePoint createBytePoint(BytePoint p, boolean flip, BasicAngle a, BytePoint shift) {
-        byte[] vector = p.pointAsArray();
+        if (WIDTH == 8 && !CHECK_OVERFLOW) {
+            byte[] unrolled = KERNELS.transform(p.point,flip,a.getAsInt(),shift.point);
+            if (unrolled != null) return new BytePoint(unrolled);
+            byte[] vector = p.point;
+            if (flip) vector = REF.rowTimes(vector);
+            vector = a.getRotation().rowTimes(vector);
+            byte[] copyMe = shift.point;
+            for (int i = 0; i < vector.length; i++) vector[i] = (byte)(vector[i]+copyMe[i]);
+            return new BytePoint(vector);
+        }
+        int[] vector = p.ints();
         if (flip) vector = REF.rowTimes(vector);
         vector = a.getRotation().rowTimes(vector);
-        byte[] copyMe = shift.pointAsArray();
-        for (int i = 0; i < vector.length; i++) vector[i] = (byte)(vector[i]+copyMe[i]);
-        return new BytePoint(vector);
+        for (int i = 0; i < vector.length; i++) vector[i] += shift.get(i);
+        return fromInts(vector);
+    }
+
+    // make a BytePoint out of int coordinates,
+    // cutting them down to WIDTH bits
+    private static BytePoint fromInts(int[] vector) {
+        if (CHECK_OVERFLOW) checkRange(vector);
+        if (WIDTH == 8) {
+            byte[] narrow = new byte[vector.length];
+            for (int i = 0; i < vector.length; i++) narrow[i] = (byte)vector[i];
+            return new BytePoint(narrow);
+        } else if (WIDTH == 16) {
+            short[] narrow = new short[vector.length];
+            for (int i = 0; i < vector.length; i++) narrow[i] = (short)vector[i];
+            return new BytePoint(narrow);
+        } else {
+            return new BytePoint(vector);
+        }
+    }
+
+    // throw an exception if some coordinate won't fit in WIDTH bits.
+    // we don't catch overflow in int arithmetic itself, but 
+    // that would take coordinates bigger than 2^27 or so.
+    private static void checkRange(int[] vector) {
+        int max = (WIDTH == 8) ? Byte.MAX_VALUE : ((WIDTH == 16) ? Short.MAX_VALUE : Integer.MAX_VALUE);
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] > max || vector[i] < -max-1)
+                throw new IllegalArgumentException("Coordinate " + vector[i] + " doesn't fit in " + WIDTH + " bits. Set Preinitializer.POINT_WIDTH to something bigger.");
+        }
+    }
+
+    // the ith coordinate
+    private int get(int i) {
+        if (WIDTH == 8) return point[i];
+        if (WIDTH == 16) return shortPoint[i];
+        return intPoint[i];
     }
 
     // toString method.
     public String toString() {
         String outString = "(";
-        for (int i = 0; i < point.length - 1; i++) {
-            outString = outString + point[i] + ",";
+        for (int i = 0; i < length - 1; i++) {
+            outString = outString + get(i) + ",";
         }
-        outString = outString + point[point.length-1] + ")";
+        outString = outString + get(length-1) + ")";
         return outString;
     }
 
     // toString method for writing gap files.
     public String gapString() {
         String outString = "[";
-        for (int i = 0; i < point.length - 1; i++) {
-            outString = outString + point[i] + ",";
+        for (int i = 0; i < length - 1; i++) {
+            outString = outString + get(i) + ",";
         }
-        outString = outString + point[point.length-1] + "]";
+        outString = outString + get(length-1) + "]";
         return outString;
     }
 
@@ -107,36 +188,43 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
         if (obj == null || getClass() != obj.getClass())
             return false;
         BytePoint p = (BytePoint) obj;
-        for (int i = 0; i < length; i++) {
-            if (p.point[i] != this.point[i])
-                return false;
-        }
-        return true;
+        if (WIDTH == 8) return KERNELS.equal(p.point,this.point);
+        if (WIDTH == 16) return Arrays.equals(p.shortPoint,this.shortPoint);
+        return Arrays.equals(p.intPoint,this.intPoint);
     }
 
     // hashCode override.
+    // the same for every WIDTH.
     public int hashCode() {
         int prime = 53;
         int result = 11;
         for (int i = 0; i < length; i++) {
-            result = prime*result + (int)point[i];
+            result = prime*result + get(i);
         }
         return result;
     }
 
-    // return a deep copy of the contents of this BytePoint
-    protected byte[] pointAsArray() {
-        byte[] newArray = new byte[length];
-        for (int i=0; i < point.length; i++)
-            newArray[i] = point[i];
+    // return a copy of the coordinates of this BytePoint, as ints
+    protected int[] ints() {
+        int[] newArray = new int[length];
+        for (int i = 0; i < length; i++)
+            newArray[i] = get(i);
         return newArray;
     }
 
+    // the largest absolute value of a coordinate
+    public int maxCoordinate() {
+        int output = 0;
+        for (int i = 0; i < length; i++)
+            output = Math.max(output,Math.abs(get(i)));
+        return output;
+    }
+
     // a method for drawing
     public double[] arrayToDraw() {
         double[] output = new double[length];
         for (int i = 0; i < length; i++)
-            output[i] = (double) point[i];
+            output[i] = (double) get(i);
         return output;
     }
 
@@ -152,47 +240,117 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
     }
 
     // Manipulation methods.  
+    // each one has a loop for each WIDTH, and a slow
+    // version in ints for when we're checking for overflow.
     public BytePoint add(BytePoint p) {
-        byte[] q = new byte[length];
-        for (int i = 0; i < length; i++) {
-            q[i] = (byte)(point[i] + p.point[i]);
+        if (CHECK_OVERFLOW) {
+            int[] q = new int[length];
+            for (int i = 0; i < length; i++) q[i] = get(i) + p.get(i);
+            return fromInts(q);
+        }
+        if (WIDTH == 8) {
+            return new BytePoint(KERNELS.add(point,p.point));
+        } else if (WIDTH == 16) {
+            short[] q = new short[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = (short)(shortPoint[i] + p.shortPoint[i]);
+            }
+            return new BytePoint(q);
+        } else {
+            int[] q = new int[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = intPoint[i] + p.intPoint[i];
+            }
+            return new BytePoint(q);
         }
-        return createBytePoint(q);
     }
 
     public BytePoint scalarMultiple(byte c) {
-        byte[] q = new byte[length];
-        for (int i = 0; i < length; i++) {
-            q[i] = (byte)(c * point[i]);
+        if (CHECK_OVERFLOW) {
+            int[] q = new int[length];
+            for (int i = 0; i < length; i++) q[i] = c * get(i);
+            return fromInts(q);
+        }
+        if (WIDTH == 8) {
+            byte[] q = new byte[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = (byte)(c * point[i]);
+            }
+            return new BytePoint(q);
+        } else if (WIDTH == 16) {
+            short[] q = new short[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = (short)(c * shortPoint[i]);
+            }
+            return new BytePoint(q);
+        } else {
+            int[] q = new int[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = c * intPoint[i];
+            }
+            return new BytePoint(q);
         }
-        return createBytePoint(q);
     }
 
     public BytePoint subtract(BytePoint p) {
-        return this.add(p.scalarMultiple((byte)-1));
+        if (CHECK_OVERFLOW) {
+            int[] q = new int[length];
+            for (int i = 0; i < length; i++) q[i] = get(i) - p.get(i);
+            return fromInts(q);
+        }
+        if (WIDTH == 8) {
+            return new BytePoint(KERNELS.subtract(point,p.point));
+        } else if (WIDTH == 16) {
+            short[] q = new short[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = (short)(shortPoint[i] - p.shortPoint[i]);
+            }
+            return new BytePoint(q);
+        } else {
+            int[] q = new int[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = intPoint[i] - p.intPoint[i];
+            }
+            return new BytePoint(q);
+        }
+    }
+
+    // multiply by a matrix on the right
+    private BytePoint times(ByteMatrix m) {
+        if (CHECK_OVERFLOW) return fromInts(m.rowTimes(ints()));
+        if (WIDTH == 8) return new BytePoint(m.rowTimes(point));
+        if (WIDTH == 16) return new BytePoint(m.rowTimes(shortPoint));
+        return new BytePoint(m.rowTimes(intPoint));
     }
 
     public BytePoint rotate(BasicAngle a) {
-        byte[] result  = a.getRotation().rowTimes(pointAsArray());
-        return createBytePoint(result);
+        if (WIDTH == 8 && !CHECK_OVERFLOW) {
+            byte[] unrolled = KERNELS.transform(point,false,a.getAsInt(),null);
+            if (unrolled != null) return new BytePoint(unrolled);
+        }
+        return times(a.getRotation());
     }
 
     public BytePoint reflect() {
-        return createBytePoint(REF.rowTimes(this.pointAsArray()));
+        if (WIDTH == 8 && !CHECK_OVERFLOW) {
+            byte[] unrolled = KERNELS.transform(point,true,0,null);
+            if (unrolled != null) return new BytePoint(unrolled);
+        }
+        return times(REF);
     }
 
     public BytePoint inflate() {
-        return createBytePoint(INFL.rowTimes(this.pointAsArray()));
+        return times(INFL);
     }
 
     protected BytePoint timesA() {
-        return createBytePoint(A.rowTimes(this.pointAsArray()));
+        return times(A);
     }
 
     // return true if this is too close to p
     public boolean tooClose(BytePoint p) {
         BytePoint diff = subtract(p);
-        return (diff.dotProduct(diff) < TOO_CLOSE);
+        return (diff.compareDot(diff,TOO_CLOSE) < 0);
     }
 
     /*
@@ -208,19 +366,18 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
     */
     public boolean colinear(BytePoint p) {
         int l = length/2;
-        byte[] p0 = this.point;
-        byte[] p1 = p.point;
-        // here we store the shoelace products
-        byte[] coeffs = new byte[l];
+        BytePoint p0 = this;
+        BytePoint p1 = p;
+        // the shoelace products, in ints so that wide coordinates don't wrap
         for (int i = 0; i < l; i++) {
-            coeffs[i] = (byte)0;
+            int coeff = 0;
             for (int j = 0; j < length; j++) {
                 if (j+i != length-1)
-                    coeffs[i] += (byte)( p0[j] * p1[(j+i+1)%(length+1)] * ((j+i+1>length)? -1 : 1));
+                    coeff += p0.get(j) * p1.get((j+i+1)%(length+1)) * ((j+i+1>length)? -1 : 1);
                 if (j != i)
-                    coeffs[i] -= (byte)( p0[j] * p1[(j-i-1 < 0)? length+j-i : j-i-1]*((j-i-1<0)? -1 : 1) );
+                    coeff -= p0.get(j) * p1.get((j-i-1 < 0)? length+j-i : j-i-1)*((j-i-1<0)? -1 : 1);
             }
-            if (coeffs[i] != (byte)0)
+            if (coeff != 0)
                 return false;
         }
         return true;
@@ -239,16 +396,16 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
     */
     public boolean parallel(BytePoint p) {
         int l = length/2;
-        byte[] p0 = this.point;
-        byte[] p1 = p.point;
+        BytePoint p0 = this;
+        BytePoint p1 = p;
         // calculate the shoelace products
         int coeffs = 0;
         for (int i = 0; i < l; i++) {
             for (int j = 0; j < length; j++) {
                 if (j+i != length-1)
-                    coeffs += ( p0[j] * p1[(j+i+1)%(length+1)] * ((j+i+1>length)? -1 : 1));
+                    coeffs += ( p0.get(j) * p1.get((j+i+1)%(length+1)) * ((j+i+1>length)? -1 : 1));
                 if (j != i)
-                    coeffs -= ( p0[j] * p1[(j-i-1 < 0)? length+j-i : j-i-1]*((j-i-1<0)? -1 : 1) );
+                    coeffs -= ( p0.get(j) * p1.get((j-i-1 < 0)? length+j-i : j-i-1)*((j-i-1<0)? -1 : 1) );
             }
             if (coeffs != 0)
                 return false;
@@ -266,36 +423,71 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
     */
     public double crossProduct(BytePoint p) {
         int l = length/2;
-        byte[] p0 = this.point;
-        byte[] p1 = p.point;
+        BytePoint p0 = this;
+        BytePoint p1 = p;
         // here we store the shoelace products
         double coeffs = 0.0f;
         for (int i = 0; i < l; i++) {
             for (int j = 0; j < length; j++) {
                 if (j+i != length-1)
-//                    coeffs += COS_POWERS[i]*(p0[j] * p1[(j+i+1)%(length+1)] * ((j+i+1>length)? -1 : 1));
-                    coeffs += SIN_POWERS[i]*(p0[j] * p1[(j+i+1)%(length+1)] * ((j+i+1>length)? -1 : 1));
+//                    coeffs += COS_POWERS[i]*(p0.get(j) * p1.get((j+i+1)%(length+1)) * ((j+i+1>length)? -1 : 1));
+                    coeffs += SIN_POWERS[i]*(p0.get(j) * p1.get((j+i+1)%(length+1)) * ((j+i+1>length)? -1 : 1));
+                if (j != i)
+//                    coeffs -= COS_POWERS[i]*(p0.get(j) * p1.get((j-i-1 < 0)? length+j-i : j-i-1) * ((j-i-1<0)? -1 : 1));
+                    coeffs -= SIN_POWERS[i]*(p0.get(j) * p1.get((j-i-1 < 0)? length+j-i : j-i-1) * ((j-i-1<0)? -1 : 1));
+            }
+        }
+        return coeffs;
+    }
+
+    /*
+    * the integer coefficients c[i] such that crossProduct(p)
+    * is the sum of c[i]*SIN_POWERS[i].  These are exact.
+    */
+    public int[] crossCoefficients(BytePoint p) {
+        if (WIDTH == 8) return KERNELS.crossCoefficients(point,p.point);
+        int l = length/2;
+        BytePoint p0 = this;
+        BytePoint p1 = p;
+        int[] coeffs = new int[l];
+        for (int i = 0; i < l; i++) {
+            for (int j = 0; j < length; j++) {
+                if (j+i != length-1)
+                    coeffs[i] += p0.get(j) * p1.get((j+i+1)%(length+1)) * ((j+i+1>length)? -1 : 1);
                 if (j != i)
-//                    coeffs -= COS_POWERS[i]*(p0[j] * p1[(j-i-1 < 0)? length+j-i : j-i-1] * ((j-i-1<0)? -1 : 1));
-                    coeffs -= SIN_POWERS[i]*(p0[j] * p1[(j-i-1 < 0)? length+j-i : j-i-1] * ((j-i-1<0)? -1 : 1));
+                    coeffs[i] -= p0.get(j) * p1.get((j-i-1 < 0)? length+j-i : j-i-1) * ((j-i-1<0)? -1 : 1);
             }
         }
         return coeffs;
     }
 
+    /*
+    * compare crossProduct(p) with t without rounding errors.
+    * return -1, 0, or 1 if it's less than, equal to, or 
+    * greater than t.  See ExactArithmetic.
+    */
+    public int compareCross(BytePoint p, double t) {
+        return ExactArithmetic.compareSinCombination(crossCoefficients(p),t);
+    }
+
+    // the exact sign of crossProduct(p)
+    public int crossSign(BytePoint p) {
+        return compareCross(p,0.0);
+    }
+
     /*
     * a test version of the cross product
     */
     public double testCross(BytePoint p) {
         int l = length/2;
-        byte[] p0 = this.point;
-        byte[] p1 = p.point;
+        BytePoint p0 = this;
+        BytePoint p1 = p;
         // here we store the shoelace products
         double coeffs = 0.0;
         for (int i = 0; i < length; i++) {
             for (int j = 0; j < length; j++) {
                 if (j != i)
-                    coeffs += SIN_POWERS[((Math.abs(i-j)<l+1)? Math.abs(i-j) : length + 1 - Math.abs(i-j))-1]*(p0[j] * p1[i] * ((j<i)? -1 : 1));
+                    coeffs += SIN_POWERS[((Math.abs(i-j)<l+1)? Math.abs(i-j) : length + 1 - Math.abs(i-j))-1]*(p0.get(j) * p1.get(i) * ((j<i)? -1 : 1));
             }
         }
         return coeffs;
@@ -312,20 +504,55 @@ final public class BytePoint implements AbstractPoint<BytePoint, BasicAngle>, Se
     */
     public double dotProduct(BytePoint p) {
         int l = length/2+1;
-        byte[] p0 = point;
-        byte[] p1 = p.point;
+        BytePoint p0 = this;
+        BytePoint p1 = p;
         
         // here we store the shoelace products
         double coeffs = 0.0f;
         for (int i = 0; i < l; i++) {
             for (int j = 0; j < length; j++) {
                 if (j+i != length)
-                    coeffs += COS_POWERS[i]*( p0[j] *p1[(j+i)%(length+1)] * ((j+i>length)? -1 : 1) );
+                    coeffs += COS_POWERS[i]*( p0.get(j) *p1.get((j+i)%(length+1)) * ((j+i>length)? -1 : 1) );
                 if (i != 0 && j-i != -1)
-                    coeffs += COS_POWERS[i]*( p0[j] *p1[(j-i < 0)? length+1+j-i : j-i] * ((j-i<0)? -1 : 1) );
+                    coeffs += COS_POWERS[i]*( p0.get(j) *p1.get((j-i < 0)? length+1+j-i : j-i) * ((j-i<0)? -1 : 1) );
             }
         }
         return coeffs;
     }
 
+    /*
+    * the integer coefficients c[i] such that dotProduct(p)
+    * is the sum of c[i]*COS_POWERS[i].  These are exact.
+    */
+    public int[] dotCoefficients(BytePoint p) {
+        if (WIDTH == 8) return KERNELS.dotCoefficients(point,p.point);
+        int l = length/2+1;
+        BytePoint p0 = this;
+        BytePoint p1 = p;
+        int[] coeffs = new int[l];
+        for (int i = 0; i < l; i++) {
+            for (int j = 0; j < length; j++) {
+                if (j+i != length)
+                    coeffs[i] += p0.get(j) *p1.get((j+i)%(length+1)) * ((j+i>length)? -1 : 1);
+                if (i != 0 && j-i != -1)
+                    coeffs[i] += p0.get(j) *p1.get((j-i < 0)? length+1+j-i : j-i) * ((j-i<0)? -1 : 1);
+            }
+        }
+        return coeffs;
+    }
+
+    /*
+    * compare dotProduct(p) with t without rounding errors.
+    * return -1, 0, or 1 if it's less than, equal to, or 
+    * greater than t.
+    */
+    public int compareDot(BytePoint p, double t) {
+        return ExactArithmetic.compareCosCombination(dotCoefficients(p),t);
+    }
+
+    // the exact sign of dotProduct(p)
+    public int dotSign(BytePoint p) {
+        return compareDot(p,0.0);
+    }
+
 } // end of class BytePoint
@@ -1,6 +1,7 @@
 import java.util.*;
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 import com.google.common.collect.*;
@@ -15,18 +16,33 @@ public final class Client
     public static final double MONITOR_INTERVAL = 2.0; // seconds
     public static final int TIMEOUT = 1; // how many seconds to wait before declaring a node unreachable
     public static final int MAX_ATTEMPTS = 5; // how many time to try connecting before giving up
-    public static final String HANDSHAKE = "TriangleHandshake";
-    public static final String CLOSE = "TriangleClose";
-    public static final String RETURN = "KillThemAll";
+
+    // how much work we ask the Server to keep us supplied with.
+    // we want enough units to keep every thread busy while results
+    // go back and new units come out, but not so many that a slow
+    // client sits on work that somebody else could be doing.
+    public static final double PREFETCH_TIME = 4.0; // seconds of work to hold beyond what's running
+    public static final int MIN_CREDIT = 2*Preinitializer.NUMBER_OF_THREADS;
+    public static final int MAX_CREDIT = 50*Preinitializer.NUMBER_OF_THREADS;
 
     // a kill switch
     private static AtomicBoolean kill = new AtomicBoolean(false);
 
+    // we talk to the Server in WireProtocol frames.
+    // everything we send goes through the outbox, so that control
+    // frames (like CREDIT) don't wait behind big RESULT_BATCHes,
+    // and a writer thread empties it.
+    // every connection gets its own reader, outbox, and writer, so
+    // nothing left over from the last one goes out before our HELLO.
     private static Socket connection;
-    private static InputStream inputStream;
-    private static ObjectInputStream incomingObjectStream;
-    private static OutputStream outputStream;
-    private static ObjectOutputStream outgoingObjectStream;
+    private static DataInputStream incomingStream;
+    private static DataOutputStream outgoingStream;
+    private static WireProtocol.FrameReader reader;
+    private static volatile WireProtocol.Outbox outbox = new WireProtocol.Outbox();
+    private static Thread writer;
+
+    // sends heartbeats and results for the current connection
+    private static TaskMonitor taskMonitor;
 
     private static ThreadService executorService = ThreadService.INSTANCE;
 
@@ -38,6 +54,13 @@ public final class Client
     // maps work unit IDs to their corresponding futures
     private static final HashMap<Long,Future<Result>> allFutures = new HashMap<Long,Future<Result>>();
 
+    // and to the units themselves, so we can ask them for Snapshots.
+    // synchronize on allFutures.
+    private static final HashMap<Long,EmptyBoundaryWorkUnit> allUnits = new HashMap<Long,EmptyBoundaryWorkUnit>();
+
+    // how often we send the Server a checkpoint of each running unit, in ms
+    public static final long UNIT_CHECKPOINT_TIME = Preinitializer.UNIT_CHECKPOINT_TIME * 1000L;
+
     private static Object sendLock = new Object();
 
     // check the kill switch
@@ -78,7 +101,7 @@ public final class Client
                     {
                         System.out.println("Broken pipe; reconnecting.");
                     }
-                catch (ConnectException | ClassNotFoundException e)
+                catch (ConnectException e)
                     {
                         if ( e.getMessage().toLowerCase().indexOf("connection refused") > -1 )
                             System.out.println("connection refused.");
@@ -103,6 +126,9 @@ public final class Client
                         break;
                     }
 
+                // stop talking to the old connection before we try again
+                disconnect();
+
                 // check if we've exceeded the maximum number of connection attempts
                 if ( attempts > MAX_ATTEMPTS )
                     {
@@ -126,89 +152,104 @@ public final class Client
         //System.out.println("Client has shut down.");
     }
 
-    private static void connect() throws IOException, InterruptedException, ConnectException, ClassNotFoundException, SocketException, UnknownHostException, EOFException
+    private static void connect() throws IOException, InterruptedException, ConnectException, SocketException, UnknownHostException, EOFException
     {
+        // forget the last connection, if there was one
+        disconnect();
+
         // establish connection
         connection = new Socket(HOST_NAME, LISTENING_PORT);
+        connection.setTcpNoDelay(true);
         //connection.setSoTimeout(TIMEOUT*1000);
         
         // create streams
-        outputStream = new BufferedOutputStream(connection.getOutputStream());
-        outputStream.flush();
-        outgoingObjectStream = new ObjectOutputStream(outputStream);
-        inputStream = connection.getInputStream();
-        incomingObjectStream = new ObjectInputStream(new BufferedInputStream(inputStream));
-
-        // send handshake
-        outgoingObjectStream.writeObject(HANDSHAKE);
-        outgoingObjectStream.flush();
+        outgoingStream = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        incomingStream = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+
+        // send handshake.
+        // HELLO goes in the new outbox before anybody else can see it,
+        // so it's the first frame on the socket.
+        reader = new WireProtocol.FrameReader();
+        WireProtocol.Outbox o = new WireProtocol.Outbox();
+        o.add(WireProtocol.Type.HELLO, WireProtocol.hello());
+        outbox = o;
+        writer = startWriter(o, outgoingStream);
 
         // wait for handshake
-        Object incomingObject = incomingObjectStream.readObject();
-        if ( incomingObject instanceof String )
+        WireProtocol.Frame incomingFrame = reader.read(incomingStream);
+        if ( incomingFrame.getType() == WireProtocol.Type.CLOSE )
+            throw new ConnectException("Error handshaking (the server doesn't like our protocol version or search).");
+        if ( incomingFrame.getType() != WireProtocol.Type.HELLO )
+            throw new ConnectException("Error handshaking (got a " + incomingFrame + ").");
+        try
+            {
+                // deflate big frames, if the Server can take them
+                if ( WireProtocol.checkHello(incomingFrame.getPayload()) )
+                    outbox.setCompression(Preinitializer.COMPRESSION_LEVEL);
+            }
+        catch (IllegalArgumentException e)
             {
-                String thisHandshake = (String)incomingObject;
-                if ( !thisHandshake.equals(HANDSHAKE) )
-                    throw new ConnectException("Error handshaking (wrong handshake).");
+                throw new ConnectException("Error handshaking (" + e.getMessage() + ")");
             }
-        else
-            throw new ConnectException("Error handshaking (wrong object type).");
 
         // get ready to run jobs
         ThreadService executorService = ThreadService.INSTANCE;
-        TaskMonitor taskMonitor = new TaskMonitor();
+        taskMonitor = new TaskMonitor();
         System.out.println("Connected and ready to run jobs.");
 
+        // a new Server.Connection starts with no credit, so tell it
+        // what we want now instead of waiting for our credit to change
+        TaskMonitor.readvertise(( checkKillSwitch() ) ? 0 : TaskMonitor.credit());
+
         while (true)
             {
                 try
                     {
-                        incomingObject = incomingObjectStream.readObject();
-                        //System.out.println("object received!");
-                        if ( incomingObject instanceof EmptyBoundaryWorkUnit )
+                        incomingFrame = reader.read(incomingStream);
+                        //System.out.println("frame received!");
+                        if ( incomingFrame.getType() == WireProtocol.Type.JOB_BATCH )
                             {
-                                //System.out.println("job received!");
-                                EmptyBoundaryWorkUnit unit = (EmptyBoundaryWorkUnit)incomingObject;
-                                // set the kill switch on new jobs to the master switch
-                                unit.setKillSwitch(kill);
-                                // submit, get a Future
-                                Future<Result> thisFuture = executorService.getExecutor().submit(unit);
-                                //System.out.println("submitted ID " + unit.uniqueID());
-                                synchronized(allFutures)
+                                //System.out.println("jobs received!");
+                                for (EmptyBoundaryWorkUnit unit : WireProtocol.readJobBatch(incomingFrame.getPayload()))
                                     {
-                                        allFutures.put(Long.valueOf(unit.uniqueID()),thisFuture);
+                                        // set the kill switch on new jobs to the master switch
+                                        unit.setKillSwitch(kill);
+                                        // submit, get a Future
+                                        Future<Result> thisFuture = executorService.getExecutor().submit(unit);
+                                        //System.out.println("submitted ID " + unit.uniqueID());
+                                        synchronized(allFutures)
+                                            {
+                                                allFutures.put(Long.valueOf(unit.uniqueID()),thisFuture);
+                                                allUnits.put(Long.valueOf(unit.uniqueID()),unit);
+                                            }
                                     }
                             }
-                        else if ( incomingObject instanceof String )
+                        else if ( incomingFrame.getType() == WireProtocol.Type.CLOSE )
+                            {
+                                System.out.println("Close request received.");
+                                break;
+                            }
+                        else if ( incomingFrame.getType() == WireProtocol.Type.KILL )
                             {
-                                String incomingString = (String)incomingObject;
-                                if ( incomingString.equals(CLOSE) )
+                                if ( ThreadService.INSTANCE.getExecutor().getQueue().size() == 0 &&
+                                     ThreadService.INSTANCE.getExecutor().getNumberOfRunningJobs() == 0 )
                                     {
-                                        System.out.println("Close request received.");
-                                        break;
+                                        // we don't have any work to do, so don't do anything
+                                        System.out.println("\nKill request received but no work to send back.");
                                     }
-                                else if ( incomingString.equals(RETURN) )
+                                else
                                     {
-                                        if ( ThreadService.INSTANCE.getExecutor().getQueue().size() == 0 &&
-                                             ThreadService.INSTANCE.getExecutor().getNumberOfRunningJobs() == 0 )
-                                            {
-                                                // we don't have any work to do, so don't do anything
-                                                System.out.println("\nKill request received but no work to send back.");
-                                            }
-                                        else
-                                            {
-                                                // we have work to do, so tell work units to die
-                                                synchronized( DUMMY_SYNCH ) {
-                                                    kill.set(true);
-                                                    System.out.println("\nKill request received: kill switch set.");
-                                                }
-                                            }
+                                        // we have work to do, so tell work units to die,
+                                        // and stop the Server sending more until we've sent back the spawn
+                                        synchronized( DUMMY_SYNCH ) {
+                                            kill.set(true);
+                                            System.out.println("\nKill request received: kill switch set.");
+                                        }
+                                        TaskMonitor.advertise(0);
                                     }
                             }
-                        else if ( incomingObject == null )
-                            System.out.println("received a null!");
-                        else
-                            System.out.println("Unknown object type received: " + incomingObject.getClass());
+                        else if ( incomingFrame.getType() != WireProtocol.Type.HEARTBEAT )
+                            System.out.println("Unexpected " + incomingFrame + " received.");
                     }
                 catch (SocketException e)
                     {
@@ -233,39 +274,90 @@ public final class Client
             {
                 e.printStackTrace();
             }
+        outbox.close();
+        reader.close();
         System.out.println("Connection to server closed.");
+        System.out.println("Sent " + outbox + ".");
+        ThreadService.INSTANCE.close();
         System.exit(0);
     }
 
-    public static void requestJob(int i)
+    // send one frame to the Server, when the writer gets to it
+    private static void send(WireProtocol.Type type, byte[] payload)
     {
-        try
+        outbox.add(type, payload);
+    }
+
+    // write whatever turns up in o to out until the connection goes
+    private static Thread startWriter(final WireProtocol.Outbox o, final DataOutputStream out)
+    {
+        final Socket s = connection;
+        Thread w = new Thread(new Runnable() {
+            public void run()
             {
-                synchronized (sendLock)
+                try
                     {
-                        outgoingObjectStream.writeObject(Integer.valueOf(i));
-                        outgoingObjectStream.flush();
-                        outgoingObjectStream.reset();
-                        System.out.println("\nRequested " + i + " jobs.");
+                        while ( true )
+                            {
+                                ByteBuffer b = o.take();
+                                out.write(b.array(), b.position(), b.remaining());
+                                if ( o.isEmpty() )
+                                    out.flush();
+                            }
                     }
-            }
-        catch (IOException e)
-            {
-                if ( e.getMessage().equals("Broken pipe") )
-                    System.out.println("Broken pipe while requesting job!");
-                else if ( e.getMessage().contains("reset by peer") )
-                    System.out.println("Connection reset by peer while requesting job!");
-                else
+                catch (InterruptedException e)
                     {
-                        System.out.println("Error while requesting job!");
-                        e.printStackTrace();
+                    }
+                catch (IOException e)
+                    {
+                        if ( !s.isClosed() )
+                            System.out.println("Error sending to server: " + e.getMessage());
                     }
             }
-        catch (Exception e)
+        }, "frame writer");
+        w.setDaemon(true);
+        w.start();
+        return w;
+    }
+
+    // stop the TaskMonitor and the writer for the last connection, and
+    // close its socket, outbox, and reader.  whatever was still in the
+    // outbox is dropped; the Server requeues the units we had when our
+    // lease runs out.
+    private static void disconnect()
+    {
+        if ( taskMonitor != null )
             {
-                System.out.println("Error while requesting job!");
-                e.printStackTrace();
+                taskMonitor.cancel();
+                taskMonitor = null;
             }
+        if ( writer != null )
+            {
+                writer.interrupt();
+                writer = null;
+            }
+        outbox.close();
+        if ( reader != null )
+            reader.close();
+        if ( connection != null && !connection.isClosed() )
+            {
+                try
+                    {
+                        connection.close();
+                    }
+                catch (IOException e)
+                    {
+                    }
+            }
+    }
+
+    // tell the Server how many units we want to have at once.
+    // it sends units whenever we have fewer than that, so we
+    // don't have to wait for them.
+    public static void advertiseCredit(int credit)
+    {
+        send(WireProtocol.Type.CREDIT, WireProtocol.jobRequest(credit));
+        System.out.println("\nAdvertised credit for " + credit + " jobs.");
     }
 
     public static void sendResult(EmptyWorkUnitResult result)
@@ -274,32 +366,55 @@ public final class Client
         try
             {
                 //System.out.println("\ntrying to send result ID " + result.uniqueID() + " (" + result.getLocalCompletedPatches().size() + " puzzles)");
-                synchronized (sendLock)
-                    {
-                        //System.out.println("\nlock acquired for result sending: allFutures " + allFutures.size());
-                        outgoingObjectStream.writeObject(result);
-                        //System.out.println("\nsent result ID " + result.uniqueID());
-                        outgoingObjectStream.flush();
-                        outgoingObjectStream.reset();
-                    }
-                //System.out.println("\nexit synchronized");
-            }
-        catch (SocketException e)
-            {
-                System.out.println("Broken pipe!  Unable to send result!");
+                send(WireProtocol.Type.RESULT_BATCH, WireProtocol.resultBatch(Collections.singletonList(result), Collections.<EmptyBoundaryPatch>emptyList(), Collections.<Long>emptyList()));
+                //System.out.println("\nsent result ID " + result.uniqueID());
             }
         catch (Exception e)
             {
+                System.out.println("Unable to send result!");
                 e.printStackTrace();
             }
     }
 
+    // send the Server the Snapshots that our units have taken, and
+    // ask the ones that have run for UNIT_CHECKPOINT_TIME for more.
+    // if we go away, the Server requeues those instead of the units
+    // it sent, so we don't lose more than a few minutes of work.
+    public static void sendCheckpoints()
+    {
+        List<EmptyBoundaryWorkUnit> units;
+        synchronized(allFutures)
+            {
+                units = new ArrayList<>(allUnits.values());
+            }
+        for (EmptyBoundaryWorkUnit u : units)
+            {
+                EmptyBoundaryPatch.Snapshot s = u.takeSnapshot();
+                if ( s != null )
+                    send(WireProtocol.Type.CHECKPOINT, WireProtocol.checkpoint(u.uniqueID(), s));
+                u.requestSnapshot(UNIT_CHECKPOINT_TIME);
+            }
+    }
+
+    // let the Server know we're still here
+    public static void sendHeartbeat()
+    {
+        send(WireProtocol.Type.HEARTBEAT, WireProtocol.EMPTY);
+    }
+
     private static class TaskMonitor
     {
         private Timer timer;
         private static final int UPDATE_INTERVAL = 2000; // ms
         private static ThreadService executorService = ThreadService.INSTANCE;
-        private static Date lastUpdate = null;
+
+        // units finished per second, smoothed
+        private static double unitRate = 0.0;
+        private static final double SMOOTHING = 0.25; // weight of the newest measurement
+        private static long lastTick = System.currentTimeMillis();
+
+        // the credit we last told the Server about, or -1
+        private static int advertised = -1;
 
         public TaskMonitor()
         {
@@ -307,10 +422,18 @@ public final class Client
             timer.schedule(new CustomTimerTask(), UPDATE_INTERVAL, UPDATE_INTERVAL);
         }
 
+        // stop sending, because the connection has gone
+        public void cancel()
+        {
+            timer.cancel();
+        }
+
         private class CustomTimerTask extends TimerTask
         {
             public void run()
             {
+                Client.sendHeartbeat();
+
                 // if kill signal has been set
                 if ( Client.kill.get() )
                     {
@@ -329,7 +452,7 @@ public final class Client
                                 // create EmptyBatch
                                 synchronized ( EmptyBoundaryWorkUnit.returnSpawnList ) {
                                     synchronized ( EmptyBoundaryWorkUnit.returnResultsList ) {
-                                        batch = new EmptyBatch(EmptyBoundaryWorkUnit.returnResultsList,EmptyBoundaryWorkUnit.returnSpawnList);
+                                        batch = new EmptyBatch(EmptyBoundaryWorkUnit.returnResultsList,EmptyBoundaryWorkUnit.returnSpawnList,EmptyBoundaryWorkUnit.returnSpawnParents);
                                     }
                                 }
 
@@ -342,9 +465,7 @@ public final class Client
                                                     {
                                                         System.out.println("\nsending " + batch.toString());
                                                         
-                                                        outgoingObjectStream.writeObject(batch);
-                                                        outgoingObjectStream.flush();
-                                                        outgoingObjectStream.reset();
+                                                        send(WireProtocol.Type.RESULT_BATCH, WireProtocol.resultBatch(batch.getResults(), batch.getPatches(), batch.getParents()));
                                                         
                                                         System.out.println("sent back results for IDs:");
                                                         for ( EmptyWorkUnitResult r : EmptyBoundaryWorkUnit.returnResultsList )
@@ -359,6 +480,7 @@ public final class Client
                                                                         //System.out.println("2: removing " + i);
                                                                         String contents = allFutures.keySet().toString();
                                                                         Future<Result> f = allFutures.remove(i);
+                                                                        allUnits.remove(i);
                                                                         if ( f == null )
                                                                             {
                                                                                 System.out.println("unexpected error in allFutures 2");
@@ -372,10 +494,7 @@ public final class Client
                                                         System.out.println("after: " + allFutures.keySet());
                                                     }
                                             
-                                                synchronized (EmptyBoundaryWorkUnit.returnSpawnList)
-                                                    {
-                                                        EmptyBoundaryWorkUnit.returnSpawnList.clear();
-                                                    }
+                                                EmptyBoundaryWorkUnit.clearSpawnList();
                                                 synchronized (EmptyBoundaryWorkUnit.returnResultsList)
                                                     {
                                                         EmptyBoundaryWorkUnit.returnResultsList.clear();
@@ -384,12 +503,9 @@ public final class Client
                                                 System.out.println("sent batch to server, kill switch unset");
                                             }
                                     }
-                                catch (SocketException e)
-                                    {
-                                        System.out.println("Broken pipe!  Unable to send batch!");
-                                    }
                                 catch (Exception e)
                                     {
+                                        System.out.println("Unable to send batch!");
                                         e.printStackTrace();
                                     }
 
@@ -405,6 +521,10 @@ public final class Client
 
                 // if any of the work units are complete, send the result
                 synchronized( DUMMY_SYNCH ) { // avoid racing with kill switch
+                    // checkpoints go first, so the Server has them before
+                    // the results of the same units
+                    Client.sendCheckpoints();
+
                     List<Future<Result>> completedJobs = new LinkedList<>();
                     synchronized( allFutures )
                         {
@@ -414,6 +534,7 @@ public final class Client
                                     completedJobs.add(f);
                         }
 
+                    measure(completedJobs.size());
                     for (Future<Result> f : completedJobs)
                         {
                             // send each result
@@ -428,6 +549,7 @@ public final class Client
                                     synchronized( allFutures )
                                         {
                                             Future<Result> f2 = allFutures.remove(i);
+                                            allUnits.remove(i);
                                             if ( f2 == null )
                                                  System.out.println("unexpected error in allFutures 1");
                                         }
@@ -446,20 +568,47 @@ public final class Client
                         }
                 } // here ends synchronization to avoid racing kill switch
 
-                // if the number of jobs in the queue is below the threshold, request more work
-                int currentSize = executorService.getExecutor().getQueue().size();
-
-                // don't request more work if the kill switch has been set
-                if ( currentSize < Preinitializer.NUMBER_OF_THREADS && Client.checkKillSwitch() == false )
-                    {
-                        if ( TaskMonitor.lastUpdate == null || 
-                             new Date().getTime() - TaskMonitor.lastUpdate.getTime() < 5000 )
-                        TaskMonitor.lastUpdate = new Date();
-                        int numberOfJobsNeeded = 3*Preinitializer.NUMBER_OF_THREADS; 
-                        Client.requestJob(numberOfJobsNeeded);
-                    }
+                // don't ask for more work if the kill switch has been set
+                if ( Client.checkKillSwitch() == false )
+                    advertise(credit());
             }
         }
+
+        // update unitRate, now that n more units have finished
+        private static void measure(int n)
+        {
+            long now = System.currentTimeMillis();
+            double elapsed = ( now - lastTick ) / 1000.0;
+            lastTick = now;
+            if ( elapsed < 0.1 )
+                return;
+            unitRate = (1.0-SMOOTHING)*unitRate + SMOOTHING*(n/elapsed);
+        }
+
+        // enough units for every thread, plus enough to keep them busy
+        // while the results we haven't sent yet go back and more
+        // units come out.
+        private static int credit()
+        {
+            int credit = Preinitializer.NUMBER_OF_THREADS + (int)Math.ceil(unitRate * (UPDATE_INTERVAL/1000.0 + PREFETCH_TIME));
+            return Math.min(MAX_CREDIT, Math.max(MIN_CREDIT, credit));
+        }
+
+        // tell the Server, if it's changed
+        private static synchronized void advertise(int credit)
+        {
+            if ( credit == advertised )
+                return;
+            advertised = credit;
+            Client.advertiseCredit(credit);
+        }
+
+        // tell a new connection, whether it's changed or not
+        private static synchronized void readvertise(int credit)
+        {
+            advertised = -1;
+            advertise(credit);
+        }
     }
 
     private static class ThreadMonitor
@@ -529,7 +678,7 @@ public final class Client
                     average += d;
                 average = average / throughputs.size();
 
-                int numberOfCompletedPatches = Server.completedPatches.size();
+                int numberOfCompletedPatches = (int)EmptyBoundaryPatch.completionCount();
 
                 // print statistics
                 lastUpdateTime = currentTime;
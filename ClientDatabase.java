@@ -2,15 +2,56 @@ import java.util.*;
 import java.net.*;
 import java.util.concurrent.*;
 
-// this is a singleton
+// this is a singleton.
+// it keeps track of the units that each client has.  every unit we
+// send out is a lease on it, and the leases of a client run out
+// LEASE_TIME seconds after we last heard from that client.  any frame
+// (the heartbeats that clients send every couple of seconds, or
+// anything else) renews them.  when a client's leases run out, or its
+// connection closes, its units go back in the queue.  if a client has
+// sent a checkpoint of a unit (see WireProtocol.CHECKPOINT), the
+// checkpoint goes back in the queue instead.
+//
+// it also remembers the IDs of all the units that are done, wherever
+// they ran, so that if a unit comes back twice (because we requeued it
+// and then heard from the client that had it after all) we only count
+// it once.  unit IDs come from the Server, in order, so they go in a
+// RunLengthSet.
 public class ClientDatabase
 {
     public static final ClientDatabase INSTANCE = new ClientDatabase();
 
-    private final ArrayList<Long> IDlist = new ArrayList<>();
-    private final ArrayList<EmptyBoundaryWorkUnit> unitList = new ArrayList<>();
-    private final ArrayList<Server.ConnectionThread> threadList = new ArrayList<>();
-    private final Object internalLock = new Object();
+    // how long a client's leases last without hearing from it, in ms
+    public static final long LEASE_TIME = Preinitializer.LEASE_TIME * 1000L;
+
+    // one client and the units it has
+    static final class Holder
+    {
+        final Server.Connection connection;
+        final ConcurrentHashMap<Long,EmptyBoundaryWorkUnit> units = new ConcurrentHashMap<>();
+        volatile long deadline = System.currentTimeMillis() + LEASE_TIME;
+
+        Holder(Server.Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        boolean expired(long now)
+        {
+            return now > deadline || !connection.isAlive();
+        }
+    } // end of class Holder
+
+    // the clients, by client ID
+    private final ConcurrentHashMap<Long,Holder> clients = new ConcurrentHashMap<>();
+
+    // who has each unit, by unit ID.
+    // whoever removes a unit from here gets to finish or requeue it.
+    private final ConcurrentHashMap<Long,Holder> leases = new ConcurrentHashMap<>();
+
+    // the IDs of the units that are done.  synchronize on it.
+    private final RunLengthSet finished = RunLengthSet.createRunLengthSet();
+
     private final ThreadService executorService = ThreadService.INSTANCE;
 
     private ClientDatabase()
@@ -21,96 +62,150 @@ public class ClientDatabase
 
     public int jobsCheckedOut()
     {
-        synchronized (internalLock)
-            {
-                return IDlist.size();
-            }
+        return leases.size();
     }
 
-    public void markAsStarted(Server.ConnectionThread t, EmptyBoundaryWorkUnit u)
+    public void markAsStarted(Server.Connection t, EmptyBoundaryWorkUnit u)
     {
         if ( t==null || u == null )
             throw new IllegalArgumentException("markAsStarted does not allow nulls!");
-        synchronized (internalLock)
+        Holder h = clients.get(t.id);
+        if ( h == null )
             {
-                if ( numberOfEntriesFor(u.uniqueID()) > 0 )
-                    throw new IllegalArgumentException("Cannot add the same ID twice (" + u.uniqueID() + ")!");
-                IDlist.add(u.uniqueID());
-                threadList.add(t);
-                unitList.add(u);
+                Holder fresh = new Holder(t);
+                h = clients.putIfAbsent(t.id, fresh);
+                if ( h == null )
+                    h = fresh;
             }
+        // put the unit in h first, so anyone who requeues h sees it
+        if ( leases.containsKey(u.uniqueID()) || h.units.putIfAbsent(u.uniqueID(), u) != null )
+            throw new IllegalArgumentException("Cannot add the same ID twice (" + u.uniqueID() + ")!");
+        if ( leases.putIfAbsent(u.uniqueID(), h) != null )
+            {
+                h.units.remove(u.uniqueID());
+                throw new IllegalArgumentException("Cannot add the same ID twice (" + u.uniqueID() + ")!");
+            }
+
+        // if t's leases ran out while we were doing this, requeue it too
+        if ( clients.get(t.id) != h )
+            requeue(h);
     }
 
-    public void markAsFinished(Server.ConnectionThread t, Long l)
+    // t has sent the result for unit l.
+    // return false if l is already done, so we should ignore it.
+    // if t's lease on l ran out, and we've requeued l, the result
+    // still counts if nobody else has finished l yet.
+    public boolean markAsFinished(Server.Connection t, Long l)
     {
         if ( t == null || l == null )
-            throw new IllegalArgumentException("markAsStarted does not allow nulls!");
-        synchronized (internalLock)
+            throw new IllegalArgumentException("markAsFinished does not allow nulls!");
+        return markAsFinished(l);
+    }
+
+    // unit l is done, here or somewhere else.
+    // return false if it was done already.
+    public boolean markAsFinished(Long l)
+    {
+        if ( l == null )
+            throw new IllegalArgumentException("markAsFinished does not allow nulls!");
+        synchronized (finished)
             {
-                int hits = numberOfEntriesFor(l);
-                if ( hits != 1 )
-                    throw new IllegalArgumentException("Unexpected number of instances of ID " + l + " (" + hits + " hits)!");
-                int i = locate(l);
-                threadList.remove(i);
-                IDlist.remove(i);
-                unitList.remove(i);
+                if ( !finished.add(l) )
+                    return false;
             }
+
+        // whoever has l now doesn't need to
+        Holder h = leases.remove(l);
+        if ( h != null )
+            h.units.remove(l);
+        return true;
     }
 
-    public void requeueDead()
+    // is unit l done?
+    public boolean isFinished(Long l)
     {
-        synchronized (internalLock)
+        synchronized (finished)
             {
-                for (int i=0; i < threadList.size(); i++)
-                    {
-                        checkConsistency();
-
-                        Server.ConnectionThread t = threadList.get(i);
-                        if ( t.isAlive() )
-                            continue;
-                        Long l = IDlist.get(i);
-                        EmptyBoundaryWorkUnit u = unitList.get(i);
-
-                        // re-queue unit on server
-                        System.out.print("Requeueing unit " + l + " (original host: " + t.address + ")...");
-                        u.serverEventualPatches(); // so that completed puzzles get redirected to the common pool of results
-                        executorService.getExecutor().submit(u);
-
-                        // remove this entry from the database
-                        threadList.remove(i);
-                        IDlist.remove(i);
-                        unitList.remove(i);
-
-                        i=0; // reset loop counter
-                        System.out.println("done.");
-                    }
+                return finished.contains(l);
             }
     }
 
-    private void checkConsistency()
+    public String finishedSummary()
+    {
+        synchronized (finished)
+            {
+                return finished.toString();
+            }
+    }
+
+    // t has sent a checkpoint u of one of its units.  if t goes away,
+    // we requeue u instead of what we gave it.
+    // return false if t doesn't have the lease on that unit any more.
+    public boolean checkpoint(Server.Connection t, EmptyBoundaryWorkUnit u)
+    {
+        if ( t == null || u == null )
+            throw new IllegalArgumentException("checkpoint does not allow nulls!");
+        Holder h = clients.get(t.id);
+        if ( h == null || leases.get(u.uniqueID()) != h )
+            return false;
+        // if requeue() has just taken it, this fails
+        return h.units.replace(u.uniqueID(), u) != null;
+    }
+
+    // we've heard from t, so its leases last a bit longer
+    public void renew(Server.Connection t)
     {
-        int size1 = threadList.size();
-        int size2 = unitList.size();
-        int size3 = IDlist.size();
-        if ( ! (size1 == size2 && size2 == size3) )
-            throw new IllegalStateException("problem in client database!");
+        Holder h = clients.get(t.id);
+        if ( h != null )
+            h.deadline = System.currentTimeMillis() + LEASE_TIME;
     }
 
-    private int numberOfEntriesFor(Long l0)
+    // t has gone away, so requeue its units right now
+    public void release(Server.Connection t)
     {
-        int hits = 0;
-        for (Long l1 : IDlist)
-            if ( l0.equals(l1) )
-                hits++;
-        return hits;
+        Holder h = clients.remove(t.id);
+        if ( h != null )
+            requeue(h);
     }
 
-    private int locate(Long id)
+    // requeue the units of the clients whose leases have run out.
+    // if they're still connected, ask the Server to hang up on them,
+    // and it requeues them (see release()) once it has.
+    public void requeueExpired()
     {
-        int location = -1;
-        for (int i=0; i < IDlist.size(); i++)
-            if ( IDlist.get(i).equals(id) )
-                location = i;
-        return location;
+        long now = System.currentTimeMillis();
+        for (Holder h : clients.values())
+            {
+                if ( !h.expired(now) )
+                    continue;
+                if ( h.connection.isAlive() )
+                    {
+                        if ( !h.connection.isExpired() )
+                            {
+                                System.out.println("\nHaven't heard from " + h.connection.address + " in " + (now - h.connection.lastHeard())/1000 + " s.");
+                                h.connection.expire();
+                            }
+                        continue;
+                    }
+                if ( clients.remove(h.connection.id, h) )
+                    requeue(h);
+            }
+    }
+
+    // put all of h's units back in the queue
+    private void requeue(Holder h)
+    {
+        for (Map.Entry<Long,EmptyBoundaryWorkUnit> e : h.units.entrySet())
+            {
+                // it might have just finished
+                if ( !leases.remove(e.getKey(), h) )
+                    continue;
+                // take the latest checkpoint, if there is one
+                EmptyBoundaryWorkUnit u = h.units.remove(e.getKey());
+                if ( u == null )
+                    continue;
+                System.out.println("Requeueing unit " + e.getKey() + " (original host: " + h.connection.address + ").");
+                executorService.getExecutor().enqueue(u);
+            }
     }
 }
@@ -0,0 +1,152 @@
+/*************************************************************************
+ *  Compilation:  javac CompatibilityTuner.java
+ *  Execution:    java CompatibilityTuner
+ *
+ *  Picks the order of a list of tests, all of which have to
+ *  pass, so that we find failures as cheaply as possible.
+ *  EmptyBoundaryPatch.compatible() uses one of these per thread.
+ *
+ *  Every so often (one call in SAMPLE_RATE) we time each test
+ *  and note whether it passed.  After RETUNE_INTERVAL such
+ *  samples, we sort the tests by average cost divided by
+ *  the chance of failing, which is the expected cost of 
+ *  finding a failure with that test.  Then we halve the 
+ *  counts, so that old samples fade away.
+ *
+ *  Since the answer is the same in any order, none of this
+ *  changes the results, only the time it takes to get them.
+ *  Not thread-safe: each thread needs its own.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+
+public class CompatibilityTuner {
+
+    // time one call in this many. must be a power of 2.
+    public static final int SAMPLE_RATE = 64;
+
+    // re-sort the tests after this many samples
+    public static final int RETUNE_INTERVAL = 1024;
+
+    // the tests, in the order we run them now
+    private final int[] order;
+
+    // total time in ns, number of runs, and number of 
+    // failures, for each test, in the samples so far
+    private final long[] time;
+    private final long[] runs;
+    private final long[] failures;
+
+    // number of calls to sample() and number of samples
+    private int calls = 0;
+    private int samples = 0;
+
+    // number of times we've re-sorted the tests
+    private int retunes = 0;
+
+    // private constructor
+    private CompatibilityTuner(int n) {
+        order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        time = new long[n];
+        runs = new long[n];
+        failures = new long[n];
+    }
+
+    // public static factory method
+    public static CompatibilityTuner createCompatibilityTuner(int n) {
+        if (n < 1) throw new IllegalArgumentException("Can't tune " + n + " tests.");
+        return new CompatibilityTuner(n);
+    }
+
+    // the order in which to run the tests.
+    // it only changes inside finishSample().
+    public int[] getOrder() {
+        return order;
+    }
+
+    // should we time this call?
+    public boolean sample() {
+        return ((calls++) & (SAMPLE_RATE-1)) == 0;
+    }
+
+    // test i took nanos ns and passed or failed
+    public void record(int i, long nanos, boolean pass) {
+        time[i] += nanos;
+        runs[i]++;
+        if (!pass) failures[i]++;
+    }
+
+    // we're done timing this call
+    public void finishSample() {
+        samples++;
+        if (samples >= RETUNE_INTERVAL) retune();
+    }
+
+    // the expected cost of finding a failure with test i.
+    // tests that we haven't seen fail go last, and 
+    // tests that we haven't seen at all stay where they are.
+    private double score(int i) {
+        if (runs[i] == 0) return Double.NaN;
+        double cost = (double)time[i]/runs[i];
+        double failRate = (double)(failures[i]+1)/(runs[i]+2); // don't divide by 0
+        return cost/failRate;
+    }
+
+    // sort the tests by score, then forget half of what we know
+    private void retune() {
+        int n = order.length;
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) scores[i] = score(i);
+        // insertion sort, keeping the old order for ties and unknowns
+        for (int j = 1; j < n; j++) {
+            int current = order[j];
+            int k = j-1;
+            while (k >= 0 && scores[order[k]] > scores[current]) {
+                order[k+1] = order[k];
+                k--;
+            }
+            order[k+1] = current;
+        }
+        for (int i = 0; i < n; i++) {
+            time[i] /= 2;
+            runs[i] /= 2;
+            failures[i] /= 2;
+        }
+        samples = 0;
+        retunes++;
+    }
+
+    // toString method
+    public String toString() {
+        String output = "order " + Arrays.toString(order) + " after " + retunes + " retunes:";
+        for (int i = 0; i < order.length; i++) {
+            output += "\n  test " + i + ": " + ((runs[i]==0) ? "no samples" : String.format("%.0f ns, fails %.1f%% of %d runs", (double)time[i]/runs[i], 100.0*failures[i]/runs[i], runs[i]));
+        }
+        return output;
+    }
+
+    // test client
+    public static void main(String[] args) {
+
+        // test 0 is slow and rarely fails; test 2 is cheap and often fails
+        final long[] costs = new long[] {400, 100, 20};
+        final double[] failRates = new double[] {0.01, 0.2, 0.5};
+        CompatibilityTuner tuner = createCompatibilityTuner(3);
+        java.util.Random rand = new java.util.Random(0);
+        for (int call = 0; call < SAMPLE_RATE*RETUNE_INTERVAL*3; call++) {
+            if (!tuner.sample()) continue;
+            for (int i : tuner.getOrder()) {
+                boolean pass = rand.nextDouble() >= failRates[i];
+                tuner.record(i,costs[i],pass);
+                if (!pass) break;
+            }
+            tuner.finishSample();
+        }
+        System.out.println(tuner);
+        System.out.println("Expected order: [2, 1, 0].");
+
+    }
+
+} // end of class CompatibilityTuner
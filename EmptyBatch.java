@@ -7,14 +7,18 @@ public class EmptyBatch implements Serializable
 {
     private final List<EmptyWorkUnitResult> results;    // holds the results of the work units that were sent to the client
     private final List<EmptyBoundaryPatch> newPatches;  // holds the spawn of the results
+    private final List<Long> parents;                   // the ID of the result that each of newPatches came from
 
     // a constant that we send when there is nothing to return
-    public static final EmptyBatch NO_RESULTS = new EmptyBatch(new LinkedList<EmptyWorkUnitResult>(), new LinkedList<EmptyBoundaryPatch>());
+    public static final EmptyBatch NO_RESULTS = new EmptyBatch(new LinkedList<EmptyWorkUnitResult>(), new LinkedList<EmptyBoundaryPatch>(), new LinkedList<Long>());
 
-    public EmptyBatch(List<EmptyWorkUnitResult> results, List<EmptyBoundaryPatch> newPatches)
+    public EmptyBatch(List<EmptyWorkUnitResult> results, List<EmptyBoundaryPatch> newPatches, List<Long> parents)
     {
+        if ( newPatches.size() != parents.size() )
+            throw new IllegalArgumentException(newPatches.size() + " spawn, but " + parents.size() + " parents.");
         this.results = ImmutableList.copyOf(results);
         this.newPatches = ImmutableList.copyOf(newPatches);
+        this.parents = ImmutableList.copyOf(parents);
     }
 
     public List<EmptyWorkUnitResult> getResults()
@@ -27,15 +31,22 @@ public class EmptyBatch implements Serializable
         return newPatches;
     }
 
-    // returns work units that can be submitted to the queue
-    public List<EmptyBoundaryWorkUnit> getNewUnits()
+    public List<Long> getParents()
+    {
+        return parents;
+    }
+
+    // returns work units that can be submitted to the queue,
+    // made from the spawn of the results whose IDs are in keep
+    public List<EmptyBoundaryWorkUnit> getNewUnits(Set<Long> keep)
     {
         if ( !Preinitializer.MAIN_CLASS_NAME.equals("Server") )
             System.out.println("Warning: are you sure you want to invoke getNewUnits from somewhere that isn't the server?");
 
         List<EmptyBoundaryWorkUnit> newUnits = new LinkedList<EmptyBoundaryWorkUnit>();
-        for (EmptyBoundaryPatch p : newPatches)
-            newUnits.add( EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(p, new AtomicBoolean()) );
+        for (int i = 0; i < newPatches.size(); i++)
+            if ( keep.contains(parents.get(i)) )
+                newUnits.add( EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(newPatches.get(i), new AtomicBoolean()) );
 
         return newUnits;
     }
@@ -47,6 +58,6 @@ public class EmptyBatch implements Serializable
 
     public int hashCode()
     {
-        return Objects.hash(results, newPatches);
+        return Objects.hash(results, newPatches, parents);
     }
 } // end of class EmptyBatch
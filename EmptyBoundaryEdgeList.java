@@ -40,25 +40,26 @@ public class EmptyBoundaryEdgeList implements Serializable {
     // make it Serializable
 //    static final long serialVersionUID = 3422733298735932933L;
 
-    // the open edges in this patch
-    private Stack<BasicEdge> openEdges;
+    // the open edges in this patch.
+    // these are persistent, so copies share their history.
+    private PersistentStack<BasicEdge> openEdges;
 
     // the closed edges in this patch
-    private Stack<IndexAndEdge> closedEdges;
+    private PersistentStack<IndexAndEdge> closedEdges;
 
     // the starter edge
     private BasicEdge starter;
 
     // initial constructor
     private EmptyBoundaryEdgeList(BasicEdge e) {
-        openEdges = new Stack<>();
-        closedEdges = new Stack<>();
+        openEdges = PersistentStack.createPersistentStack();
+        closedEdges = PersistentStack.createPersistentStack();
         openEdges.push(e);
         starter = e;
     }
 
     // private constructor
-    private EmptyBoundaryEdgeList(Stack<BasicEdge> open, Stack<IndexAndEdge> closed, BasicEdge e) {
+    private EmptyBoundaryEdgeList(PersistentStack<BasicEdge> open, PersistentStack<IndexAndEdge> closed, BasicEdge e) {
         openEdges = open;
         closedEdges = closed;
         starter = e;
@@ -69,13 +70,10 @@ public class EmptyBoundaryEdgeList implements Serializable {
         return new EmptyBoundaryEdgeList(e);
     }
 
-    // deep copy
+    // deep copy.
+    // the stacks are persistent, so this doesn't copy any edges.
     public EmptyBoundaryEdgeList deepCopy() {
-        Stack<BasicEdge> newOpen = new Stack<>();
-        for (int i = 0; i < openEdges.size(); i++) newOpen.push(openEdges.get(i));
-        Stack<IndexAndEdge> newClosed = new Stack<>();
-        for (int i = 0; i < closedEdges.size(); i++) newClosed.push(closedEdges.get(i));
-        return new EmptyBoundaryEdgeList(newOpen, newClosed, starter);
+        return new EmptyBoundaryEdgeList(openEdges.deepCopy(), closedEdges.deepCopy(), starter);
     }
 
     // equals method
@@ -83,14 +81,13 @@ public class EmptyBoundaryEdgeList implements Serializable {
         if (obj == null || getClass() != obj.getClass())
             return false;
         EmptyBoundaryEdgeList x = (EmptyBoundaryEdgeList) obj;
-        if (this.openEdges.size()!=x.openEdges.size()) return false;
+        if (!this.openEdges.equals(x.openEdges)) return false;
         if (this.closedEdges.size()!=x.closedEdges.size()) return false;
-        for (int i = 0; i < openEdges.size(); i++) {
-            if (!this.openEdges.get(i).equals(x.openEdges.get(i))) return false;
-        }
-        for (int i = 0; i < closedEdges.size(); i++) {
-            IndexAndEdge ie1 = this.closedEdges.get(i);
-            IndexAndEdge ie2 = x.closedEdges.get(i);
+        Iterator<IndexAndEdge> i1 = this.closedEdges.fromTop().iterator();
+        Iterator<IndexAndEdge> i2 = x.closedEdges.fromTop().iterator();
+        while (i1.hasNext()) {
+            IndexAndEdge ie1 = i1.next();
+            IndexAndEdge ie2 = i2.next();
             if (ie1.getIndex()!=ie2.getIndex()) return false;
             if (!ie1.getEdge().equals(ie2.getEdge())) return false;
         }
@@ -191,7 +188,7 @@ public class EmptyBoundaryEdgeList implements Serializable {
         // the Orientation partition has been split; now put it back together
         o.followInstructions();
         for (BasicTriangle a : triangles) {
-            for (BasicEdge c : closed()) {
+            for (BasicEdge c : closedFromTop()) {
                 if (a.simpleIncidentEdge(c)) {
                     for (BasicEdge b : a.getEdges()) {
                         if (b.congruent(c))
@@ -241,22 +238,49 @@ public class EmptyBoundaryEdgeList implements Serializable {
         return openEdges;
     }
 
+    // same as above, but from the top down.
+    // cheaper, so use it if the order doesn't matter.
+    public Iterable<BasicEdge> openFromTop() {
+        return openEdges.fromTop();
+    }
+
+    // closed edges from the top down, for the same reason
+    public Iterable<BasicEdge> closedFromTop() {
+        return new Iterable<BasicEdge>() {
+            public Iterator<BasicEdge> iterator() {
+                final Iterator<IndexAndEdge> i = closedEdges.fromTop().iterator();
+                return new Iterator<BasicEdge>() {
+
+                    public boolean hasNext() {
+                        return i.hasNext();
+                    }
+
+                    public BasicEdge next() {
+                        return i.next().getEdge();
+                    }
+
+                    public void remove() { // do nothing
+                    }
+
+                };
+            }
+        };
+    }
+
     // return closedEdges for iteration purposes
     public Iterable<BasicEdge> closed() {
         return new Iterable<BasicEdge>() {
             // an iterator that iterates through things in this class
             public Iterator<BasicEdge> iterator() {
+                final Iterator<IndexAndEdge> i = closedEdges.iterator();
                 return new Iterator<BasicEdge>() {
 
-                    private int index = 0;
-
                     public boolean hasNext() {
-                        return (index < closedEdges.size());
+                        return i.hasNext();
                     }
 
                     public BasicEdge next() {
-                        index++;
-                        return closedEdges.get(index-1).getEdge();
+                        return i.next().getEdge();
                     }
 
                     public void remove() { // do nothing
@@ -30,6 +30,7 @@ public class EmptyBoundaryPatch implements Serializable {
     // if false, then we use orientation data to reject configurations
     // otherwise, we ignore orientations
     private static final boolean IGNORE_ORIENTATIONS = Preinitializer.IGNORE_ORIENTATIONS;
+    private static final boolean TUNE_COMPATIBLE = Preinitializer.TUNE_COMPATIBLE;
 
     // the number of completed patches this has found
     private int numCompleted = 0;
@@ -45,18 +46,46 @@ public class EmptyBoundaryPatch implements Serializable {
     // short edge length. use for comparison in compatible().
     private static BasicEdgeLength SHORT = BasicEdgeLength.lengthOpposite(ONE);
 
-    // the completed patches that have been found
-    private static List<ImmutablePatch> completedPatches;
+    // what we do with a completed patch. see Preinitializer.SearchMode
+    private static final boolean EXISTS = (Preinitializer.SEARCH_MODE == Preinitializer.SearchMode.EXISTS);
+    private static final boolean COUNT = (Preinitializer.SEARCH_MODE == Preinitializer.SearchMode.COUNT);
+
+    // in EXISTS mode, this gets set when the first patch turns up.
+    // after that, every solve() on this JVM returns as soon as it can.
+    private static final AtomicBoolean STOP = new AtomicBoolean(false);
+
+    // the number of patches that the threads on this JVM have
+    // completed.  in COUNT mode, nothing else gets kept.
+    private static final LongAdder COMPLETIONS = new LongAdder();
 
     // a list of completed patches for this particular puzzle
     private List<ImmutablePatch> localCompletedPatches = new ArrayList<ImmutablePatch>();
 
     private AtomicInteger count = new AtomicInteger(0);
 
-    static { // initialize completedPatches
-        ArrayList<ImmutablePatch> tempList = new ArrayList<>();
-        completedPatches = Collections.synchronizedList(tempList);
-    }
+    // somewhere to put the new edges in compatible(), so that
+    // we don't need a new array for every triangle we try.
+    // only the thread solving this patch touches it.
+    private transient BasicEdge[] scratchEdges = new BasicEdge[2];
+
+    // the two edges beside the new vertex, and the angle between
+    // them, for the second-last edge checks in triangleFits().
+    // wedgeReady says whether they're up to date.
+    private transient BasicEdge c1;
+    private transient BasicEdge c2;
+    private transient BasicAngle wedge;
+    private transient boolean wedgeReady = false;
+
+    // these pick the order of the tests in compatible().
+    // solve() takes them from the thread it's running on.
+    // if they're null, we use the order in the code.
+    private transient CompatibilityTuner vertexTuner;
+    private transient CompatibilityTuner triangleTuner;
+    private static final ThreadLocal<CompatibilityTuner[]> TUNERS = new ThreadLocal<CompatibilityTuner[]>() {
+        protected CompatibilityTuner[] initialValue() {
+            return new CompatibilityTuner[] {CompatibilityTuner.createCompatibilityTuner(VERTEX_CHECKS), CompatibilityTuner.createCompatibilityTuner(TRIANGLE_CHECKS)};
+        }
+    };
 
     /*
     * The state variables.
@@ -69,14 +98,16 @@ public class EmptyBoundaryPatch implements Serializable {
     * the state.
     */
 
-    // the triangles in this patch
-    private Stack<BasicTriangle> triangles;
+    // the triangles in this patch.
+    // this and the other stacks are persistent, so a spawned
+    // patch shares everything below the top with its parent.
+    private PersistentStack<BasicTriangle> triangles;
 
     // the boundary of this patch
     private PuzzleBoundary boundary;
 
     // the vertices in this patch, purely for testing triangles
-    private Stack<BytePoint> vertices;
+    private PersistentStack<BytePoint> vertices;
 
     // the edges in this patch
     private EmptyBoundaryEdgeList edges;
@@ -133,10 +164,96 @@ public class EmptyBoundaryPatch implements Serializable {
     // which triangles did we have in the beginning?
     // if we started from scratch we had none, but 
     // if we spawned then we probably had some.
-    private List<BasicTriangle> initialTriangles;
+    private PersistentStack<BasicTriangle> initialTriangles;
+
+    // the number of the starting edge in EmptyBoundaryWorkUnitFactory
+    // that we (or our earliest ancestor) started from, or -1 if we
+    // didn't come from there.  with this and the triangles, UnitCodec
+    // can build us again somewhere else.
+    private final int root;
+
+    // if we were rebuilt from a Snapshot, the rest of the path to where
+    // it was taken.  solve() follows it before it does anything else.
+    private List<BasicTriangle> resumePath = null;
+
+    // a Client sets snapshotWanted when it wants a Snapshot, and the
+    // thread running solve() takes one the next time it places a
+    // triangle.  snapshot is the last one that nobody has picked up.
+    private transient volatile boolean snapshotWanted = false;
+    private transient Snapshot snapshot = null; // guarded by this
+
+    // where a running search has got to, and what it has found since
+    // the last Snapshot.  the search has done everything before the
+    // top triangle of the path, at every level, and nothing from the
+    // top triangle on, so UnitCodec can turn this into a patch that
+    // picks up from here.  see resume().
+    public static final class Snapshot {
+
+        private final int root;
+        private final PersistentStack<BasicTriangle> path;
+        private final int start;
+        private final BasicPrototile initialPrototile;
+        private final boolean initialSecondEdge;
+        private final boolean initialFlip;
+        private final List<ImmutablePatch> patches;
+        private final int numCompleted;
+
+        private Snapshot(int root, PersistentStack<BasicTriangle> path, int start, BasicPrototile initialPrototile, boolean initialSecondEdge, boolean initialFlip, List<ImmutablePatch> patches, int numCompleted) {
+            this.root = root;
+            this.path = path;
+            this.start = start;
+            this.initialPrototile = initialPrototile;
+            this.initialSecondEdge = initialSecondEdge;
+            this.initialFlip = initialFlip;
+            this.patches = patches;
+            this.numCompleted = numCompleted;
+        }
+
+        public int getRoot() {
+            return root;
+        }
+
+        // all of the triangles, from the bottom up
+        public List<BasicTriangle> getPath() {
+            return path.toList();
+        }
+
+        // the number of them that the patch started with
+        public int getStart() {
+            return start;
+        }
+
+        public BasicPrototile getInitialPrototile() {
+            return initialPrototile;
+        }
+
+        public boolean getInitialSecondEdge() {
+            return initialSecondEdge;
+        }
+
+        public boolean getInitialFlip() {
+            return initialFlip;
+        }
+
+        // the patches completed since the last Snapshot
+        public List<ImmutablePatch> getPatches() {
+            return patches;
+        }
+
+        public int getNumCompleted() {
+            return numCompleted;
+        }
+
+        public String toString() {
+            return "Snapshot at depth " + path.size() + " (started at " + start + ", " + numCompleted + " completed)";
+        }
+
+    } // end of class Snapshot
 
     // initial constructor
-    private EmptyBoundaryPatch(BasicEdge e, BytePoint[] v, MutablePrototileList TL) {
+    private EmptyBoundaryPatch(BasicEdge e, BytePoint[] v, MutablePrototileList TL, int root) {
+
+        this.root = root;
 
         // turn off the kill switch
         die = new AtomicBoolean();
@@ -148,12 +265,12 @@ public class EmptyBoundaryPatch implements Serializable {
         initialPrototile = BasicPrototile.getFirstTile();
         initialSecondEdge = false;
         initialFlip = false;
-        initialTriangles = new ArrayList<>();
+        initialTriangles = PersistentStack.createPersistentStack();
 
         tileList = TL;
-        triangles = new Stack<>();
+        triangles = PersistentStack.createPersistentStack();
         edges = EmptyBoundaryEdgeList.createEmptyBoundaryEdgeList(e);
-        vertices = new Stack<>();
+        vertices = PersistentStack.createPersistentStack();
         vertices.push(e.getEnds()[0]);
         vertices.push(e.getEnds()[1]);
         boundary = PuzzleBoundary.createPuzzleBoundary(e);
@@ -171,15 +288,13 @@ public class EmptyBoundaryPatch implements Serializable {
         resetSteps();
 
         // serialization stuff. delete.
-        int hashcode = hashCode();
-        if ( hashcode >= 0 )
-            resultFilename = String.format("%s/P%010d.chk",SERIALIZATION_DIRECTORY,hashcode);
-        else
-            resultFilename = String.format("%s/N%010d.chk",SERIALIZATION_DIRECTORY,-1*hashcode);
+        resultFilename = serializationFilename();
     }
 
     // spawn constructor
-    private EmptyBoundaryPatch(BasicPrototile initialPrototile, boolean initialSecondEdge, boolean initialFlip, List<BasicTriangle> initialTriangles, Stack<BasicTriangle> triangles, PuzzleBoundary boundary, Stack<BytePoint> vertices, EmptyBoundaryEdgeList edges, MutableOrientationPartition partition, MutablePrototileList tileList) {
+    private EmptyBoundaryPatch(int root, BasicPrototile initialPrototile, boolean initialSecondEdge, boolean initialFlip, PersistentStack<BasicTriangle> initialTriangles, PersistentStack<BasicTriangle> triangles, PuzzleBoundary boundary, PersistentStack<BytePoint> vertices, EmptyBoundaryEdgeList edges, MutableOrientationPartition partition, MutablePrototileList tileList) {
+
+        this.root = root;
 
         // turn off the kill switch
         die = new AtomicBoolean();
@@ -205,32 +320,121 @@ public class EmptyBoundaryPatch implements Serializable {
         resetSteps();
 
         // serialization stuff. delete.
-        int hashcode = hashCode();
-        if ( hashcode >= 0 )
-            resultFilename = String.format("%s/P%010d.chk",SERIALIZATION_DIRECTORY,hashcode);
-        else
-            resultFilename = String.format("%s/N%010d.chk",SERIALIZATION_DIRECTORY,-1*hashcode);
+        resultFilename = serializationFilename();
     }
 
     // public static factory method, single edge
     public static EmptyBoundaryPatch createEmptyBoundaryPatch(BasicEdge e, BytePoint[] v, MutablePrototileList TL) {
-        return new EmptyBoundaryPatch(e,v,TL);
+        return new EmptyBoundaryPatch(e,v,TL,-1);
     }
 
-    // spawn a new patch to pick things up from here
-    private EmptyBoundaryPatch spawn()
-    {
-        List<BasicTriangle> newInitialTriangles = new ArrayList<>();
-        Stack<BasicTriangle> newTriangles = new Stack<>();
-        for (int i = 0; i < triangles.size(); i++) {
-            newTriangles.push(triangles.get(i));
-            newInitialTriangles.add(triangles.get(i));
+    // public static factory method, single edge, starting edge number root
+    public static EmptyBoundaryPatch createEmptyBoundaryPatch(BasicEdge e, BytePoint[] v, MutablePrototileList TL, int root) {
+        return new EmptyBoundaryPatch(e,v,TL,root);
+    }
+
+    // rebuild a patch that root spawned (or that one of its descendents
+    // spawned), given the triangles it had, from the bottom up, and the
+    // step variables it started with.  root must be fresh from
+    // EmptyBoundaryWorkUnitFactory; we use it up.
+    // placing the triangles in order gets the edges, the boundary and
+    // the partition to the same place that the search did, because
+    // removeTriangle() undoes everything that placeTriangle() does.
+    static EmptyBoundaryPatch rebuild(EmptyBoundaryPatch root, List<BasicTriangle> placed, BasicPrototile initialPrototile, boolean initialSecondEdge, boolean initialFlip) {
+        for (BasicTriangle t : placed) {
+            root.currentEdge = root.edges.getNextEdge();
+            root.currentPrototile = t.getPrototile();
+            if (!root.tileList.contains(root.currentPrototile) || !(t.simpleIncidentEdge(root.currentEdge) || t.reverseIncidentEdge(root.currentEdge)))
+                throw new IllegalArgumentException("Triangle " + t + " doesn't cover the next edge " + root.currentEdge + ".");
+            root.placeTriangle(t);
         }
-        Stack<BytePoint> newVertices = new Stack<>();
-        for (int i = 0; i < vertices.size(); i++) {
-            newVertices.push(vertices.get(i));
+        return new EmptyBoundaryPatch(root.root, initialPrototile, initialSecondEdge, initialFlip, root.triangles.deepCopy(), root.triangles.deepCopy(), root.boundary, root.vertices, root.edges, root.partition, root.tileList);
+    }
+
+    // ask the thread running solve() for a Snapshot
+    public void requestSnapshot() {
+        snapshotWanted = true;
+    }
+
+    // the latest Snapshot, or null.  each one only comes out once,
+    // and whatever it found is no longer in getLocalCompletedPatches().
+    public synchronized Snapshot takeSnapshot() {
+        Snapshot output = snapshot;
+        snapshot = null;
+        return output;
+    }
+
+    // take a Snapshot, just after we've placed a triangle.
+    // only the thread running solve() calls this.
+    private void snapshot() {
+        snapshotWanted = false;
+        List<ImmutablePatch> found = localCompletedPatches;
+        int n = numCompleted;
+        localCompletedPatches = new ArrayList<ImmutablePatch>();
+        numCompleted = 0;
+        synchronized (this) {
+            // nobody picked up the last one, so keep what it found
+            if (snapshot != null) {
+                List<ImmutablePatch> all = new ArrayList<ImmutablePatch>(snapshot.patches);
+                all.addAll(found);
+                found = all;
+                n += snapshot.numCompleted;
+            }
+            snapshot = new Snapshot(root, triangles.deepCopy(), initialTriangles.size(), initialPrototile, initialSecondEdge, initialFlip, found, n);
         }
-        return new EmptyBoundaryPatch(currentPrototile, secondEdge, flip, newInitialTriangles, newTriangles, boundary.deepCopy(), newVertices, edges.deepCopy(), partition.deepCopy(), tileList.deepCopy());
+    }
+
+    // the rest of the path that solve() will follow first, for UnitCodec
+    List<BasicTriangle> getResumePath() {
+        return (resumePath == null) ? Collections.<BasicTriangle>emptyList() : resumePath;
+    }
+
+    void setResumePath(List<BasicTriangle> path) {
+        resumePath = (path == null || path.isEmpty()) ? null : path;
+    }
+
+    // the number of our starting edge, or -1
+    public int getRoot() {
+        return root;
+    }
+
+    // the triangles we have, from the bottom up
+    public List<BasicTriangle> getTriangles() {
+        return triangles.toList();
+    }
+
+    // the step variables we started with
+    public BasicPrototile getInitialPrototile() {
+        return initialPrototile;
+    }
+
+    public boolean getInitialSecondEdge() {
+        return initialSecondEdge;
+    }
+
+    public boolean getInitialFlip() {
+        return initialFlip;
+    }
+
+    // the name of the file we write to if SERIALIZATION_FLAG is set.
+    // hashCode() isn't free, so don't bother otherwise.
+    private String serializationFilename() {
+        if (!SERIALIZATION_FLAG) return null;
+        int hashcode = hashCode();
+        if ( hashcode >= 0 )
+            return String.format("%s/P%010d.chk",SERIALIZATION_DIRECTORY,hashcode);
+        else
+            return String.format("%s/N%010d.chk",SERIALIZATION_DIRECTORY,-1*hashcode);
+    }
+
+    // spawn a new patch to pick things up from here.
+    // the stacks are persistent, so the copies just point to
+    // the same nodes. only the partition, the tile counts and
+    // the boundary blocks get copied, and their sizes don't
+    // depend on how deep we are.
+    private EmptyBoundaryPatch spawn()
+    {
+        return new EmptyBoundaryPatch(root, currentPrototile, secondEdge, flip, triangles.deepCopy(), triangles.deepCopy(), boundary.deepCopy(), vertices.deepCopy(), edges.deepCopy(), partition.deepCopy(), tileList.deepCopy());
     }
 
     // a method to clean up after ourselves (and prevent memory leaks)
@@ -250,12 +454,24 @@ public class EmptyBoundaryPatch implements Serializable {
         currentEdge = null;
         currentPrototile = null;
         initialTriangles = null;
+        resumePath = null;
 
     } // nullThemAll() ends here
 
-    // get all the completed patches
-    public static List<ImmutablePatch> getCompletedPatches() {
-        return completedPatches;
+    // stop searching, in EXISTS mode.
+    // return true if we're the ones who stopped it.
+    public static boolean stopSearch() {
+        return STOP.compareAndSet(false,true);
+    }
+
+    // has somebody found a patch yet, in EXISTS mode?
+    public static boolean searchStopped() {
+        return STOP.get();
+    }
+
+    // the number of patches completed on this JVM
+    public static long completionCount() {
+        return COMPLETIONS.sum();
     }
 
     // set the message
@@ -296,8 +512,7 @@ public class EmptyBoundaryPatch implements Serializable {
 
     // dump the contents of this as a ImmutablePatch
     public ImmutablePatch dumpImmutablePatch() {
-        BasicTriangle[] t = new BasicTriangle[triangles.size()];
-        for (int i = 0; i < t.length; i++) t[i] = triangles.get(i);
+        BasicTriangle[] t = triangles.toList().toArray(new BasicTriangle[triangles.size()]);
         BasicEdge[] e1 = new BasicEdge[edges.openSize()];
         int j = 0;
         for (BasicEdge e : edges.open()) {
@@ -334,10 +549,7 @@ public class EmptyBoundaryPatch implements Serializable {
     // return true if triangles and initialTriangles
     // contain the same triangles in the same order
     private boolean compareTriangles() {
-        if (initialTriangles.size()!=triangles.size()) return false;
-        for (int i = 0; i < triangles.size(); i++)
-            if (!initialTriangles.get(i).equals(triangles.get(i))) return false;
-        return true;
+        return initialTriangles.equals(triangles);
     }
 
     // return true if the search is done
@@ -401,35 +613,99 @@ public class EmptyBoundaryPatch implements Serializable {
 
 
         count.getAndIncrement();
-        do {
-            if (tileList.empty()) {
-                ImmutablePatch thisPatch = dumpImmutablePatch();
-                completedPatches.add(thisPatch);
-                localCompletedPatches.add(thisPatch);
-                numCompleted++;
-                break;
-            }
-            if (tileList.contains(currentPrototile) && currentPrototile.compatible(currentEdge,secondEdge,flip,partition.equivalenceClass(currentEdge.getOrientation()))) {
-                BasicTriangle t = currentPrototile.place(currentEdge,secondEdge,flip);
-                if (compatible(t)) {
-                    placeTriangle(t);
-                    if (IGNORE_ORIENTATIONS||partition.valid())
-                        {
-                            if (die.get()) {
-                                spawnList.add(spawn());
-                            } else {
-                                solve();
-                            }
-                        }
-                    removeTriangle();
+        if (TUNE_COMPATIBLE) {
+            CompatibilityTuner[] tuners = TUNERS.get();
+            vertexTuner = tuners[0];
+            triangleTuner = tuners[1];
+        }
+        if (resumePath != null) {
+            List<BasicTriangle> path = resumePath;
+            resumePath = null;
+            resume(path, 0);
+        } else {
+            do {
+                if (tileList.empty()) {
+                    complete();
+                    break;
                 }
+                tryPlacement();
+                step();
+            } while (!backToStart() && !(EXISTS && STOP.get())); // stop when we've tried all prototiles
+        }
+        // once somebody has found a patch, there's no point
+        // in handing out any more work
+        if (EXISTS && STOP.get()) spawnList.clear();
+        return spawnList;
+
+    } // solve ends here
+
+    // try the step variables as they are: if they give a triangle
+    // that fits, place it, search from there (or spawn), and take
+    // it away again.
+    private void tryPlacement() {
+        if (tileList.contains(currentPrototile) && currentPrototile.compatible(currentEdge,secondEdge,flip,partition.equivalenceClass(currentEdge.getOrientation()))) {
+            // most placements fail on the new vertex alone,
+            // so check it before we make the triangle.
+            BytePoint other = currentPrototile.otherVertex(currentEdge,secondEdge,flip);
+            boolean newVertex = newVertex(other);
+            BasicTriangle t = (vertexFits(other,newVertex)) ? currentPrototile.place(currentEdge,secondEdge,flip) : null;
+            if (t != null && triangleFits(t,other,newVertex)) {
+                placeTriangle(t);
+                if (IGNORE_ORIENTATIONS||partition.valid())
+                    {
+                        if (die.get()) {
+                            spawnList.add(spawn());
+                        } else {
+                            if (snapshotWanted) snapshot();
+                            solve();
+                        }
+                    }
+                removeTriangle();
             }
+        }
+    }
 
+    // pick the search up where a Snapshot left it.  place the
+    // triangles of path from i on, as solve() did, search from the
+    // last one, and then carry on at each level from where it was.
+    // removeTriangle() puts the step variables back to what they
+    // were when each triangle was placed, so the path is all we need.
+    private void resume(List<BasicTriangle> path, int i) {
+        if (i == path.size()) {
+            solve();
+            return;
+        }
+        BasicTriangle t = path.get(i);
+        currentPrototile = t.getPrototile();
+        if (!tileList.contains(currentPrototile) || !(t.simpleIncidentEdge(currentEdge) || t.reverseIncidentEdge(currentEdge)))
+            throw new IllegalArgumentException("Triangle " + t + " doesn't cover the next edge " + currentEdge + ".");
+        placeTriangle(t);
+        if (die.get()) {
+            spawnList.add(spawn());
+        } else {
+            resume(path, i + 1);
+        }
+        removeTriangle();
+        step();
+        while (!backToStart() && !(EXISTS && STOP.get())) {
+            tryPlacement();
             step();
-        } while (!backToStart()); // stop when we've tried all prototiles
-        return spawnList;
+        }
+    }
 
-    } // solve ends here
+    // deal with a completed patch in the way that SEARCH_MODE asks.
+    // only ALL and the first patch in EXISTS mode get dumped.
+    private void complete() {
+        if (COUNT) {
+            numCompleted++;
+            COMPLETIONS.increment();
+            return;
+        }
+        if (EXISTS && !stopSearch()) return;
+        localCompletedPatches.add(dumpImmutablePatch());
+        numCompleted++;
+        COMPLETIONS.increment();
+    }
 
     // place a single tile, then call this method recursively.
     public void debugSolve(EmptyBoundaryDebugDisplay d) {
@@ -440,9 +716,9 @@ public class EmptyBoundaryPatch implements Serializable {
 
             if (tileList.empty()) {
                 ImmutablePatch thisPatch = dumpImmutablePatch();
-                completedPatches.add(thisPatch);
                 localCompletedPatches.add(thisPatch);
                 numCompleted++;
+                COMPLETIONS.increment();
 //                if (debug) setMessage(DebugMessage.FOUND.toString());
                 break;
             }
@@ -477,9 +753,9 @@ public class EmptyBoundaryPatch implements Serializable {
                 if ( tileList.empty() )
                     {
                         ImmutablePatch thisPatch = dumpImmutablePatch();
-                        completedPatches.add(thisPatch);
                         localCompletedPatches.add(thisPatch);
                         numCompleted++;
+                        COMPLETIONS.increment();
                         //if ( debug )
                         //   setMessage(DebugMessage.FOUND.toString());
                         break;
@@ -608,20 +884,20 @@ public class EmptyBoundaryPatch implements Serializable {
     */
     private void removeTriangle() {
         BasicTriangle t = triangles.pop();
-        edges.remove(t,triangles,partition,boundary);
+        edges.remove(t,triangles.fromTop(),partition,boundary);
         currentEdge = edges.getNextEdge();
         currentPrototile = t.getPrototile();
         flip = t.getFlip();
         tileList.add(currentPrototile);
         secondEdge = t.isSecondEdge(currentEdge);
         BytePoint p = vertices.pop();
-        for (BasicEdge e : edges.open()) {
+        for (BasicEdge e : edges.openFromTop()) {
             if (e.hasVertex(p)) {
                 vertices.push(p);
                 return;
             }
         }
-        for (BasicEdge e : edges.closed()) {
+        for (BasicEdge e : edges.closedFromTop()) {
             if (e.hasVertex(p)) {
                 vertices.push(p);
                 return;
@@ -660,14 +936,58 @@ public class EmptyBoundaryPatch implements Serializable {
     public boolean compatible(BasicTriangle t) {
         BytePoint[] ends = currentEdge.getEnds();
         BytePoint other = t.getOtherVertex(ends[0],ends[1]);
+        boolean newVertex = newVertex(other);
+        return vertexFits(other,newVertex) && triangleFits(t,other,newVertex);
+    }
+
+    // true if other isn't a vertex of this patch or the boundary yet
+    private boolean newVertex(BytePoint other) {
+        return !(vertices.contains(other)||boundary.incident(other)==1);
+    }
+
+    /*
+    * The first half of compatible(t): the tests that only 
+    * need the vertex of t that isn't on currentEdge.
+    * They only apply if it's a new vertex.
+    *
+    * The answer is true if and only if every test passes,
+    * so we can run them in any order.  If we have a 
+    * CompatibilityTuner, it picks the order.
+    */
+    private boolean vertexFits(BytePoint other, boolean newVertex) {
+        if (!newVertex) return true;
+        CompatibilityTuner tuner = vertexTuner;
+        if (tuner == null) {
+            for (int i = 0; i < VERTEX_CHECKS; i++) if (!vertexCheck(i,other)) return false;
+            return true;
+        }
+        int[] order = tuner.getOrder();
+        if (!tuner.sample()) {
+            for (int i : order) if (!vertexCheck(i,other)) return false;
+            return true;
+        }
+        for (int i : order) {
+            long start = System.nanoTime();
+            boolean pass = vertexCheck(i,other);
+            tuner.record(i,System.nanoTime()-start,pass);
+            if (!pass) {
+                tuner.finishSample();
+                return false;
+            }
+        }
+        tuner.finishSample();
+        return true;
+    }
 
-        boolean newVertex = !(vertices.contains(other)||boundary.incident(other)==1);
+    // the tests in vertexFits()
+    private static final int VERTEX_CHECKS = 2;
 
-        if (newVertex) { // big if statement
+    private boolean vertexCheck(int i, BytePoint other) {
+        if (i == 0) {
 
             // make sure the new vertex is in the inflated prototile
             if (boundary.overTheEdge(other)) {
-                if (debug) setMessage(t +"\n"+ DebugMessage.NON_CONTAINMENT.toString());
+                if (debug) setMessage(other +"\n"+ DebugMessage.NON_CONTAINMENT.toString());
                 return false;
             }
 
@@ -695,91 +1015,105 @@ public class EmptyBoundaryPatch implements Serializable {
 //                }
 //            }
 
+        } else {
+
             // return false if the new vertex is too close to any open edge
-            for (BasicEdge open : edges.open()) {
+            for (BasicEdge open : edges.openFromTop()) {
                 if (open.tooClose(other)) {
                     if (debug) setMessage(open.cross(other)+ " hit");
                     return false;
                 }
             }
 
-        } // end if(newVertex)
+        }
+        return true;
+    }
+
+    /*
+    * The second half of compatible(t): the tests that need
+    * the whole triangle.  As in vertexFits(), the order
+    * doesn't change the answer.
+    */
+    private boolean triangleFits(BasicTriangle t, BytePoint other, boolean newVertex) {
 
         // newEdges are the edges containing other in t
-        BasicEdge[] newEdges = new BasicEdge[2];
-        int count = 0;
-        for (BasicEdge e : t.getEdges()) {
-            if (e.hasVertex(other)) {
-                newEdges[count] = e;
-                count++;
-            }
+        if (scratchEdges == null) scratchEdges = new BasicEdge[2]; // we were deserialized
+        BasicEdge[] newEdges = t.getEdgesAt(other,scratchEdges);
+        // the wedge tests work out c1, c2, and wedge when they need them
+        wedgeReady = false;
+
+        CompatibilityTuner tuner = triangleTuner;
+        if (tuner == null) {
+            for (int i = 0; i < TRIANGLE_CHECKS; i++) if (!triangleCheck(i,t,newEdges,newVertex)) return false;
+            return true;
         }
-
-        // return false if a new edge crosses any old one
-        for (BasicEdge e : newEdges) {
-            // check how the new edge is incident with the boundary
-            //  0 means not at all
-            //  1 means incident, without overlapping anything
-            // -1 means incident and overlapping something
-            int boundaryIncidence = boundary.incident(e);
-            if (boundaryIncidence==-1) {
-                if (debug) setMessage(e +"\n"+ DebugMessage.BOUNDARY_PROBLEM.toString() + "\n" + boundary);
+        int[] order = tuner.getOrder();
+        if (!tuner.sample()) {
+            for (int i : order) if (!triangleCheck(i,t,newEdges,newVertex)) return false;
+            return true;
+        }
+        for (int i : order) {
+            // don't let the tests that don't apply look cheap
+            if (!newVertex && (i == 1 || i == 2)) continue;
+            long start = System.nanoTime();
+            boolean pass = triangleCheck(i,t,newEdges,newVertex);
+            tuner.record(i,System.nanoTime()-start,pass);
+            if (!pass) {
+                tuner.finishSample();
                 return false;
             }
+        }
+        tuner.finishSample();
+        return true;
+    }
 
-//            if (boundaryIncidence==1) break;
-//            for (BasicEdge open : edges.open()) {
-//                if (e.cross(open)) {
-//                    if (debug) setMessage(e +"\n"+ DebugMessage.CROSS_OPEN.toString() +"\n"+ open);
-//                    return false;
+    // the tests in triangleFits()
+    private static final int TRIANGLE_CHECKS = 4;
+
+    private boolean triangleCheck(int i, BasicTriangle t, BasicEdge[] newEdges, boolean newVertex) {
+        if (i == 0) {
+
+            // return false if a new edge crosses any old one
+            for (BasicEdge e : newEdges) {
+                // check how the new edge is incident with the boundary
+                //  0 means not at all
+                //  1 means incident, without overlapping anything
+                // -1 means incident and overlapping something
+                int boundaryIncidence = boundary.incident(e);
+                if (boundaryIncidence==-1) {
+                    if (debug) setMessage(e +"\n"+ DebugMessage.BOUNDARY_PROBLEM.toString() + "\n" + boundary);
+                    return false;
+                }
+
+//                if (boundaryIncidence==1) break;
+//                for (BasicEdge open : edges.open()) {
+//                    if (e.cross(open)) {
+//                        if (debug) setMessage(e +"\n"+ DebugMessage.CROSS_OPEN.toString() +"\n"+ open);
+//                        return false;
+//                    }
 //                }
-//            }
 
-            if (boundaryIncidence==0) {
-                for (BasicEdge open : edges.open()) {
-                    if (e.cross(open)) {
-                        if (debug) setMessage(e +"\n"+ DebugMessage.CROSS_OPEN.toString() +"\n"+ open);
-                        return false;
+                if (boundaryIncidence==0) {
+                    for (BasicEdge open : edges.openFromTop()) {
+                        if (e.cross(open)) {
+                            if (debug) setMessage(e +"\n"+ DebugMessage.CROSS_OPEN.toString() +"\n"+ open);
+                            return false;
+                        }
                     }
                 }
-            }
 
-//            for (BasicEdge closed : edges.closed()) {
-//                if (e.cross(closed)) {
-//                    if (debug) setMessage(e +"\n"+ DebugMessage.CROSS_CLOSED.toString() +"\n"+ closed);
-//                    return false;
+//                for (BasicEdge closed : edges.closed()) {
+//                    if (e.cross(closed)) {
+//                        if (debug) setMessage(e +"\n"+ DebugMessage.CROSS_CLOSED.toString() +"\n"+ closed);
+//                        return false;
+//                    }
 //                }
-//            }
-        }
+            }
 
-        if (newVertex) { // start second-last edge check
-
-            /*
-            * This is a little complicated.
-            * If other is a new vertex, then there are two new edges.
-            * The one further clockwise is the next that we will try
-            * to cover.  What about the one further counterclockwise?
-            * We need to make sure it meets the other edge beside it
-            * in such a way that does not automatically preclude 
-            * completion of the puzzle. The other edge beside it is
-            * edges.getPenultimateEdge().
-            * So we first pick these two edges and call them c1, c2.
-            * 
-            * Funny thing: we need to use cw() to find the edge
-            * further counterclockwise, because cw() and ccw()
-            * were designed with reversed edges in mind.
-            */
-            BasicEdge c1 = edges.getPenultimateEdge();
-            BasicEdge c2 = BasicEdge.cw(newEdges[0],newEdges[1]);
-
-            /*
-            * Now there's an additional problem.  
-            * getPenultimateEdge() could return null.  This means
-            * that the ccw new edge is incident with the puzzle 
-            * boundary.  So we'll have to treat that case separately,
-            * using the puzzle boundary data, in particular, angles.
-            */
-            BasicAngle wedge = c2.angle().minus(((c1==null)? boundary.incidenceAngle(c2) : c1.angle()));//.piPlus());
+        } else if (i == 1) { // start second-last edge check
+
+            if (!newVertex) return true;
+            prepareWedge(newEdges);
 
             // if the new edge makes an angle of ONE with the 
             // placed edges or puzzle boundary, there might
@@ -820,6 +1154,11 @@ public class EmptyBoundaryPatch implements Serializable {
 
             }
 
+        } else if (i == 2) {
+
+            if (!newVertex) return true;
+            prepareWedge(newEdges);
+
             if (!quantumFit(c2)) {
                 if (debug) setMessage("*****\n" + "quantum\n miss  " + "\n*****");
                 //System.out.println("QUANTUM MISS.");
@@ -827,24 +1166,56 @@ public class EmptyBoundaryPatch implements Serializable {
 
             }
 
-        } // end second-last edge check
+        } else { // end second-last edge check
 
-        // make sure the new triangle doesn't have any old vertices inside it
-        if (coversVertex(t)) {
-            if (debug) setMessage(t + DebugMessage.VERTEX_COVER.toString());
-            //System.out.println("COVERS VERTEX.");
-            return false;
-        }
+            // make sure the new triangle doesn't have any old vertices inside it
+            if (coversVertex(t)) {
+                if (debug) setMessage(t + DebugMessage.VERTEX_COVER.toString());
+                //System.out.println("COVERS VERTEX.");
+                return false;
+            }
 
+        }
         return true;
     }
 
+    /*
+    * Work out c1, c2, and wedge for the second-last edge checks.
+    *
+    * This is a little complicated.
+    * If other is a new vertex, then there are two new edges.
+    * The one further clockwise is the next that we will try
+    * to cover.  What about the one further counterclockwise?
+    * We need to make sure it meets the other edge beside it
+    * in such a way that does not automatically preclude 
+    * completion of the puzzle. The other edge beside it is
+    * edges.getPenultimateEdge().
+    * So we first pick these two edges and call them c1, c2.
+    * 
+    * Funny thing: we need to use cw() to find the edge
+    * further counterclockwise, because cw() and ccw()
+    * were designed with reversed edges in mind.
+    *
+    * Now there's an additional problem.  
+    * getPenultimateEdge() could return null.  This means
+    * that the ccw new edge is incident with the puzzle 
+    * boundary.  So we'll have to treat that case separately,
+    * using the puzzle boundary data, in particular, angles.
+    */
+    private void prepareWedge(BasicEdge[] newEdges) {
+        if (wedgeReady) return;
+        c1 = edges.getPenultimateEdge();
+        c2 = BasicEdge.cw(newEdges[0],newEdges[1]);
+        wedge = c2.angle().minus(((c1==null)? boundary.incidenceAngle(c2) : c1.angle()));//.piPlus());
+        wedgeReady = true;
+    }
+
     // check if a quantum tile might fit in here
     private boolean quantumFit(BasicEdge e) {
         BytePoint[] points = e.getQuantumTriangle();
         boolean okay = true;
         for (BytePoint p : points) {
-            for (BytePoint v : vertices) if (v.equals(p)) return true;
+            for (BytePoint v : vertices.fromTop()) if (v.equals(p)) return true;
             okay = true;
             int i = boundary.incident(p);
             if (i==1) {
@@ -856,7 +1227,7 @@ public class EmptyBoundaryPatch implements Serializable {
                 if (boundary.overTheEdge(p)) okay = false;
             }
             if (okay) {
-                for (BasicTriangle t : triangles) {
+                for (BasicTriangle t : triangles.fromTop()) {
                     if (t.covers(p)) {
                         okay = false;
                         break;
@@ -870,7 +1241,7 @@ public class EmptyBoundaryPatch implements Serializable {
 
     // check if a triangle covers any placed vertices
     private boolean coversVertex(BasicTriangle t) {
-        for (BytePoint p : vertices) {
+        for (BytePoint p : vertices.fromTop()) {
             if (t.covers(p)) return true;
         }
         return false;
@@ -13,7 +13,8 @@ import java.util.concurrent.atomic.*;
 // calling get() on the Future for a WorkUnit returns a TestResult.
 // the TestResult is just a String.
 // the main thing that a EmptyBoundaryWorkUnit does is put completed 
-// patches into completedPatches.
+// patches into Server.completedPatches, either directly (if it runs on
+// the Server) or through its EmptyWorkUnitResult (if it runs on a Client).
 public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
 
     class KillSignal extends TimerTask {
@@ -43,12 +44,20 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
 
     private AtomicBoolean die;
 
-    // the lists we use to make an EmptyBatch if we receive a Client kill signal
+    // when we started running, or last asked the patch for a Snapshot,
+    // in ms.  0 if we haven't started.
+    private volatile long lastSnapshot = 0L;
+
+    // the lists we use to make an EmptyBatch if we receive a Client kill signal.
+    // returnSpawnParents has the ID of the unit that made each of
+    // returnSpawnList, and goes with it; synchronize on returnSpawnList.
     public static LinkedList<EmptyBoundaryPatch> returnSpawnList = new LinkedList<>();
+    public static LinkedList<Long> returnSpawnParents = new LinkedList<>();
     public static List<EmptyWorkUnitResult> returnResultsList = new LinkedList<>();
 
     public static final AtomicLong IDgenerator = new AtomicLong(0L);
-    public final Long uniqueID = Long.valueOf(IDgenerator.incrementAndGet());
+    // units that come over the wire keep the ID the Server gave them
+    public final Long uniqueID;
 
     public Long uniqueID()
     {
@@ -60,6 +69,7 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
     {
         synchronized ( returnSpawnList ) {
             returnSpawnList.clear();
+            returnSpawnParents.clear();
         }
     }
 
@@ -78,9 +88,8 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
         patch.setKillSwitch(this.die);
     }
 
-    // required data to get all patches from the descendents of the initial work units
-    private transient final EmptyBoundaryWorkUnit initialWorkUnit; // if this is not an initial work unit, this points to this unit's eventual ancestor
-    private List<ImmutablePatch> eventualPatches; // only exists in initial work units; stores all patch results from descendents 
+    // if this is not an initial work unit, this points to this unit's eventual ancestor
+    private transient final EmptyBoundaryWorkUnit initialWorkUnit;
     
     private static final int KILL_TIME = Preinitializer.SPAWN_MIN_TIME; // in ms, how long to wait before killing a work unit and spawning more
 
@@ -95,64 +104,41 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
     // private constructors
     
     // create an initial work unit
-    private EmptyBoundaryWorkUnit(EmptyBoundaryPatch patch, AtomicBoolean die) {
+    private EmptyBoundaryWorkUnit(EmptyBoundaryPatch patch, AtomicBoolean die, Long uniqueID) {
+        this.uniqueID = uniqueID;
         this.patch = patch;
         this.die = die;
         initialWorkUnit = this;
-        
-        if ( Preinitializer.MAIN_CLASS_NAME.equals("Server") )
-            eventualPatches = Server.completedPatches;
-        else
-            eventualPatches = new LinkedList<ImmutablePatch>();
     }
 
     // create a descendent work unit
     private EmptyBoundaryWorkUnit(EmptyBoundaryPatch patch, AtomicBoolean die, EmptyBoundaryWorkUnit parentUnit) {
+        this.uniqueID = Long.valueOf(IDgenerator.incrementAndGet());
         this.patch = patch;
         this.die = die;
         if ( parentUnit == null )
             throw new IllegalArgumentException("parent unit must not be null");
         initialWorkUnit = parentUnit.initialWorkUnit;
-        eventualPatches = parentUnit.eventualPatches;
-    }
-
-    public List<ImmutablePatch> getEventualPatches()
-    {
-        return eventualPatches;
-    }
-
-    public void newEventualPatches()
-    {
-        eventualPatches = new LinkedList<ImmutablePatch>();
-    }
-
-    public void serverEventualPatches()
-    {
-         eventualPatches = Server.completedPatches;
     }
 
     public int hashCode()
     {
-        int hash = 0;
         // avoid self-referential hashcode calls
-        // synchronization is necessary because calling hashCode() on eventualPatches
-        // will result an iteration over the collection; if the content of eventualPatches changes during
-        // iteration, a ConcurrentModificationException will be thrown
-        // I've checked and hashCode() is not called that frequently, so this should not be a huge performance problem
-        synchronized(eventualPatches)
-            {
-                if ( initialWorkUnit == this )
-                    hash = Objects.hash(patch, count, die, eventualPatches);
-                else
-                    hash = Objects.hash(patch, count, die, initialWorkUnit, eventualPatches);
-            }
-        return hash;
+        if ( initialWorkUnit == this )
+            return Objects.hash(patch, count, die);
+        else
+            return Objects.hash(patch, count, die, initialWorkUnit);
     }
 
     // public static factory method
     public static EmptyBoundaryWorkUnit createEmptyBoundaryWorkUnit(EmptyBoundaryPatch p, AtomicBoolean die) {
         // ensures all externally created work units are marked as initial
-        return new EmptyBoundaryWorkUnit(p,die);
+        return new EmptyBoundaryWorkUnit(p,die,Long.valueOf(IDgenerator.incrementAndGet()));
+    }
+
+    // public static factory method, for a unit with a given ID
+    public static EmptyBoundaryWorkUnit createEmptyBoundaryWorkUnit(EmptyBoundaryPatch p, AtomicBoolean die, long uniqueID) {
+        return new EmptyBoundaryWorkUnit(p,die,Long.valueOf(uniqueID));
     }
 
     // this is the main method in EmptyBoundaryWorkUnit.
@@ -160,15 +146,22 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
 
     public Result call() {
         //System.out.println("running job ID " + uniqueID);
+
+        // on the Server, a unit that we requeued might have come back
+        // from the client that had it in the meantime
+        boolean onServer = Preinitializer.MAIN_CLASS_NAME.equals("Server");
+        if ( onServer && ClientDatabase.INSTANCE.isFinished(uniqueID) )
+            return new EmptyWorkUnitResult(uniqueID, new LinkedList<ImmutablePatch>());
+
         threadService.getExecutor().registerCounter(count);
         patch.setCount(count);
+        lastSnapshot = System.currentTimeMillis();
         
         Timer timer = null;
         if ( ! Preinitializer.MAIN_CLASS_NAME.equals("Client") )
             {
                 timer = new Timer();
                 timer.schedule(new KillSignal(die,timer), KILL_TIME, KILL_TIME);
-                eventualPatches = Server.completedPatches;
             }
         
         List<EmptyBoundaryPatch> descendents = patch.solve();
@@ -181,18 +174,39 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
                 timer = null;
             }
 
-        // update eventual ancestor's list of results
-        synchronized ( eventualPatches )
+        // if we took a Snapshot that nobody picked up, what it found
+        // is still ours
+        List<ImmutablePatch> found = patch.getLocalCompletedPatches();
+        int numCompleted = patch.getNumCompleted();
+        EmptyBoundaryPatch.Snapshot s = patch.takeSnapshot();
+        if ( s != null )
             {
-                eventualPatches.addAll( patch.getLocalCompletedPatches() );
+                found = new ArrayList<>(s.getPatches());
+                found.addAll(patch.getLocalCompletedPatches());
+                numCompleted += s.getNumCompleted();
             }
 
+        // if it came back while we were running it, somebody else
+        // has already found everything we just did
+        if ( onServer && !ClientDatabase.INSTANCE.markAsFinished(uniqueID) )
+            {
+                patch.nullThemAll();
+                return new EmptyWorkUnitResult(uniqueID, new LinkedList<ImmutablePatch>());
+            }
+
+        // if we're running on the Server, hand the results straight to
+        // its sink.  Clients send them back in thisResult instead.
+        if ( ! Preinitializer.MAIN_CLASS_NAME.equals("Client") )
+            Server.completedPatches.addAll( found );
+
         // what we do with the spawn depends on whether spawning was 
         // triggered by a Client killswitch or not
         boolean clientKilled = Client.checkKillSwitch();
         if (clientKilled) {
             synchronized ( returnSpawnList ) {
                 returnSpawnList.addAll(descendents);
+                for (int i = 0; i < descendents.size(); i++)
+                    returnSpawnParents.add(uniqueID);
             }
             //if ( descendents.size() > 0 )
             //    System.out.println("\nWork unit " + uniqueID + " spawned " + descendents.size() + " more units (return).");
@@ -203,13 +217,19 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
                 AtomicBoolean kill = new AtomicBoolean();
                 p.setKillSwitch(kill);
                 EmptyBoundaryWorkUnit spawnedUnit = new EmptyBoundaryWorkUnit(p,kill,this);
-                executorService.getExecutor().submit(spawnedUnit);
+                if ( onServer && Server.frontierLog != null )
+                    Server.frontierLog.submitted(spawnedUnit);
+                executorService.getExecutor().enqueue(spawnedUnit);
             }
             //if ( descendents.size() > 0 )
             //    System.out.println("\nWork unit " + uniqueID + " spawned " + descendents.size() + " more units.");
         }
         
-        EmptyWorkUnitResult thisResult = new EmptyWorkUnitResult(uniqueID, patch.getLocalCompletedPatches());
+        EmptyWorkUnitResult thisResult = new EmptyWorkUnitResult(uniqueID, found, numCompleted);
+
+        // our patches are in the sink and our spawn is in the log, so we're done
+        if ( onServer && Server.frontierLog != null )
+            Server.frontierLog.done(uniqueID, numCompleted);
 
         // add thisResult to another list for dispatch if we've received
         // a kill signal on the Client side
@@ -227,6 +247,25 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
         return thisResult;
     } // method call() ends here
 
+    // ask the patch for a Snapshot if we've been running for more
+    // than interval ms since we started or last asked
+    public void requestSnapshot(long interval)
+    {
+        long last = lastSnapshot;
+        long now = System.currentTimeMillis();
+        if ( last > 0L && now - last > interval )
+            {
+                lastSnapshot = now;
+                patch.requestSnapshot();
+            }
+    }
+
+    // the patch's latest Snapshot, or null
+    public EmptyBoundaryPatch.Snapshot takeSnapshot()
+    {
+        return patch.takeSnapshot();
+    }
+
     public int getCount()
     {
         return count.get();
@@ -237,11 +276,6 @@ public class EmptyBoundaryWorkUnit implements WorkUnit, Serializable {
         this.count = count;
     }
 
-    public void setResultTarget(List<ImmutablePatch> eventualPatches)
-    {
-        this.eventualPatches = eventualPatches;
-    }
-
     public EmptyBoundaryPatch getPatch()
     {
         return patch;
@@ -120,16 +120,34 @@ public class EmptyBoundaryWorkUnitFactory implements Serializable {
 
     public EmptyBoundaryWorkUnit nextWorkUnit() {
 
-        EmptyBoundaryPatch patch = EmptyBoundaryPatch.createEmptyBoundaryPatch(STARTERS.get(starter),bigVertices,tiles.dumpMutablePrototileList());
+        EmptyBoundaryPatch patch = nextPatch();
         AtomicBoolean kill = new AtomicBoolean();
         patch.setKillSwitch(kill);
 
         EmptyBoundaryWorkUnit unit = EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(patch,kill);
 
+        return unit;
+
+    }
+
+    // the patch that nextWorkUnit() would wrap, without the
+    // work unit.  for running it on somebody else's threads.
+    // the caller has to set the kill switch.
+    public EmptyBoundaryPatch nextPatch() {
+
+        EmptyBoundaryPatch patch = EmptyBoundaryPatch.createEmptyBoundaryPatch(STARTERS.get(starter),bigVertices,tiles.dumpMutablePrototileList(),starter);
+
         iterateEdgeBreakdown();
 
-        return unit;
+        return patch;
+
+    }
 
+    // the patch that nextPatch() makes from starting edge i.
+    // UnitCodec builds spawned patches up from these.
+    public static EmptyBoundaryPatch rootPatch(int i) {
+        if (i < 0 || i >= STARTERS.size()) throw new IllegalArgumentException("There is no starting edge " + i + ".");
+        return EmptyBoundaryPatch.createEmptyBoundaryPatch(STARTERS.get(i),bigVertices,tiles.dumpMutablePrototileList(),i);
     }
 
     public EmptyBoundaryWorkUnit countToWorkUnit(int i) {
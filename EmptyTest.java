@@ -8,10 +8,6 @@ import java.util.Scanner;
 
 public class EmptyTest
 {
-    public static final String RESULT_FILENAME = "result.chk";
-    public static final String BREAKDOWN_FILENAME = "breakdown.chk";
-    public static final List<List<ImmutablePatch>> eventualPatchList = new LinkedList<List<ImmutablePatch>>();
-
     public static void main(String[] args)
     {
 
@@ -24,8 +20,6 @@ public class EmptyTest
         EmptyBoundaryWorkUnitFactory factory = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
         while (factory.notDone())
             initialJobs.add( factory.nextWorkUnit() );
-        for (EmptyBoundaryWorkUnit u : initialJobs)
-            eventualPatchList.add(u.getEventualPatches());
 
         // start monitoring thread
         double monitorInterval = 1.0; //seconds
@@ -43,7 +37,6 @@ public class EmptyTest
             }
 
         // wait for all jobs to complete
-        List<ImmutablePatch> allCompletedPatches = new LinkedList<>();
         for (int i=0; i < allFutures.size(); i++)
             {
                 Future<Result> thisFuture = allFutures.get(i);
@@ -53,11 +46,6 @@ public class EmptyTest
                 try
                     {
                         thisResult = thisFuture.get();
-                        //EmptyWorkUnitResult thisEmptyResult = (EmptyWorkUnitResult)thisResult;
-                        //int thisSize = thisEmptyResult.getLocalCompletedPatches().size();
-                        //totalPatches += thisSize;
-                        //if ( thisSize > 0 )
-                        //    allCompletedPatches.addAll( thisEmptyResult.getLocalCompletedPatches() );
                     }
                 catch (InterruptedException e)
                     {
@@ -104,8 +92,7 @@ public class EmptyTest
 
             - each work unit returns the results it found during its call() method in Result.getLocalCompletedPatches()
             - all work units have a pointer to their eventual ancestor that can be privately accessed by EmptyBoundaryWorkUnit.initialWorkUnit
-            - to get the most current list of all completed patches, call the corresponding EmptyWorkUnitResult.getEventualPatches() method
-            - access to this List of eventual results is synchronized
+            - work units that run here put their results in Server.completedPatches, which writes them to interim/
         */
 
         for (int i=0; i < allFutures.size(); i++)
@@ -118,9 +105,6 @@ public class EmptyTest
                     {
                         thisResult = thisFuture.get();
                         EmptyWorkUnitResult thisEmptyResult = (EmptyWorkUnitResult)thisResult;
-                        // by the time we get here, all initial work units and their descendents will have finished
-                        // so it's safe to call getEventualPatches()
-//                        allCompletedPatches.addAll(thisEmptyResult.getEventualPatches());
                     }
                 catch (InterruptedException e)
                     {
@@ -141,59 +125,23 @@ public class EmptyTest
         // stop monitoring thread
         threadMonitor.stop();
 
-        int totalPatches = allCompletedPatches.size();
-        System.out.println("All jobs complete.  " + totalPatches + " completed patches were found.");
-
-        if (allCompletedPatches.size() > 0)
-            { // begin writing results
-                System.out.print("Writing completed patches to disk...");
-                TriangleResults triangleResults = new TriangleResults(allCompletedPatches);
-                try
-                    {
-                        FileOutputStream fileOut = new FileOutputStream(RESULT_FILENAME);
-                        ObjectOutputStream out = new ObjectOutputStream(fileOut);
-                        out.writeObject(triangleResults);
-                        out.close();
-                        fileOut.close();
-                        System.out.println("wrote results to " + RESULT_FILENAME + ".");
-                    }
-                catch (Exception e)
-                    {
-                        e.printStackTrace();
-                    }
-
-                // begin writing edge breakdowns
-                System.out.print("Writing edge breakdowns to disk...");
-                EdgeBreakdownTree breakdown = EdgeBreakdownTree.createEdgeBreakdownTree();
-                for (ImmutablePatch P : allCompletedPatches) {
-                    breakdown.addBreakdown(Initializer.acute(Preinitializer.PROTOTILES.get(Preinitializer.MY_TILE).get(0))-1,P.getEdge0());
-                    breakdown.addBreakdown(Initializer.acute(Preinitializer.PROTOTILES.get(Preinitializer.MY_TILE).get(1))-1,P.getEdge1());
-                    breakdown.addBreakdown(Initializer.acute(Preinitializer.PROTOTILES.get(Preinitializer.MY_TILE).get(2))-1,P.getEdge2());
-                }
-                try
-                    {
-                        FileOutputStream fileOut = new FileOutputStream(BREAKDOWN_FILENAME);
-                        ObjectOutputStream out = new ObjectOutputStream(fileOut);
-                        out.writeObject(breakdown);
-                        out.close();
-                        fileOut.close();
-                        System.out.println("wrote breakdowns to " + BREAKDOWN_FILENAME + ".");
-                    }
-                catch (Exception e)
-                    {
-                        e.printStackTrace();
-                    }
-                System.out.println("Breakdowns:\n");
-                try {
-                    System.out.println(breakdown.chainString());
-                } catch (Exception e) {
-                    StackTraceElement[] elmnt = e.getStackTrace();
-                    for (int i = 0; i < 10; i++) System.out.println(elmnt[i]);
-                    System.exit(1);
-                }
-            } // end writing results
+        // write out whatever the work units have left in Server.completedPatches
+        try
+            {
+                Server.completedPatches.close();
+            }
+        catch (InterruptedException e)
+            {
+                e.printStackTrace();
+            }
+        System.out.println("All jobs complete.  " + Server.completedPatches.written() + " completed patches were written to interim/.");
+        if ( Server.completedPatches.dropped() > 0 )
+            System.out.println(Server.completedPatches.dropped() + " completed patches were dropped as duplicates or grouped.");
+        if ( Server.completedPatches.unsettled() > 0 )
+            System.out.println(Server.completedPatches.unsettled() + " completed patches couldn't be written!");
 
         // terminate normally
+        ThreadService.INSTANCE.close();
         System.exit(0);
     } // main method ends here
 
@@ -206,9 +154,6 @@ public class EmptyTest
         private Date startTime = new Date();
         private LinkedList<Double> throughputs = new LinkedList<Double>();
 
-        private int lastNumberOfCompletedPatches = 0;
-        private final String INTERIM_RESULTS_FILENAME = Preinitializer.SERIALIZATION_DIRECTORY + "/interimResults.chk";
-
         public ThreadMonitor(double updateInterval) // seconds
         {
             this.updateInterval = updateInterval;
@@ -257,51 +202,11 @@ public class EmptyTest
                 average = average / throughputs.size();
 
                 // calculate total number of completed patches
-                int numberOfCompletedPatches = 0;
-                for (List<ImmutablePatch> l : EmptyTest.eventualPatchList)
-                    {
-                        synchronized(l)
-                            {
-                                numberOfCompletedPatches += l.size();
-                            }
-                    }
+                int numberOfCompletedPatches = (int)Server.completedPatches.size();
 
                 // print statistics
                 lastUpdateTime = currentTime;
                 ThreadService.INSTANCE.getExecutor().printQueues(throughput, average, totalTime, numberOfCompletedPatches);
-
-                // serialize interim results if more have been added since last time
-                if ( Preinitializer.SERIALIZATION_FLAG == true && numberOfCompletedPatches > lastNumberOfCompletedPatches )
-                    {
-                        LinkedList<ImmutablePatch> interimPatches = new LinkedList<ImmutablePatch>();
-                        for (List<ImmutablePatch> l : EmptyTest.eventualPatchList)
-                            {
-                                synchronized(l)
-                                    {
-                                        interimPatches.addAll(l);
-                                    }
-                            }
-                        TriangleResults interimResults = new TriangleResults(interimPatches);
-
-                        try
-                            {
-                                FileOutputStream fileOut = new FileOutputStream(INTERIM_RESULTS_FILENAME);
-                                ObjectOutputStream out = new ObjectOutputStream(fileOut);
-                                out.writeObject(interimResults);
-                                out.close();
-                                fileOut.close();
-                                int newResults = interimPatches.size() - lastNumberOfCompletedPatches;
-                                System.out.println("\n\n" + newResults + " new results, so wrote " + interimPatches.size()
-                                                   + " interim results to " + INTERIM_RESULTS_FILENAME + ".\n");
-                            }
-                        catch (Exception e)
-                            {
-                                System.out.println("\nError while writing interim results to " + INTERIM_RESULTS_FILENAME + "!");
-                                e.printStackTrace();
-                            }
-                        
-                        lastNumberOfCompletedPatches = interimPatches.size();
-                    }
             }
         }
     }
@@ -5,11 +5,18 @@ public class EmptyWorkUnitResult implements Result, Serializable
 {
     private final List<ImmutablePatch> localCompletedPatches;
     private final Long uniqueID;
+    private final long completedCount; // differs from localCompletedPatches.size() in COUNT mode
 
     public EmptyWorkUnitResult(Long uniqueID, List<ImmutablePatch> localCompletedPatches)
+    {
+        this(uniqueID, localCompletedPatches, localCompletedPatches.size());
+    }
+
+    public EmptyWorkUnitResult(Long uniqueID, List<ImmutablePatch> localCompletedPatches, long completedCount)
     {
         this.localCompletedPatches = localCompletedPatches;
         this.uniqueID = uniqueID;
+        this.completedCount = completedCount;
     }
 
     public Long uniqueID()
@@ -22,8 +29,13 @@ public class EmptyWorkUnitResult implements Result, Serializable
         return localCompletedPatches;
     }
 
+    public long getCompletedCount()
+    {
+        return completedCount;
+    }
+
     public String toString()
     {
-        return "Result for job ID " + uniqueID + ": " + localCompletedPatches.size() + " completed patches";
+        return "Result for job ID " + uniqueID + ": " + completedCount + " completed patches";
     }
 }
@@ -0,0 +1,303 @@
+/*************************************************************************
+ *  Compilation:  javac ExactArithmetic.java
+ *  Execution:    java ExactArithmetic
+ *
+ *  Filtered comparisons for the real numbers that come out of
+ *  BytePoint.crossProduct() and BytePoint.dotProduct().
+ *
+ *  Both of those are integer combinations of a few fixed
+ *  numbers: sin((k+1)pi/N)/sin(pi/N) for the cross product and
+ *  cos(k pi/N) for the dot product.  All of these are integer
+ *  polynomials in a = 2cos(pi/N), which is a root of MIN_POLY.
+ *
+ *  To compare such a combination with a threshold t, we first
+ *  add it up with doubles and check that the answer is further
+ *  from t than the worst-case rounding error.  Usually it is.
+ *  If it isn't, we rewrite the combination as an integer
+ *  polynomial P of degree less than deg(MIN_POLY) and find the
+ *  sign of P(a) - t exactly, using a very thin interval around a
+ *  with rational end points.  Since 1, a, a^2, ... are linearly
+ *  independent, P(a) can only equal t if P is constant, and then
+ *  we can compare integers.  So the answers never depend on
+ *  rounding, and every machine makes the same pruning decisions.
+ *
+ *  WARNING: like LengthAndAreaCalculator, this only works for
+ *  odd prime N.
+ *
+ *************************************************************************/
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+final public class ExactArithmetic {
+
+    private static final int N = Initializer.N;
+
+    // the coefficients of MIN_POLY, which must be monic
+    private static final long[] MIN;
+
+    // the degree of MIN_POLY
+    public static final int DEG;
+
+    // sin((k+1)pi/N)/sin(pi/N) as polynomials in a, reduced mod MIN_POLY
+    private static final long[][] SIN_POLYS;
+
+    // 2cos(k pi/N) as polynomials in a, reduced mod MIN_POLY
+    private static final long[][] COS_POLYS;
+
+    // the same numbers as doubles, correctly rounded.
+    // (SIN_VALUES[k] is sin((k+1)pi/N)/sin(pi/N) and
+    // COS_VALUES[k] is cos(k pi/N).)
+    private static final double[] SIN_VALUES;
+    private static final double[] COS_VALUES;
+
+    // an interval containing a and no other root of MIN_POLY
+    private static final BigDecimal LO;
+    private static final BigDecimal HI;
+
+    // how thin we make the interval at startup, in bits
+    private static final int INITIAL_BITS = 200;
+
+    // give up refining if we get this thin.
+    // we should never get here.
+    private static final int MAX_BITS = 4000;
+
+    // relative error allowed in the floating-point filter.
+    // a sum of at most N/2+1 products, each of which is within
+    // two roundings of the truth, is within (N/2+3) roundings of
+    // the truth; this leaves a bit of room to spare.
+    private static final double ERROR = (N+8)*Math.ulp(1.0);
+
+    // counts of how often the floating-point filter wasn't enough
+    private static final AtomicLong fallbacks = new AtomicLong(0L);
+
+    static { // initialize the polynomials and the interval
+
+        ShortPolynomial m = LengthAndAreaCalculator.MIN_POLY;
+        DEG = m.degree();
+        if (m.getCoefficient(DEG) != 1) throw new IllegalArgumentException("MIN_POLY " + m + " isn't monic.");
+        long[] preMin = new long[DEG+1];
+        for (int i = 0; i <= DEG; i++) preMin[i] = m.getCoefficient(i);
+        MIN = preMin;
+
+        // the reparametrized Tschebyshev polynomials: f(0) = 1, f(1) = a,
+        // f(k+1) = a*f(k) - f(k-1).  f(k) is sin((k+1)pi/N)/sin(pi/N).
+        long[][] t = new long[N/2+1][];
+        t[0] = reduce(new long[] {1});
+        t[1] = reduce(new long[] {0,1});
+        for (int k = 1; k < N/2; k++) {
+            long[] next = new long[DEG+1];
+            for (int i = 0; i < DEG; i++) next[i+1] += t[k][i];
+            for (int i = 0; i < DEG; i++) next[i] -= t[k-1][i];
+            t[k+1] = reduce(next);
+        }
+        SIN_POLYS = Arrays.copyOf(t,N/2);
+
+        // 2cos(k pi/N) = f(k) - f(k-2)
+        long[][] c = new long[N/2+1][];
+        c[0] = reduce(new long[] {2});
+        c[1] = t[1];
+        for (int k = 2; k <= N/2; k++) {
+            long[] diff = new long[DEG];
+            for (int i = 0; i < DEG; i++) diff[i] = t[k][i] - t[k-2][i];
+            c[k] = diff;
+        }
+        COS_POLYS = c;
+
+        // isolate a = 2cos(pi/N). the other roots are 2cos(k pi/N)
+        // for odd k, so they're nowhere near this interval.
+        double guess = 2*Math.cos(Math.PI/N);
+        BigDecimal lo = new BigDecimal(guess - 1.0e-9);
+        BigDecimal hi = new BigDecimal(guess + 1.0e-9);
+        int signLo = evaluate(MIN,lo).signum();
+        int signHi = evaluate(MIN,hi).signum();
+        if (signLo == 0 || signHi == 0 || signLo == signHi) throw new IllegalArgumentException("Couldn't isolate 2cos(pi/" + N + ") as a root of " + m + ".");
+        for (int i = 0; i < INITIAL_BITS; i++) {
+            BigDecimal mid = lo.add(hi).divide(BigDecimal.valueOf(2));
+            int signMid = evaluate(MIN,mid).signum();
+            if (signMid == 0) throw new IllegalArgumentException("MIN_POLY " + m + " has a rational root.");
+            if (signMid == signLo) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        LO = lo;
+        HI = hi;
+
+        BigDecimal a = LO.add(HI).divide(BigDecimal.valueOf(2));
+        double[] preSin = new double[N/2];
+        for (int k = 0; k < preSin.length; k++) preSin[k] = evaluate(SIN_POLYS[k],a).doubleValue();
+        double[] preCos = new double[N/2+1];
+        for (int k = 0; k < preCos.length; k++) preCos[k] = evaluate(COS_POLYS[k],a).doubleValue()/2;
+        SIN_VALUES = preSin;
+        COS_VALUES = preCos;
+
+    } // static initialization ends here
+
+    // private constructor. we never instantiate this class.
+    private ExactArithmetic() {
+    }
+
+    // reduce p mod MIN_POLY.
+    // return an array of length DEG.
+    private static long[] reduce(long[] p) {
+        long[] r = Arrays.copyOf(p,Math.max(p.length,DEG));
+        for (int k = r.length-1; k >= DEG; k--) {
+            long lead = r[k];
+            if (lead == 0) continue;
+            for (int j = 0; j <= DEG; j++) r[k-DEG+j] -= lead*MIN[j];
+        }
+        return Arrays.copyOf(r,DEG);
+    }
+
+    // evaluate p at x exactly, using Horner's method
+    private static BigDecimal evaluate(long[] p, BigDecimal x) {
+        BigDecimal output = BigDecimal.ZERO;
+        for (int i = p.length-1; i >= 0; i--) output = output.multiply(x).add(BigDecimal.valueOf(p[i]));
+        return output;
+    }
+
+    // return -1, 0, or 1 depending on whether
+    // P(a) is less than, equal to, or greater than t.
+    // this is the slow part.
+    private static int exactSign(long[] p, BigDecimal t) {
+
+        // if P is constant, just compare numbers
+        boolean constant = true;
+        for (int i = 1; i < p.length; i++) if (p[i] != 0) constant = false;
+        if (constant) return BigDecimal.valueOf(p[0]).compareTo(t);
+
+        // bound |P'| on the interval; a and the end points are less than 2
+        long slope = 0;
+        long power = 1;
+        for (int i = 1; i < p.length; i++) {
+            slope += i*Math.abs(p[i])*power;
+            power *= 2;
+        }
+        BigDecimal lipschitz = BigDecimal.valueOf(slope);
+
+        // P(a) isn't rational, so this eventually stops
+        BigDecimal lo = LO;
+        BigDecimal hi = HI;
+        int signLo = evaluate(MIN,lo).signum();
+        for (int bits = INITIAL_BITS; bits < MAX_BITS; bits++) {
+            BigDecimal mid = lo.add(hi).divide(BigDecimal.valueOf(2));
+            BigDecimal value = evaluate(p,mid).subtract(t);
+            BigDecimal error = lipschitz.multiply(hi.subtract(lo));
+            if (value.abs().compareTo(error) > 0) return value.signum();
+            int signMid = evaluate(MIN,mid).signum();
+            if (signMid == signLo) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        throw new IllegalArgumentException("Couldn't determine the sign of " + Arrays.toString(p) + " - " + t + ".");
+    }
+
+    // return -1, 0, or 1 depending on whether the sum of
+    // c[k]*sin((k+1)pi/N)/sin(pi/N) is less than, equal to,
+    // or greater than t
+    public static int compareSinCombination(int[] c, double t) {
+        double sum = 0.0;
+        double size = Math.abs(t);
+        for (int k = 0; k < c.length; k++) {
+            double term = c[k]*SIN_VALUES[k];
+            sum += term;
+            size += Math.abs(term);
+        }
+        if (size == Math.abs(t)) return (t > 0.0) ? -1 : ((t < 0.0) ? 1 : 0);
+        double diff = sum - t;
+        double error = ERROR*size;
+        if (diff > error) return 1;
+        if (diff < -error) return -1;
+
+        fallbacks.incrementAndGet();
+        return exactSinSign(c,new BigDecimal(t));
+    }
+
+    // the slow part of compareSinCombination
+    private static int exactSinSign(int[] c, BigDecimal t) {
+        long[] p = new long[DEG];
+        for (int k = 0; k < c.length; k++) {
+            if (c[k] == 0) continue;
+            for (int i = 0; i < DEG; i++) p[i] += c[k]*SIN_POLYS[k][i];
+        }
+        return exactSign(p,t);
+    }
+
+    // return -1, 0, or 1 depending on whether the sum of
+    // c[k]*cos(k pi/N) is less than, equal to, or greater than t
+    public static int compareCosCombination(int[] c, double t) {
+        double sum = 0.0;
+        double size = Math.abs(t);
+        for (int k = 0; k < c.length; k++) {
+            double term = c[k]*COS_VALUES[k];
+            sum += term;
+            size += Math.abs(term);
+        }
+        if (size == Math.abs(t)) return (t > 0.0) ? -1 : ((t < 0.0) ? 1 : 0);
+        double diff = sum - t;
+        double error = ERROR*size;
+        if (diff > error) return 1;
+        if (diff < -error) return -1;
+
+        fallbacks.incrementAndGet();
+        return exactCosSign(c,new BigDecimal(t));
+    }
+
+    // the slow part of compareCosCombination
+    private static int exactCosSign(int[] c, BigDecimal t) {
+        long[] p = new long[DEG];
+        for (int k = 0; k < c.length; k++) {
+            if (c[k] == 0) continue;
+            for (int i = 0; i < DEG; i++) p[i] += c[k]*COS_POLYS[k][i];
+        }
+        // the polynomials are for 2cos, so compare with 2t
+        return exactSign(p,t.multiply(BigDecimal.valueOf(2)));
+    }
+
+    // the number of times we've needed exact arithmetic
+    public static long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    // test client
+    public static void main(String[] args) {
+
+        System.out.println("MIN_POLY: " + LengthAndAreaCalculator.MIN_POLY);
+        System.out.println("a lies in [" + LO.doubleValue() + ", " + HI.doubleValue() + "]");
+        for (int k = 0; k < SIN_VALUES.length; k++)
+            System.out.println("sin(" + (k+1) + "pi/N)/sin(pi/N): " + SIN_VALUES[k] + " (was " + Initializer.SIN_LIST[k] + ")");
+        for (int k = 0; k < COS_VALUES.length; k++)
+            System.out.println("cos(" + k + "pi/N): " + COS_VALUES[k] + " (was " + Initializer.COS_LIST[k] + ")");
+
+        // compare the filtered predicates with the double versions
+        java.util.Random r = new java.util.Random(0);
+        int disagreements = 0;
+        int slowDisagreements = 0;
+        for (int n = 0; n < 20000; n++) {
+            byte[] x = new byte[N-1];
+            byte[] y = new byte[N-1];
+            for (int i = 0; i < N-1; i++) {
+                x[i] = (byte)(r.nextInt(9)-4);
+                y[i] = (byte)(r.nextInt(9)-4);
+            }
+            BytePoint p = BytePoint.createBytePoint(x);
+            BytePoint q = BytePoint.createBytePoint(y);
+            double t = r.nextInt(3)-1;
+            if (p.compareCross(q,t) != (int)Math.signum(p.crossProduct(q)-t)) disagreements++;
+            if (p.compareDot(q,t) != (int)Math.signum(p.dotProduct(q)-t)) disagreements++;
+            // the slow path should agree with the fast one
+            if (p.compareCross(q,t) != exactSinSign(p.crossCoefficients(q),new BigDecimal(t))) slowDisagreements++;
+            if (p.compareDot(q,t) != exactCosSign(p.dotCoefficients(q),new BigDecimal(t))) slowDisagreements++;
+        }
+        System.out.println(disagreements + " disagreements with the double versions (exact zeros and near-ties).");
+        System.out.println(slowDisagreements + " disagreements between exact and filtered versions.");
+        System.out.println(getFallbacks() + " fallbacks to exact arithmetic.");
+
+    }
+
+} // end of class ExactArithmetic
@@ -0,0 +1,565 @@
+/*************************************************************************
+ *  Compilation:  javac FrontierLog.java
+ *  Execution:    java FrontierLog [directory]
+ *
+ *  A write-ahead log of the Server's frontier: the work units that
+ *  exist but aren't done yet.  If the Server stops in the middle of a
+ *  search, Server -resume reads the log and carries on from where it
+ *  was, instead of starting again from the factory.
+ *
+ *  The directory holds two files:
+ *
+ *  - SNAPSHOT_FILENAME: the whole frontier at some point, as UnitCodec
+ *    records with their IDs, plus the biggest ID we've given out and
+ *    the number of completed puzzles in the units that are done.
+ *  - LOG_FILENAME: what's happened since then, one event at a time.
+ *    SUBMIT is a new unit (with its UnitCodec record), DISPATCH says
+ *    we sent a unit to a client, DONE is a unit that's finished
+ *    (with the number of puzzles it completed), and CHECKPOINT is a
+ *    client's checkpoint of a unit that's still running (with the
+ *    number of puzzles it has completed so far, and the UnitCodec
+ *    record that picks up from there, which replaces the old one).
+ *    Each event has its
+ *    length in front and a CRC32 behind, so if we die in the middle of
+ *    writing one, we can tell where the good part of the log ends.
+ *
+ *  Both files start with MAGIC, VERSION, the PatchCodec header, the
+ *  tile, and a generation number.  When the log gets bigger than the
+ *  snapshot, we write a new snapshot (to a temporary file that we
+ *  then rename) with the next generation, and start a new log.  If we
+ *  die between the two, the old log has the old generation, so we
+ *  know that the snapshot already has everything in it.
+ *
+ *  A unit isn't really done until its patches are on disk.  So DONE
+ *  and CHECKPOINT events wait in memory until checkpoint(), which flushes the
+ *  ResultSink first, and then writes them and forces the log to disk.
+ *  If the ResultSink can't get everything onto disk, the events keep
+ *  waiting until a checkpoint() when it can, and their units stay in
+ *  the frontier.
+ *  The spawn of a unit is always SUBMITted before the unit is DONE.
+ *  If we die, we lose at most the units that finished since the last
+ *  checkpoint, and they get searched again.  (Their patches might then
+ *  show up twice in interim/.)
+ *
+ *  With a directory, the test client says what's in it.  Otherwise
+ *  it spawns some units, logs them, finishes some of them, pretends
+ *  to crash in the middle of an event, and checks what it recovers.
+ *
+ *************************************************************************/
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+public class FrontierLog {
+
+    public static final String SNAPSHOT_FILENAME = "frontier.snapshot";
+    public static final String LOG_FILENAME = "frontier.log";
+
+    // the first four bytes of both files
+    private static final int MAGIC = 0x46524f4e;
+
+    private static final int VERSION = 2;
+
+    // the kinds of event
+    private static final int SUBMIT = 0;
+    private static final int DISPATCH = 1;
+    private static final int DONE = 2;
+    private static final int CHECKPOINT = 3;
+
+    // don't bother compacting a log that's smaller than this
+    private static final long MIN_COMPACTION = 1L << 20;
+
+    // what we get back from a directory
+    public static final class Recovery {
+
+        // the units that aren't done, in the order they were made
+        private final Map<Long,byte[]> frontier = new LinkedHashMap<>();
+        private long maxID = 0L;
+        private long completions = 0L;
+        private int generation = 0;
+
+        // some numbers about the log, for the report
+        private int events = 0;
+        private int dispatched = 0;
+        private boolean torn = false;
+
+        private Recovery() {
+        }
+
+        public Map<Long,byte[]> getFrontier() {
+            return Collections.unmodifiableMap(frontier);
+        }
+
+        // the biggest unit ID in the log
+        public long getMaxID() {
+            return maxID;
+        }
+
+        // the number of puzzles completed by the units that are done
+        public long getCompletions() {
+            return completions;
+        }
+
+        // turn the frontier back into work units, with their old IDs.
+        // we decode them one at a time, as they're asked for, so that
+        // they don't all have to be in memory at once.
+        public Iterable<EmptyBoundaryWorkUnit> getUnits() {
+            return new Iterable<EmptyBoundaryWorkUnit>() {
+                public Iterator<EmptyBoundaryWorkUnit> iterator() {
+                    final Iterator<Map.Entry<Long,byte[]>> i = frontier.entrySet().iterator();
+                    return new Iterator<EmptyBoundaryWorkUnit>() {
+                        public boolean hasNext() {
+                            return i.hasNext();
+                        }
+
+                        public EmptyBoundaryWorkUnit next() {
+                            Map.Entry<Long,byte[]> e = i.next();
+                            EmptyBoundaryPatch p = UnitCodec.decode(e.getValue());
+                            AtomicBoolean die = new AtomicBoolean(false);
+                            p.setKillSwitch(die);
+                            return EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(p, die, e.getKey());
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+        public String toString() {
+            return frontier.size() + " units in the frontier (" + dispatched + " of them sent to clients), " + completions + " puzzles completed, biggest ID " + maxID + ", generation " + generation + ", " + events + " events in the log" + ((torn) ? " (and a torn one at the end)" : "");
+        }
+
+    } // end of class Recovery
+
+    private final File directory;
+
+    // we flush this before we call units done.  it can be null.
+    private final ResultSink sink;
+
+    // the units that aren't done, as far as the log is concerned.
+    // everything from here down is guarded by this.
+    private final Map<Long,byte[]> frontier;
+    private long maxID;
+    private long completions;
+    private int generation;
+
+    // the log we're writing
+    private FileOutputStream file;
+    private DataOutputStream out;
+    private long logBytes = 0L;
+    private long snapshotBytes = 0L;
+
+    // if we can't write, say so once and stop trying
+    private boolean broken = false;
+
+    // a DONE or CHECKPOINT event, waiting for the next checkpoint.
+    // record is null for DONE.
+    private static final class Pending {
+        final long id;
+        final long count;
+        final byte[] record;
+
+        Pending(long id, long count, byte[] record) {
+            this.id = id;
+            this.count = count;
+            this.record = record;
+        }
+    } // end of class Pending
+
+    private final Object pendingLock = new Object();
+    private List<Pending> pending = new ArrayList<>();
+
+    // private constructor
+    private FrontierLog(File directory, ResultSink sink, Recovery r) {
+        this.directory = directory;
+        this.sink = sink;
+        this.frontier = (r == null) ? new LinkedHashMap<Long,byte[]>() : new LinkedHashMap<>(r.frontier);
+        this.maxID = (r == null) ? 0L : r.maxID;
+        this.completions = (r == null) ? 0L : r.completions;
+        this.generation = (r == null) ? 0 : r.generation;
+    }
+
+    // public static factory method.
+    // start logging in directory, from the frontier in r (or from
+    // nothing, if r is null).  this writes a new snapshot straight away.
+    public static FrontierLog createFrontierLog(File directory, ResultSink sink, Recovery r) throws IOException {
+        directory.mkdirs();
+        FrontierLog output = new FrontierLog(directory, sink, r);
+        synchronized (output) {
+            output.compact();
+        }
+        return output;
+    }
+
+    // is there a log in directory?
+    public static boolean exists(File directory) {
+        return new File(directory, SNAPSHOT_FILENAME).exists();
+    }
+
+    // a unit has joined the frontier
+    public synchronized void submitted(EmptyBoundaryWorkUnit u) {
+        long id = u.uniqueID();
+        byte[] record = UnitCodec.encode(u.getPatch());
+        frontier.put(id, record);
+        maxID = Math.max(maxID, id);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.length + 16);
+            DataOutputStream event = new DataOutputStream(bytes);
+            event.writeByte(SUBMIT);
+            event.writeLong(id);
+            event.write(record);
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // we've sent unit id to a client
+    public synchronized void dispatched(long id, long client) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+            DataOutputStream event = new DataOutputStream(bytes);
+            event.writeByte(DISPATCH);
+            event.writeLong(id);
+            event.writeLong(client);
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // unit id is done, and it completed this many puzzles.
+    // its patches should be in the sink already, and its spawn
+    // should already be submitted.
+    public void done(long id, long count) {
+        synchronized (pendingLock) {
+            pending.add(new Pending(id, count, null));
+        }
+    }
+
+    // a client has sent u, a checkpoint of a unit it's still running,
+    // which completed this many puzzles before it.  its patches should
+    // be in the sink already.
+    public void checkpointed(EmptyBoundaryWorkUnit u, long count) {
+        byte[] record = UnitCodec.encode(u.getPatch());
+        synchronized (pendingLock) {
+            pending.add(new Pending(u.uniqueID(), count, record));
+        }
+    }
+
+    // write down the units that are done (or checkpointed), and compact
+    // the log if it's getting big.
+    // return false if their patches aren't on disk yet, so they have
+    // to wait for the next checkpoint.
+    public boolean checkpoint() {
+        List<Pending> ready;
+        synchronized (pendingLock) {
+            ready = pending;
+            pending = new ArrayList<>();
+        }
+
+        // their patches have to be on disk first
+        if (sink != null && !sink.flush()) {
+            System.out.println("\nCan't write the completed patches, so " + ready.size() + " events are waiting for the next checkpoint.");
+            synchronized (pendingLock) {
+                ready.addAll(pending);
+                pending = ready;
+            }
+            return false;
+        }
+
+        synchronized (this) {
+            try {
+                for (Pending d : ready) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+                    DataOutputStream event = new DataOutputStream(bytes);
+                    event.writeByte((d.record == null) ? DONE : CHECKPOINT);
+                    event.writeLong(d.id);
+                    event.writeLong(d.count);
+                    if (d.record != null) event.write(d.record);
+                    append(bytes.toByteArray());
+                    if (d.record == null) {
+                        frontier.remove(d.id);
+                        completions += d.count;
+                    } else if (frontier.containsKey(d.id)) {
+                        frontier.put(d.id, d.record);
+                        completions += d.count;
+                    }
+                }
+                if (out != null) {
+                    out.flush();
+                    file.getChannel().force(false);
+                }
+                if (logBytes > Math.max(snapshotBytes, MIN_COMPACTION)) compact();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return true;
+    }
+
+    // the number of units in the frontier
+    public synchronized int size() {
+        return frontier.size();
+    }
+
+    // we're stopping.  if the search is over, we don't need the log any more,
+    // unless some of its patches never made it to disk.
+    public void close(boolean finished) {
+        boolean written = checkpoint();
+        synchronized (this) {
+            try {
+                if (out != null) out.close();
+                out = null;
+                if (finished && written && !broken) {
+                    new File(directory, LOG_FILENAME).delete();
+                    new File(directory, SNAPSHOT_FILENAME).delete();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    public synchronized String toString() {
+        return "FrontierLog (" + frontier.size() + " units, generation " + generation + ", " + logBytes + " bytes of log)";
+    }
+
+    // write an event: its length, the event, and its CRC
+    private void append(byte[] event) throws IOException {
+        if (broken || out == null) return;
+        CRC32 crc = new CRC32();
+        crc.update(event);
+        out.writeInt(event.length);
+        out.write(event);
+        out.writeInt((int)crc.getValue());
+        logBytes += event.length + 8;
+    }
+
+    private void fail(IOException e) {
+        if (broken) return;
+        broken = true;
+        // keep going; the search is still fine, we just can't resume it
+        System.out.println("\nError while writing the frontier log in " + directory + "!  Not logging any more.");
+        e.printStackTrace();
+    }
+
+    // the start of both files
+    private static void writeHeader(DataOutputStream d, int generation) throws IOException {
+        d.writeInt(MAGIC);
+        d.writeInt(VERSION);
+        PatchCodec.writeHeader(d);
+        d.writeInt(Preinitializer.MY_TILE);
+        d.writeInt(generation);
+    }
+
+    // check the start of a file, and return its generation
+    private static int readHeader(DataInputStream d, File f) throws IOException {
+        if (d.readInt() != MAGIC) throw new IllegalArgumentException(f + " isn't part of a frontier log.");
+        int version = d.readInt();
+        if (version != VERSION) throw new IllegalArgumentException(f + " has version " + version + ", but this is version " + VERSION + ".");
+        PatchCodec.readHeader(d);
+        int tile = d.readInt();
+        if (tile != Preinitializer.MY_TILE) throw new IllegalArgumentException(f + " is for tile " + tile + ", but this search is for tile " + Preinitializer.MY_TILE + ".");
+        return d.readInt();
+    }
+
+    // write the whole frontier as the next generation, and start a new log
+    private void compact() throws IOException {
+        if (broken) return;
+        if (out != null) out.close();
+        generation++;
+
+        File snapshot = new File(directory, SNAPSHOT_FILENAME);
+        File temporary = new File(directory, SNAPSHOT_FILENAME + ".tmp");
+        try (FileOutputStream f = new FileOutputStream(temporary)) {
+            DataOutputStream d = new DataOutputStream(new BufferedOutputStream(f));
+            writeHeader(d, generation);
+            d.writeLong(maxID);
+            d.writeLong(completions);
+            d.writeInt(frontier.size());
+            for (Map.Entry<Long,byte[]> e : frontier.entrySet()) {
+                d.writeLong(e.getKey());
+                d.writeInt(e.getValue().length);
+                d.write(e.getValue());
+            }
+            d.flush();
+            f.getChannel().force(false);
+            snapshotBytes = f.getChannel().size();
+        }
+        Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        file = new FileOutputStream(new File(directory, LOG_FILENAME));
+        out = new DataOutputStream(new BufferedOutputStream(file));
+        writeHeader(out, generation);
+        out.flush();
+        logBytes = 0L;
+    }
+
+    // read the snapshot and the log in directory.
+    // return null if there's nothing there.
+    public static Recovery recover(File directory) throws IOException {
+        File snapshot = new File(directory, SNAPSHOT_FILENAME);
+        if (!snapshot.exists()) return null;
+        Recovery r = new Recovery();
+        try (DataInputStream d = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            r.generation = readHeader(d, snapshot);
+            r.maxID = d.readLong();
+            r.completions = d.readLong();
+            int n = d.readInt();
+            for (int i = 0; i < n; i++) {
+                long id = d.readLong();
+                byte[] record = new byte[d.readInt()];
+                d.readFully(record);
+                r.frontier.put(id, record);
+            }
+        }
+
+        // the log, if it goes with this snapshot
+        File log = new File(directory, LOG_FILENAME);
+        if (!log.exists()) return r;
+        try (DataInputStream d = new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+            if (readHeader(d, log) != r.generation) return r;
+            Set<Long> dispatched = new HashSet<>();
+            while (true) {
+                // a clean end is between two events
+                d.mark(1);
+                if (d.read() == -1) break;
+                d.reset();
+                byte[] event;
+                try {
+                    int length = d.readInt();
+                    if (length < 9 || length > WireProtocol.MAX_FRAME) {
+                        r.torn = true;
+                        break;
+                    }
+                    event = new byte[length];
+                    d.readFully(event);
+                    CRC32 crc = new CRC32();
+                    crc.update(event);
+                    if (d.readInt() != (int)crc.getValue()) {
+                        r.torn = true;
+                        break;
+                    }
+                } catch (EOFException e) {
+                    r.torn = true;
+                    break;
+                }
+                r.events++;
+                DataInputStream e = new DataInputStream(new ByteArrayInputStream(event));
+                int type = e.readUnsignedByte();
+                long id = e.readLong();
+                if (type == SUBMIT) {
+                    r.frontier.put(id, Arrays.copyOfRange(event, 9, event.length));
+                    r.maxID = Math.max(r.maxID, id);
+                } else if (type == DISPATCH) {
+                    dispatched.add(id);
+                } else if (type == DONE) {
+                    if (r.frontier.remove(id) != null) r.completions += e.readLong();
+                    dispatched.remove(id);
+                } else if (type == CHECKPOINT) {
+                    if (r.frontier.containsKey(id)) {
+                        r.completions += e.readLong();
+                        r.frontier.put(id, Arrays.copyOfRange(event, 17, event.length));
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown event type " + type + " in " + log + ".");
+                }
+            }
+            dispatched.retainAll(r.frontier.keySet());
+            r.dispatched = dispatched.size();
+        }
+        return r;
+    }
+
+    // test client
+    public static void main(String[] args) throws Exception {
+
+        if (args.length > 0) {
+            Recovery r = recover(new File(args[0]));
+            System.out.println((r == null) ? "There's no frontier log in " + args[0] + "." : r.toString());
+            return;
+        }
+
+        File directory = new File(System.getProperty("java.io.tmpdir"), "frontiertest");
+        new File(directory, LOG_FILENAME).delete();
+        new File(directory, SNAPSHOT_FILENAME).delete();
+        FrontierLog log = createFrontierLog(directory, null, null);
+
+        // spawn some units, finish every third one, and checkpoint
+        // some of them as other units
+        EmptyBoundaryWorkUnitFactory f = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+        Map<Long,byte[]> expected = new LinkedHashMap<>();
+        long completions = 0L;
+        int n = 0;
+        EmptyBoundaryPatch previous = null;
+        while (f.notDone()) {
+            List<EmptyBoundaryPatch> spawn = new ArrayList<>();
+            spawn.add(f.nextPatch());
+            for (int generation = 0; generation < 2; generation++) {
+                List<EmptyBoundaryPatch> next = new ArrayList<>();
+                for (EmptyBoundaryPatch p : spawn) {
+                    final AtomicBoolean die = new AtomicBoolean(false);
+                    p.setKillSwitch(die);
+                    Timer timer = new Timer(true);
+                    timer.schedule(new TimerTask() {
+                        public void run() {
+                            die.set(true);
+                        }
+                    }, 5L);
+                    next.addAll(p.solve());
+                    timer.cancel();
+                }
+                spawn = next;
+            }
+            for (EmptyBoundaryPatch p : spawn) {
+                EmptyBoundaryWorkUnit u = EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(p, new AtomicBoolean(false));
+                log.submitted(u);
+                expected.put(u.uniqueID(), UnitCodec.encode(p));
+                if (n % 5 == 0) log.dispatched(u.uniqueID(), 1L);
+                if (n % 7 == 1 && previous != null) {
+                    log.checkpointed(EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(previous, new AtomicBoolean(false), u.uniqueID()), 2L);
+                    expected.put(u.uniqueID(), UnitCodec.encode(previous));
+                    completions += 2L;
+                }
+                previous = p;
+                if (n++ % 3 == 0) {
+                    log.done(u.uniqueID(), n);
+                    expected.remove(u.uniqueID());
+                    completions += n;
+                }
+            }
+            log.checkpoint();
+        }
+
+        // one more unit that doesn't get written properly
+        log.out.writeInt(1000);
+        log.out.write(new byte[10]);
+        log.out.flush();
+
+        int failures = 0;
+        Recovery r = recover(directory);
+        if (!r.torn || r.completions != completions || !r.frontier.keySet().equals(expected.keySet())) failures++;
+        for (Map.Entry<Long,byte[]> e : expected.entrySet())
+            if (!Arrays.equals(e.getValue(), r.frontier.get(e.getKey()))) failures++;
+        for (EmptyBoundaryWorkUnit u : r.getUnits())
+            if (!Arrays.equals(UnitCodec.encode(u.getPatch()), expected.get(u.uniqueID()))) failures++;
+        System.out.println(r);
+
+        // start again from what we recovered, and check the snapshot
+        log = createFrontierLog(directory, null, r);
+        Recovery s = recover(directory);
+        if (s.torn || s.events != 0 || s.generation != r.generation + 1 || !s.frontier.keySet().equals(expected.keySet()) || s.completions != completions) failures++;
+        System.out.println(s);
+        log.close(false);
+        System.out.println(n + " units, " + failures + " failures.");
+
+    }
+
+} // end of class FrontierLog
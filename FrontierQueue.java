@@ -0,0 +1,469 @@
+/*************************************************************************
+ *  Compilation:  javac FrontierQueue.java
+ *  Execution:    java FrontierQueue [hot size] [segment size]
+ *
+ *  The work queue of the ThreadService: the units that are waiting to
+ *  run (or, on the Server, to go to a Client).
+ *
+ *  A patch in the middle of the search is big: it has its own edge
+ *  list, boundary, partition and tile counts.  A few million of them
+ *  don't fit in memory, which is why SPAWN_MAX_SIZE used to have to
+ *  stay small.  But a UnitCodec record of one is only a few dozen
+ *  bytes.  So the queue has two tiers:
+ *
+ *  - the hot tier: up to hotSize tasks, as they are, first in first
+ *    out.  While the queue is smaller than that, this is all there is.
+ *  - the cold tier: everything else, as UnitCodec records, last in
+ *    first out.  The newest records are in one byte array.  When that
+ *    gets to segmentSize bytes, we write it to a spill file and start
+ *    again.  The spill files are a stack too: when the records in
+ *    memory run out, we read the newest file back in and delete it.
+ *    close() deletes the ones that are left.
+ *
+ *  So memory stays at about hotSize patches plus segmentSize bytes,
+ *  however big the frontier gets, and the disk only ever sees whole
+ *  files written and read in one go.  The units that come back from
+ *  the cold tier are the ones that went in last, which are the
+ *  deepest ones, so it empties the way a depth-first search does,
+ *  instead of spawning ever more units from the shallow ones.
+ *
+ *  Only detached UnitTasks can go cold: the ones that nobody holds a
+ *  Future for (see ThreadService.CustomThreadPoolExecutor.enqueue()),
+ *  because what comes back from a record is a new task.  Anything
+ *  else stays in the hot tier, however full it is.
+ *
+ *  iterator() only sees the hot tier.  ThreadPoolExecutor only uses
+ *  it for shutdownNow() and purge(), and we don't call those.
+ *
+ *  The test client puts some spawned units through a small queue,
+ *  checks the order they come out in and that they come out the
+ *  same, and then mixes offers and polls from a few threads.
+ *
+ *************************************************************************/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.*;
+
+public class FrontierQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    // after each record in the cold tier: the unit ID and the length
+    // of the record, so we can read them back from the end
+    private static final int TRAILER = 12;
+
+    private final int hotSize;
+    private final int segmentSize;
+    private final File directory;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    // everything from here down is guarded by lock
+
+    private final ArrayDeque<Runnable> hot = new ArrayDeque<>();
+
+    // the cold records in memory
+    private byte[] cold = new byte[1 << 12];
+    private int coldBytes = 0;
+    private int coldCount = 0;
+
+    // the spill files, newest last
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private int spilled = 0;
+
+    // some numbers for toString()
+    private long filesWritten = 0L;
+    private long lost = 0L;
+
+    // if we can't write a spill file, say so once and keep everything in memory
+    private boolean broken = false;
+
+    // a spill file, and the number of records in it
+    private static final class Segment {
+        final File file;
+        final int count;
+
+        Segment(File file, int count) {
+            this.file = file;
+            this.count = count;
+        }
+    } // end of class Segment
+
+    // private constructor
+    private FrontierQueue(int hotSize, int segmentSize, File directory) {
+        if (hotSize < 1 || segmentSize < 1) throw new IllegalArgumentException("FrontierQueue needs a hot size and a segment size of at least 1.");
+        this.hotSize = hotSize;
+        this.segmentSize = segmentSize;
+        this.directory = directory;
+    }
+
+    // public static factory method
+    public static FrontierQueue createFrontierQueue(int hotSize, int segmentSize, File directory) {
+        return new FrontierQueue(hotSize, segmentSize, directory);
+    }
+
+    public boolean offer(Runnable r) {
+        if (r == null) throw new NullPointerException();
+        lock.lock();
+        try {
+            byte[] record = (hot.size() < hotSize) ? null : encode(r);
+            if (record == null) {
+                hot.addLast(r);
+            } else {
+                push(((ThreadService.UnitTask) r).getUnit().uniqueID(), record);
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(Runnable r) {
+        offer(r);
+    }
+
+    public boolean offer(Runnable r, long timeout, TimeUnit unit) {
+        return offer(r);
+    }
+
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Runnable r;
+            while ((r = dequeue()) == null) notEmpty.await();
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Runnable r;
+            while ((r = dequeue()) == null) {
+                if (nanos <= 0L) return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the next task, without taking it.
+    // if it's cold, this warms it up.
+    public Runnable peek() {
+        lock.lock();
+        try {
+            Runnable r = dequeue();
+            if (r != null) hot.addFirst(r);
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return hot.size() + coldCount + spilled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) throw new IllegalArgumentException("Can't drain a queue into itself.");
+        lock.lock();
+        try {
+            int n = 0;
+            Runnable r;
+            while (n < maxElements && (r = dequeue()) != null) {
+                c.add(r);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            return hot.remove(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the hot tier, as it is now
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> copy;
+        lock.lock();
+        try {
+            copy = new ArrayList<>(hot);
+        } finally {
+            lock.unlock();
+        }
+        return new Iterator<Runnable>() {
+            private final Iterator<Runnable> i = copy.iterator();
+            private Runnable last = null;
+
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            public Runnable next() {
+                last = i.next();
+                return last;
+            }
+
+            public void remove() {
+                if (last == null) throw new IllegalStateException();
+                FrontierQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    public String toString() {
+        lock.lock();
+        try {
+            return "FrontierQueue (" + hot.size() + " hot, " + coldCount + " cold in " + coldBytes + " bytes, " + spilled + " in " + segments.size() + " spill files, " + filesWritten + " files written" + ((lost > 0L) ? ", " + lost + " units lost" : "") + ")";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a UnitCodec record of r, if it's allowed to go cold, or null
+    private static byte[] encode(Runnable r) {
+        if (!(r instanceof ThreadService.UnitTask) || !((ThreadService.UnitTask) r).isDetached()) return null;
+        try {
+            return UnitCodec.encode(((ThreadService.UnitTask) r).getUnit().getPatch());
+        } catch (IllegalArgumentException e) {
+            // it didn't come from EmptyBoundaryWorkUnitFactory
+            return null;
+        }
+    }
+
+    // the next task, hot ones first, or null
+    private Runnable dequeue() {
+        Runnable r = hot.pollFirst();
+        if (r != null) return r;
+        if (coldCount == 0 && !segments.isEmpty()) load();
+        if (coldCount == 0) return null;
+
+        // the last record in memory
+        ByteBuffer b = ByteBuffer.wrap(cold);
+        int length = b.getInt(coldBytes - 4);
+        long id = b.getLong(coldBytes - TRAILER);
+        int start = coldBytes - TRAILER - length;
+        byte[] record = Arrays.copyOfRange(cold, start, start + length);
+        coldBytes = start;
+        coldCount--;
+
+        EmptyBoundaryPatch p = UnitCodec.decode(record);
+        AtomicBoolean die = new AtomicBoolean(false);
+        p.setKillSwitch(die);
+        return new ThreadService.UnitTask(EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(p, die, id), true);
+    }
+
+    // add a record to the cold tier, and spill if there's too much
+    private void push(long id, byte[] record) {
+        int end = coldBytes + record.length + TRAILER;
+        if (end > cold.length) cold = Arrays.copyOf(cold, Math.max(end, 2*cold.length));
+        System.arraycopy(record, 0, cold, coldBytes, record.length);
+        ByteBuffer.wrap(cold).putLong(coldBytes + record.length, id).putInt(end - 4, record.length);
+        coldBytes = end;
+        coldCount++;
+        if (coldBytes >= segmentSize) spill();
+    }
+
+    // write the cold records in memory to a new spill file
+    private void spill() {
+        if (broken) return;
+        try {
+            directory.mkdirs();
+            File f = File.createTempFile("frontier", ".spill", directory);
+            try (FileOutputStream out = new FileOutputStream(f)) {
+                out.write(cold, 0, coldBytes);
+            }
+            segments.addLast(new Segment(f, coldCount));
+            spilled += coldCount;
+            filesWritten++;
+            coldBytes = 0;
+            coldCount = 0;
+        } catch (IOException e) {
+            broken = true;
+            System.out.println("\nError while spilling the work queue to " + directory + "!  Keeping it all in memory.");
+            e.printStackTrace();
+        }
+    }
+
+    // read the newest spill file back into memory.
+    // only call this when there's nothing cold in memory.
+    private void load() {
+        Segment s = segments.pollLast();
+        spilled -= s.count;
+        try {
+            int length = (int)s.file.length();
+            if (cold.length < length) cold = new byte[length];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(s.file))) {
+                in.readFully(cold, 0, length);
+            }
+            coldBytes = length;
+            coldCount = s.count;
+        } catch (IOException e) {
+            // the frontier log still has them, if there is one
+            lost += s.count;
+            System.out.println("\nError while reading " + s.file + "!  Lost " + s.count + " units.");
+            e.printStackTrace();
+        } finally {
+            s.file.delete();
+        }
+    }
+
+    // delete the spill files.  the units in them are gone, so only
+    // call this when we're stopping.
+    public void close() {
+        lock.lock();
+        try {
+            for (Segment s : segments) s.file.delete();
+            segments.clear();
+            spilled = 0;
+            broken = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // test client
+    public static void main(String[] args) throws Exception {
+
+        int hotSize = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+        int segmentSize = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        File directory = new File(System.getProperty("java.io.tmpdir"), "frontierqueuetest");
+
+        // spawn some units
+        EmptyBoundaryWorkUnitFactory f = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+        List<EmptyBoundaryPatch> spawn = new ArrayList<>();
+        while (f.notDone()) spawn.add(f.nextPatch());
+        for (int generation = 0; generation < 2; generation++) {
+            List<EmptyBoundaryPatch> next = new ArrayList<>();
+            for (EmptyBoundaryPatch p : spawn) {
+                final AtomicBoolean die = new AtomicBoolean(false);
+                p.setKillSwitch(die);
+                Timer timer = new Timer(true);
+                timer.schedule(new TimerTask() {
+                    public void run() {
+                        die.set(true);
+                    }
+                }, 2L);
+                next.addAll(p.solve());
+                timer.cancel();
+            }
+            spawn = next;
+        }
+        Map<Long,byte[]> records = new HashMap<>();
+        List<ThreadService.UnitTask> tasks = new ArrayList<>();
+        for (EmptyBoundaryPatch p : spawn) {
+            AtomicBoolean die = new AtomicBoolean(false);
+            p.setKillSwitch(die);
+            EmptyBoundaryWorkUnit u = EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(p, die);
+            records.put(u.uniqueID(), UnitCodec.encode(p));
+            tasks.add(new ThreadService.UnitTask(u, true));
+        }
+        int n = tasks.size();
+
+        // all in, then all out: the hot ones in order, then the cold
+        // ones backwards
+        int failures = 0;
+        FrontierQueue q = createFrontierQueue(hotSize, segmentSize, directory);
+        for (ThreadService.UnitTask t : tasks) q.put(t);
+        if (q.size() != n) failures++;
+        String full = q.toString();
+        for (int i = 0; i < n; i++) {
+            ThreadService.UnitTask t = (ThreadService.UnitTask) q.poll();
+            int expected = (i < hotSize) ? i : n - 1 - (i - hotSize);
+            if (t == null || !t.getUnit().uniqueID().equals(tasks.get(expected).getUnit().uniqueID())) failures++;
+            else if (!Arrays.equals(records.get(t.getUnit().uniqueID()), UnitCodec.encode(t.getUnit().getPatch()))) failures++;
+        }
+        if (q.poll() != null || q.size() != 0) failures++;
+        System.out.println(n + " units went in: " + full + ".");
+
+        // a Future that somebody's waiting for never goes cold
+        ThreadService.UnitTask attached = new ThreadService.UnitTask(tasks.get(0).getUnit(), false);
+        for (int i = 0; i < hotSize; i++) q.put(tasks.get(i + 1));
+        q.put(attached);
+        if (q.coldCount + q.spilled != 0 || q.size() != hotSize + 1) failures++;
+        q.drainTo(new ArrayList<Runnable>());
+
+        // some threads putting and taking at once
+        final FrontierQueue shared = createFrontierQueue(hotSize, segmentSize, directory);
+        final List<ThreadService.UnitTask> input = tasks;
+        final Set<Long> seen = Collections.synchronizedSet(new HashSet<Long>());
+        final AtomicBoolean duplicate = new AtomicBoolean(false);
+        List<Thread> threads = new ArrayList<>();
+        for (int k = 0; k < 4; k++) {
+            final int start = k;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Random random = new Random(start);
+                        for (int i = start; i < input.size(); i += 4) {
+                            shared.put(input.get(i));
+                            if (random.nextInt(3) == 0) {
+                                ThreadService.UnitTask t = (ThreadService.UnitTask) shared.poll(1L, TimeUnit.SECONDS);
+                                if (t != null && !seen.add(t.getUnit().uniqueID())) duplicate.set(true);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        ThreadService.UnitTask t;
+        while ((t = (ThreadService.UnitTask) shared.poll()) != null)
+            if (!seen.add(t.getUnit().uniqueID())) duplicate.set(true);
+        if (duplicate.get() || !seen.equals(records.keySet())) failures++;
+        String[] left = directory.list();
+        if (left != null && left.length > 0) failures++;
+        System.out.println("After the threads: " + shared + ".");
+
+        // stopping with spill files left
+        FrontierQueue stopped = createFrontierQueue(hotSize, segmentSize, directory);
+        for (ThreadService.UnitTask u : tasks) stopped.put(u);
+        stopped.close();
+        left = directory.list();
+        if (left != null && left.length > 0) failures++;
+        System.out.println(n + " units, " + failures + " failures.");
+
+    }
+
+} // end of class FrontierQueue
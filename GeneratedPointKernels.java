@@ -0,0 +1,991 @@
+/*************************************************************************
+ *  Generated by PointKernelGenerator for N = 11.
+ *  Don't edit this by hand; run PointKernelGenerator again.
+ *
+ *  Unrolled versions of the kernels in PointKernels.
+ *
+ *************************************************************************/
+
+final class GeneratedPointKernels extends PointKernels {
+
+    // public constructor, so that PointKernels can find it
+    public GeneratedPointKernels() {
+    }
+
+    public String name() {
+        return "generated";
+    }
+
+    public int order() {
+        return 11;
+    }
+
+    public byte[] add(byte[] p0, byte[] p1) {
+        return new byte[] {
+            (byte)(p0[0] + p1[0]),
+            (byte)(p0[1] + p1[1]),
+            (byte)(p0[2] + p1[2]),
+            (byte)(p0[3] + p1[3]),
+            (byte)(p0[4] + p1[4]),
+            (byte)(p0[5] + p1[5]),
+            (byte)(p0[6] + p1[6]),
+            (byte)(p0[7] + p1[7]),
+            (byte)(p0[8] + p1[8]),
+            (byte)(p0[9] + p1[9])
+        };
+    }
+
+    public byte[] subtract(byte[] p0, byte[] p1) {
+        return new byte[] {
+            (byte)(p0[0] - p1[0]),
+            (byte)(p0[1] - p1[1]),
+            (byte)(p0[2] - p1[2]),
+            (byte)(p0[3] - p1[3]),
+            (byte)(p0[4] - p1[4]),
+            (byte)(p0[5] - p1[5]),
+            (byte)(p0[6] - p1[6]),
+            (byte)(p0[7] - p1[7]),
+            (byte)(p0[8] - p1[8]),
+            (byte)(p0[9] - p1[9])
+        };
+    }
+
+    public boolean equal(byte[] p0, byte[] p1) {
+        return p0[0] == p1[0]
+            && p0[1] == p1[1]
+            && p0[2] == p1[2]
+            && p0[3] == p1[3]
+            && p0[4] == p1[4]
+            && p0[5] == p1[5]
+            && p0[6] == p1[6]
+            && p0[7] == p1[7]
+            && p0[8] == p1[8]
+            && p0[9] == p1[9];
+    }
+
+    public byte[] rowTimes(byte[][] data, byte[] v) {
+        if (data.length != 10 || data[0].length != 10) return loopRowTimes(data,v);
+        byte[] d0 = data[0];
+        byte[] d1 = data[1];
+        byte[] d2 = data[2];
+        byte[] d3 = data[3];
+        byte[] d4 = data[4];
+        byte[] d5 = data[5];
+        byte[] d6 = data[6];
+        byte[] d7 = data[7];
+        byte[] d8 = data[8];
+        byte[] d9 = data[9];
+        return new byte[] {
+            (byte)(v[0]*d0[0] + v[1]*d1[0] + v[2]*d2[0] + v[3]*d3[0] + v[4]*d4[0] + v[5]*d5[0] + v[6]*d6[0] + v[7]*d7[0] + v[8]*d8[0] + v[9]*d9[0]),
+            (byte)(v[0]*d0[1] + v[1]*d1[1] + v[2]*d2[1] + v[3]*d3[1] + v[4]*d4[1] + v[5]*d5[1] + v[6]*d6[1] + v[7]*d7[1] + v[8]*d8[1] + v[9]*d9[1]),
+            (byte)(v[0]*d0[2] + v[1]*d1[2] + v[2]*d2[2] + v[3]*d3[2] + v[4]*d4[2] + v[5]*d5[2] + v[6]*d6[2] + v[7]*d7[2] + v[8]*d8[2] + v[9]*d9[2]),
+            (byte)(v[0]*d0[3] + v[1]*d1[3] + v[2]*d2[3] + v[3]*d3[3] + v[4]*d4[3] + v[5]*d5[3] + v[6]*d6[3] + v[7]*d7[3] + v[8]*d8[3] + v[9]*d9[3]),
+            (byte)(v[0]*d0[4] + v[1]*d1[4] + v[2]*d2[4] + v[3]*d3[4] + v[4]*d4[4] + v[5]*d5[4] + v[6]*d6[4] + v[7]*d7[4] + v[8]*d8[4] + v[9]*d9[4]),
+            (byte)(v[0]*d0[5] + v[1]*d1[5] + v[2]*d2[5] + v[3]*d3[5] + v[4]*d4[5] + v[5]*d5[5] + v[6]*d6[5] + v[7]*d7[5] + v[8]*d8[5] + v[9]*d9[5]),
+            (byte)(v[0]*d0[6] + v[1]*d1[6] + v[2]*d2[6] + v[3]*d3[6] + v[4]*d4[6] + v[5]*d5[6] + v[6]*d6[6] + v[7]*d7[6] + v[8]*d8[6] + v[9]*d9[6]),
+            (byte)(v[0]*d0[7] + v[1]*d1[7] + v[2]*d2[7] + v[3]*d3[7] + v[4]*d4[7] + v[5]*d5[7] + v[6]*d6[7] + v[7]*d7[7] + v[8]*d8[7] + v[9]*d9[7]),
+            (byte)(v[0]*d0[8] + v[1]*d1[8] + v[2]*d2[8] + v[3]*d3[8] + v[4]*d4[8] + v[5]*d5[8] + v[6]*d6[8] + v[7]*d7[8] + v[8]*d8[8] + v[9]*d9[8]),
+            (byte)(v[0]*d0[9] + v[1]*d1[9] + v[2]*d2[9] + v[3]*d3[9] + v[4]*d4[9] + v[5]*d5[9] + v[6]*d6[9] + v[7]*d7[9] + v[8]*d8[9] + v[9]*d9[9])
+        };
+    }
+
+    // for matrices of other sizes
+    private static byte[] loopRowTimes(byte[][] data, byte[] v) {
+        int n = data[0].length;
+        byte[] row = new byte[n];
+        for (int k = 0; k < n; k++) {
+            int sum = 0;
+            for (int l = 0; l < v.length; l++) sum += v[l]*data[l][k];
+            row[k] = (byte) sum;
+        }
+        return row;
+    }
+
+    public int[] crossCoefficients(byte[] p0, byte[] p1) {
+        return new int[] {
+            p0[0]*(p1[1])
+                 + p0[1]*(-p1[0] + p1[2])
+                 + p0[2]*(-p1[1] + p1[3])
+                 + p0[3]*(-p1[2] + p1[4])
+                 + p0[4]*(-p1[3] + p1[5])
+                 + p0[5]*(-p1[4] + p1[6])
+                 + p0[6]*(-p1[5] + p1[7])
+                 + p0[7]*(-p1[6] + p1[8])
+                 + p0[8]*(-p1[7] + p1[9])
+                 + p0[9]*(-p1[8]),
+            p0[0]*(p1[2] + p1[9])
+                 + p0[1]*(p1[3])
+                 + p0[2]*(-p1[0] + p1[4])
+                 + p0[3]*(-p1[1] + p1[5])
+                 + p0[4]*(-p1[2] + p1[6])
+                 + p0[5]*(-p1[3] + p1[7])
+                 + p0[6]*(-p1[4] + p1[8])
+                 + p0[7]*(-p1[5] + p1[9])
+                 + p0[8]*(-p1[6])
+                 + p0[9]*(-p1[0] - p1[7]),
+            p0[0]*(p1[3] + p1[8])
+                 + p0[1]*(p1[4] + p1[9])
+                 + p0[2]*(p1[5])
+                 + p0[3]*(-p1[0] + p1[6])
+                 + p0[4]*(-p1[1] + p1[7])
+                 + p0[5]*(-p1[2] + p1[8])
+                 + p0[6]*(-p1[3] + p1[9])
+                 + p0[7]*(-p1[4])
+                 + p0[8]*(-p1[0] - p1[5])
+                 + p0[9]*(-p1[1] - p1[6]),
+            p0[0]*(p1[4] + p1[7])
+                 + p0[1]*(p1[5] + p1[8])
+                 + p0[2]*(p1[6] + p1[9])
+                 + p0[3]*(p1[7])
+                 + p0[4]*(-p1[0] + p1[8])
+                 + p0[5]*(-p1[1] + p1[9])
+                 + p0[6]*(-p1[2])
+                 + p0[7]*(-p1[0] - p1[3])
+                 + p0[8]*(-p1[1] - p1[4])
+                 + p0[9]*(-p1[2] - p1[5]),
+            p0[0]*(p1[5] + p1[6])
+                 + p0[1]*(p1[6] + p1[7])
+                 + p0[2]*(p1[7] + p1[8])
+                 + p0[3]*(p1[8] + p1[9])
+                 + p0[4]*(p1[9])
+                 + p0[5]*(-p1[0])
+                 + p0[6]*(-p1[0] - p1[1])
+                 + p0[7]*(-p1[1] - p1[2])
+                 + p0[8]*(-p1[2] - p1[3])
+                 + p0[9]*(-p1[3] - p1[4])
+        };
+    }
+
+    public int[] dotCoefficients(byte[] p0, byte[] p1) {
+        return new int[] {
+            p0[0]*(p1[0])
+                 + p0[1]*(p1[1])
+                 + p0[2]*(p1[2])
+                 + p0[3]*(p1[3])
+                 + p0[4]*(p1[4])
+                 + p0[5]*(p1[5])
+                 + p0[6]*(p1[6])
+                 + p0[7]*(p1[7])
+                 + p0[8]*(p1[8])
+                 + p0[9]*(p1[9]),
+            p0[0]*(p1[1])
+                 + p0[1]*(p1[0] + p1[2])
+                 + p0[2]*(p1[1] + p1[3])
+                 + p0[3]*(p1[2] + p1[4])
+                 + p0[4]*(p1[3] + p1[5])
+                 + p0[5]*(p1[4] + p1[6])
+                 + p0[6]*(p1[5] + p1[7])
+                 + p0[7]*(p1[6] + p1[8])
+                 + p0[8]*(p1[7] + p1[9])
+                 + p0[9]*(p1[8]),
+            p0[0]*(p1[2] - p1[9])
+                 + p0[1]*(p1[3])
+                 + p0[2]*(p1[0] + p1[4])
+                 + p0[3]*(p1[1] + p1[5])
+                 + p0[4]*(p1[2] + p1[6])
+                 + p0[5]*(p1[3] + p1[7])
+                 + p0[6]*(p1[4] + p1[8])
+                 + p0[7]*(p1[5] + p1[9])
+                 + p0[8]*(p1[6])
+                 + p0[9]*(-p1[0] + p1[7]),
+            p0[0]*(p1[3] - p1[8])
+                 + p0[1]*(p1[4] - p1[9])
+                 + p0[2]*(p1[5])
+                 + p0[3]*(p1[0] + p1[6])
+                 + p0[4]*(p1[1] + p1[7])
+                 + p0[5]*(p1[2] + p1[8])
+                 + p0[6]*(p1[3] + p1[9])
+                 + p0[7]*(p1[4])
+                 + p0[8]*(-p1[0] + p1[5])
+                 + p0[9]*(-p1[1] + p1[6]),
+            p0[0]*(p1[4] - p1[7])
+                 + p0[1]*(p1[5] - p1[8])
+                 + p0[2]*(p1[6] - p1[9])
+                 + p0[3]*(p1[7])
+                 + p0[4]*(p1[0] + p1[8])
+                 + p0[5]*(p1[1] + p1[9])
+                 + p0[6]*(p1[2])
+                 + p0[7]*(-p1[0] + p1[3])
+                 + p0[8]*(-p1[1] + p1[4])
+                 + p0[9]*(-p1[2] + p1[5]),
+            p0[0]*(p1[5] - p1[6])
+                 + p0[1]*(p1[6] - p1[7])
+                 + p0[2]*(p1[7] - p1[8])
+                 + p0[3]*(p1[8] - p1[9])
+                 + p0[4]*(p1[9])
+                 + p0[5]*(p1[0])
+                 + p0[6]*(-p1[0] + p1[1])
+                 + p0[7]*(-p1[1] + p1[2])
+                 + p0[8]*(-p1[2] + p1[3])
+                 + p0[9]*(-p1[3] + p1[4])
+        };
+    }
+
+    public byte[] transform(byte[] v, boolean flip, int angle, byte[] shift) {
+        byte[] output;
+        switch ((flip) ? angle + 22 : angle) {
+            case 0: output = transform0(v); break;
+            case 1: output = transform1(v); break;
+            case 2: output = transform2(v); break;
+            case 3: output = transform3(v); break;
+            case 4: output = transform4(v); break;
+            case 5: output = transform5(v); break;
+            case 6: output = transform6(v); break;
+            case 7: output = transform7(v); break;
+            case 8: output = transform8(v); break;
+            case 9: output = transform9(v); break;
+            case 10: output = transform10(v); break;
+            case 11: output = transform11(v); break;
+            case 12: output = transform12(v); break;
+            case 13: output = transform13(v); break;
+            case 14: output = transform14(v); break;
+            case 15: output = transform15(v); break;
+            case 16: output = transform16(v); break;
+            case 17: output = transform17(v); break;
+            case 18: output = transform18(v); break;
+            case 19: output = transform19(v); break;
+            case 20: output = transform20(v); break;
+            case 21: output = transform21(v); break;
+            case 22: output = transform22(v); break;
+            case 23: output = transform23(v); break;
+            case 24: output = transform24(v); break;
+            case 25: output = transform25(v); break;
+            case 26: output = transform26(v); break;
+            case 27: output = transform27(v); break;
+            case 28: output = transform28(v); break;
+            case 29: output = transform29(v); break;
+            case 30: output = transform30(v); break;
+            case 31: output = transform31(v); break;
+            case 32: output = transform32(v); break;
+            case 33: output = transform33(v); break;
+            case 34: output = transform34(v); break;
+            case 35: output = transform35(v); break;
+            case 36: output = transform36(v); break;
+            case 37: output = transform37(v); break;
+            case 38: output = transform38(v); break;
+            case 39: output = transform39(v); break;
+            case 40: output = transform40(v); break;
+            case 41: output = transform41(v); break;
+            case 42: output = transform42(v); break;
+            case 43: output = transform43(v); break;
+            default: throw new IllegalArgumentException("Bad angle " + angle + ".");
+        }
+        if (shift == null) return output;
+        output[0] = (byte)(output[0] + shift[0]);
+        output[1] = (byte)(output[1] + shift[1]);
+        output[2] = (byte)(output[2] + shift[2]);
+        output[3] = (byte)(output[3] + shift[3]);
+        output[4] = (byte)(output[4] + shift[4]);
+        output[5] = (byte)(output[5] + shift[5]);
+        output[6] = (byte)(output[6] + shift[6]);
+        output[7] = (byte)(output[7] + shift[7]);
+        output[8] = (byte)(output[8] + shift[8]);
+        output[9] = (byte)(output[9] + shift[9]);
+        return output;
+    }
+
+    // rotate by 0
+    private static byte[] transform0(byte[] v) {
+        return new byte[] {
+            v[0],
+            v[1],
+            v[2],
+            v[3],
+            v[4],
+            v[5],
+            v[6],
+            v[7],
+            v[8],
+            v[9]
+        };
+    }
+
+    // rotate by 1
+    private static byte[] transform1(byte[] v) {
+        return new byte[] {
+            (byte)(-v[9]),
+            (byte)(v[0] + v[9]),
+            (byte)(v[1] - v[9]),
+            (byte)(v[2] + v[9]),
+            (byte)(v[3] - v[9]),
+            (byte)(v[4] + v[9]),
+            (byte)(v[5] - v[9]),
+            (byte)(v[6] + v[9]),
+            (byte)(v[7] - v[9]),
+            (byte)(v[8] + v[9])
+        };
+    }
+
+    // rotate by 2
+    private static byte[] transform2(byte[] v) {
+        return new byte[] {
+            (byte)(-v[8] - v[9]),
+            v[8],
+            (byte)(v[0] - v[8]),
+            (byte)(v[1] + v[8]),
+            (byte)(v[2] - v[8]),
+            (byte)(v[3] + v[8]),
+            (byte)(v[4] - v[8]),
+            (byte)(v[5] + v[8]),
+            (byte)(v[6] - v[8]),
+            (byte)(v[7] + v[8])
+        };
+    }
+
+    // rotate by 3
+    private static byte[] transform3(byte[] v) {
+        return new byte[] {
+            (byte)(-v[7] - v[8]),
+            (byte)(v[7] - v[9]),
+            (byte)(-v[7]),
+            (byte)(v[0] + v[7]),
+            (byte)(v[1] - v[7]),
+            (byte)(v[2] + v[7]),
+            (byte)(v[3] - v[7]),
+            (byte)(v[4] + v[7]),
+            (byte)(v[5] - v[7]),
+            (byte)(v[6] + v[7])
+        };
+    }
+
+    // rotate by 4
+    private static byte[] transform4(byte[] v) {
+        return new byte[] {
+            (byte)(-v[6] - v[7]),
+            (byte)(v[6] - v[8]),
+            (byte)(-v[6] - v[9]),
+            v[6],
+            (byte)(v[0] - v[6]),
+            (byte)(v[1] + v[6]),
+            (byte)(v[2] - v[6]),
+            (byte)(v[3] + v[6]),
+            (byte)(v[4] - v[6]),
+            (byte)(v[5] + v[6])
+        };
+    }
+
+    // rotate by 5
+    private static byte[] transform5(byte[] v) {
+        return new byte[] {
+            (byte)(-v[5] - v[6]),
+            (byte)(v[5] - v[7]),
+            (byte)(-v[5] - v[8]),
+            (byte)(v[5] - v[9]),
+            (byte)(-v[5]),
+            (byte)(v[0] + v[5]),
+            (byte)(v[1] - v[5]),
+            (byte)(v[2] + v[5]),
+            (byte)(v[3] - v[5]),
+            (byte)(v[4] + v[5])
+        };
+    }
+
+    // rotate by 6
+    private static byte[] transform6(byte[] v) {
+        return new byte[] {
+            (byte)(-v[4] - v[5]),
+            (byte)(v[4] - v[6]),
+            (byte)(-v[4] - v[7]),
+            (byte)(v[4] - v[8]),
+            (byte)(-v[4] - v[9]),
+            v[4],
+            (byte)(v[0] - v[4]),
+            (byte)(v[1] + v[4]),
+            (byte)(v[2] - v[4]),
+            (byte)(v[3] + v[4])
+        };
+    }
+
+    // rotate by 7
+    private static byte[] transform7(byte[] v) {
+        return new byte[] {
+            (byte)(-v[3] - v[4]),
+            (byte)(v[3] - v[5]),
+            (byte)(-v[3] - v[6]),
+            (byte)(v[3] - v[7]),
+            (byte)(-v[3] - v[8]),
+            (byte)(v[3] - v[9]),
+            (byte)(-v[3]),
+            (byte)(v[0] + v[3]),
+            (byte)(v[1] - v[3]),
+            (byte)(v[2] + v[3])
+        };
+    }
+
+    // rotate by 8
+    private static byte[] transform8(byte[] v) {
+        return new byte[] {
+            (byte)(-v[2] - v[3]),
+            (byte)(v[2] - v[4]),
+            (byte)(-v[2] - v[5]),
+            (byte)(v[2] - v[6]),
+            (byte)(-v[2] - v[7]),
+            (byte)(v[2] - v[8]),
+            (byte)(-v[2] - v[9]),
+            v[2],
+            (byte)(v[0] - v[2]),
+            (byte)(v[1] + v[2])
+        };
+    }
+
+    // rotate by 9
+    private static byte[] transform9(byte[] v) {
+        return new byte[] {
+            (byte)(-v[1] - v[2]),
+            (byte)(v[1] - v[3]),
+            (byte)(-v[1] - v[4]),
+            (byte)(v[1] - v[5]),
+            (byte)(-v[1] - v[6]),
+            (byte)(v[1] - v[7]),
+            (byte)(-v[1] - v[8]),
+            (byte)(v[1] - v[9]),
+            (byte)(-v[1]),
+            (byte)(v[0] + v[1])
+        };
+    }
+
+    // rotate by 10
+    private static byte[] transform10(byte[] v) {
+        return new byte[] {
+            (byte)(-v[0] - v[1]),
+            (byte)(v[0] - v[2]),
+            (byte)(-v[0] - v[3]),
+            (byte)(v[0] - v[4]),
+            (byte)(-v[0] - v[5]),
+            (byte)(v[0] - v[6]),
+            (byte)(-v[0] - v[7]),
+            (byte)(v[0] - v[8]),
+            (byte)(-v[0] - v[9]),
+            v[0]
+        };
+    }
+
+    // rotate by 11
+    private static byte[] transform11(byte[] v) {
+        return new byte[] {
+            (byte)(-v[0]),
+            (byte)(-v[1]),
+            (byte)(-v[2]),
+            (byte)(-v[3]),
+            (byte)(-v[4]),
+            (byte)(-v[5]),
+            (byte)(-v[6]),
+            (byte)(-v[7]),
+            (byte)(-v[8]),
+            (byte)(-v[9])
+        };
+    }
+
+    // rotate by 12
+    private static byte[] transform12(byte[] v) {
+        return new byte[] {
+            v[9],
+            (byte)(-v[0] - v[9]),
+            (byte)(-v[1] + v[9]),
+            (byte)(-v[2] - v[9]),
+            (byte)(-v[3] + v[9]),
+            (byte)(-v[4] - v[9]),
+            (byte)(-v[5] + v[9]),
+            (byte)(-v[6] - v[9]),
+            (byte)(-v[7] + v[9]),
+            (byte)(-v[8] - v[9])
+        };
+    }
+
+    // rotate by 13
+    private static byte[] transform13(byte[] v) {
+        return new byte[] {
+            (byte)(v[8] + v[9]),
+            (byte)(-v[8]),
+            (byte)(-v[0] + v[8]),
+            (byte)(-v[1] - v[8]),
+            (byte)(-v[2] + v[8]),
+            (byte)(-v[3] - v[8]),
+            (byte)(-v[4] + v[8]),
+            (byte)(-v[5] - v[8]),
+            (byte)(-v[6] + v[8]),
+            (byte)(-v[7] - v[8])
+        };
+    }
+
+    // rotate by 14
+    private static byte[] transform14(byte[] v) {
+        return new byte[] {
+            (byte)(v[7] + v[8]),
+            (byte)(-v[7] + v[9]),
+            v[7],
+            (byte)(-v[0] - v[7]),
+            (byte)(-v[1] + v[7]),
+            (byte)(-v[2] - v[7]),
+            (byte)(-v[3] + v[7]),
+            (byte)(-v[4] - v[7]),
+            (byte)(-v[5] + v[7]),
+            (byte)(-v[6] - v[7])
+        };
+    }
+
+    // rotate by 15
+    private static byte[] transform15(byte[] v) {
+        return new byte[] {
+            (byte)(v[6] + v[7]),
+            (byte)(-v[6] + v[8]),
+            (byte)(v[6] + v[9]),
+            (byte)(-v[6]),
+            (byte)(-v[0] + v[6]),
+            (byte)(-v[1] - v[6]),
+            (byte)(-v[2] + v[6]),
+            (byte)(-v[3] - v[6]),
+            (byte)(-v[4] + v[6]),
+            (byte)(-v[5] - v[6])
+        };
+    }
+
+    // rotate by 16
+    private static byte[] transform16(byte[] v) {
+        return new byte[] {
+            (byte)(v[5] + v[6]),
+            (byte)(-v[5] + v[7]),
+            (byte)(v[5] + v[8]),
+            (byte)(-v[5] + v[9]),
+            v[5],
+            (byte)(-v[0] - v[5]),
+            (byte)(-v[1] + v[5]),
+            (byte)(-v[2] - v[5]),
+            (byte)(-v[3] + v[5]),
+            (byte)(-v[4] - v[5])
+        };
+    }
+
+    // rotate by 17
+    private static byte[] transform17(byte[] v) {
+        return new byte[] {
+            (byte)(v[4] + v[5]),
+            (byte)(-v[4] + v[6]),
+            (byte)(v[4] + v[7]),
+            (byte)(-v[4] + v[8]),
+            (byte)(v[4] + v[9]),
+            (byte)(-v[4]),
+            (byte)(-v[0] + v[4]),
+            (byte)(-v[1] - v[4]),
+            (byte)(-v[2] + v[4]),
+            (byte)(-v[3] - v[4])
+        };
+    }
+
+    // rotate by 18
+    private static byte[] transform18(byte[] v) {
+        return new byte[] {
+            (byte)(v[3] + v[4]),
+            (byte)(-v[3] + v[5]),
+            (byte)(v[3] + v[6]),
+            (byte)(-v[3] + v[7]),
+            (byte)(v[3] + v[8]),
+            (byte)(-v[3] + v[9]),
+            v[3],
+            (byte)(-v[0] - v[3]),
+            (byte)(-v[1] + v[3]),
+            (byte)(-v[2] - v[3])
+        };
+    }
+
+    // rotate by 19
+    private static byte[] transform19(byte[] v) {
+        return new byte[] {
+            (byte)(v[2] + v[3]),
+            (byte)(-v[2] + v[4]),
+            (byte)(v[2] + v[5]),
+            (byte)(-v[2] + v[6]),
+            (byte)(v[2] + v[7]),
+            (byte)(-v[2] + v[8]),
+            (byte)(v[2] + v[9]),
+            (byte)(-v[2]),
+            (byte)(-v[0] + v[2]),
+            (byte)(-v[1] - v[2])
+        };
+    }
+
+    // rotate by 20
+    private static byte[] transform20(byte[] v) {
+        return new byte[] {
+            (byte)(v[1] + v[2]),
+            (byte)(-v[1] + v[3]),
+            (byte)(v[1] + v[4]),
+            (byte)(-v[1] + v[5]),
+            (byte)(v[1] + v[6]),
+            (byte)(-v[1] + v[7]),
+            (byte)(v[1] + v[8]),
+            (byte)(-v[1] + v[9]),
+            v[1],
+            (byte)(-v[0] - v[1])
+        };
+    }
+
+    // rotate by 21
+    private static byte[] transform21(byte[] v) {
+        return new byte[] {
+            (byte)(v[0] + v[1]),
+            (byte)(-v[0] + v[2]),
+            (byte)(v[0] + v[3]),
+            (byte)(-v[0] + v[4]),
+            (byte)(v[0] + v[5]),
+            (byte)(-v[0] + v[6]),
+            (byte)(v[0] + v[7]),
+            (byte)(-v[0] + v[8]),
+            (byte)(v[0] + v[9]),
+            (byte)(-v[0])
+        };
+    }
+
+    // reflect, then rotate by 0
+    private static byte[] transform22(byte[] v) {
+        return new byte[] {
+            (byte)(-v[0] - v[1]),
+            v[1],
+            (byte)(-v[1] + v[9]),
+            (byte)(v[1] + v[8]),
+            (byte)(-v[1] + v[7]),
+            (byte)(v[1] + v[6]),
+            (byte)(-v[1] + v[5]),
+            (byte)(v[1] + v[4]),
+            (byte)(-v[1] + v[3]),
+            (byte)(v[1] + v[2])
+        };
+    }
+
+    // reflect, then rotate by 1
+    private static byte[] transform23(byte[] v) {
+        return new byte[] {
+            (byte)(-v[1] - v[2]),
+            (byte)(-v[0] + v[2]),
+            (byte)(-v[2]),
+            (byte)(v[2] + v[9]),
+            (byte)(-v[2] + v[8]),
+            (byte)(v[2] + v[7]),
+            (byte)(-v[2] + v[6]),
+            (byte)(v[2] + v[5]),
+            (byte)(-v[2] + v[4]),
+            (byte)(v[2] + v[3])
+        };
+    }
+
+    // reflect, then rotate by 2
+    private static byte[] transform24(byte[] v) {
+        return new byte[] {
+            (byte)(-v[2] - v[3]),
+            (byte)(-v[1] + v[3]),
+            (byte)(-v[0] - v[3]),
+            v[3],
+            (byte)(-v[3] + v[9]),
+            (byte)(v[3] + v[8]),
+            (byte)(-v[3] + v[7]),
+            (byte)(v[3] + v[6]),
+            (byte)(-v[3] + v[5]),
+            (byte)(v[3] + v[4])
+        };
+    }
+
+    // reflect, then rotate by 3
+    private static byte[] transform25(byte[] v) {
+        return new byte[] {
+            (byte)(-v[3] - v[4]),
+            (byte)(-v[2] + v[4]),
+            (byte)(-v[1] - v[4]),
+            (byte)(-v[0] + v[4]),
+            (byte)(-v[4]),
+            (byte)(v[4] + v[9]),
+            (byte)(-v[4] + v[8]),
+            (byte)(v[4] + v[7]),
+            (byte)(-v[4] + v[6]),
+            (byte)(v[4] + v[5])
+        };
+    }
+
+    // reflect, then rotate by 4
+    private static byte[] transform26(byte[] v) {
+        return new byte[] {
+            (byte)(-v[4] - v[5]),
+            (byte)(-v[3] + v[5]),
+            (byte)(-v[2] - v[5]),
+            (byte)(-v[1] + v[5]),
+            (byte)(-v[0] - v[5]),
+            v[5],
+            (byte)(-v[5] + v[9]),
+            (byte)(v[5] + v[8]),
+            (byte)(-v[5] + v[7]),
+            (byte)(v[5] + v[6])
+        };
+    }
+
+    // reflect, then rotate by 5
+    private static byte[] transform27(byte[] v) {
+        return new byte[] {
+            (byte)(-v[5] - v[6]),
+            (byte)(-v[4] + v[6]),
+            (byte)(-v[3] - v[6]),
+            (byte)(-v[2] + v[6]),
+            (byte)(-v[1] - v[6]),
+            (byte)(-v[0] + v[6]),
+            (byte)(-v[6]),
+            (byte)(v[6] + v[9]),
+            (byte)(-v[6] + v[8]),
+            (byte)(v[6] + v[7])
+        };
+    }
+
+    // reflect, then rotate by 6
+    private static byte[] transform28(byte[] v) {
+        return new byte[] {
+            (byte)(-v[6] - v[7]),
+            (byte)(-v[5] + v[7]),
+            (byte)(-v[4] - v[7]),
+            (byte)(-v[3] + v[7]),
+            (byte)(-v[2] - v[7]),
+            (byte)(-v[1] + v[7]),
+            (byte)(-v[0] - v[7]),
+            v[7],
+            (byte)(-v[7] + v[9]),
+            (byte)(v[7] + v[8])
+        };
+    }
+
+    // reflect, then rotate by 7
+    private static byte[] transform29(byte[] v) {
+        return new byte[] {
+            (byte)(-v[7] - v[8]),
+            (byte)(-v[6] + v[8]),
+            (byte)(-v[5] - v[8]),
+            (byte)(-v[4] + v[8]),
+            (byte)(-v[3] - v[8]),
+            (byte)(-v[2] + v[8]),
+            (byte)(-v[1] - v[8]),
+            (byte)(-v[0] + v[8]),
+            (byte)(-v[8]),
+            (byte)(v[8] + v[9])
+        };
+    }
+
+    // reflect, then rotate by 8
+    private static byte[] transform30(byte[] v) {
+        return new byte[] {
+            (byte)(-v[8] - v[9]),
+            (byte)(-v[7] + v[9]),
+            (byte)(-v[6] - v[9]),
+            (byte)(-v[5] + v[9]),
+            (byte)(-v[4] - v[9]),
+            (byte)(-v[3] + v[9]),
+            (byte)(-v[2] - v[9]),
+            (byte)(-v[1] + v[9]),
+            (byte)(-v[0] - v[9]),
+            v[9]
+        };
+    }
+
+    // reflect, then rotate by 9
+    private static byte[] transform31(byte[] v) {
+        return new byte[] {
+            (byte)(-v[9]),
+            (byte)(-v[8]),
+            (byte)(-v[7]),
+            (byte)(-v[6]),
+            (byte)(-v[5]),
+            (byte)(-v[4]),
+            (byte)(-v[3]),
+            (byte)(-v[2]),
+            (byte)(-v[1]),
+            (byte)(-v[0])
+        };
+    }
+
+    // reflect, then rotate by 10
+    private static byte[] transform32(byte[] v) {
+        return new byte[] {
+            v[0],
+            (byte)(-v[0] - v[9]),
+            (byte)(v[0] - v[8]),
+            (byte)(-v[0] - v[7]),
+            (byte)(v[0] - v[6]),
+            (byte)(-v[0] - v[5]),
+            (byte)(v[0] - v[4]),
+            (byte)(-v[0] - v[3]),
+            (byte)(v[0] - v[2]),
+            (byte)(-v[0] - v[1])
+        };
+    }
+
+    // reflect, then rotate by 11
+    private static byte[] transform33(byte[] v) {
+        return new byte[] {
+            (byte)(v[0] + v[1]),
+            (byte)(-v[1]),
+            (byte)(v[1] - v[9]),
+            (byte)(-v[1] - v[8]),
+            (byte)(v[1] - v[7]),
+            (byte)(-v[1] - v[6]),
+            (byte)(v[1] - v[5]),
+            (byte)(-v[1] - v[4]),
+            (byte)(v[1] - v[3]),
+            (byte)(-v[1] - v[2])
+        };
+    }
+
+    // reflect, then rotate by 12
+    private static byte[] transform34(byte[] v) {
+        return new byte[] {
+            (byte)(v[1] + v[2]),
+            (byte)(v[0] - v[2]),
+            v[2],
+            (byte)(-v[2] - v[9]),
+            (byte)(v[2] - v[8]),
+            (byte)(-v[2] - v[7]),
+            (byte)(v[2] - v[6]),
+            (byte)(-v[2] - v[5]),
+            (byte)(v[2] - v[4]),
+            (byte)(-v[2] - v[3])
+        };
+    }
+
+    // reflect, then rotate by 13
+    private static byte[] transform35(byte[] v) {
+        return new byte[] {
+            (byte)(v[2] + v[3]),
+            (byte)(v[1] - v[3]),
+            (byte)(v[0] + v[3]),
+            (byte)(-v[3]),
+            (byte)(v[3] - v[9]),
+            (byte)(-v[3] - v[8]),
+            (byte)(v[3] - v[7]),
+            (byte)(-v[3] - v[6]),
+            (byte)(v[3] - v[5]),
+            (byte)(-v[3] - v[4])
+        };
+    }
+
+    // reflect, then rotate by 14
+    private static byte[] transform36(byte[] v) {
+        return new byte[] {
+            (byte)(v[3] + v[4]),
+            (byte)(v[2] - v[4]),
+            (byte)(v[1] + v[4]),
+            (byte)(v[0] - v[4]),
+            v[4],
+            (byte)(-v[4] - v[9]),
+            (byte)(v[4] - v[8]),
+            (byte)(-v[4] - v[7]),
+            (byte)(v[4] - v[6]),
+            (byte)(-v[4] - v[5])
+        };
+    }
+
+    // reflect, then rotate by 15
+    private static byte[] transform37(byte[] v) {
+        return new byte[] {
+            (byte)(v[4] + v[5]),
+            (byte)(v[3] - v[5]),
+            (byte)(v[2] + v[5]),
+            (byte)(v[1] - v[5]),
+            (byte)(v[0] + v[5]),
+            (byte)(-v[5]),
+            (byte)(v[5] - v[9]),
+            (byte)(-v[5] - v[8]),
+            (byte)(v[5] - v[7]),
+            (byte)(-v[5] - v[6])
+        };
+    }
+
+    // reflect, then rotate by 16
+    private static byte[] transform38(byte[] v) {
+        return new byte[] {
+            (byte)(v[5] + v[6]),
+            (byte)(v[4] - v[6]),
+            (byte)(v[3] + v[6]),
+            (byte)(v[2] - v[6]),
+            (byte)(v[1] + v[6]),
+            (byte)(v[0] - v[6]),
+            v[6],
+            (byte)(-v[6] - v[9]),
+            (byte)(v[6] - v[8]),
+            (byte)(-v[6] - v[7])
+        };
+    }
+
+    // reflect, then rotate by 17
+    private static byte[] transform39(byte[] v) {
+        return new byte[] {
+            (byte)(v[6] + v[7]),
+            (byte)(v[5] - v[7]),
+            (byte)(v[4] + v[7]),
+            (byte)(v[3] - v[7]),
+            (byte)(v[2] + v[7]),
+            (byte)(v[1] - v[7]),
+            (byte)(v[0] + v[7]),
+            (byte)(-v[7]),
+            (byte)(v[7] - v[9]),
+            (byte)(-v[7] - v[8])
+        };
+    }
+
+    // reflect, then rotate by 18
+    private static byte[] transform40(byte[] v) {
+        return new byte[] {
+            (byte)(v[7] + v[8]),
+            (byte)(v[6] - v[8]),
+            (byte)(v[5] + v[8]),
+            (byte)(v[4] - v[8]),
+            (byte)(v[3] + v[8]),
+            (byte)(v[2] - v[8]),
+            (byte)(v[1] + v[8]),
+            (byte)(v[0] - v[8]),
+            v[8],
+            (byte)(-v[8] - v[9])
+        };
+    }
+
+    // reflect, then rotate by 19
+    private static byte[] transform41(byte[] v) {
+        return new byte[] {
+            (byte)(v[8] + v[9]),
+            (byte)(v[7] - v[9]),
+            (byte)(v[6] + v[9]),
+            (byte)(v[5] - v[9]),
+            (byte)(v[4] + v[9]),
+            (byte)(v[3] - v[9]),
+            (byte)(v[2] + v[9]),
+            (byte)(v[1] - v[9]),
+            (byte)(v[0] + v[9]),
+            (byte)(-v[9])
+        };
+    }
+
+    // reflect, then rotate by 20
+    private static byte[] transform42(byte[] v) {
+        return new byte[] {
+            v[9],
+            v[8],
+            v[7],
+            v[6],
+            v[5],
+            v[4],
+            v[3],
+            v[2],
+            v[1],
+            v[0]
+        };
+    }
+
+    // reflect, then rotate by 21
+    private static byte[] transform43(byte[] v) {
+        return new byte[] {
+            (byte)(-v[0]),
+            (byte)(v[0] + v[9]),
+            (byte)(-v[0] + v[8]),
+            (byte)(v[0] + v[7]),
+            (byte)(-v[0] + v[6]),
+            (byte)(v[0] + v[5]),
+            (byte)(-v[0] + v[4]),
+            (byte)(v[0] + v[3]),
+            (byte)(-v[0] + v[2]),
+            (byte)(v[0] + v[1])
+        };
+    }
+
+} // end of class GeneratedPointKernels
@@ -0,0 +1,252 @@
+/*************************************************************************
+ *  Compilation:  javac InflationScreener.java
+ *  Execution:    java InflationScreener [bound] [tile ...]
+ *
+ *  Screen inflation factors before we spend any cluster time on them.
+ *  Try every INFL with coefficients between -bound and bound
+ *  (default 3) against every prototile (or the ones listed), and
+ *  throw out the (tile, INFL) pairs that can't possibly work:
+ *
+ *  1. INFL has to be bigger than 1.
+ *  2. The inflated edges of the tile have to break down into
+ *     prototile edges, i.e., their columns in INFLATED_LENGTHS
+ *     have to be non-negative integers.  Then FULL_BREAKDOWNS
+ *     in EdgeBreakdownTree isn't empty for any of them.
+ *  3. The tile's column in SUBSTITUTION_MATRIX has to be
+ *     non-negative integers, and the areas of those prototiles
+ *     have to add up to INFL^2 times the area of the tile.
+ *  4. Each prototile edge inside the inflated tile is shared by
+ *     two prototiles (the search only makes edge-to-edge patches),
+ *     so for each edge length, the number of edges of that length
+ *     in the prototiles minus the number on the boundary has to
+ *     be even and non-negative.
+ *
+ *  This is all done with LengthAndAreaCalculator directly, because
+ *  Initializer and the classes that depend on it only know about
+ *  Preinitializer.INFL.
+ *
+ *  The survivors are listed with the smallest searches first,
+ *  in the form that BatchSearch takes, so you can paste them in.
+ *  Passing the screen doesn't mean that a search will find anything.
+ *
+ *  If there are more prototiles than the degree of MIN_POLY,
+ *  SUBSTITUTION_MATRIX isn't unique, so we skip tests 3 and 4.
+ *
+ *************************************************************************/
+
+import Jama.Matrix;
+import com.google.common.collect.ImmutableList;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class InflationScreener {
+
+    private static final int N = Preinitializer.N;
+
+    private static final Matrix AMAT = LengthAndAreaCalculator.AMAT;
+    private static final Matrix LENGTH_MATRIX = LengthAndAreaCalculator.LENGTH_MATRIX;
+    private static final Matrix LENGTH_INVERSE = LENGTH_MATRIX.inverse();
+    private static final Matrix AREA_MATRIX = LengthAndAreaCalculator.AREA_MATRIX;
+    private static final int DEG = (int)LengthAndAreaCalculator.MIN_POLY.degree();
+    private static final Matrix AREA_INVERSE = AREA_MATRIX.getMatrix(0,DEG-1,0,DEG-1).inverse();
+    private static final ImmutableList<ImmutableList<Integer>> PROTOTILES = Preinitializer.PROTOTILES;
+    private static final boolean UNIQUE_SUBSTITUTION = (PROTOTILES.size() <= DEG);
+
+    // 2cos(pi/N)
+    private static final double A = 2.0*Math.cos(Math.PI/N);
+
+    // how close to an integer a double has to be
+    private static final double TOLERANCE = 1e-6;
+
+    // how many candidates each task screens
+    private static final int CHUNK = 1024;
+
+    // EDGES[j][i] is the number of edges of length i in prototile j
+    private static final int[][] EDGES = new int[PROTOTILES.size()][N/2];
+
+    static { // initialize EDGES
+        for (int j = 0; j < PROTOTILES.size(); j++) {
+            for (Integer a : PROTOTILES.get(j)) EDGES[j][Initializer.acute(a)-1]++;
+        }
+    }
+
+    // private constructor
+    private InflationScreener() {
+    }
+
+    // a (tile, INFL) pair that passed the screen
+    static class Candidate implements Comparable<Candidate> {
+
+        final int tile;
+        final ImmutableList<Integer> infl;
+        final double value;
+        final int triangles;    // the number of prototiles in the inflated tile
+        final long breakdowns;  // the number of ways to break down the edges of the inflated tile
+
+        Candidate(int tile, ImmutableList<Integer> infl, double value, int triangles, long breakdowns) {
+            this.tile = tile;
+            this.infl = infl;
+            this.value = value;
+            this.triangles = triangles;
+            this.breakdowns = breakdowns;
+        }
+
+        // smaller searches first
+        public int compareTo(Candidate c) {
+            if (triangles != c.triangles) return (triangles < c.triangles) ? -1 : 1;
+            if (breakdowns != c.breakdowns) return (breakdowns < c.breakdowns) ? -1 : 1;
+            if (tile != c.tile) return (tile < c.tile) ? -1 : 1;
+            return Double.compare(value, c.value);
+        }
+
+        // the way BatchSearch wants it
+        public String toString() {
+            String output = tile + ":";
+            for (int i = 0; i < infl.size(); i++) output += ((i > 0) ? "," : "") + infl.get(i);
+            return output;
+        }
+
+    } // end of class Candidate
+
+    // round x if it's an integer, or return null if it isn't
+    private static Long integer(double x) {
+        long r = Math.round(x);
+        return (Math.abs(x - r) < TOLERANCE) ? r : null;
+    }
+
+    // the coefficients for candidate number index, with trailing zeros removed
+    private static ImmutableList<Integer> coefficients(long index, int bound) {
+        int[] c = new int[DEG];
+        int last = -1;
+        for (int i = 0; i < DEG; i++) {
+            c[i] = (int)(index % (2*bound+1)) - bound;
+            index /= (2*bound+1);
+            if (c[i] != 0) last = i;
+        }
+        List<Integer> output = new ArrayList<>();
+        for (int i = 0; i <= last; i++) output.add(c[i]);
+        return ImmutableList.copyOf(output);
+    }
+
+    // n!/(k_1!...k_m!), the number of orderings of a breakdown
+    private static long multinomial(long[] k) {
+        long output = 1;
+        long n = 0;
+        for (long ki : k) {
+            for (long i = 1; i <= ki; i++) {
+                n++;
+                output = output*n/i;
+            }
+        }
+        return output;
+    }
+
+    // screen one INFL against the tiles.
+    // add the survivors to output.
+    private static void screen(ImmutableList<Integer> infl, int[] tiles, List<Candidate> output) {
+
+        // test 1
+        double value = 0.0;
+        for (int i = infl.size()-1; i >= 0; i--) value = value*A + infl.get(i);
+        if (value <= 1.0 + TOLERANCE) return;
+
+        Matrix inflMatrix = ShortPolynomial.createShortPolynomial(infl).evaluate(AMAT);
+        Matrix lengths = LENGTH_INVERSE.times(inflMatrix).times(LENGTH_MATRIX);
+        Matrix inflatedAreas = inflMatrix.times(inflMatrix).times(AREA_MATRIX);
+        Matrix substitution = AREA_INVERSE.times(inflatedAreas);
+
+        tiles:
+        for (int t : tiles) {
+
+            // test 2. boundary[i] is the number of edges of
+            // length i on the boundary of the inflated tile
+            long[] boundary = new long[N/2];
+            long breakdowns = 1;
+            List<Integer> seen = new ArrayList<>(3);
+            for (Integer a : PROTOTILES.get(t)) {
+                int j = Initializer.acute(a)-1;
+                long[] column = new long[N/2];
+                for (int i = 0; i < N/2; i++) {
+                    Long k = integer(lengths.get(i,j));
+                    if (k == null || k < 0) continue tiles;
+                    column[i] = k;
+                    boundary[i] += k;
+                }
+                if (!seen.contains(j)) breakdowns *= multinomial(column);
+                seen.add(j);
+            }
+
+            int triangles = 0;
+            if (UNIQUE_SUBSTITUTION) {
+                // test 3
+                long[] s = new long[PROTOTILES.size()];
+                for (int j = 0; j < s.length; j++) {
+                    Long k = integer(substitution.get(j,t));
+                    if (k == null || k < 0) continue tiles;
+                    s[j] = k;
+                    triangles += k;
+                }
+                for (int i = 0; i < DEG; i++) {
+                    double area = 0.0;
+                    for (int j = 0; j < s.length; j++) area += s[j]*AREA_MATRIX.get(i,j);
+                    if (Math.abs(area - inflatedAreas.get(i,t)) > TOLERANCE) continue tiles;
+                }
+
+                // test 4
+                for (int i = 0; i < N/2; i++) {
+                    long inside = -boundary[i];
+                    for (int j = 0; j < s.length; j++) inside += s[j]*EDGES[j][i];
+                    if (inside < 0 || inside % 2 != 0) continue tiles;
+                }
+            }
+
+            output.add(new Candidate(t, infl, value, triangles, breakdowns));
+        }
+    }
+
+    // screen every INFL with coefficients in [-bound, bound]
+    public static List<Candidate> screen(final int bound, final int[] tiles, int threads) throws InterruptedException, ExecutionException {
+        if (bound < 1) throw new IllegalArgumentException("Bad bound " + bound + ".");
+        final long total = (long)Math.pow(2*bound+1, DEG);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<List<Candidate>>> futures = new ArrayList<>();
+        for (long start = 0; start < total; start += CHUNK) {
+            final long first = start;
+            futures.add(pool.submit(new Callable<List<Candidate>>() {
+                public List<Candidate> call() {
+                    List<Candidate> output = new ArrayList<>();
+                    for (long index = first; index < Math.min(first + CHUNK, total); index++) {
+                        ImmutableList<Integer> infl = coefficients(index, bound);
+                        if (!infl.isEmpty()) screen(infl, tiles, output);
+                    }
+                    return output;
+                }
+            }));
+        }
+        List<Candidate> output = new ArrayList<>();
+        for (Future<List<Candidate>> f : futures) output.addAll(f.get());
+        pool.shutdown();
+        Collections.sort(output);
+        return output;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int bound = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+        int[] tiles = new int[Math.max(args.length - 1, 0)];
+        for (int i = 0; i < tiles.length; i++) tiles[i] = Integer.parseInt(args[i+1]);
+        if (tiles.length == 0) {
+            tiles = new int[PROTOTILES.size()];
+            for (int i = 0; i < tiles.length; i++) tiles[i] = i;
+        }
+
+        long start = System.currentTimeMillis();
+        List<Candidate> survivors = screen(bound, tiles, Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("%d of %d (tile, INFL) pairs passed in %.1f s.", survivors.size(), tiles.length*((long)Math.pow(2*bound+1, DEG) - 1), (System.currentTimeMillis() - start)/1000.0));
+        System.out.println(String.format("%-20s %10s %12s %20s", "search", "INFL", "triangles", "edge breakdowns"));
+        for (Candidate c : survivors)
+            System.out.println(String.format("%-20s %10.4f %12d %20d", c, c.value, c.triangles, c.breakdowns));
+
+    }
+
+} // end of class InflationScreener
@@ -87,6 +87,28 @@ class Initializer {
     */
     public static final ImmutableList<ImmutableList<Integer>> PROTOTILES = Preinitializer.PROTOTILES;
 
+    /*
+    * A bound on the absolute values of the coordinates of the
+    * vertices of the inflated search tile and the points on its
+    * edges (i.e., PuzzleBoundary.E0, E1, and E2).
+    * PuzzleBoundary checks that its points really are this small.
+    */
+    public static final int EDGE_POINT_BOUND;
+
+    /*
+    * A bound on the coordinates of any point we expect to see in
+    * the search, including differences of two points.
+    * We use it to decide how wide the coordinates of a BytePoint are.
+    */
+    public static final int POINT_BOUND;
+
+    /*
+    * The number of bits in each coordinate of a BytePoint: 8, 16, or 32.
+    * Bytes are enough for all the searches we've done so far, 
+    * but bigger inflation factors need more.
+    */
+    public static final int POINT_WIDTH;
+
     static { // initialize COS_LIST
 
         double[] preCos = new double[N/2+1];
@@ -231,12 +253,73 @@ class Initializer {
         }
         TOTAL_EDGE_BREAKDOWNS = factor * total;
 
+        // bound the coordinates of the edge lengths in every direction.
+        // these are the same vectors as in BasicEdgeLength, but we
+        // compute them with ints, because BytePoint needs the answer.
+        int[][] reps = new int[Math.max(2,N/2)][];
+        reps[0] = new int[N-1];
+        reps[0][0] = 1;
+        reps[1] = A.rowTimes(reps[0]);
+        for (int i = 2; i < reps.length; i++) {
+            reps[i] = A.rowTimes(reps[i-1]);
+            for (int j = 0; j < N-1; j++) reps[i][j] -= reps[i-2][j];
+        }
+        int lengthBound = 0;
+        for (int[] r : reps) {
+            for (int k = 0; k < 2*N; k++) {
+                lengthBound = Math.max(lengthBound,maxAbs(r));
+                r = ROT.rowTimes(r);
+            }
+        }
+
+        // the most that INFL can stretch a coordinate
+        int inflBound = 0;
+        for (int k = 0; k < N-1; k++) {
+            int sum = 0;
+            for (Integer ii : INFL.getColumn(k)) sum += Math.abs(ii);
+            inflBound = Math.max(inflBound,sum);
+        }
+
+        // the most edges in an inflated edge
+        int edgeCount = 0;
+        for (int k = 0; k < INFLATED_LENGTHS.getColumnDimension(); k++) {
+            int sum = 0;
+            for (Integer ii : INFLATED_LENGTHS.getColumn(k)) sum += ii;
+            edgeCount = Math.max(edgeCount,sum);
+        }
+
+        // an uninflated vertex is at most two edges from the origin.
+        // a point on an inflated edge is an inflated vertex plus
+        // at most edgeCount edges.
+        EDGE_POINT_BOUND = inflBound*2*lengthBound + edgeCount*lengthBound;
+        // leave room for differences of points
+        POINT_BOUND = 2*EDGE_POINT_BOUND;
+
+        if (Preinitializer.POINT_WIDTH != 0) {
+            POINT_WIDTH = Preinitializer.POINT_WIDTH;
+            if (POINT_WIDTH != 8 && POINT_WIDTH != 16 && POINT_WIDTH != 32)
+                throw new IllegalArgumentException("POINT_WIDTH must be 0, 8, 16, or 32, not " + POINT_WIDTH + ".");
+        } else if (POINT_BOUND <= Byte.MAX_VALUE) {
+            POINT_WIDTH = 8;
+        } else if (POINT_BOUND <= Short.MAX_VALUE) {
+            POINT_WIDTH = 16;
+        } else {
+            POINT_WIDTH = 32;
+        }
+
     } // end of static initialization
 
     // private constructor
     private Initializer() {
     }
 
+    // the largest absolute value of an entry of v
+    private static int maxAbs(int[] v) {
+        int output = 0;
+        for (int x : v) output = Math.max(output,Math.abs(x));
+        return output;
+    }
+
     // factorial function. Couldn't find an (easy) implementation online.
     // returns 1 for negative numbers (lazy).
     private static int factorial(int n) {
@@ -291,6 +374,7 @@ class Initializer {
         //System.out.println(NULL_MATRIX.getColumnDimension() + " " + NULL_MATRIX.getRowDimension());
         System.out.println("TILE_LIST");
         System.out.println(TILE_LIST);
+        System.out.println("POINT_BOUND = " + POINT_BOUND + "; using " + POINT_WIDTH + "-bit coordinates.");
 
     }
 
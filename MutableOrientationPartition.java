@@ -3,6 +3,15 @@
 *    The main rule is that an orientation and its opposite cannot
 *    lie in the same subset.
 *    It can produce new OrientationPartitions by merging subsets.
+*
+*    It works just like MutablePartition<Orientation>, except that
+*    the linked list lives in primitive arrays instead of
+*    PartitionNodes.  Node i holds data[i], and next[i], previous[i]
+*    are the indices of its neighbours (-1 for none).  We find
+*    Orientations by their IDs, so we never have to walk the list
+*    to find something.  The search identifies and splits classes
+*    every time it places or removes a triangle, so this saves a
+*    lot of pointer-chasing.
 */
 
 import java.util.Collections;
@@ -11,59 +20,188 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.*;
 
-public class MutableOrientationPartition extends MutablePartition<Orientation> implements Serializable {
+public class MutableOrientationPartition implements Serializable {
+
+    // make it Serializable
+    static final long serialVersionUID = 6213398842751102716L;
+
+    // the Orientations, in order of insertion
+    private Orientation[] data;
+
+    // the linked list. -1 means null.
+    private int[] next;
+    private int[] previous;
+
+    // is this node the head of a subset?
+    private boolean[] head;
+
+    // the index of the opposite of each Orientation, or -1
+    // if the opposite isn't in this partition
+    private int[] opposite;
+
+    // the node at the front of the list
+    private int first;
+
+    // the number of Orientations
+    private int size = 0;
+
+    // find nodes by Orientation ID.
+    // lookup[slot(ID)] is one more than the index, or 0 if absent.
+    private int[] lookup;
 
     // instructions to tell us which Orientations were initially identifed.
     // these help us reconstruct earlier versions of the partition.
-    private ArrayList<Orientation> instructions1 = new ArrayList<>();
-    private ArrayList<Orientation> instructions2 = new ArrayList<>();
+    // we store the indices of the Orientations.
+    private int[] instructions1;
+    private int[] instructions2;
+    private int numInstructions = 0;
+
+    // scratch space for valid()
+    private int[] stamp;
 
-    // constructor 
-    private MutableOrientationPartition(Orientation o) {
-        super(o);
+    // enough room for all prototile Orientations, their opposites,
+    // and the Orientations of a starter edge
+    private static final int INITIAL_CAPACITY = 6*Preinitializer.PROTOTILES.size()+2;
+
+    // constructor
+    private MutableOrientationPartition(Orientation o, int capacity) {
+        data = new Orientation[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+        head = new boolean[capacity];
+        opposite = new int[capacity];
+        stamp = new int[capacity];
+        lookup = new int[2*capacity+2];
+        instructions1 = new int[4];
+        instructions2 = new int[4];
+        first = -1;
+        add(o);
+    }
+
+    // copy constructor, for deepCopy()
+    private MutableOrientationPartition(MutableOrientationPartition p) {
+        data = Arrays.copyOf(p.data,p.data.length);
+        next = Arrays.copyOf(p.next,p.next.length);
+        previous = Arrays.copyOf(p.previous,p.previous.length);
+        head = Arrays.copyOf(p.head,p.head.length);
+        opposite = Arrays.copyOf(p.opposite,p.opposite.length);
+        stamp = new int[p.stamp.length];
+        lookup = Arrays.copyOf(p.lookup,p.lookup.length);
+        // instructions don't get copied
+        instructions1 = new int[4];
+        instructions2 = new int[4];
+        first = p.first;
+        size = p.size;
     }
 
     public int hashCode()
     {
-        return Objects.hash(instructions1, instructions2);
+        // same as Objects.hash on two Lists of Orientations
+        int h1 = 1;
+        int h2 = 1;
+        for (int i = 0; i < numInstructions; i++) {
+            h1 = 31*h1 + data[instructions1[i]].hashCode();
+            h2 = 31*h2 + data[instructions2[i]].hashCode();
+        }
+        return 31*(31 + h1) + h2;
     }
 
     // public static factory method.
     public static MutableOrientationPartition createMutableOrientationPartition(Orientation[] o) {
-        MutableOrientationPartition output = new MutableOrientationPartition(o[0]);
+        MutableOrientationPartition output = new MutableOrientationPartition(o[0],Math.max(o.length,INITIAL_CAPACITY));
         for (int i=1; i<o.length; i++) output.add(o[i]);
         return output;
     }
 
     // public static factory method.
     public static MutableOrientationPartition createMutableOrientationPartition(Orientation o) {
-        return new MutableOrientationPartition(o);
+        return new MutableOrientationPartition(o,INITIAL_CAPACITY);
     }
 
     // deep copy
     public MutableOrientationPartition deepCopy() {
-        PartitionNode<Orientation> current = getHead();
-        MutableOrientationPartition output = new MutableOrientationPartition(current.getData());
-        PartitionNode<Orientation> otherCurrent = output.getHead();
-        current = current.getNext();
-        while (current != null) {
-            output.addToEnd(current.getData());
-            otherCurrent = otherCurrent.getNext();
-            otherCurrent.setHead(current.isHead());
-            current = current.getNext();
-        }
-        return output;
+        return new MutableOrientationPartition(this);
+    }
+
+    // the position in lookup of an Orientation with this ID
+    // (Orientation.hashCode() is its ID)
+    private static int slot(int ID) {
+        return (ID < 0) ? -2*ID+1 : 2*ID;
+    }
+
+    // the index of o, or -1 if it isn't here
+    private int indexOf(Orientation o) {
+        int s = slot(o.hashCode());
+        return (s < lookup.length) ? lookup[s]-1 : -1;
+    }
+
+    // same as above, but throw an exception if it isn't here
+    private int checkedIndexOf(Orientation o) {
+        int i = indexOf(o);
+        if (i == -1) throw new IllegalArgumentException(o + " is not in this partition: " + this + " with size " + size() + ".");
+        return i;
+    }
+
+    // make room for one more Orientation
+    private void grow() {
+        int capacity = 2*data.length;
+        data = Arrays.copyOf(data,capacity);
+        next = Arrays.copyOf(next,capacity);
+        previous = Arrays.copyOf(previous,capacity);
+        head = Arrays.copyOf(head,capacity);
+        opposite = Arrays.copyOf(opposite,capacity);
+        stamp = new int[capacity];
+    }
+
+    // store a new Orientation and return its index
+    private int store(Orientation o) {
+        if (size == data.length) grow();
+        int i = size;
+        size++;
+        data[i] = o;
+        head[i] = true;
+        int s = slot(o.hashCode());
+        if (s >= lookup.length) lookup = Arrays.copyOf(lookup,Math.max(2*lookup.length,s+1));
+        lookup[s] = i+1;
+        opposite[i] = indexOf(o.getOpposite());
+        if (opposite[i] != -1) opposite[opposite[i]] = i;
+        return i;
+    }
+
+    // add data and make it the head of a one-unit subset
+    public void add(Orientation o) {
+        int i = store(o);
+        next[i] = first;
+        previous[i] = -1;
+        if (first != -1) previous[first] = i;
+        first = i;
+    }
+
+    // add data at the end
+    public void addToEnd(Orientation o) {
+        int last = first;
+        while (next[last] != -1) last = next[last];
+        int i = store(o);
+        next[i] = -1;
+        previous[i] = last;
+        next[last] = i;
+    }
+
+    // get the head of the subset that contains node i
+    private int subset(int i) {
+        while (!head[i]) i = previous[i];
+        return i;
     }
 
     // modify this to obtain a refinement of this and p
     // we assume that this and p represent partitions of the same set
     public MutableOrientationPartition refine(MutableOrientationPartition p) {
-        PartitionNode<Orientation> current = p.getHead();
-        while (current != null) {
-            PartitionNode<Orientation> next = current.getNext();
-            if (next != null && !next.isHead())
-                this.identify(current.getData(),next.getData());
-            current = next;
+        int current = p.first;
+        while (current != -1) {
+            int n = p.next[current];
+            if (n != -1 && !p.head[n])
+                this.identify(p.data[current],p.data[n]);
+            current = n;
         }
         return this;
     }
@@ -73,46 +211,153 @@ public class MutableOrientationPartition extends MutablePartition<Orientation> i
         return this.deepCopy().refine(p).valid();
     }
 
+    // identify the classes containing nodes one and two
+    private void identify(int one, int two) {
+        int c1 = subset(one);
+        int c2 = subset(two);
+        if (c1 == c2) return;
+
+        int last1 = c1;
+        int afterLast1 = next[c1];
+        while (afterLast1 != -1 && !head[afterLast1]) {
+            last1 = afterLast1;
+            afterLast1 = next[last1];
+        }
+
+        int last2 = c2;
+        int afterLast2 = next[c2];
+        while (afterLast2 != -1 && !head[afterLast2]) {
+            last2 = afterLast2;
+            afterLast2 = next[last2];
+        }
+
+        int before2 = previous[c2];
+
+        if (c2 != afterLast1) {
+            next[last1] = c2;
+            previous[c2] = last1;
+
+            next[last2] = afterLast1;
+            if (afterLast1 != -1) previous[afterLast1] = last2;
+
+            if (before2 != -1) next[before2] = afterLast2;
+            if (afterLast2 != -1) previous[afterLast2] = before2;
+        }
+
+        head[c2] = false;
+        if (first == c2) first = afterLast2;
+    }
+
+    // identify nodes one and two, and their opposites
+    private void identifyWithOpposites(int one, int two) {
+        identify(one,two);
+        if (opposite[one] == -1) throw new IllegalArgumentException(data[one].getOpposite() + " is not in this partition: " + this + " with size " + size() + ".");
+        if (opposite[two] == -1) throw new IllegalArgumentException(data[two].getOpposite() + " is not in this partition: " + this + " with size " + size() + ".");
+        identify(opposite[one],opposite[two]);
+    }
+
     // identify two orientations with each other.
     // do the same for their opposites.
     public void identify(Orientation one, Orientation two) {
-        super.identify(one,two);
-        super.identify(one.getOpposite(),two.getOpposite());
+        identifyWithOpposites(checkedIndexOf(one),checkedIndexOf(two));
+    }
+
+    // split the class containing node i into many pieces
+    private void split(int i) {
+        int current = next[subset(i)];
+        while (current != -1 && !head[current]) {
+            head[current] = true;
+            current = next[current];
+        }
     }
 
     // split an Orientation equivalence class.
     // do the same for the opposite class.
     public void split(Orientation o) {
-        super.split(o);
-        super.split(o.getOpposite());
+        split(checkedIndexOf(o));
+        split(checkedIndexOf(o.getOpposite()));
+    }
+
+    // return true if these two things have been identified
+    public boolean equivalent(Orientation one, Orientation two) {
+        int target = indexOf(two);
+        int current = subset(checkedIndexOf(one));
+        do {
+            if (current == target) return true;
+            current = next[current];
+        } while (current != -1 && !head[current]);
+        return false;
+    }
+
+    // iterate through the class containing o
+    public Iterable<Orientation> equivalenceClass(Orientation o) {
+        final int start = subset(checkedIndexOf(o));
+        return new Iterable<Orientation>() {
+            // an iterator that iterates through things in this class
+            public Iterator<Orientation> iterator() {
+                return new Iterator<Orientation>() {
+
+                    private int current = start;
+                    private boolean fresh = true;
+
+                    public boolean hasNext() {
+                        return (fresh || !(current==-1 || head[current]));
+                    }
+
+                    public Orientation next() {
+                        fresh = false;
+                        Orientation output = data[current];
+                        current = next[current];
+                        return output;
+                    }
+
+                    public void remove() { // do nothing
+                    }
+
+                };
+            } // first iterator ends here
+        };
+    }
+
+    // return true if this contains o
+    public boolean contains(Object o) {
+        if (!(o instanceof Orientation)) return false;
+        return indexOf((Orientation) o) != -1;
     }
 
     // add identification instructions
     public void addInstructions(Orientation one, Orientation two) {
-        instructions1.add(one);
-        instructions2.add(two);
-        this.identify(one,two);
+        int i = checkedIndexOf(one);
+        int j = checkedIndexOf(two);
+        if (numInstructions == instructions1.length) {
+            instructions1 = Arrays.copyOf(instructions1,2*numInstructions);
+            instructions2 = Arrays.copyOf(instructions2,2*numInstructions);
+        }
+        instructions1[numInstructions] = i;
+        instructions2[numInstructions] = j;
+        numInstructions++;
+        identifyWithOpposites(i,j);
     }
 
     // follow identification instructions
     public void followInstructions() {
-        for (int i = 0; i < instructions1.size(); i++)
-            this.identify(instructions1.get(i),instructions2.get(i));
+        for (int i = 0; i < numInstructions; i++)
+            identifyWithOpposites(instructions1[i],instructions2[i]);
     }
 
     // produce an OrientationPartition
     public OrientationPartition dumpOrientationPartition() {
-        PartitionNode<Orientation> current = getHead();
+        int current = first;
         HashSet<HashSet<Orientation>> output = new HashSet<>();
         ArrayList<Orientation> currentClass = new ArrayList<>();
         do {
-            currentClass.add(current.getData());
-            current = current.getNext();
-            if (current == null || current.isHead()) {
+            currentClass.add(data[current]);
+            current = next[current];
+            if (current == -1 || head[current]) {
                 output.add(new HashSet<>(currentClass));
                 currentClass.clear();
             }
-        } while (current != null);
+        } while (current != -1);
         return OrientationPartition.createOrientationPartition(output);
     }
 
@@ -120,17 +365,47 @@ public class MutableOrientationPartition extends MutablePartition<Orientation> i
     // return false if any Orientation lies in the same
     // subset as its opposite, otherwise return true.
     public boolean valid() {
-        ArrayList<Orientation> checkList = new ArrayList<>();
-        PartitionNode<Orientation> current = getHead();
-        while (current != null) {
-            if (current.isHead()) checkList.clear();
-            Orientation now = current.getData();
-            for (Orientation o : checkList) {
-                if (o.equals(now.getOpposite())) return false;
-            }
-            checkList.add(now);
-            current = current.getNext();
+        // label each node with the number of its subset
+        int label = 0;
+        for (int current = first; current != -1; current = next[current]) {
+            if (head[current]) label++;
+            stamp[current] = label;
+        }
+        for (int i = 0; i < size; i++) {
+            if (opposite[i] != -1 && stamp[opposite[i]] == stamp[i]) return false;
+        }
+        return true;
+    }
+
+    // the number of elements in the partition
+    public int size() {
+        return size;
+    }
+
+    // output a String
+    public String toString() {
+        String output = "";
+        for (int current = first; current != -1; current = next[current]) {
+            if (head[current]) output += "\n";
+            output += data[current] + " ";
+        }
+        return output + "\n";
+    }
+
+    // equals method.
+    // true if the Orientations come in the same order
+    public boolean equals(Object obj) {
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        MutableOrientationPartition l = (MutableOrientationPartition) obj;
+        int n1 = this.first;
+        int n2 = l.first;
+        while (n1 != -1 && n2 != -1) {
+            if (!this.data[n1].equals(l.data[n2])) return false;
+            n1 = this.next[n1];
+            n2 = l.next[n2];
         }
+        if (n1 != -1 || n2 != -1) return false;
         return true;
     }
 
@@ -122,6 +122,13 @@ public final class OrientationPartition implements Serializable {
         throw new IllegalArgumentException("Orientation " + o + " isn't on the list.");
     }
 
+    // return all of the equivalence classes, in no particular order.
+    public ImmutableList<ImmutableSet<Orientation>> getClasses() {
+        ImmutableList.Builder<ImmutableSet<Orientation>> output = ImmutableList.builder();
+        for (HashSet<Orientation> s : partition) output.add(ImmutableSet.copyOf(s));
+        return output.build();
+    }
+
     // split up the set p into subsets the elements of any one of which
     // lie in the same set in this.partition.
 //    private OrientationPartition split(ImmutableSet<Orientation> p) {
@@ -0,0 +1,475 @@
+/*************************************************************************
+ *  Compilation:  javac PatchCodec.java
+ *  Execution:    java PatchCodec [file.chk ...]
+ *
+ *  A compact binary format for ImmutablePatches, to use instead of
+ *  Java serialization.  Serialization writes out the whole object
+ *  graph: every BasicTriangle with its angles, lengths, vertices
+ *  and Orientations, every BasicEdge, the BasicPrototiles, and so
+ *  on.  Almost all of that can be worked out again from a few
+ *  numbers, so this only writes those, as varints:
+ *
+ *  - each triangle is its prototile, flip, and angle, and the point
+ *    we put its root vertex at.  BasicPrototile.place() does the rest.
+ *  - each point is either the index of a point we've already
+ *    written (usually a vertex of an earlier triangle) or, the first
+ *    time we see it, its coordinates.
+ *  - each edge is its two ends, its length, and its Orientation.
+ *  - each Orientation is its position in a fixed list: the prototile
+ *    Orientations, then the Orientations of each BasicEdgeLength.
+ *    The sign says whether it's the one in the list or its opposite.
+ *    These don't depend on the Orientation IDs, which depend on the
+ *    order in which the classes were loaded.
+ *  - the OrientationPartition is its classes, each one sorted, and
+ *    sorted by their first elements, so the same partition is always
+ *    written the same way.
+ *
+ *  A file starts with VERSION and the search configuration (N, INFL,
+ *  and the number of prototiles), and we refuse to read files from a
+ *  different version or configuration.  Change VERSION whenever the
+ *  format changes.
+ *
+ *  The test client encodes and decodes the patches in the files
+ *  listed (or the ones that a search finds, if there aren't any),
+ *  checks that nothing changed, and compares the sizes with Java
+ *  serialization.
+ *
+ *************************************************************************/
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PatchCodec {
+
+    // the version of the format
+    public static final int VERSION = 1;
+
+    // the Orientations that can appear in a patch, in a fixed order
+    private static final ImmutableList<Orientation> ORIENTATIONS;
+
+    // the position of each Orientation in ORIENTATIONS, plus one,
+    // and negative for their opposites
+    private static final Map<Orientation,Integer> CODES = new HashMap<>();
+
+    static { // initialize ORIENTATIONS and CODES
+        ImmutableList.Builder<Orientation> o = ImmutableList.builder();
+        for (BasicPrototile p : BasicPrototile.ALL_PROTOTILES) o.add(p.getOrientations());
+        for (BasicEdgeLength l : BasicEdgeLength.ALL_EDGE_LENGTHS) {
+            for (int i = 0; i < l.numOrientations(); i++) o.add(l.getOrientation(i));
+        }
+        ORIENTATIONS = o.build();
+        for (int i = 0; i < ORIENTATIONS.size(); i++) {
+            CODES.put(ORIENTATIONS.get(i), i+1);
+            CODES.put(ORIENTATIONS.get(i).getOpposite(), -i-1);
+        }
+    }
+
+    // private constructor
+    private PatchCodec() {
+    }
+
+    // a growing byte array that we write varints to
+    static final class Writer {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        // the points we've written, and where
+        private final List<BytePoint> points = new ArrayList<>();
+        private final Map<BytePoint,Integer> pointIndices = new HashMap<>();
+
+        void writeVarint(int v) {
+            if (size + 5 > bytes.length) bytes = Arrays.copyOf(bytes, 2*bytes.length);
+            while ((v & ~0x7F) != 0) {
+                bytes[size++] = (byte)((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[size++] = (byte) v;
+        }
+
+        void writeSigned(int v) {
+            writeVarint((v << 1) ^ (v >> 31)); // zigzag
+        }
+
+        // remember p, if we haven't seen it before
+        void addPoint(BytePoint p) {
+            if (!pointIndices.containsKey(p)) {
+                pointIndices.put(p, points.size());
+                points.add(p);
+            }
+        }
+
+        void writePoint(BytePoint p) {
+            Integer i = pointIndices.get(p);
+            if (i != null) {
+                writeVarint(i+1);
+                return;
+            }
+            writeVarint(0);
+            for (int c : p.ints()) writeSigned(c);
+            addPoint(p);
+        }
+
+        void writeOrientation(Orientation o) {
+            Integer c = CODES.get(o);
+            if (c == null) throw new IllegalArgumentException(o + " isn't a prototile or edge length Orientation.");
+            writeSigned(c);
+        }
+
+        void writeLength(BasicEdgeLength l) {
+            writeVarint(BasicEdgeLength.ALL_EDGE_LENGTHS.indexOf(l));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+    } // end of class Writer
+
+    // reads what Writer writes
+    static final class Reader {
+
+        private final byte[] bytes;
+        private int position = 0;
+
+        private final List<BytePoint> points = new ArrayList<>();
+        private final Set<BytePoint> seen = new HashSet<>();
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readVarint() {
+            int output = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (position == bytes.length) throw new IllegalArgumentException("Patch record ends in the middle of a number.");
+                byte b = bytes[position++];
+                output |= (b & 0x7F) << shift;
+                if (b >= 0) return output;
+            }
+            throw new IllegalArgumentException("Bad varint in patch record.");
+        }
+
+        int readSigned() {
+            int v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        // the same as Writer.addPoint()
+        void addPoint(BytePoint p) {
+            if (seen.add(p)) points.add(p);
+        }
+
+        BytePoint readPoint() {
+            int i = readVarint();
+            if (i > 0) {
+                if (i > points.size()) throw new IllegalArgumentException("Patch record refers to point " + i + " of " + points.size() + ".");
+                return points.get(i-1);
+            }
+            int[] c = new int[BytePoint.length];
+            for (int j = 0; j < c.length; j++) c[j] = readSigned();
+            BytePoint p = BytePoint.createBytePoint(c);
+            addPoint(p);
+            return p;
+        }
+
+        Orientation readOrientation() {
+            int c = readSigned();
+            if (c == 0 || Math.abs(c) > ORIENTATIONS.size()) throw new IllegalArgumentException("Bad Orientation code " + c + ".");
+            Orientation o = ORIENTATIONS.get(Math.abs(c)-1);
+            return (c > 0) ? o : o.getOpposite();
+        }
+
+        BasicEdgeLength readLength() {
+            int i = readVarint();
+            if (i >= BasicEdgeLength.ALL_EDGE_LENGTHS.size()) throw new IllegalArgumentException("Bad edge length " + i + ".");
+            return BasicEdgeLength.ALL_EDGE_LENGTHS.get(i);
+        }
+
+        boolean finished() {
+            return position == bytes.length;
+        }
+
+    } // end of class Reader
+
+    // the angle by which place() turned t, or -1 if place() can't make t
+    static int angle(BasicTriangle t) {
+        BytePoint[] v = t.getVertices();
+        for (int a = 0; a < 2*BasicAngle.ANGLE_SUM; a++) {
+            BasicTriangle u = t.getPrototile().place(v[1], BasicAngle.createBasicAngle(a), t.getFlip());
+            if (Arrays.equals(u.getVertices(), v) && Arrays.equals(u.getOrientations(), t.getOrientations())) return a;
+        }
+        return -1;
+    }
+
+    private static void writeEdges(Writer w, BasicEdge[] edges) {
+        w.writeVarint(edges.length);
+        for (BasicEdge e : edges) {
+            w.writePoint(e.getEnds()[0]);
+            w.writePoint(e.getEnds()[1]);
+            w.writeLength(e.getLength());
+            w.writeOrientation(e.getOrientation());
+        }
+    }
+
+    private static BasicEdge[] readEdges(Reader r) {
+        BasicEdge[] output = new BasicEdge[r.readVarint()];
+        for (int i = 0; i < output.length; i++) {
+            BytePoint[] ends = new BytePoint[] {r.readPoint(), r.readPoint()};
+            BasicEdgeLength l = r.readLength();
+            output[i] = BasicEdge.createBasicEdge(l, r.readOrientation(), ends);
+        }
+        return output;
+    }
+
+    private static void writeBreakdown(Writer w, EdgeBreakdown b) {
+        w.writeVarint(b.size());
+        for (int i = 0; i < b.size(); i++) {
+            w.writeLength(b.getLengths()[i]);
+            w.writeOrientation(b.getOrientations()[i]);
+        }
+    }
+
+    private static EdgeBreakdown readBreakdown(Reader r) {
+        int n = r.readVarint();
+        BasicEdgeLength[] l = new BasicEdgeLength[n];
+        Orientation[] o = new Orientation[n];
+        for (int i = 0; i < n; i++) {
+            l[i] = r.readLength();
+            o[i] = r.readOrientation();
+        }
+        return EdgeBreakdown.createEdgeBreakdown(l, o);
+    }
+
+    // the classes of p, as sorted lists of codes, sorted by first element
+    private static List<int[]> canonicalClasses(OrientationPartition p) {
+        List<int[]> output = new ArrayList<>();
+        for (ImmutableSet<Orientation> s : p.getClasses()) {
+            int[] codes = new int[s.size()];
+            int i = 0;
+            for (Orientation o : s) {
+                Integer c = CODES.get(o);
+                if (c == null) throw new IllegalArgumentException(o + " isn't a prototile or edge length Orientation.");
+                codes[i++] = c;
+            }
+            Arrays.sort(codes);
+            output.add(codes);
+        }
+        Collections.sort(output, new Comparator<int[]>() {
+            public int compare(int[] x, int[] y) {
+                return Integer.compare(x[0], y[0]);
+            }
+        });
+        return output;
+    }
+
+    // encode one patch
+    public static byte[] encode(ImmutablePatch p) {
+        Writer w = new Writer();
+
+        BasicTriangle[] triangles = p.getTriangles();
+        w.writeVarint(triangles.length);
+        for (BasicTriangle t : triangles) {
+            int a = angle(t);
+            if (a == -1) throw new IllegalArgumentException("Can't encode a triangle that BasicPrototile.place() didn't make:\n" + t);
+            w.writeVarint(2*BasicPrototile.ALL_PROTOTILES.indexOf(t.getPrototile()) + ((t.getFlip()) ? 1 : 0));
+            w.writeVarint(a);
+            w.writePoint(t.getVertices()[1]);
+            for (BytePoint v : t.getVertices()) w.addPoint(v);
+        }
+
+        writeEdges(w, p.getOpenEdges());
+        writeEdges(w, p.getClosedEdges());
+        for (BytePoint v : p.getVertices()) w.writePoint(v);
+        writeBreakdown(w, p.getEdge0());
+        writeBreakdown(w, p.getEdge1());
+        writeBreakdown(w, p.getEdge2());
+
+        // write each class as its first code, then the differences
+        List<int[]> classes = canonicalClasses(p.getOrientationPartition());
+        w.writeVarint(classes.size());
+        for (int[] c : classes) {
+            w.writeVarint(c.length);
+            w.writeSigned(c[0]);
+            for (int i = 1; i < c.length; i++) w.writeVarint(c[i] - c[i-1]);
+        }
+
+        return w.toByteArray();
+    }
+
+    // decode one patch
+    public static ImmutablePatch decode(byte[] bytes) {
+        Reader r = new Reader(bytes);
+
+        BasicTriangle[] triangles = new BasicTriangle[r.readVarint()];
+        for (int i = 0; i < triangles.length; i++) {
+            int k = r.readVarint();
+            if (k/2 >= BasicPrototile.ALL_PROTOTILES.size()) throw new IllegalArgumentException("Bad prototile " + k/2 + ".");
+            BasicPrototile tile = BasicPrototile.ALL_PROTOTILES.get(k/2);
+            BasicAngle a = BasicAngle.createBasicAngle(r.readVarint());
+            triangles[i] = tile.place(r.readPoint(), a, k % 2 == 1);
+            for (BytePoint v : triangles[i].getVertices()) r.addPoint(v);
+        }
+
+        BasicEdge[] open = readEdges(r);
+        BasicEdge[] closed = readEdges(r);
+        BytePoint[] vertices = new BytePoint[] {r.readPoint(), r.readPoint(), r.readPoint()};
+        EdgeBreakdown bd0 = readBreakdown(r);
+        EdgeBreakdown bd1 = readBreakdown(r);
+        EdgeBreakdown bd2 = readBreakdown(r);
+
+        int n = r.readVarint();
+        HashSet<HashSet<Orientation>> classes = new HashSet<>(n);
+        for (int i = 0; i < n; i++) {
+            int size = r.readVarint();
+            HashSet<Orientation> c = new HashSet<>(size);
+            int code = r.readSigned();
+            for (int j = 0; j < size; j++) {
+                if (j > 0) code += r.readVarint();
+                if (code == 0 || Math.abs(code) > ORIENTATIONS.size()) throw new IllegalArgumentException("Bad Orientation code " + code + ".");
+                Orientation o = ORIENTATIONS.get(Math.abs(code)-1);
+                c.add((code > 0) ? o : o.getOpposite());
+            }
+            classes.add(c);
+        }
+
+        if (!r.finished()) throw new IllegalArgumentException("Extra bytes at the end of a patch record.");
+        return ImmutablePatch.createImmutablePatch(triangles, open, closed, OrientationPartition.createOrientationPartition(classes), vertices, bd0, bd1, bd2);
+    }
+
+    // write the header: VERSION and the search configuration
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(Preinitializer.N);
+        out.writeInt(Preinitializer.INFL.size());
+        for (Integer c : Preinitializer.INFL) out.writeInt(c);
+        out.writeInt(BasicPrototile.ALL_PROTOTILES.size());
+    }
+
+    // check the header
+    static void readHeader(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IllegalArgumentException("Patch file has version " + version + ", but this is version " + VERSION + ".");
+        int n = in.readInt();
+        List<Integer> infl = new ArrayList<>();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) infl.add(in.readInt());
+        int prototiles = in.readInt();
+        if (n != Preinitializer.N || !infl.equals(Preinitializer.INFL) || prototiles != BasicPrototile.ALL_PROTOTILES.size())
+            throw new IllegalArgumentException("Patch file is for N = " + n + ", INFL = " + infl + ", " + prototiles + " prototiles, but this search has N = " + Preinitializer.N + ", INFL = " + Preinitializer.INFL + ", " + BasicPrototile.ALL_PROTOTILES.size() + " prototiles.");
+    }
+
+    // write a header and then some patches, each one preceded by its length
+    public static void write(List<ImmutablePatch> patches, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        writeHeader(out);
+        out.writeInt(patches.size());
+        for (ImmutablePatch p : patches) {
+            byte[] b = encode(p);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        out.flush();
+    }
+
+    // read what write() wrote
+    public static List<ImmutablePatch> read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        readHeader(in);
+        int n = in.readInt();
+        List<ImmutablePatch> output = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte[] b = new byte[in.readInt()];
+            in.readFully(b);
+            output.add(decode(b));
+        }
+        return output;
+    }
+
+    // check that two lists of edges are the same, Orientations included.
+    // BasicEdge.equals() only looks at the ends.
+    private static boolean sameEdges(BasicEdge[] e, BasicEdge[] f) {
+        if (e.length != f.length) return false;
+        for (int i = 0; i < e.length; i++) {
+            if (!Arrays.equals(e[i].getEnds(), f[i].getEnds())) return false;
+            if (!e[i].getLength().equals(f[i].getLength())) return false;
+            if (!e[i].getOrientation().equals(f[i].getOrientation())) return false;
+        }
+        return true;
+    }
+
+    // check that two patches are the same.
+    // BasicTriangle.equals() only says whether they're the same object.
+    private static boolean same(ImmutablePatch p, ImmutablePatch q) {
+        BasicTriangle[] t = p.getTriangles();
+        BasicTriangle[] u = q.getTriangles();
+        if (t.length != u.length) return false;
+        for (int i = 0; i < t.length; i++) {
+            if (!t[i].getPrototile().equals(u[i].getPrototile()) || t[i].getFlip() != u[i].getFlip()) return false;
+            if (!Arrays.equals(t[i].getVertices(), u[i].getVertices())) return false;
+            if (!Arrays.equals(t[i].getOrientations(), u[i].getOrientations())) return false;
+        }
+        return sameEdges(p.getOpenEdges(), q.getOpenEdges())
+            && sameEdges(p.getClosedEdges(), q.getClosedEdges())
+            && Arrays.equals(p.getVertices(), q.getVertices())
+            && p.getEdge0().equals(q.getEdge0())
+            && p.getEdge1().equals(q.getEdge1())
+            && p.getEdge2().equals(q.getEdge2())
+            && p.getOrientationPartition().equals(q.getOrientationPartition());
+    }
+
+    // test client
+    public static void main(String[] args) throws Exception {
+
+        List<ImmutablePatch> patches = new ArrayList<>();
+        if (args.length > 0) {
+            for (String filename : args) {
+                try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+                    patches.addAll(((TriangleResults) in.readObject()).getPatches());
+                }
+            }
+        } else {
+            EmptyBoundaryWorkUnitFactory f = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+            while (f.notDone()) {
+                EmptyBoundaryPatch p = f.nextPatch();
+                p.setKillSwitch(new AtomicBoolean(false));
+                p.solve();
+                patches.addAll(p.getLocalCompletedPatches());
+            }
+        }
+
+        // one at a time
+        int failures = 0;
+        for (ImmutablePatch p : patches) {
+            byte[] b = encode(p);
+            ImmutablePatch q = decode(b);
+            if (!same(p, q) || !Arrays.equals(b, encode(q))) failures++;
+        }
+
+        // all together, timed
+        long start = System.nanoTime();
+        ByteArrayOutputStream codec = new ByteArrayOutputStream();
+        write(patches, codec);
+        long encodeTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<ImmutablePatch> decoded = read(new ByteArrayInputStream(codec.toByteArray()));
+        long decodeTime = System.nanoTime() - start;
+        for (int i = 0; i < patches.size(); i++) {
+            if (!same(patches.get(i), decoded.get(i))) failures++;
+        }
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(new TriangleResults(patches));
+        }
+
+        System.out.println(patches.size() + " patches, " + failures + " round trip failures.");
+        System.out.println(String.format("codec: %d bytes (%.1f per patch), encoded in %.1f ms, decoded in %.1f ms.", codec.size(), codec.size()/(double)Math.max(patches.size(),1), encodeTime/1e6, decodeTime/1e6));
+        System.out.println(String.format("Java serialization: %d bytes (%.1f per patch).", serialized.size(), serialized.size()/(double)Math.max(patches.size(),1)));
+
+    }
+
+} // end of class PatchCodec
@@ -0,0 +1,452 @@
+/*************************************************************************
+ *  Compilation:  javac PatchDeduplicator.java
+ *  Execution:    java PatchDeduplicator [-exact] output input [input ...]
+ *
+ *  Throw out completed patches that we've already seen.
+ *
+ *  The same patch can turn up more than once: different work units
+ *  can complete it, merged interim files repeat results, and if the
+ *  tile is isosceles, the reflection of a patch is another patch
+ *  with the same boundary.  ImmutablePatch.equals() can't tell us
+ *  any of this cheaply, so instead we put each patch in a canonical
+ *  form and remember a 128-bit fingerprint of that.
+ *
+ *  The canonical form: write each triangle as its prototile, whether
+ *  it's flipped, and its three vertices, sort the triangles, and do
+ *  this for each symmetry of the big triangle (just the identity,
+ *  unless it's isosceles).
+ *  The smallest of these lists is the canonical form.  With -exact
+ *  we only use the identity, so reflections are kept.
+ *
+ *  The triangles determine the rest of the patch, so two patches
+ *  with the same canonical form are the same up to symmetry.  Two
+ *  different patches could have the same fingerprint, but with 128
+ *  bits we don't expect that to happen before the sun burns out.
+ *
+ *  The fingerprints we've seen live in a hash table until there are
+ *  maxInMemory of them.  Then we sort them, write them to a run file,
+ *  and start again; runs are memory-mapped and searched by binary
+ *  search.  When there are MAX_RUNS runs we merge them into one, and
+ *  delete the old ones; close() deletes the rest.
+ *
+ *  A PatchDeduplicator is a ResultSink.Filter, so the Server (with
+ *  Preinitializer.DEDUPLICATE_RESULTS) and main just add it to the
+ *  ResultSink they write to, and the sink's writer drops the
+ *  duplicates before they get to a segment.
+ *
+ *  The inputs can be TriangleResults files or ResultStore directories.
+ *  The output goes through a ResultSink, so it's a pattern with a %08d
+ *  in it, ending in .chk or ResultStore.SUFFIX.
+ *
+ *************************************************************************/
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class PatchDeduplicator implements ResultSink.Filter {
+
+    // the default number of fingerprints to keep in memory
+    public static final int DEFAULT_MAX_IN_MEMORY = 1 << 20;
+
+    // merge the runs when there are this many of them
+    private static final int MAX_RUNS = 8;
+
+    // the number of patches in each output file from main()
+    private static final int SEGMENT_SIZE = 10000;
+
+    // a 128-bit fingerprint of a canonical form
+    public static final class Fingerprint implements Comparable<Fingerprint> {
+
+        private final long hi;
+        private final long lo;
+
+        private Fingerprint(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        // the fingerprint of everything that's been put in h
+        static Fingerprint of(Hasher h) {
+            ByteBuffer b = ByteBuffer.wrap(h.hash().asBytes());
+            return new Fingerprint(b.getLong(), b.getLong());
+        }
+
+        public boolean equals(Object obj) {
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Fingerprint f = (Fingerprint) obj;
+            return hi == f.hi && lo == f.lo;
+        }
+
+        public int hashCode() {
+            return (int)(lo ^ (lo >>> 32));
+        }
+
+        public int compareTo(Fingerprint f) {
+            return (hi != f.hi) ? Long.compare(hi, f.hi) : Long.compare(lo, f.lo);
+        }
+
+        public String toString() {
+            return String.format("%016x%016x", hi, lo);
+        }
+
+    } // end of class Fingerprint
+
+    // a symmetry x -> rotate(flip(x)) + shift of the big triangle
+    static final class Symmetry {
+
+        final boolean flip;
+        final BasicAngle angle;
+        final BytePoint shift;
+
+        Symmetry(boolean flip, BasicAngle angle, BytePoint shift) {
+            this.flip = flip;
+            this.angle = angle;
+            this.shift = shift;
+        }
+
+        BytePoint apply(BytePoint p) {
+            return BytePoint.createBytePoint(p, flip, angle, shift);
+        }
+
+    } // end of class Symmetry
+
+    // a sorted list of fingerprints on disk
+    static final class Run {
+
+        final File file;
+        final MappedByteBuffer buffer;
+        final int size;
+
+        Run(File file) throws IOException {
+            this.file = file;
+            try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+                buffer = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+            }
+            size = buffer.capacity()/16;
+        }
+
+        long hi(int i) {
+            return buffer.getLong(16*i);
+        }
+
+        long lo(int i) {
+            return buffer.getLong(16*i+8);
+        }
+
+        boolean contains(long hi, long lo) {
+            int a = 0;
+            int b = size - 1;
+            while (a <= b) {
+                int m = (a + b) >>> 1;
+                long h = hi(m);
+                int c = (h != hi) ? Long.compare(h, hi) : Long.compare(lo(m), lo);
+                if (c == 0) return true;
+                if (c < 0) {
+                    a = m + 1;
+                } else {
+                    b = m - 1;
+                }
+            }
+            return false;
+        }
+
+    } // end of class Run
+
+    // use the symmetries of the big triangle?
+    private final boolean symmetric;
+
+    // the symmetries for the last big triangle we saw
+    private BytePoint[] lastVertices = null;
+    private List<Symmetry> lastSymmetries = null;
+
+    // the in-memory fingerprints: an open-addressing table of
+    // (hi, lo) pairs, with (0, 0) meaning empty
+    private final int maxInMemory;
+    private long[] table;
+    private int inMemory = 0;
+    private boolean hasZero = false;
+
+    // the fingerprints on disk
+    private final File spillDirectory;
+    private final List<Run> runs = new ArrayList<>();
+    private int runCount = 0;
+
+    // counts
+    private long seen = 0;
+    private long duplicates = 0;
+
+    // private constructor
+    private PatchDeduplicator(boolean symmetric, int maxInMemory, File spillDirectory) {
+        this.symmetric = symmetric;
+        this.maxInMemory = maxInMemory;
+        this.spillDirectory = spillDirectory;
+        this.table = new long[4*Integer.highestOneBit(2*maxInMemory - 1)];
+    }
+
+    // public static factory method.
+    // if symmetric is true, reflections of patches count as duplicates.
+    public static PatchDeduplicator createPatchDeduplicator(boolean symmetric, int maxInMemory, File spillDirectory) {
+        if (maxInMemory < 1) throw new IllegalArgumentException("Bad number of fingerprints to keep in memory: " + maxInMemory + ".");
+        return new PatchDeduplicator(symmetric, maxInMemory, spillDirectory);
+    }
+
+    // public static factory method.
+    // keep the default number in memory, and spill to a temporary directory.
+    public static PatchDeduplicator createPatchDeduplicator(boolean symmetric) {
+        return new PatchDeduplicator(symmetric, DEFAULT_MAX_IN_MEMORY, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    // the symmetries of the triangle with vertices v,
+    // i.e., the isometries that take v to itself
+    static List<Symmetry> symmetries(BytePoint[] v) {
+        List<Symmetry> output = new ArrayList<>();
+        Set<BytePoint> vertices = new HashSet<>(Arrays.asList(v));
+        for (boolean flip : new boolean[] {false, true}) {
+            for (int a = 0; a < 2*BasicAngle.ANGLE_SUM; a++) {
+                BasicAngle angle = BasicAngle.createBasicAngle(a);
+                BytePoint image = BytePoint.createBytePoint(v[0], flip, angle, BytePoint.ZERO_VECTOR);
+                for (int k = 0; k < 3; k++) {
+                    Symmetry s = new Symmetry(flip, angle, v[k].subtract(image));
+                    Set<BytePoint> images = new HashSet<>();
+                    for (BytePoint p : v) images.add(s.apply(p));
+                    if (images.equals(vertices)) output.add(s);
+                }
+            }
+        }
+        return output;
+    }
+
+    // compare two rows, or two lists of rows, lexicographically
+    private static final Comparator<int[]> ROWS = new Comparator<int[]>() {
+        public int compare(int[] x, int[] y) {
+            for (int i = 0; i < Math.min(x.length, y.length); i++) {
+                if (x[i] != y[i]) return (x[i] < y[i]) ? -1 : 1;
+            }
+            return Integer.compare(x.length, y.length);
+        }
+    };
+
+    private static int compareForms(int[][] x, int[][] y) {
+        for (int i = 0; i < Math.min(x.length, y.length); i++) {
+            int c = ROWS.compare(x[i], y[i]);
+            if (c != 0) return c;
+        }
+        return Integer.compare(x.length, y.length);
+    }
+
+    // the patch p, moved by s, as a sorted list of triangles.
+    // each triangle is its prototile, whether it's flipped, and its
+    // three vertices, in the order of the unflipped prototile.  place()
+    // lists the vertices of a flipped triangle backwards, so we turn
+    // them around; then reflecting a triangle doesn't change the order.
+    // an isosceles prototile can sit on the same vertices flipped or
+    // not, so we need the flip too, and a reflection s flips it.
+    private static int[][] form(ImmutablePatch p, Symmetry s) {
+        BasicTriangle[] triangles = p.getTriangles();
+        int[][] output = new int[triangles.length][];
+        for (int i = 0; i < triangles.length; i++) {
+            int[] row = new int[2 + 3*BytePoint.length];
+            row[0] = BasicPrototile.ALL_PROTOTILES.indexOf(triangles[i].getPrototile());
+            row[1] = (triangles[i].getFlip() != s.flip) ? 1 : 0;
+            BytePoint[] v = triangles[i].getVertices();
+            for (int j = 0; j < 3; j++) {
+                int[] c = s.apply(v[(triangles[i].getFlip()) ? 2-j : j]).ints();
+                System.arraycopy(c, 0, row, 2 + j*c.length, c.length);
+            }
+            output[i] = row;
+        }
+        Arrays.sort(output, ROWS);
+        return output;
+    }
+
+    // the canonical form of p
+    public int[][] canonicalForm(ImmutablePatch p) {
+        List<Symmetry> symmetries;
+        BytePoint[] v = p.getVertices();
+        if (!symmetric) {
+            symmetries = Collections.singletonList(new Symmetry(false, BasicAngle.createBasicAngle(0), BytePoint.ZERO_VECTOR));
+        } else {
+            if (lastVertices == null || !Arrays.equals(lastVertices, v)) {
+                lastVertices = v;
+                lastSymmetries = symmetries(v);
+            }
+            symmetries = lastSymmetries;
+        }
+        int[][] output = null;
+        for (Symmetry s : symmetries) {
+            int[][] f = form(p, s);
+            if (output == null || compareForms(f, output) < 0) output = f;
+        }
+        return output;
+    }
+
+    // the fingerprint of the canonical form of p
+    public Fingerprint fingerprint(ImmutablePatch p) {
+        int[][] form = canonicalForm(p);
+        Hasher h = Hashing.murmur3_128().newHasher();
+        h.putInt(form.length);
+        for (int[] row : form) {
+            for (int x : row) h.putInt(x);
+        }
+        return Fingerprint.of(h);
+    }
+
+    // add p.  return true if we haven't seen it before.
+    // not thread-safe.
+    public boolean add(ImmutablePatch p) throws IOException {
+        seen++;
+        if (add(fingerprint(p))) return true;
+        duplicates++;
+        return false;
+    }
+
+    // add f.  return true if we haven't seen it before.
+    public boolean add(Fingerprint f) throws IOException {
+        if (f.hi == 0L && f.lo == 0L) {
+            if (hasZero) return false;
+            hasZero = true;
+            return true;
+        }
+        for (Run r : runs) {
+            if (r.contains(f.hi, f.lo)) return false;
+        }
+        int mask = table.length/2 - 1;
+        int i = f.hashCode() & mask;
+        while (table[2*i] != 0L || table[2*i+1] != 0L) {
+            if (table[2*i] == f.hi && table[2*i+1] == f.lo) return false;
+            i = (i + 1) & mask;
+        }
+        table[2*i] = f.hi;
+        table[2*i+1] = f.lo;
+        inMemory++;
+        if (inMemory == maxInMemory) spill();
+        return true;
+    }
+
+    // write the in-memory fingerprints to a new run
+    private void spill() throws IOException {
+        List<Fingerprint> sorted = new ArrayList<>(inMemory);
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != 0L || table[i+1] != 0L) sorted.add(new Fingerprint(table[i], table[i+1]));
+        }
+        Collections.sort(sorted);
+        File file = newRunFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (Fingerprint f : sorted) {
+                out.writeLong(f.hi);
+                out.writeLong(f.lo);
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        runs.add(new Run(file));
+        Arrays.fill(table, 0L);
+        inMemory = 0;
+        if (runs.size() == MAX_RUNS) merge();
+    }
+
+    // merge all the runs into one, if it isn't too big to map
+    private void merge() throws IOException {
+        long total = 0;
+        for (Run r : runs) total += r.size;
+        if (16*total > Integer.MAX_VALUE) return;
+        File file = newRunFile();
+        int[] position = new int[runs.size()];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            while (true) {
+                int best = -1;
+                for (int k = 0; k < runs.size(); k++) {
+                    Run r = runs.get(k);
+                    if (position[k] == r.size) continue;
+                    if (best == -1) {
+                        best = k;
+                        continue;
+                    }
+                    Run b = runs.get(best);
+                    long h = r.hi(position[k]);
+                    long bh = b.hi(position[best]);
+                    if (h < bh || (h == bh && r.lo(position[k]) < b.lo(position[best]))) best = k;
+                }
+                if (best == -1) break;
+                out.writeLong(runs.get(best).hi(position[best]));
+                out.writeLong(runs.get(best).lo(position[best]));
+                position[best]++;
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        for (Run r : runs) r.file.delete();
+        runs.clear();
+        runs.add(new Run(file));
+    }
+
+    private File newRunFile() {
+        return new File(spillDirectory, String.format("fingerprints-%x-%04d.run", System.identityHashCode(this), runCount++));
+    }
+
+    // for ResultSink: keep p if we haven't seen it before
+    public boolean keep(ImmutablePatch p) throws IOException {
+        return add(p);
+    }
+
+    // the number of patches we've been given
+    public long seen() {
+        return seen;
+    }
+
+    // the number of them that were duplicates
+    public long duplicates() {
+        return duplicates;
+    }
+
+    // the number of run files we're using
+    public int runs() {
+        return runs.size();
+    }
+
+    // delete the run files
+    public void close() {
+        for (Run r : runs) r.file.delete();
+        runs.clear();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        boolean symmetric = true;
+        int first = 0;
+        if (args.length > 0 && args[0].equals("-exact")) {
+            symmetric = false;
+            first = 1;
+        }
+        if (args.length < first + 2) {
+            System.out.println("usage: java PatchDeduplicator [-exact] output input [input ...]");
+            System.out.println("output is a file name pattern with %08d in it, ending in .chk or " + ResultStore.SUFFIX + ".");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        PatchDeduplicator d = createPatchDeduplicator(symmetric);
+        ResultSink sink = ResultSink.createResultSink(args[first], SEGMENT_SIZE, Long.MAX_VALUE);
+        sink.addFilter(d);
+        for (int i = first + 1; i < args.length; i++) {
+            int count = 0;
+            for (ImmutablePatch p : ResultStore.read(args[i])) {
+                sink.add(p);
+                count++;
+            }
+            System.out.println("Read " + count + " patches from " + args[i] + ".");
+        }
+        sink.close(); // closes d too
+        System.out.println(String.format("%d patches, %d duplicates, %d written in %.1f s.", d.seen(), d.duplicates(), sink.written(), (System.currentTimeMillis() - start)/1000.0));
+
+    }
+
+} // end of class PatchDeduplicator
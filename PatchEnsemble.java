@@ -461,8 +461,34 @@ public class PatchEnsemble implements Serializable {
 //        System.out.println("All done.  Built " + patches.edgeSet().size() + " edges.");
 //    } // private constructor ends here
 
+    // the files with the patches for prototile i.
+    // prefix is either the beginning of the names of the interim
+    // files (prefix + i + "-00000000-interim.chk" and so on) or a
+    // ResultStore directory, in which case we use its segments for tile i.
+    private static List<String> inputFiles(String prefix, int i) {
+        List<String> output = new ArrayList<>();
+        File directory = new File(prefix);
+        if (directory.isDirectory()) {
+            try {
+                for (ResultStore.Segment s : ResultStore.openResultStore(directory).getSegments(i)) output.add(s.getFile().getPath());
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Can't read the ResultStore in " + prefix + ".", e);
+            }
+            return output;
+        }
+        int j = 0;
+        String filename = prefix + i + String.format("-%08d-interim.chk",j);
+        while (new File(filename).isFile()) {
+            output.add(filename);
+            j++;
+            filename = prefix + i + String.format("-%08d-interim.chk",j);
+        }
+        return output;
+    }
+
     // private constructor
-    // fileNames is an array of names of files containing the TriangleResults
+    // fileNames is an array of names of files containing the TriangleResults,
+    // or of ResultStore directories
     // we assume the files are listed in the same order
     // as the prototiles to which they correspond
     private PatchEnsemble(String[] fileNames, EdgeBreakdownTree bd) {
@@ -479,22 +505,18 @@ public class PatchEnsemble implements Serializable {
             int trueVcount = 0;
             int ecount = 0;
             String inPrefix = fileNames[i];
-            int j = 0;
             // convert set to list
             List<PatchAndIndex> patchList = patches.dumpVertices();
             // make a list of futures for the work units
             LinkedList<Future<Result>> listOfFutures = new LinkedList<>();
 
-            String filename = inPrefix + i + String.format("-%08d-interim.chk",j);
             System.out.println("Loading " + i + "-vertices ... ");
 
-            while (new File(filename).isFile()) { // here begins deserialization
+            for (String filename : inputFiles(inPrefix,i)) { // here begins deserialization
                 System.out.println("Reading from file " + filename + ".");
                 try
                     {
-                        FileInputStream fileIn = new FileInputStream(filename);
-                        ObjectInputStream in = new ObjectInputStream(fileIn);
-                        for (ImmutablePatch p : ((TriangleResults)in.readObject()).getPatches()) {
+                        for (ImmutablePatch p : ResultStore.read(filename)) {
                             vcount++;
                             listOfFutures.add(GeneralThreadService.INSTANCE.getExecutor().submit(new MultiStagePatchEnsembleWorkUnit(patches,i,p,patchList)));
                         }
@@ -548,8 +570,6 @@ public class PatchEnsemble implements Serializable {
                     }
 
                 System.out.println("Done reading from file " + filename + ".");
-                j++;
-                filename = inPrefix + i + String.format("-%08d-interim.chk",j);
             } // here ends deserialization of interim files
 
             System.out.println("Done loading " + i + "-vertices. Loaded " + vcount + " vertices, of which " + ((i==0) ? patches.dumpVertices().size() : trueVcount) + " were included in the graph.");
@@ -580,16 +600,12 @@ public class PatchEnsemble implements Serializable {
         for (int i = 0; i < M; i++) { // iterate through all input files
             int vcount = 0;
             String inPrefix = fileNames[i];
-            int j = 0;
-            String filename = inPrefix + i + String.format("-%08d-interim.chk",j);
             System.out.print("Loading " + i + "-vertices ... ");
 
-            while (new File(filename).isFile()) { // here begins deserialization
+            for (String filename : inputFiles(inPrefix,i)) { // here begins deserialization
                 try
                     {
-                        FileInputStream fileIn = new FileInputStream(filename);
-                        ObjectInputStream in = new ObjectInputStream(fileIn);
-                        for (ImmutablePatch p : ((TriangleResults)in.readObject()).getPatches()) {
+                        for (ImmutablePatch p : ResultStore.read(filename)) {
                             PatchAndIndex newVertex = new PatchAndIndex(p,i);
                             patches.addVertex(newVertex);
                             vcount++;
@@ -600,9 +616,6 @@ public class PatchEnsemble implements Serializable {
                         e.printStackTrace();
                         System.exit(1);
                     }
-
-                j++;
-                filename = inPrefix + i + String.format("-%08d-interim.chk",j);
             } // here ends deserialization of interim files
 
             System.out.println("done loading " + i + "-vertices. Loaded " + vcount + " vertices.");
@@ -0,0 +1,294 @@
+/*************************************************************************
+ *  Compilation:  javac PersistentStack.java
+ *  Execution:    java PersistentStack
+ *
+ *  A class representing a stack of objects of type E.
+ *  The nodes are immutable, so pushing and popping never
+ *  change anything that another stack can see.  This means
+ *  that a copy of the stack is just a new pointer to the
+ *  same top node, and two copies share all of their common
+ *  history.  We use it for the state of an EmptyBoundaryPatch,
+ *  so that spawn() doesn't have to copy everything.
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.io.Serializable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+class StackNode<E> {
+
+    private final E data;
+
+    // the node underneath this one
+    private final StackNode<E> next;
+
+    // the number of nodes from here to the bottom
+    private final int size;
+
+    // the hashCode of the stack with this node on top.
+    // same formula as java.util.List, starting at the bottom.
+    private final int hash;
+
+    // protected constructor
+    protected StackNode(E data, StackNode<E> next) {
+        this.data = data;
+        this.next = next;
+        this.size = (next == null) ? 1 : next.size + 1;
+        this.hash = 31*((next == null) ? 1 : next.hash) + ((data == null) ? 0 : data.hashCode());
+    }
+
+    // getters
+    public E getData() {
+        return data;
+    }
+
+    public StackNode<E> getNext() {
+        return next;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getHash() {
+        return hash;
+    }
+
+} // end of class StackNode
+
+public class PersistentStack<E> implements Iterable<E>, Serializable {
+
+    // make it Serializable
+    static final long serialVersionUID = -2093872049417830191L;
+
+    // the top of the stack. null if it's empty.
+    // we write the elements out by hand when we serialize,
+    // so the nodes themselves don't need to be Serializable.
+    private transient StackNode<E> top;
+
+    // private constructor
+    private PersistentStack(StackNode<E> top) {
+        this.top = top;
+    }
+
+    // public static factory method
+    public static <E> PersistentStack<E> createPersistentStack() {
+        return new PersistentStack<E>(null);
+    }
+
+    // "deep" copy. since nobody can change the nodes,
+    // we just point to the same top.
+    public PersistentStack<E> deepCopy() {
+        return new PersistentStack<E>(top);
+    }
+
+    // push e onto the top of the stack
+    public E push(E e) {
+        top = new StackNode<E>(e,top);
+        return e;
+    }
+
+    // remove the top element and return it
+    public E pop() {
+        if (top == null) throw new IllegalArgumentException("Can't pop an empty stack.");
+        E output = top.getData();
+        top = top.getNext();
+        return output;
+    }
+
+    // return the top element without removing it
+    public E peek() {
+        if (top == null) throw new IllegalArgumentException("Can't peek at an empty stack.");
+        return top.getData();
+    }
+
+    // return true if there's nothing here
+    public boolean empty() {
+        return top == null;
+    }
+
+    // the number of elements
+    public int size() {
+        return (top == null) ? 0 : top.getSize();
+    }
+
+    // get the node at position i, counting from the bottom,
+    // like in java.util.Stack
+    private StackNode<E> nodeAt(int i) {
+        if (i < 0 || i >= size()) throw new IllegalArgumentException("Index " + i + " out of range for a stack of size " + size() + ".");
+        StackNode<E> current = top;
+        for (int j = size()-1; j > i; j--) current = current.getNext();
+        return current;
+    }
+
+    // get the element at position i, counting from the bottom
+    public E get(int i) {
+        return nodeAt(i).getData();
+    }
+
+    // return the lowest index of o, or -1 if it isn't here
+    public int indexOf(Object o) {
+        int output = -1;
+        int i = size()-1;
+        for (StackNode<E> current = top; current != null; current = current.getNext()) {
+            if ((o == null) ? current.getData() == null : o.equals(current.getData())) output = i;
+            i--;
+        }
+        return output;
+    }
+
+    // return true if o is here
+    public boolean contains(Object o) {
+        for (StackNode<E> current = top; current != null; current = current.getNext()) {
+            if ((o == null) ? current.getData() == null : o.equals(current.getData())) return true;
+        }
+        return false;
+    }
+
+    // remove the element at position i, counting from the bottom.
+    // we have to copy the nodes above it, but nothing below.
+    public E remove(int i) {
+        StackNode<E> target = nodeAt(i);
+        List<E> above = new ArrayList<>(size()-i-1);
+        for (StackNode<E> current = top; current != target; current = current.getNext()) above.add(current.getData());
+        StackNode<E> newTop = target.getNext();
+        for (int j = above.size()-1; j >= 0; j--) newTop = new StackNode<E>(above.get(j),newTop);
+        top = newTop;
+        return target.getData();
+    }
+
+    // insert e at position i, counting from the bottom.
+    // as above, we only copy the nodes above position i.
+    public void add(int i, E e) {
+        if (i < 0 || i > size()) throw new IllegalArgumentException("Index " + i + " out of range for a stack of size " + size() + ".");
+        List<E> above = new ArrayList<>(size()-i);
+        StackNode<E> current = top;
+        for (int j = size(); j > i; j--) {
+            above.add(current.getData());
+            current = current.getNext();
+        }
+        StackNode<E> newTop = new StackNode<E>(e,current);
+        for (int j = above.size()-1; j >= 0; j--) newTop = new StackNode<E>(above.get(j),newTop);
+        top = newTop;
+    }
+
+    // dump the contents into a List, from the bottom up
+    public List<E> toList() {
+        List<E> output = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) output.add(null);
+        int i = size()-1;
+        for (StackNode<E> current = top; current != null; current = current.getNext()) {
+            output.set(i,current.getData());
+            i--;
+        }
+        return output;
+    }
+
+    // iterate from the bottom up, like java.util.Stack.
+    // this makes a List first, so use fromTop() if
+    // the order doesn't matter.
+    public Iterator<E> iterator() {
+        return java.util.Collections.unmodifiableList(toList()).iterator();
+    }
+
+    // iterate from the top down without copying anything
+    public Iterable<E> fromTop() {
+        return new Iterable<E>() {
+            public Iterator<E> iterator() {
+                return new Iterator<E>() {
+
+                    private StackNode<E> current = top;
+
+                    public boolean hasNext() {
+                        return (current != null);
+                    }
+
+                    public E next() {
+                        if (current == null) throw new NoSuchElementException();
+                        E output = current.getData();
+                        current = current.getNext();
+                        return output;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException("Can't remove from a PersistentStack while iterating.");
+                    }
+
+                };
+            }
+        };
+    }
+
+    // equals method.
+    // two stacks that share a top are equal without further checking.
+    public boolean equals(Object obj) {
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        PersistentStack<?> x = (PersistentStack<?>) obj;
+        if (this.size() != x.size()) return false;
+        StackNode<?> a = this.top;
+        StackNode<?> b = x.top;
+        while (a != b) {
+            if (a.getHash() != b.getHash()) return false;
+            Object d = a.getData();
+            if ((d == null) ? b.getData() != null : !d.equals(b.getData())) return false;
+            a = a.getNext();
+            b = b.getNext();
+        }
+        return true;
+    }
+
+    // hashCode method.
+    // agrees with java.util.Stack.hashCode() for the same elements.
+    public int hashCode() {
+        return (top == null) ? 1 : top.getHash();
+    }
+
+    // toString method
+    public String toString() {
+        return toList().toString();
+    }
+
+    // write the elements from the bottom up
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        List<E> contents = toList();
+        out.writeInt(contents.size());
+        for (E e : contents) out.writeObject(e);
+    }
+
+    // read them back in the same order
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        top = null;
+        for (int i = 0; i < n; i++) top = new StackNode<E>((E)in.readObject(),top);
+    }
+
+    // test client
+    public static void main(String[] args) {
+
+        PersistentStack<Integer> a = createPersistentStack();
+        for (int i = 0; i < 5; i++) a.push(i);
+        PersistentStack<Integer> b = a.deepCopy();
+        b.pop();
+        b.push(7);
+        a.remove(1);
+        a.add(1,9);
+        System.out.println("a: " + a + " (should be [0, 9, 2, 3, 4])");
+        System.out.println("b: " + b + " (should be [0, 1, 2, 3, 7])");
+        System.out.println("a.indexOf(3): " + a.indexOf(3));
+        java.util.Stack<Integer> s = new java.util.Stack<>();
+        for (int i : b) s.push(i);
+        System.out.println("hashCodes agree: " + (s.hashCode() == b.hashCode()));
+
+    }
+
+} // end of class PersistentStack
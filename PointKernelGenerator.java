@@ -0,0 +1,212 @@
+/*************************************************************************
+ *  Compilation:  javac PointKernelGenerator.java
+ *  Execution:    java PointKernelGenerator [filename]
+ *
+ *  Writes GeneratedPointKernels.java, a version of PointKernels
+ *  for the current value of Preinitializer.N with all of the
+ *  loops unrolled.  The rotations, the reflection, and the
+ *  index tables for the cross and dot products become literal
+ *  coefficients, so the JIT doesn't have to look anything up.
+ *
+ *  Run it again and recompile whenever N changes.  If you don't,
+ *  PointKernels notices that the generated version is for the
+ *  wrong N and uses ScalarPointKernels instead.
+ *
+ *************************************************************************/
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+public class PointKernelGenerator {
+
+    private static final int N = Preinitializer.N;
+
+    // the number of coordinates
+    private static final int L = N - 1;
+
+    // private constructor
+    private PointKernelGenerator() {
+    }
+
+    // cast a linear combination back to a byte, unless it's just
+    // a single variable (which is already a byte)
+    private static String byteTerm(String combination) {
+        if (combination.matches("\\w+\\[\\d+\\]")) return combination;
+        return "(byte)(" + combination + ")";
+    }
+
+    // write a linear combination of the form c[0]*x[0] + c[1]*x[1] + ...
+    // where x is the name of an array
+    private static String combination(int[] c, String x) {
+        String output = "";
+        for (int i = 0; i < c.length; i++) {
+            if (c[i] == 0) continue;
+            String term = x + "[" + i + "]";
+            if (Math.abs(c[i]) != 1) term = Math.abs(c[i]) + "*" + term;
+            if (output.length() == 0) {
+                output = (c[i] < 0) ? "-" + term : term;
+            } else {
+                output += (c[i] < 0) ? " - " + term : " + " + term;
+            }
+        }
+        return (output.length() == 0) ? "0" : output;
+    }
+
+    // the expression for coefficient i in the cross or dot product
+    private static String productCoefficient(int i, int[][] indexA, int[][] signA, int[][] indexB, int[][] signB) {
+        String output = "";
+        for (int j = 0; j < L; j++) {
+            int[] c = new int[L];
+            c[indexA[i][j]] += signA[i][j];
+            c[indexB[i][j]] += signB[i][j];
+            String inner = combination(c,"p1");
+            if (inner.equals("0")) continue;
+            if (output.length() > 0) output += "\n                 + ";
+            output += "p0[" + j + "]*(" + inner + ")";
+        }
+        return (output.length() == 0) ? "0" : output;
+    }
+
+    // the ith column of m
+    private static int[] column(ByteMatrix m, int i) {
+        int[] output = new int[L];
+        for (int j = 0; j < L; j++) output[j] = m.getColumn(i).get(j);
+        return output;
+    }
+
+    // write the class
+    private static void write(PrintWriter out) {
+
+        out.println("/*************************************************************************");
+        out.println(" *  Generated by PointKernelGenerator for N = " + N + ".");
+        out.println(" *  Don't edit this by hand; run PointKernelGenerator again.");
+        out.println(" *");
+        out.println(" *  Unrolled versions of the kernels in PointKernels.");
+        out.println(" *");
+        out.println(" *************************************************************************/");
+        out.println();
+        out.println("final class GeneratedPointKernels extends PointKernels {");
+        out.println();
+        out.println("    // public constructor, so that PointKernels can find it");
+        out.println("    public GeneratedPointKernels() {");
+        out.println("    }");
+        out.println();
+        out.println("    public String name() {");
+        out.println("        return \"generated\";");
+        out.println("    }");
+        out.println();
+        out.println("    public int order() {");
+        out.println("        return " + N + ";");
+        out.println("    }");
+
+        // add and subtract
+        for (String op : new String[] {"add", "subtract"}) {
+            String sign = (op.equals("add")) ? " + " : " - ";
+            out.println();
+            out.println("    public byte[] " + op + "(byte[] p0, byte[] p1) {");
+            out.println("        return new byte[] {");
+            for (int i = 0; i < L; i++)
+                out.println("            (byte)(p0[" + i + "]" + sign + "p1[" + i + "])" + ((i < L-1) ? "," : ""));
+            out.println("        };");
+            out.println("    }");
+        }
+
+        // equal
+        out.println();
+        out.println("    public boolean equal(byte[] p0, byte[] p1) {");
+        String eq = "        return";
+        for (int i = 0; i < L; i++) eq += ((i == 0) ? " " : "\n            && ") + "p0[" + i + "] == p1[" + i + "]";
+        out.println(eq + ";");
+        out.println("    }");
+
+        // rowTimes
+        out.println();
+        out.println("    public byte[] rowTimes(byte[][] data, byte[] v) {");
+        out.println("        if (data.length != " + L + " || data[0].length != " + L + ") return loopRowTimes(data,v);");
+        for (int l = 0; l < L; l++) out.println("        byte[] d" + l + " = data[" + l + "];");
+        out.println("        return new byte[] {");
+        for (int k = 0; k < L; k++) {
+            String sum = "";
+            for (int l = 0; l < L; l++) sum += ((l == 0) ? "" : " + ") + "v[" + l + "]*d" + l + "[" + k + "]";
+            out.println("            (byte)(" + sum + ")" + ((k < L-1) ? "," : ""));
+        }
+        out.println("        };");
+        out.println("    }");
+        out.println();
+        out.println("    // for matrices of other sizes");
+        out.println("    private static byte[] loopRowTimes(byte[][] data, byte[] v) {");
+        out.println("        int n = data[0].length;");
+        out.println("        byte[] row = new byte[n];");
+        out.println("        for (int k = 0; k < n; k++) {");
+        out.println("            int sum = 0;");
+        out.println("            for (int l = 0; l < v.length; l++) sum += v[l]*data[l][k];");
+        out.println("            row[k] = (byte) sum;");
+        out.println("        }");
+        out.println("        return row;");
+        out.println("    }");
+
+        // cross and dot coefficients
+        String[] names = new String[] {"crossCoefficients", "dotCoefficients"};
+        int[][][][] tables = new int[][][][] { //
+            {PointKernels.CROSS_INDEX_A, PointKernels.CROSS_SIGN_A, PointKernels.CROSS_INDEX_B, PointKernels.CROSS_SIGN_B}, //
+            {PointKernels.DOT_INDEX_A, PointKernels.DOT_SIGN_A, PointKernels.DOT_INDEX_B, PointKernels.DOT_SIGN_B} //
+        };
+        for (int w = 0; w < 2; w++) {
+            int[][][] t = tables[w];
+            out.println();
+            out.println("    public int[] " + names[w] + "(byte[] p0, byte[] p1) {");
+            out.println("        return new int[] {");
+            for (int i = 0; i < t[0].length; i++)
+                out.println("            " + productCoefficient(i,t[0],t[1],t[2],t[3]) + ((i < t[0].length-1) ? "," : ""));
+            out.println("        };");
+            out.println("    }");
+        }
+
+        // transform
+        out.println();
+        out.println("    public byte[] transform(byte[] v, boolean flip, int angle, byte[] shift) {");
+        out.println("        byte[] output;");
+        out.println("        switch ((flip) ? angle + " + (2*N) + " : angle) {");
+        for (int c = 0; c < 4*N; c++)
+            out.println("            case " + c + ": output = transform" + c + "(v); break;");
+        out.println("            default: throw new IllegalArgumentException(\"Bad angle \" + angle + \".\");");
+        out.println("        }");
+        out.println("        if (shift == null) return output;");
+        for (int i = 0; i < L; i++)
+            out.println("        output[" + i + "] = (byte)(output[" + i + "] + shift[" + i + "]);");
+        out.println("        return output;");
+        out.println("    }");
+        for (int c = 0; c < 4*N; c++) {
+            boolean flip = (c >= 2*N);
+            ByteMatrix rot = BasicAngle.createBasicAngle(c % (2*N)).getRotation();
+            ByteMatrix m = (flip) ? Initializer.REF.times(rot) : rot;
+            out.println();
+            out.println("    // " + ((flip) ? "reflect, then " : "") + "rotate by " + (c % (2*N)));
+            out.println("    private static byte[] transform" + c + "(byte[] v) {");
+            out.println("        return new byte[] {");
+            for (int k = 0; k < L; k++)
+                out.println("            " + byteTerm(combination(column(m,k),"v")) + ((k < L-1) ? "," : ""));
+            out.println("        };");
+            out.println("    }");
+        }
+
+        out.println();
+        out.println("} // end of class GeneratedPointKernels");
+
+    }
+
+    public static void main(String[] args) {
+
+        String filename = (args.length > 0) ? args[0] : "GeneratedPointKernels.java";
+        try (PrintWriter out = new PrintWriter(new FileWriter(filename))) {
+            write(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        System.out.println("Wrote kernels for N = " + N + " to " + filename + ".");
+
+    }
+
+} // end of class PointKernelGenerator
@@ -0,0 +1,310 @@
+/*************************************************************************
+ *  Compilation:  javac PointKernels.java
+ *  Execution:    java PointKernels
+ *                java --add-modules jdk.incubator.vector PointKernels
+ *
+ *  The inner loops of BytePoint, for byte coordinates.
+ *  There are three versions: 
+ *  ScalarPointKernels, which is plain java and works for any N.
+ *  GeneratedPointKernels, which PointKernelGenerator writes out
+ *  for one value of N, with all the loops unrolled.
+ *  VectorPointKernels (in the vector directory), which 
+ *  uses the jdk.incubator.vector module.  
+ *  We pick the vector version if Preinitializer.VECTOR_KERNELS is 
+ *  set and the module is there when we start up, then the
+ *  generated version if GENERATED_KERNELS is set and it was 
+ *  generated for the right N.  Otherwise we use the scalar one.
+ *
+ *  The vector version has to be compiled separately:
+ *  javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorPointKernels.java
+ *
+ *  main() times the versions against each other.
+ *
+ *************************************************************************/
+
+import java.util.Random;
+
+abstract class PointKernels {
+
+    // the number of coordinates
+    protected static final int LENGTH = Preinitializer.N - 1;
+
+    /*
+    * Index and sign tables for the cross and dot products.
+    * BytePoint.crossCoefficients(p) has ith entry
+    * sum over j of p0[j]*(CROSS_SIGN_A[i][j]*p1[CROSS_INDEX_A[i][j]]
+    *                     + CROSS_SIGN_B[i][j]*p1[CROSS_INDEX_B[i][j]]),
+    * and the same goes for dotCoefficients.  A sign of 0 means
+    * that term doesn't appear, and then the index is 0.
+    * Working these out once saves all the % and ?: in the loops.
+    */
+    protected static final int[][] CROSS_INDEX_A;
+    protected static final int[][] CROSS_INDEX_B;
+    protected static final int[][] CROSS_SIGN_A;
+    protected static final int[][] CROSS_SIGN_B;
+    protected static final int[][] DOT_INDEX_A;
+    protected static final int[][] DOT_INDEX_B;
+    protected static final int[][] DOT_SIGN_A;
+    protected static final int[][] DOT_SIGN_B;
+
+    // the kernels that BytePoint and ByteMatrix use
+    public static final PointKernels KERNELS;
+
+    static { // fill in the tables
+
+        int length = LENGTH;
+        int l = length/2;
+        CROSS_INDEX_A = new int[l][length];
+        CROSS_INDEX_B = new int[l][length];
+        CROSS_SIGN_A = new int[l][length];
+        CROSS_SIGN_B = new int[l][length];
+        for (int i = 0; i < l; i++) {
+            for (int j = 0; j < length; j++) {
+                if (j+i != length-1) {
+                    CROSS_INDEX_A[i][j] = (j+i+1)%(length+1);
+                    CROSS_SIGN_A[i][j] = (j+i+1>length)? -1 : 1;
+                }
+                if (j != i) {
+                    CROSS_INDEX_B[i][j] = (j-i-1 < 0)? length+j-i : j-i-1;
+                    CROSS_SIGN_B[i][j] = (j-i-1<0)? 1 : -1;
+                }
+            }
+        }
+
+        l = length/2+1;
+        DOT_INDEX_A = new int[l][length];
+        DOT_INDEX_B = new int[l][length];
+        DOT_SIGN_A = new int[l][length];
+        DOT_SIGN_B = new int[l][length];
+        for (int i = 0; i < l; i++) {
+            for (int j = 0; j < length; j++) {
+                if (j+i != length) {
+                    DOT_INDEX_A[i][j] = (j+i)%(length+1);
+                    DOT_SIGN_A[i][j] = (j+i>length)? -1 : 1;
+                }
+                if (i != 0 && j-i != -1) {
+                    DOT_INDEX_B[i][j] = (j-i < 0)? length+1+j-i : j-i;
+                    DOT_SIGN_B[i][j] = (j-i<0)? -1 : 1;
+                }
+            }
+        }
+
+        KERNELS = createPointKernels(Preinitializer.VECTOR_KERNELS,Preinitializer.GENERATED_KERNELS);
+
+    } // end of static initialization
+
+    // return the vector or generated kernels if we want them 
+    // and can load them, and the scalar kernels otherwise
+    public static PointKernels createPointKernels(boolean vector, boolean generated) {
+        if (vector) {
+            PointKernels output = load("VectorPointKernels");
+            if (output != null) return output;
+        }
+        if (generated) {
+            PointKernels output = load("GeneratedPointKernels");
+            if (output != null && output.order() == Preinitializer.N) return output;
+        }
+        return new ScalarPointKernels();
+    }
+
+    // load one of the other versions by name, or return null
+    private static PointKernels load(String name) {
+        try {
+            return (PointKernels) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (Exception | LinkageError e) {
+            // no such class, or no jdk.incubator.vector.
+            return null;
+        }
+    }
+
+    // the value of N that these kernels work for
+    public int order() {
+        return Preinitializer.N;
+    }
+
+    // a name to print
+    public abstract String name();
+
+    // coordinatewise sum and difference, wrapping around like (byte) casts
+    public abstract byte[] add(byte[] p0, byte[] p1);
+
+    public abstract byte[] subtract(byte[] p0, byte[] p1);
+
+    // are these the same?
+    public abstract boolean equal(byte[] p0, byte[] p1);
+
+    /*
+    * Multiply the row vector v on the right by the matrix data.
+    * The result is cut down to bytes at the end, which is the
+    * same as cutting it down at every step.
+    */
+    public abstract byte[] rowTimes(byte[][] data, byte[] v);
+
+    // the coefficients in BytePoint.crossCoefficients and dotCoefficients
+    public abstract int[] crossCoefficients(byte[] p0, byte[] p1);
+
+    public abstract int[] dotCoefficients(byte[] p0, byte[] p1);
+
+    /*
+    * Reflect v if flip is true, then rotate it by angle (as in
+    * BasicAngle.getRotation()), then add shift, unless it's null.
+    * Only the generated kernels do this; the others return null,
+    * and BytePoint uses the matrices instead.
+    */
+    public byte[] transform(byte[] v, boolean flip, int angle, byte[] shift) {
+        return null;
+    }
+
+    // transform(), or what BytePoint does if there isn't one
+    private byte[] transformOrRotate(byte[] v, int angle, byte[] shift) {
+        byte[] output = transform(v,false,angle,shift);
+        if (output != null) return output;
+        return add(BasicAngle.createBasicAngle(angle).getRotation().rowTimes(v),shift);
+    }
+
+    // time one of the kernels. return nanoseconds per call.
+    private static double time(PointKernels k, int which, byte[][] points, byte[][] matrix, int reps) {
+        int n = points.length;
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < reps; r++) {
+            byte[] p0 = points[r%n];
+            byte[] p1 = points[(r*7+3)%n];
+            switch (which) {
+                case 0: sink += k.add(p0,p1)[0]; break;
+                case 1: sink += k.subtract(p0,p1)[0]; break;
+                case 2: sink += k.equal(p0,p1) ? 1 : 0; break;
+                case 3: sink += k.rowTimes(matrix,p0)[0]; break;
+                case 4: sink += k.crossCoefficients(p0,p1)[0]; break;
+                case 5: sink += k.dotCoefficients(p0,p1)[0]; break;
+                default: sink += k.transformOrRotate(p0,r%(2*Preinitializer.N),p1)[0]; break;
+            }
+        }
+        long end = System.nanoTime();
+        if (sink == 42) System.out.print("");
+        return (double)(end-start)/reps;
+    }
+
+    // microbenchmark: scalar against the others on this machine.
+    // run with --add-modules jdk.incubator.vector to see the vector version.
+    public static void main(String[] args) {
+
+        PointKernels scalar = new ScalarPointKernels();
+        java.util.List<PointKernels> others = new java.util.ArrayList<>();
+        for (String name : new String[] {"VectorPointKernels", "GeneratedPointKernels"}) {
+            PointKernels k = load(name);
+            if (k != null && k.order() == Preinitializer.N) others.add(k);
+        }
+        System.out.print("Using " + KERNELS.name() + " kernels; comparing " + scalar.name());
+        for (PointKernels k : others) System.out.print(" with " + k.name());
+        System.out.println(".");
+
+        Random rand = new Random(11);
+        byte[][] points = new byte[1024][LENGTH];
+        for (byte[] p : points) for (int i = 0; i < LENGTH; i++) p[i] = (byte)(rand.nextInt(21)-10);
+        byte[][] matrix = new byte[LENGTH][LENGTH];
+        for (byte[] row : matrix) for (int i = 0; i < LENGTH; i++) row[i] = (byte)(rand.nextInt(3)-1);
+
+        for (PointKernels other : others) {
+            // make sure they agree
+            for (int r = 0; r < points.length; r++) {
+                byte[] p0 = points[r];
+                byte[] p1 = points[(r*7+3)%points.length];
+                if (!java.util.Arrays.equals(scalar.add(p0,p1),other.add(p0,p1))
+                  ||!java.util.Arrays.equals(scalar.subtract(p0,p1),other.subtract(p0,p1))
+                  ||scalar.equal(p0,p1) != other.equal(p0,p1)
+                  ||scalar.equal(p0,p0) != other.equal(p0,p0)
+                  ||!java.util.Arrays.equals(scalar.rowTimes(matrix,p0),other.rowTimes(matrix,p0))
+                  ||!java.util.Arrays.equals(scalar.crossCoefficients(p0,p1),other.crossCoefficients(p0,p1))
+                  ||!java.util.Arrays.equals(scalar.dotCoefficients(p0,p1),other.dotCoefficients(p0,p1)))
+                    throw new IllegalArgumentException("Kernels disagree on " + java.util.Arrays.toString(p0) + " and " + java.util.Arrays.toString(p1) + ".");
+                for (int a = 0; a < 2*Preinitializer.N; a++) {
+                    ByteMatrix rot = BasicAngle.createBasicAngle(a).getRotation();
+                    for (boolean flip : new boolean[] {false, true}) {
+                        byte[] expected = scalar.add(rot.rowTimes((flip) ? Initializer.REF.rowTimes(p0) : p0),p1);
+                        byte[] got = other.transform(p0,flip,a,p1);
+                        if (got != null && !java.util.Arrays.equals(expected,got))
+                            throw new IllegalArgumentException("Transforms disagree on " + java.util.Arrays.toString(p0) + ", angle " + a + ", flip " + flip + ".");
+                    }
+                }
+            }
+
+            String[] names = new String[] {"add", "subtract", "equal", "rowTimes", "crossCoefficients", "dotCoefficients", "transform"};
+            int reps = 2000000;
+            for (int round = 0; round < 3; round++) {
+                System.out.println("round " + round + " (ns per call, " + scalar.name() + " / " + other.name() + "):");
+                for (int w = 0; w < names.length; w++) {
+                    double s = time(scalar,w,points,matrix,reps);
+                    double v = time(other,w,points,matrix,reps);
+                    System.out.println(String.format("  %-18s %7.2f %7.2f", names[w], s, v));
+                }
+            }
+        }
+
+    }
+
+} // end of class PointKernels
+
+/*
+* Plain java versions of the kernels.
+*/
+final class ScalarPointKernels extends PointKernels {
+
+    public String name() {
+        return "scalar";
+    }
+
+    public byte[] add(byte[] p0, byte[] p1) {
+        byte[] q = new byte[p0.length];
+        for (int i = 0; i < q.length; i++) q[i] = (byte)(p0[i] + p1[i]);
+        return q;
+    }
+
+    public byte[] subtract(byte[] p0, byte[] p1) {
+        byte[] q = new byte[p0.length];
+        for (int i = 0; i < q.length; i++) q[i] = (byte)(p0[i] - p1[i]);
+        return q;
+    }
+
+    public boolean equal(byte[] p0, byte[] p1) {
+        for (int i = 0; i < p0.length; i++) {
+            if (p0[i] != p1[i]) return false;
+        }
+        return true;
+    }
+
+    public byte[] rowTimes(byte[][] data, byte[] v) {
+        int n = data[0].length;
+        byte[] row = new byte[n];
+        for (int k = 0; k < n; k++) {
+            int sum = 0;
+            for (int l = 0; l < v.length; l++) sum += v[l]*data[l][k];
+            row[k] = (byte) sum;
+        }
+        return row;
+    }
+
+    public int[] crossCoefficients(byte[] p0, byte[] p1) {
+        return coefficients(p0,p1,CROSS_INDEX_A,CROSS_SIGN_A,CROSS_INDEX_B,CROSS_SIGN_B);
+    }
+
+    public int[] dotCoefficients(byte[] p0, byte[] p1) {
+        return coefficients(p0,p1,DOT_INDEX_A,DOT_SIGN_A,DOT_INDEX_B,DOT_SIGN_B);
+    }
+
+    private static int[] coefficients(byte[] p0, byte[] p1, int[][] indexA, int[][] signA, int[][] indexB, int[][] signB) {
+        int[] coeffs = new int[indexA.length];
+        for (int i = 0; i < coeffs.length; i++) {
+            int[] iA = indexA[i];
+            int[] sA = signA[i];
+            int[] iB = indexB[i];
+            int[] sB = signB[i];
+            int sum = 0;
+            for (int j = 0; j < p0.length; j++)
+                sum += p0[j] * (sA[j]*p1[iA[j]] + sB[j]*p1[iB[j]]);
+            coeffs[i] = sum;
+        }
+        return coeffs;
+    }
+
+} // end of class ScalarPointKernels
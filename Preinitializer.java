@@ -18,7 +18,7 @@ class Preinitializer {
 
     public static final int N = 11;             // the order of symmetry
 
-    public static final int MY_TILE = 0;        // the tile we're searching
+    public static final int MY_TILE = SearchContext.tileOr(0);        // the tile we're searching. BatchSearch can override it
 
     public static final float EP = 0.000001f;  // threshold value
 
@@ -28,8 +28,11 @@ class Preinitializer {
 
     public static final int NUMBER_OF_THREADS; // number of threads per client; set in static initializer
 
-    public static final int SPAWN_MAX_SIZE = 1000; // no more work units will be spawned if the queue is bigger than this size
+    public static final int SPAWN_MAX_SIZE = 20000; // no more work units will be spawned if the queue is bigger than this size
     public static final int SPAWN_MIN_TIME = 2000; // if a work unit takes longer than this time in ms, more units will be spawned
+    public static final int FRONTIER_HOT_SIZE = 2000; // work units that wait in the queue as they are. the rest wait as UnitCodec records (see FrontierQueue)
+    public static final int FRONTIER_SEGMENT_SIZE = 1 << 22; // bytes of those records to keep in memory before spilling them to disk
+    public static final String FRONTIER_SPILL_DIRECTORY = "spill"; // where the queue spills them
 
     public static final boolean SERIALIZATION_FLAG = false;          // should EmptyBoundaryPatch.solve() serialize periodically?
                                                                     // results will still be checkpointed periodically
@@ -37,11 +40,24 @@ class Preinitializer {
     public static final String SERIALIZATION_DIRECTORY = "storage"; // directory to store checkpoints in
     public static final boolean SERIALIZATION_CLEARFIRST = true;    // clear all files in storage directory before starting
     public static final boolean IGNORE_ORIENTATIONS = false;    // set to true if you don't want to use orientation data to reject configurations
+    public static final boolean TUNE_COMPATIBLE = true;    // let each thread reorder the tests in EmptyBoundaryPatch.compatible(). see CompatibilityTuner
+    public static final int POINT_WIDTH = 0;    // bits per BytePoint coordinate (8, 16, or 32). 0 means work it out from INFL
+    public static final boolean CHECK_POINT_OVERFLOW = false;    // check BytePoint arithmetic for overflow. slow; for debugging big inflations
+    public static final boolean VECTOR_KERNELS = false;    // use jdk.incubator.vector for BytePoint loops, if it's available. see PointKernels
+    public static final boolean GENERATED_KERNELS = true;    // use the unrolled kernels from PointKernelGenerator, if they were made for this N
+
+    // what we want to know about the completed patches.
+    // ALL keeps every one of them, EXISTS stops everything at the first one,
+    // and COUNT just counts them without keeping any
+    public enum SearchMode { ALL, EXISTS, COUNT }
+    public static final SearchMode SEARCH_MODE = SearchMode.ALL;
 
     public static final boolean DEBUG_MODE;
     public static final boolean SHOW_QUANTUM_TRIANGLES = true;
     // the inflation factor, represented as coefficients of
     // 1, a, a^2, etc., where a = 2*cos(pi/N).
+    // wrap the one you use in SearchContext.inflOr() so that
+    // BatchSearch can override it.
 
     public static final String MAIN_CLASS_NAME; // name of the class whose main method is running on this JVM
 
@@ -50,10 +66,22 @@ class Preinitializer {
     public static final String BREAKDOWN_OUTPUT_FILENAME = "nohow.chk"; // name of file to which we write the edge breakdowns
 
     public static final int LISTENING_PORT = 32007; // sockets will transmite/recieve on this port number
+    public static final boolean COMPRESS_FRAMES = true; // deflate big frames between the Server and Clients, if the other end agrees
+    public static final int COMPRESSION_LEVEL = 6; // Deflater level for those frames, 1 (fast) to 9 (small)
+    public static final int LEASE_TIME = 30; // seconds without hearing from a Client before the Server requeues its units
+    public static final int UNIT_CHECKPOINT_TIME = 60; // seconds between a Client's snapshots of each running unit, so a requeued unit doesn't start over
     
     public static final boolean WRITE_INTERIM_RESULTS = true; // should the Server write PatchResults preiodically?
     public static final String INTERIM_RESULT_FILENAME = "interim.chk";
     public static final String INTERIM_RESULT_BACKUP_FILENAME = "interim_backup.chk";
+    public static final boolean STORE_RESULTS = false; // write ResultStore segments instead of TriangleResults?
+    public static final String INTERIM_STORE_FILENAME = "interim" + ResultStore.SUFFIX;
+    public static final boolean DEDUPLICATE_RESULTS = false; // should the Server drop patches it has already written, up to symmetry?
+    public static final boolean GROUP_RESULTS = false; // should the Server only write one patch for each boundary signature? (the rest are discarded)
+    public static final String GROUP_INDEX_FILENAME = "groups.txt"; // where the Server writes the boundary groups
+    public static final boolean FRONTIER_LOG = false; // should the Server log its work units, so that Server -resume can pick up where it left off?
+    public static final String FRONTIER_DIRECTORY = "frontier"; // where the Server keeps that log
+    public static final int CHECKPOINT_TIME = 60; // seconds between the Server's frontier log checkpoints
 
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(1, -1, -3, 1, 1); // a+c+d 
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(0, -2, -2, 1, 1); // b+c+d 
@@ -76,7 +104,7 @@ class Preinitializer {
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(3, 0, -6, 0, 2); // we're really scraping the bottom of the barrel here.  (2d+1)
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(1, 2, 1); // the square of the really small search (1+a)^2 won't work with tile 3 
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(-1, 0, 1); // small search (104)
-    public static final ImmutableList<Integer> INFL = ImmutableList.of(-1, 1, 1); // big search (105) 
+    public static final ImmutableList<Integer> INFL = SearchContext.inflOr(ImmutableList.of(-1, 1, 1)); // big search (105) 
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(0, 1, 1); // 1 + a + b (106)
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(0, -2, 0, 1); // c (107)
     //public static final ImmutableList<Integer> INFL = ImmutableList.of(1, -2, 0, 1); // 1 + c (108)
@@ -108,9 +108,9 @@ public class PuzzleBoundary implements Serializable {
 
     // lists of triangle edges that have been placed
     // along the boundaries
-    private Stack<BasicEdge> placed0 = new Stack<>();
-    private Stack<BasicEdge> placed1 = new Stack<>();
-    private Stack<BasicEdge> placed2 = new Stack<>();
+    private PersistentStack<BasicEdge> placed0 = PersistentStack.createPersistentStack();
+    private PersistentStack<BasicEdge> placed1 = PersistentStack.createPersistentStack();
+    private PersistentStack<BasicEdge> placed2 = PersistentStack.createPersistentStack();
 
     // BytePoints indicating how far we've covered along each edge
     // the main purpose is to make sure we don't add things to
@@ -249,6 +249,15 @@ public class PuzzleBoundary implements Serializable {
         // compute EDGE_ONE_TOO_CLOSE
         EDGE_ONE_TOO_CLOSE = VECTOR1.crossProduct(VERTICES[0]) + TOO_CLOSE;
 
+        // BytePoint.WIDTH was chosen using Initializer.EDGE_POINT_BOUND,
+        // so make sure that the edge points really are that small
+        for (BytePoint[] E : new BytePoint[][] {E0, E1, E2, VERTICES}) {
+            for (BytePoint p : E) {
+                if (p.maxCoordinate() > Initializer.EDGE_POINT_BOUND)
+                    throw new IllegalArgumentException("Edge point " + p + " is bigger than the bound " + Initializer.EDGE_POINT_BOUND + " that we used to pick the width of the coordinates.");
+            }
+        }
+
     } // static initialization ends here
 
     // private constructor
@@ -275,7 +284,7 @@ public class PuzzleBoundary implements Serializable {
     }
 
     // private constructor
-    private PuzzleBoundary(boolean[] b0,boolean[] b1,boolean[] b2,Stack<BasicEdge> e0,Stack<BasicEdge> e1,Stack<BasicEdge> e2,EdgeBreakdownTree t,BytePoint f0,BytePoint f1,BytePoint f2) {
+    private PuzzleBoundary(boolean[] b0,boolean[] b1,boolean[] b2,PersistentStack<BasicEdge> e0,PersistentStack<BasicEdge> e1,PersistentStack<BasicEdge> e2,EdgeBreakdownTree t,BytePoint f0,BytePoint f1,BytePoint f2) {
         block0 = b0;
         block1 = b1;
         block2 = b2;
@@ -306,12 +315,10 @@ public class PuzzleBoundary implements Serializable {
         for (int i = 0; i < b0.length; i++) b0[i] = block0[i];
         for (int i = 0; i < b1.length; i++) b1[i] = block1[i];
         for (int i = 0; i < b2.length; i++) b2[i] = block2[i];
-        Stack<BasicEdge> e0 = new Stack<>();
-        Stack<BasicEdge> e1 = new Stack<>();
-        Stack<BasicEdge> e2 = new Stack<>();
-        for (int i = 0; i < placed0.size(); i++) e0.push(placed0.get(i));
-        for (int i = 0; i < placed1.size(); i++) e1.push(placed1.get(i));
-        for (int i = 0; i < placed2.size(); i++) e2.push(placed2.get(i));
+        // the placed edges are persistent, so we share them
+        PersistentStack<BasicEdge> e0 = placed0.deepCopy();
+        PersistentStack<BasicEdge> e1 = placed1.deepCopy();
+        PersistentStack<BasicEdge> e2 = placed2.deepCopy();
         EdgeBreakdownTree t = (breakdown == null) ? null : breakdown.deepCopy();
         return new PuzzleBoundary(b0,b1,b2,e0,e1,e2,t,frontier0,frontier1,frontier2);
     }
@@ -343,7 +350,7 @@ public class PuzzleBoundary implements Serializable {
     // this will return true for points that are on the edge, so
     // we need to check for incidence separately
     public static boolean overTheEdge(BytePoint p) {
-        return (VECTOR0.crossProduct(p) < TOO_CLOSE || VECTOR2.crossProduct(p) < TOO_CLOSE || VECTOR1.crossProduct(p) < EDGE_ONE_TOO_CLOSE);
+        return (VECTOR0.compareCross(p,TOO_CLOSE) < 0 || VECTOR2.compareCross(p,TOO_CLOSE) < 0 || VECTOR1.compareCross(p,EDGE_ONE_TOO_CLOSE) < 0);
     }
 
     // a triple-valued function
@@ -510,14 +517,14 @@ public class PuzzleBoundary implements Serializable {
     // the int i should be 0, 1, or 2 depending on which edge we want
     public EdgeBreakdown getBreakdown(int i) {
         if (i < 0||i > 2) throw new IllegalArgumentException("Can't get breakdown number " + i + ".");
-        Stack<BasicEdge> E = (i==0)? placed0 : ((i==1)? placed1 : placed2);
+        PersistentStack<BasicEdge> E = (i==0)? placed0 : ((i==1)? placed1 : placed2);
         BytePoint lastVertex = VERTICES[(i+1)%3];
         boolean notDone = false;
         List<BasicEdgeLength> l = new ArrayList<>();
         List<Orientation> o = new ArrayList<>();
         do {
             notDone = false;
-            for (BasicEdge e : E) {
+            for (BasicEdge e : E.fromTop()) {
                 if (e.getEnds()[0].equals(lastVertex)) {
                     l.add(e.getLength());
                     o.add(e.getOrientation()); // I hope this is the right way
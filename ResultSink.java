@@ -0,0 +1,386 @@
+/*************************************************************************
+ *  Compilation:  javac ResultSink.java
+ *  Execution:    java ResultSink [patches] [threads]
+ *
+ *  Somewhere to put completed patches that doesn't make the threads
+ *  that find them wait for each other, and doesn't keep them all
+ *  on the heap.
+ *
+ *  Each thread that adds patches gets its own ring buffer, which
+ *  only that thread writes to.  A background writer empties the
+ *  rings and writes the patches to disk in segments of at most
+ *  segmentSize patches each.  The segments are TriangleResults,
+ *  just like the interim files we used to write, so the display
+ *  and combine tools read them the same way, unless the file names
+ *  end in ResultStore.SUFFIX, in which case they're ResultStore
+ *  segments.
+ *
+ *  The writer can also run the patches through Filters (like a
+ *  PatchDeduplicator or a BoundaryGrouper) before they get to a
+ *  segment, and drop the ones that any of them don't want.
+ *
+ *  If the writer falls behind and a ring fills up, the thread that
+ *  owns it waits until there's room.  So the most patches we ever
+ *  hold is RING_SIZE per thread plus one segment.
+ *
+ *  flush() waits until everything that's been added is on disk (or
+ *  dropped), so the Server's FrontierLog knows which units are safe
+ *  to call done.  If a segment can't be written, the writer keeps
+ *  it and tries again every RETRY_WAIT ms, and stops taking new
+ *  patches until it succeeds, so the threads adding them wait.
+ *  Meanwhile flush() returns false, and nothing after the segment
+ *  counts as written.
+ *
+ *************************************************************************/
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+public class ResultSink {
+
+    // the number of patches each thread can have waiting
+    public static final int RING_SIZE = 1024;
+
+    // how long the writer sleeps when there's nothing to do, in ns
+    private static final long IDLE_WAIT = 10000000L;
+
+    // how long the writer waits before trying a failed segment again, in ms
+    private static final long RETRY_WAIT = 10000L;
+
+    // a single-writer ring buffer.
+    // tail belongs to the thread that adds patches, and head
+    // belongs to the writer.  each only reads the other's.
+    static final class Ring {
+
+        private final ImmutablePatch[] slots = new ImmutablePatch[RING_SIZE];
+        private final AtomicLong head = new AtomicLong(0L);
+        private final AtomicLong tail = new AtomicLong(0L);
+
+        // add p, or return false if we're full
+        boolean offer(ImmutablePatch p) {
+            long t = tail.get();
+            if (t - head.get() == RING_SIZE) return false;
+            slots[(int)(t & (RING_SIZE-1))] = p;
+            tail.lazySet(t+1);
+            return true;
+        }
+
+        // take the oldest patch, or return null if we're empty
+        ImmutablePatch poll() {
+            long h = head.get();
+            if (h == tail.get()) return null;
+            int i = (int)(h & (RING_SIZE-1));
+            ImmutablePatch p = slots[i];
+            slots[i] = null;
+            head.lazySet(h+1);
+            return p;
+        }
+
+        // the number of patches that have ever been added
+        long added() {
+            return tail.get();
+        }
+
+    } // end of class Ring
+
+    // the file names, with a %08d for the segment number
+    private final String pattern;
+
+    // the most patches in one segment
+    private final int segmentSize;
+
+    // write a partial segment if it's been waiting this long, in ms
+    private final long flushInterval;
+
+    // one Ring per thread, and a list of all of them for the writer
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Ring> ring = new ThreadLocal<Ring>() {
+        protected Ring initialValue() {
+            Ring r = new Ring();
+            rings.add(r);
+            return r;
+        }
+    };
+
+    // the writer, which starts with the first patch
+    private final AtomicReference<Thread> writer = new AtomicReference<>();
+    private volatile boolean closed = false;
+
+    // something that decides which patches get written.
+    // only the writer calls it, so it doesn't have to be thread-safe.
+    public interface Filter {
+
+        // should we write p?
+        public boolean keep(ImmutablePatch p) throws IOException;
+
+        // there are no more patches
+        public void close() throws IOException;
+
+    } // end of interface Filter
+
+    private final List<Filter> filters = new CopyOnWriteArrayList<>();
+
+    // counts of patches and segments written, and patches dropped
+    private final AtomicLong written = new AtomicLong(0L);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final AtomicInteger segments = new AtomicInteger(0);
+
+    // the number of patches that we're done with: written or dropped.
+    // patches in a segment that we couldn't write don't count.
+    private final AtomicLong settled = new AtomicLong(0L);
+
+    // did the last attempt to write a segment fail?
+    private volatile boolean failing = false;
+
+    // somebody in flush() is waiting for this many patches to settle
+    private volatile long flushTarget = 0L;
+
+    // the number of the first segment we write
+    private int firstSegment = 0;
+
+    // private constructor
+    private ResultSink(String pattern, int segmentSize, long flushInterval) {
+        this.pattern = pattern;
+        this.segmentSize = segmentSize;
+        this.flushInterval = flushInterval;
+    }
+
+    // public static factory method.
+    // pattern is the name of the segment files, with a %08d in it.
+    public static ResultSink createResultSink(String pattern, int segmentSize, long flushInterval) {
+        if (segmentSize < 1) throw new IllegalArgumentException("Bad segment size " + segmentSize + ".");
+        if (String.format(pattern,0).equals(String.format(pattern,1))) throw new IllegalArgumentException("File name pattern " + pattern + " doesn't number the segments.");
+        return new ResultSink(pattern, segmentSize, flushInterval);
+    }
+
+    // only write the patches that f keeps.
+    // call this before adding any patches.
+    public void addFilter(Filter f) {
+        if (writer.get() != null) throw new IllegalStateException("Adding a Filter after the ResultSink has started.");
+        filters.add(f);
+    }
+
+    // don't overwrite the segments that are already there: start
+    // numbering ours after them.  call this before adding any patches.
+    public void continueNumbering() {
+        if (writer.get() != null) throw new IllegalStateException("Renumbering a ResultSink after it has started.");
+        int k = 0;
+        while (new File(String.format(pattern, k)).exists()) k++;
+        firstSegment = k;
+    }
+
+    // add a patch. this only waits if our ring is full.
+    public void add(ImmutablePatch p) {
+        if (closed) throw new IllegalStateException("Adding a patch to a closed ResultSink.");
+        if (writer.get() == null) start();
+        Ring r = ring.get();
+        while (!r.offer(p)) {
+            LockSupport.unpark(writer.get());
+            LockSupport.parkNanos(IDLE_WAIT/10);
+        }
+    }
+
+    public void addAll(Collection<ImmutablePatch> c) {
+        for (ImmutablePatch p : c) add(p);
+    }
+
+    // the number of patches that have been added, written or not
+    public long size() {
+        long output = 0L;
+        for (Ring r : rings) output += r.added();
+        return output;
+    }
+
+    // the number of patches that have been written to disk
+    public long written() {
+        return written.get();
+    }
+
+    // the number of patches that the filters have dropped
+    public long dropped() {
+        return dropped.get();
+    }
+
+    // the number of segment files that have been written
+    public int segments() {
+        return segments.get();
+    }
+
+    // wait until all the patches that have been added so far are
+    // written or dropped.  the writer writes a partial segment if it
+    // has to.  return false if they aren't all on disk, because a
+    // segment couldn't be written.
+    public boolean flush() {
+        Thread w = writer.get();
+        if (w == null) return true;
+        long target = size();
+        synchronized (this) {
+            if (target > flushTarget) flushTarget = target;
+        }
+        while (settled.get() < target && w.isAlive() && !failing) {
+            LockSupport.unpark(w);
+            LockSupport.parkNanos(IDLE_WAIT/10);
+        }
+        return settled.get() >= target;
+    }
+
+    // the number of patches that have been added but aren't written
+    // or dropped yet
+    public long unsettled() {
+        return size() - settled.get();
+    }
+
+    // write everything that's left and stop the writer.
+    // nobody should be adding patches any more.
+    public void close() throws InterruptedException {
+        closed = true;
+        Thread w = writer.get();
+        if (w == null) return;
+        LockSupport.unpark(w);
+        w.join();
+        for (Filter f : filters) {
+            try {
+                f.close();
+            } catch (IOException e) {
+                System.out.println("\nError while closing " + f + "!");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // start the writer, unless somebody else just did
+    private void start() {
+        Thread w = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "result writer");
+        if (writer.compareAndSet(null, w)) w.start();
+    }
+
+    // the writer's loop
+    private void drain() {
+        List<ImmutablePatch> segment = new ArrayList<>(segmentSize);
+        long lastWrite = System.currentTimeMillis();
+        while (true) {
+            boolean finished = closed; // check before we look, so we don't miss anything
+
+            // if we couldn't write the last segment, don't take any
+            // more patches until we can
+            if (failing) {
+                if (finished || System.currentTimeMillis() - lastWrite > RETRY_WAIT) {
+                    if (write(segment)) segment = new ArrayList<>(segmentSize);
+                    lastWrite = System.currentTimeMillis();
+                }
+                if (failing && finished) {
+                    System.out.println("\nGiving up: " + unsettled() + " results were never written!");
+                    return;
+                }
+                if (failing) {
+                    LockSupport.parkNanos(IDLE_WAIT);
+                    continue;
+                }
+            }
+
+            int found = 0;
+            for (Ring r : rings) {
+                ImmutablePatch p;
+                while (!failing && (p = r.poll()) != null) {
+                    found++;
+                    if (!keep(p)) continue;
+                    segment.add(p);
+                    if (segment.size() == segmentSize) {
+                        if (write(segment)) segment = new ArrayList<>(segmentSize);
+                        lastWrite = System.currentTimeMillis();
+                    }
+                }
+            }
+            if (!failing && segment.size() > 0 && (finished || System.currentTimeMillis() - lastWrite > flushInterval || settled.get() < flushTarget)) {
+                if (write(segment)) segment = new ArrayList<>(segmentSize);
+                lastWrite = System.currentTimeMillis();
+            }
+            if (finished && !failing) return;
+            if (found == 0) LockSupport.parkNanos(IDLE_WAIT);
+        }
+    }
+
+    // do all the filters want p?
+    private boolean keep(ImmutablePatch p) {
+        for (Filter f : filters) {
+            try {
+                if (!f.keep(p)) {
+                    dropped.incrementAndGet();
+                    settled.incrementAndGet();
+                    return false;
+                }
+            } catch (IOException e) {
+                // if we can't tell, keep it
+                System.out.println("\nError while filtering results!");
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    // write one segment, and return true if it worked.
+    // if it didn't, the caller keeps the segment and tries again.
+    private boolean write(List<ImmutablePatch> segment) {
+        String filename = String.format(pattern, firstSegment + segments.get());
+        try {
+            File parent = new File(filename).getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+                throw new IOException("Can't make the directory " + parent + ".");
+            if (filename.endsWith(ResultStore.SUFFIX)) {
+                ResultStore.writeSegment(new File(filename), Preinitializer.MY_TILE, segment);
+            } else {
+                try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+                    out.writeObject(new TriangleResults(segment));
+                }
+            }
+            segments.incrementAndGet();
+            written.addAndGet(segment.size());
+            settled.addAndGet(segment.size());
+            failing = false;
+            System.out.println("\nWrote " + segment.size() + " results to " + filename + ".");
+            return true;
+        } catch (IOException e) {
+            System.out.println("\nError while writing results to " + filename + "! Trying again in " + RETRY_WAIT/1000 + " s.");
+            e.printStackTrace();
+            failing = true;
+            return false;
+        }
+    }
+
+    // test client: lots of threads adding the same patch at once
+    public static void main(String[] args) throws Exception {
+
+        final int patches = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        EmptyBoundaryWorkUnitFactory f = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+        EmptyBoundaryPatch seed = f.nextPatch();
+        seed.setKillSwitch(new AtomicBoolean(false));
+        final ImmutablePatch p = seed.dumpImmutablePatch();
+
+        File directory = new File(System.getProperty("java.io.tmpdir"), "sinktest");
+        directory.mkdirs();
+        final ResultSink sink = createResultSink(new File(directory, "test-%08d.chk").getPath(), 10000, 1000L);
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < patches; i++) sink.add(p);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        sink.close();
+        System.out.println(sink.size() + " added, " + sink.written() + " written in " + sink.segments() + " segments, " + (System.currentTimeMillis() - start) + " ms.");
+
+    }
+
+} // end of class ResultSink
@@ -0,0 +1,447 @@
+/*************************************************************************
+ *  Compilation:  javac ResultStore.java
+ *  Execution:    java ResultStore pack directory tile file.chk [file.chk ...]
+ *                java ResultStore info directory
+ *                java ResultStore find directory tile [breakdown0 [breakdown1 [breakdown2]]]
+ *
+ *  A directory of completed patches that we can read without
+ *  deserializing all of it.  The post-processing tools read whole
+ *  TriangleResults files into memory before they can look at a
+ *  single patch; this lets them walk through the patches one at a
+ *  time, or go straight to the ones they want.
+ *
+ *  The directory holds segment files (ending in SUFFIX), each
+ *  with the patches from one tile.  A segment looks like this:
+ *
+ *  - MAGIC, and the length of the header.
+ *  - the header: the PatchCodec header, the tile, the number of
+ *    patches, and a dictionary of the edge breakdowns (the lengths
+ *    on one side of the big triangle) that the patches use.
+ *  - the record table: for each patch, the offset and length of
+ *    its PatchCodec record and the dictionary numbers of its three
+ *    edge breakdowns.  Every entry is RECORD_WIDTH bytes, so we can
+ *    find the ith patch without looking at the others.
+ *  - the breakdown index: the patch numbers, sorted by their three
+ *    breakdowns, so we can find the patches with given breakdowns
+ *    by binary search.
+ *  - the PatchCodec records.
+ *
+ *  Segments are memory-mapped, so the operating system decides how
+ *  much of them to keep in memory, and only the patches we ask for
+ *  get decoded.  A segment has to be smaller than 2 GB; ResultSink
+ *  writes them much smaller than that.
+ *
+ *  The tile index is just the segments sorted by tile.
+ *
+ *  PatchEnsemble and TriangleResultsCombine take a ResultStore
+ *  directory wherever they take the prefix of the interim files.
+ *  TriangleResultsTest reads the segments in interim/ if there are
+ *  no interim files, and TriangleResultsMove reads anything that
+ *  read() does.
+ *
+ *************************************************************************/
+
+import com.google.common.collect.Iterables;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class ResultStore {
+
+    // the ending of segment file names
+    public static final String SUFFIX = ".seg";
+
+    // the first four bytes of every segment
+    private static final int MAGIC = 0x50534547;
+
+    // the version of the segment layout.
+    // the records have their own version, in PatchCodec.
+    private static final int VERSION = 1;
+
+    // the size of an entry in the record table:
+    // offset, length, and three breakdowns
+    private static final int RECORD_WIDTH = 20;
+
+    // one segment file
+    public static final class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int tile;
+        private final int size;
+
+        // the edge breakdowns, as lists of edge length indices
+        private final List<List<Integer>> breakdowns;
+        private final Map<List<Integer>,Integer> breakdownNumbers = new HashMap<>();
+
+        // where the record table and the breakdown index start
+        private final int table;
+        private final int index;
+
+        // map and check a segment file
+        private Segment(File file) throws IOException {
+            this.file = file;
+            try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+                if (f.length() > Integer.MAX_VALUE) throw new IllegalArgumentException("Segment " + file + " is too big to map.");
+                buffer = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+            }
+            if (buffer.getInt(0) != MAGIC) throw new IllegalArgumentException(file + " isn't a ResultStore segment.");
+            byte[] header = new byte[buffer.getInt(4)];
+            ByteBuffer b = buffer.duplicate();
+            b.position(8);
+            b.get(header);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            int version = in.readInt();
+            if (version != VERSION) throw new IllegalArgumentException("Segment " + file + " has version " + version + ", but this is version " + VERSION + ".");
+            PatchCodec.readHeader(in);
+            tile = in.readInt();
+            size = in.readInt();
+            int n = in.readInt();
+            List<List<Integer>> preBreakdowns = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                List<Integer> lengths = new ArrayList<>();
+                int k = in.readInt();
+                for (int j = 0; j < k; j++) lengths.add(in.readInt());
+                preBreakdowns.add(Collections.unmodifiableList(lengths));
+                breakdownNumbers.put(lengths, i);
+            }
+            breakdowns = Collections.unmodifiableList(preBreakdowns);
+            table = 8 + header.length;
+            index = table + RECORD_WIDTH*size;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getTile() {
+            return tile;
+        }
+
+        // the number of patches
+        public int size() {
+            return size;
+        }
+
+        // the ith patch
+        public ImmutablePatch get(int i) {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Patch " + i + " of " + size + " in " + file + ".");
+            byte[] record = new byte[buffer.getInt(table + RECORD_WIDTH*i + 4)];
+            ByteBuffer b = buffer.duplicate();
+            b.position(buffer.getInt(table + RECORD_WIDTH*i));
+            b.get(record);
+            return PatchCodec.decode(record);
+        }
+
+        // the dictionary number of breakdown j (0, 1, or 2) of patch i
+        private int breakdown(int i, int j) {
+            return buffer.getInt(table + RECORD_WIDTH*i + 8 + 4*j);
+        }
+
+        // the patch number at position k of the breakdown index
+        private int indexed(int k) {
+            return buffer.getInt(index + 4*k);
+        }
+
+        // compare the breakdowns of patch i with keys, as far as
+        // the first null key
+        private int compare(int i, Integer[] keys) {
+            for (int j = 0; j < 3 && keys[j] != null; j++) {
+                int c = Integer.compare(breakdown(i,j), keys[j]);
+                if (c != 0) return c;
+            }
+            return 0;
+        }
+
+        // the first position in the breakdown index at which the
+        // patch is at least keys (if after is false) or greater
+        // than keys (if after is true)
+        private int search(Integer[] keys, boolean after) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compare(indexed(mid), keys);
+                if (c < 0 || (after && c == 0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // the numbers of the patches whose breakdowns have the
+        // same edge lengths as bd0, bd1, and bd2.
+        // null matches anything.
+        public List<Integer> find(EdgeBreakdown bd0, EdgeBreakdown bd1, EdgeBreakdown bd2) {
+            EdgeBreakdown[] wanted = new EdgeBreakdown[] {bd0, bd1, bd2};
+            Integer[] keys = new Integer[3];
+            for (int j = 0; j < 3; j++) {
+                if (wanted[j] == null) continue;
+                keys[j] = breakdownNumbers.get(lengths(wanted[j]));
+                if (keys[j] == null) return Collections.emptyList(); // nobody has it
+            }
+
+            // binary search on the keys before the first null,
+            // then check the rest one by one
+            Integer[] prefix = new Integer[3];
+            for (int j = 0; j < 3 && keys[j] != null; j++) prefix[j] = keys[j];
+            List<Integer> output = new ArrayList<>();
+            int last = search(prefix, true);
+            for (int k = search(prefix, false); k < last; k++) {
+                int i = indexed(k);
+                boolean match = true;
+                for (int j = 0; j < 3; j++) {
+                    if (keys[j] != null && breakdown(i,j) != keys[j]) match = false;
+                }
+                if (match) output.add(i);
+            }
+            Collections.sort(output);
+            return output;
+        }
+
+        // the patches, decoded one at a time
+        public Iterable<ImmutablePatch> patches() {
+            return patches(null);
+        }
+
+        // the patches with these numbers, or all of them if numbers is null
+        public Iterable<ImmutablePatch> patches(final List<Integer> numbers) {
+            return new Iterable<ImmutablePatch>() {
+                public Iterator<ImmutablePatch> iterator() {
+                    return new Iterator<ImmutablePatch>() {
+                        private int k = 0;
+                        public boolean hasNext() {
+                            return k < ((numbers == null) ? size : numbers.size());
+                        }
+                        public ImmutablePatch next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            return get((numbers == null) ? k++ : numbers.get(k++));
+                        }
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+        // the edge breakdowns that appear in this segment
+        public List<List<Integer>> getBreakdowns() {
+            return breakdowns;
+        }
+
+    } // end of class Segment
+
+    // the segments, sorted by tile and then by file name
+    private final List<Segment> segments;
+
+    // private constructor
+    private ResultStore(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    // public static factory method.
+    // open all of the segments in directory.
+    public static ResultStore openResultStore(File directory) throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null) throw new IllegalArgumentException(directory + " isn't a directory.");
+        Arrays.sort(files);
+        List<Segment> output = new ArrayList<>();
+        for (File f : files) output.add(new Segment(f));
+        Collections.sort(output, new Comparator<Segment>() {
+            public int compare(Segment s, Segment t) {
+                return Integer.compare(s.tile, t.tile); // stable, so file order within a tile
+            }
+        });
+        return new ResultStore(Collections.unmodifiableList(output));
+    }
+
+    // the edge lengths of a breakdown, as indices
+    private static List<Integer> lengths(EdgeBreakdown b) {
+        List<Integer> output = new ArrayList<>(b.size());
+        for (BasicEdgeLength l : b.getLengths()) output.add(BasicEdgeLength.ALL_EDGE_LENGTHS.indexOf(l));
+        return output;
+    }
+
+    // write patches from tile to a new segment file
+    public static void writeSegment(File file, int tile, List<ImmutablePatch> patches) throws IOException {
+
+        // encode the patches and number the breakdowns
+        final int n = patches.size();
+        byte[][] records = new byte[n][];
+        final int[][] keys = new int[n][3];
+        Map<List<Integer>,Integer> numbers = new HashMap<>();
+        List<List<Integer>> breakdowns = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            ImmutablePatch p = patches.get(i);
+            records[i] = PatchCodec.encode(p);
+            EdgeBreakdown[] bd = new EdgeBreakdown[] {p.getEdge0(), p.getEdge1(), p.getEdge2()};
+            for (int j = 0; j < 3; j++) {
+                List<Integer> l = lengths(bd[j]);
+                Integer k = numbers.get(l);
+                if (k == null) {
+                    k = breakdowns.size();
+                    numbers.put(l, k);
+                    breakdowns.add(l);
+                }
+                keys[i][j] = k;
+            }
+        }
+
+        // sort the patch numbers by breakdowns
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) sorted[i] = i;
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer x, Integer y) {
+                for (int j = 0; j < 3; j++) {
+                    int c = Integer.compare(keys[x][j], keys[y][j]);
+                    if (c != 0) return c;
+                }
+                return Integer.compare(x, y);
+            }
+        });
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(VERSION);
+        PatchCodec.writeHeader(header);
+        header.writeInt(tile);
+        header.writeInt(n);
+        header.writeInt(breakdowns.size());
+        for (List<Integer> l : breakdowns) {
+            header.writeInt(l.size());
+            for (Integer i : l) header.writeInt(i);
+        }
+        header.flush();
+
+        long offset = 8L + headerBytes.size() + (RECORD_WIDTH + 4L)*n;
+        long total = offset;
+        for (byte[] r : records) total += r.length;
+        if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many patches (" + n + ") for one segment.");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            for (int i = 0; i < n; i++) {
+                out.writeInt((int) offset);
+                out.writeInt(records[i].length);
+                for (int j = 0; j < 3; j++) out.writeInt(keys[i][j]);
+                offset += records[i].length;
+            }
+            for (Integer i : sorted) out.writeInt(i);
+            for (byte[] r : records) out.write(r);
+        }
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    // the segments for one tile
+    public List<Segment> getSegments(int tile) {
+        List<Segment> output = new ArrayList<>();
+        for (Segment s : segments) {
+            if (s.tile == tile) output.add(s);
+        }
+        return output;
+    }
+
+    // the total number of patches
+    public long size() {
+        long output = 0;
+        for (Segment s : segments) output += s.size;
+        return output;
+    }
+
+    // all the patches for tile with these breakdowns, decoded one
+    // at a time.  null matches anything.
+    public Iterable<ImmutablePatch> find(int tile, EdgeBreakdown bd0, EdgeBreakdown bd1, EdgeBreakdown bd2) {
+        List<Iterable<ImmutablePatch>> parts = new ArrayList<>();
+        for (Segment s : getSegments(tile)) parts.add(s.patches(s.find(bd0,bd1,bd2)));
+        return Iterables.concat(parts);
+    }
+
+    // all the patches in a TriangleResults file, a segment, or a
+    // ResultStore directory.  segments are decoded one patch at a time.
+    public static Iterable<ImmutablePatch> read(String name) throws IOException, ClassNotFoundException {
+        File f = new File(name);
+        if (f.isDirectory()) {
+            List<Iterable<ImmutablePatch>> parts = new ArrayList<>();
+            for (Segment s : openResultStore(f).getSegments()) parts.add(s.patches());
+            return Iterables.concat(parts);
+        }
+        if (name.endsWith(SUFFIX)) return new Segment(f).patches();
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            return ((TriangleResults) in.readObject()).getPatches();
+        }
+    }
+
+    // turn a list of edge length indices like 0,2,2 into a breakdown
+    private static EdgeBreakdown parseBreakdown(String s) {
+        if (s.equals("-")) return null;
+        String[] fields = s.split(",");
+        BasicEdgeLength[] l = new BasicEdgeLength[fields.length];
+        Orientation[] o = new Orientation[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            l[i] = BasicEdgeLength.ALL_EDGE_LENGTHS.get(Integer.parseInt(fields[i].trim()));
+            o[i] = l[i].getOrientation(0); // not used
+        }
+        return EdgeBreakdown.createEdgeBreakdown(l, o);
+    }
+
+    // test client and command-line tool
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("usage: java ResultStore pack directory tile file.chk [file.chk ...]");
+            System.out.println("       java ResultStore info directory");
+            System.out.println("       java ResultStore find directory tile [breakdown0 [breakdown1 [breakdown2]]]");
+            System.out.println("breakdowns are lists of edge length indices like 0,2,2, or - for any.");
+            return;
+        }
+        File directory = new File(args[1]);
+
+        if (args[0].equals("pack")) {
+            directory.mkdirs();
+            int tile = Integer.parseInt(args[2]);
+            for (int i = 3; i < args.length; i++) {
+                List<ImmutablePatch> patches;
+                try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(args[i])))) {
+                    patches = ((TriangleResults) in.readObject()).getPatches();
+                }
+                File out = new File(directory, String.format("tile%d-%08d%s", tile, i-3, SUFFIX));
+                writeSegment(out, tile, patches);
+                System.out.println("Wrote " + patches.size() + " patches from " + args[i] + " to " + out + " (" + new File(args[i]).length() + " -> " + out.length() + " bytes).");
+            }
+        } else if (args[0].equals("info")) {
+            ResultStore store = openResultStore(directory);
+            for (Segment s : store.getSegments())
+                System.out.println(s.getFile() + ": tile " + s.getTile() + ", " + s.size() + " patches, " + s.getBreakdowns().size() + " edge breakdowns " + s.getBreakdowns());
+            System.out.println(store.size() + " patches in total.");
+        } else if (args[0].equals("find")) {
+            ResultStore store = openResultStore(directory);
+            int tile = Integer.parseInt(args[2]);
+            EdgeBreakdown[] bd = new EdgeBreakdown[3];
+            for (int j = 0; j < 3; j++) bd[j] = (args.length > 3+j) ? parseBreakdown(args[3+j]) : null;
+            long start = System.nanoTime();
+            int found = 0;
+            for (ImmutablePatch p : store.find(tile, bd[0], bd[1], bd[2])) {
+                if (found == 0) System.out.println(p.getEdge0() + "\n" + p.getEdge1() + "\n" + p.getEdge2());
+                found++;
+            }
+            System.out.println(String.format("%d patches found and decoded in %.1f ms.", found, (System.nanoTime() - start)/1e6));
+        } else {
+            throw new IllegalArgumentException("Unknown command " + args[0] + ".");
+        }
+
+    }
+
+} // end of class ResultStore
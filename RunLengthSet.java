@@ -0,0 +1,143 @@
+/*************************************************************************
+ *  Compilation:  javac RunLengthSet.java
+ *  Execution:    java RunLengthSet [size] [window]
+ *
+ *  A set of longs, stored as a sorted list of runs of consecutive
+ *  numbers.  We use it for the IDs of the work units that are done.
+ *  The Server gives out unit IDs in order, and units mostly finish
+ *  in about the order they were made, so the runs merge as we go and
+ *  a few thousand of them cover millions of units.
+ *
+ *  add() and contains() find the run with a binary search.  add()
+ *  might have to shift the runs after it, but there aren't many.
+ *
+ *  Not thread-safe.
+ *
+ *  The test client adds the numbers up to size in a scrambled order
+ *  (each one at most window places from where it belongs), checks
+ *  everything against a HashSet, and says how many runs it took.
+ *
+ *************************************************************************/
+
+import java.util.*;
+
+public class RunLengthSet {
+
+    // the runs are start[i] to end[i], inclusive, for i < runs.
+    // they're sorted, and there's a gap between each one and the next.
+    private long[] start = new long[16];
+    private long[] end = new long[16];
+    private int runs = 0;
+
+    // the number of numbers in the set
+    private long size = 0L;
+
+    // private constructor
+    private RunLengthSet() {
+    }
+
+    // public static factory method
+    public static RunLengthSet createRunLengthSet() {
+        return new RunLengthSet();
+    }
+
+    // the last run that starts at or before x, or -1
+    private int find(long x) {
+        int lo = 0;
+        int hi = runs - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+
+    public boolean contains(long x) {
+        int i = find(x);
+        return i >= 0 && x <= end[i];
+    }
+
+    // add x.  return false if it was already there.
+    public boolean add(long x) {
+        int i = find(x);
+        if (i >= 0 && x <= end[i]) return false;
+        size++;
+        boolean left = (i >= 0 && end[i] == x - 1);
+        boolean right = (i + 1 < runs && start[i+1] == x + 1);
+        if (left && right) {
+            // x fills the gap between two runs
+            end[i] = end[i+1];
+            System.arraycopy(start, i+2, start, i+1, runs - i - 2);
+            System.arraycopy(end, i+2, end, i+1, runs - i - 2);
+            runs--;
+        } else if (left) {
+            end[i] = x;
+        } else if (right) {
+            start[i+1] = x;
+        } else {
+            // a new run of one
+            if (runs == start.length) {
+                start = Arrays.copyOf(start, 2*runs);
+                end = Arrays.copyOf(end, 2*runs);
+            }
+            System.arraycopy(start, i+1, start, i+2, runs - i - 1);
+            System.arraycopy(end, i+1, end, i+2, runs - i - 1);
+            start[i+1] = x;
+            end[i+1] = x;
+            runs++;
+        }
+        return true;
+    }
+
+    // the number of numbers in the set
+    public long size() {
+        return size;
+    }
+
+    // the number of runs
+    public int runs() {
+        return runs;
+    }
+
+    public String toString() {
+        return "RunLengthSet (" + size + " numbers in " + runs + " runs)";
+    }
+
+    // test client
+    public static void main(String[] args) {
+
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int window = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+
+        // 1 to n, with each block of window numbers shuffled
+        List<Long> numbers = new ArrayList<>(n);
+        for (long i = 1; i <= n; i++) numbers.add(i);
+        Random random = new Random(0L);
+        for (int i = 0; i < n; i += window) Collections.shuffle(numbers.subList(i, Math.min(n, i + window)), random);
+
+        RunLengthSet s = createRunLengthSet();
+        Set<Long> check = new HashSet<>();
+        int failures = 0;
+        int mostRuns = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            long x = numbers.get(i);
+            if (s.add(x) != check.add(x)) failures++;
+            // add some of them twice
+            if (i % 7 == 0 && s.add(x)) failures++;
+            mostRuns = Math.max(mostRuns, s.runs());
+        }
+        long time = System.currentTimeMillis() - start;
+        for (long x = 0; x <= n + 1; x++) {
+            if (s.contains(x) != check.contains(x)) failures++;
+        }
+        if (s.size() != check.size() || s.runs() != 1) failures++;
+        System.out.println(s + ", at most " + mostRuns + " runs along the way, " + failures + " failures, " + time + " ms.");
+
+    }
+
+} // end of class RunLengthSet
@@ -0,0 +1,88 @@
+/*************************************************************************
+ *  Compilation:  javac SearchContext.java
+ *
+ *  The things that change from one search to the next: the tile
+ *  we're searching and the inflation factor.  Normally these come
+ *  straight from Preinitializer.  BatchSearch runs each search in
+ *  its own class loader, and uses this to tell the Preinitializer
+ *  in that class loader which (tile, INFL) it belongs to.
+ *
+ *  BatchSearch loads this class from the ordinary class path, so
+ *  there's only one copy of it, and all of the searches can share
+ *  the thread pool that it holds.
+ *
+ *************************************************************************/
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
+public final class SearchContext {
+
+    // the context for the Preinitializer that's being initialized
+    // on this thread, if any
+    private static final ThreadLocal<SearchContext> CURRENT = new ThreadLocal<>();
+
+    // the tile we're searching
+    private final int tile;
+
+    // the inflation factor
+    private final ImmutableList<Integer> infl;
+
+    // the threads that do the work, shared by all searches
+    private final ThreadPoolExecutor pool;
+
+    // private constructor
+    private SearchContext(int tile, ImmutableList<Integer> infl, ThreadPoolExecutor pool) {
+        this.tile = tile;
+        this.infl = infl;
+        this.pool = pool;
+    }
+
+    // public static factory method
+    public static SearchContext createSearchContext(int tile, List<Integer> infl, ThreadPoolExecutor pool) {
+        if (tile < 0) throw new IllegalArgumentException("Bad tile number " + tile + ".");
+        if (infl.isEmpty()) throw new IllegalArgumentException("Empty inflation factor.");
+        return new SearchContext(tile, ImmutableList.copyOf(infl), pool);
+    }
+
+    // initialize the Preinitializer in loader with this context.
+    // everything else in loader gets its tile and INFL from there.
+    public void initialize(ClassLoader loader) throws ClassNotFoundException {
+        CURRENT.set(this);
+        try {
+            Class.forName("Preinitializer", true, loader);
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    // Preinitializer calls these.
+    // they return the default unless BatchSearch is initializing it
+    public static int tileOr(int tile) {
+        SearchContext c = CURRENT.get();
+        return (c == null) ? tile : c.tile;
+    }
+
+    public static ImmutableList<Integer> inflOr(ImmutableList<Integer> infl) {
+        SearchContext c = CURRENT.get();
+        return (c == null) ? infl : c.infl;
+    }
+
+    public int getTile() {
+        return tile;
+    }
+
+    public ImmutableList<Integer> getInfl() {
+        return infl;
+    }
+
+    public ThreadPoolExecutor getPool() {
+        return pool;
+    }
+
+    public String toString() {
+        return "tile " + tile + ", INFL " + infl;
+    }
+
+} // end of class SearchContext
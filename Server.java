@@ -1,5 +1,7 @@
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.*;
 import com.google.common.collect.*;
@@ -11,23 +13,46 @@ public class Server
     public static final ThreadService executorService = ThreadService.INSTANCE;
 
     // these maps keep track of all the connections we have
-    private static List<ConnectionThread> LIVE_CONNECTIONS = new ArrayList<ConnectionThread>();
-    private static List<ConnectionThread> ALL_CONNECTIONS = new ArrayList<ConnectionThread>();
+    private static List<Connection> LIVE_CONNECTIONS = new ArrayList<Connection>();
+    private static List<Connection> ALL_CONNECTIONS = new ArrayList<Connection>();
+
+    // the Selector that the main loop waits on, so other threads can wake it up
+    private static volatile Selector SELECTOR = null;
 
     private static final ClientDatabase clientDatabase = ClientDatabase.INSTANCE;
 
-    // this stores all the completed puzzles
-    public static final List<ImmutablePatch> completedPatches = new LinkedList<ImmutablePatch>();
-    // this stores the number of completed puzzles
-    public static int totalFound = 0;
-    // this stores the number of puzzles that have been serialized
-    public static int dumpCount = 0;
     // this is the maximum number of puzzles we will serialize in any one file
     public static final int MAX_DUMP = 10000;
+    // all the completed puzzles go through here on their way to interim/.
+    // if we're writing interim results, partial files get written every 30 s.
+    // otherwise we only write full files, and whatever's left at the end.
+    // with STORE_RESULTS they're ResultStore segments, so interim/ is a ResultStore.
+    public static final ResultSink completedPatches = ResultSink.createResultSink(
+            "interim/tile" + Preinitializer.MY_TILE + "-%08d-" + (( Preinitializer.STORE_RESULTS ) ? Preinitializer.INTERIM_STORE_FILENAME : Preinitializer.INTERIM_RESULT_FILENAME), MAX_DUMP,
+            ( Preinitializer.WRITE_INTERIM_RESULTS ) ? 30 * 1000L : Long.MAX_VALUE);
+    // with DEDUPLICATE_RESULTS, drop patches that we've already written, up to symmetry.
+    // with GROUP_RESULTS, only write the first patch with each boundary signature,
+    // and list the groups in interim/ at the end.  the other patches are thrown
+    // away for good: only their counts make it into the list.  the grouper goes
+    // last, so that its numbers match the patches that get written.
+    static {
+        if ( Preinitializer.DEDUPLICATE_RESULTS )
+            completedPatches.addFilter(PatchDeduplicator.createPatchDeduplicator(true));
+        if ( Preinitializer.GROUP_RESULTS )
+            completedPatches.addFilter(BoundaryGrouper.createBoundaryGrouper(false,
+                    new File("interim/tile" + Preinitializer.MY_TILE + "-" + Preinitializer.GROUP_INDEX_FILENAME)));
+    }
+    // in COUNT mode, the number of puzzles the clients have completed.
+    // the ones completed here are in EmptyBoundaryPatch.completionCount()
+    public static final LongAdder remoteCompletions = new LongAdder();
+    // with FRONTIER_LOG (or -resume), every unit that we make and finish
+    // gets written down, so that Server -resume can carry on after a crash
+    static volatile FrontierLog frontierLog = null;
+    public static final Preinitializer.SearchMode SEARCH_MODE = Preinitializer.SEARCH_MODE;
 
     // parameters for networking
     public static final int LISTENING_PORT = Preinitializer.LISTENING_PORT;
-    public static final int TIMEOUT = 1; // seconds to wait before declaring a node unreachable
+    public static final int TIMEOUT = 1; // seconds to wait in select() before checking whether we're done
     private static Date lastRespawn = new Date();
 
     // prevent instantiation
@@ -38,17 +63,67 @@ public class Server
 
     public static void main(String[] args)
     {
-        // create initial work
-        EmptyBoundaryWorkUnitFactory factory = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
-        System.out.print("Submitting initial units: ");
-        while ( factory.notDone() )
+        // with -resume, start from the frontier log instead of the factory
+        boolean resume = ( args.length > 0 && args[0].equals("-resume") );
+        File frontierDirectory = new File(Preinitializer.FRONTIER_DIRECTORY);
+        FrontierLog.Recovery recovery = null;
+        try
             {
-                // submit jobs to queue
-                EmptyBoundaryWorkUnit thisUnit = factory.nextWorkUnit();
-                executorService.getExecutor().submit(thisUnit);
-                System.out.print(thisUnit.hashCode() + " (" + thisUnit.uniqueID() + ") ");
+                if ( resume )
+                    {
+                        recovery = FrontierLog.recover(frontierDirectory);
+                        if ( recovery == null )
+                            {
+                                System.out.println("There's no frontier log in " + frontierDirectory + "/ to resume from.");
+                                System.exit(1);
+                            }
+                        System.out.println("Resuming with " + recovery + ".");
+                    }
+                else if ( Preinitializer.FRONTIER_LOG && FrontierLog.exists(frontierDirectory) )
+                    {
+                        System.out.println("There's a frontier log from an unfinished search in " + frontierDirectory + "/.");
+                        System.out.println("Run \"java Server -resume\" to carry on with it, or delete " + frontierDirectory.getAbsolutePath() + " to start again.");
+                        System.exit(1);
+                    }
+                // a resumed search keeps logging, so it can be resumed again
+                if ( Preinitializer.FRONTIER_LOG || resume )
+                    frontierLog = FrontierLog.createFrontierLog(frontierDirectory, completedPatches, recovery);
+            }
+        catch (Exception e)
+            {
+                System.out.println("Error reading the frontier log in " + frontierDirectory + "/:");
+                e.printStackTrace();
+                System.exit(1);
+            }
+
+        if ( resume )
+            {
+                // pick up where we left off.
+                // don't write over the results we already have, and
+                // don't give out any IDs that we gave out before.
+                completedPatches.continueNumbering();
+                remoteCompletions.add(recovery.getCompletions());
+                EmptyBoundaryWorkUnit.IDgenerator.set(Math.max(EmptyBoundaryWorkUnit.IDgenerator.get(), recovery.getMaxID()));
+                for (EmptyBoundaryWorkUnit u : recovery.getUnits())
+                    executorService.getExecutor().enqueue(u);
+                System.out.println("Submitted " + recovery.getFrontier().size() + " units from the frontier log.");
+            }
+        else
+            {
+                // create initial work
+                EmptyBoundaryWorkUnitFactory factory = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+                System.out.print("Submitting initial units: ");
+                while ( factory.notDone() )
+                    {
+                        // submit jobs to queue
+                        EmptyBoundaryWorkUnit thisUnit = factory.nextWorkUnit();
+                        if ( frontierLog != null )
+                            frontierLog.submitted(thisUnit);
+                        executorService.getExecutor().enqueue(thisUnit);
+                        System.out.print(thisUnit.hashCode() + " (" + thisUnit.uniqueID() + ") ");
+                    }
+                System.out.println();
             }
-        System.out.println();
 
         // start monitoring thread
         ThreadMonitor threadMonitor = new ThreadMonitor(2.0); // monitoring interval in seconds
@@ -56,13 +131,38 @@ public class Server
         // wait briefly to let things get going
         pause(2000);
 
-        // start accepting connections and wait for all jobs to complete
-        ServerSocket listener = null;
-        Socket connection = null;
-        ConnectionThread connectionThread = null;
-        
+        // start accepting connections and wait for all jobs to complete.
+        // one thread looks after all of the clients; see Connection.
+        Selector selector = null;
+        ServerSocketChannel listener = null;
+        try
+            {
+                selector = Selector.open();
+                listener = ServerSocketChannel.open();
+                listener.bind(new InetSocketAddress(LISTENING_PORT));
+                listener.configureBlocking(false);
+                listener.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        catch (BindException e)
+            {
+                if (e.getMessage().equals("Address already in use"))
+                    System.out.println("A triangle server is already running on this port!");
+                else
+                    e.printStackTrace();
+                System.exit(1);
+            }
+        catch (IOException e)
+            {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        SELECTOR = selector;
+
         System.out.println("Listening on port " + LISTENING_PORT + "...");
 
+        // did we get to the end, or did something go wrong?
+        boolean finished = false;
+
         while ( true )
             {
                 //if (  executorService.getExecutor().getNumberOfRunningJobs() == 0 )
@@ -70,52 +170,83 @@ public class Server
                 if ( executorService.getExecutor().getNumberOfRunningJobs() == 0 &&
                      executorService.getExecutor().getQueue().size() == 0 &&
                      clientDatabase.jobsCheckedOut()  == 0 )
-                    break;
-                
-                try
-                    {
-                        listener = new ServerSocket(LISTENING_PORT);
-                        listener.setSoTimeout(TIMEOUT*1000);
-                        connection = listener.accept();
-                        System.out.print("[ " + new Date().toString() + " ] Opened a socket to " +
-                        connection.getInetAddress().getCanonicalHostName() + " (" + connection.getInetAddress() + ").\n");
-                        listener.close();
-                        connectionThread = new ConnectionThread(connection);
-                        connectionThread.checkConnection();
-                        System.out.println("Handshake successful.\n");
-                        connectionThread.start();
-                    }
-                catch (BindException e)
                     {
-                        if (e.getMessage().equals("Address already in use"))
-                            System.out.println("A triangle server is already running on this port!");
-                        else
-                            e.printStackTrace();
-                        System.exit(1);
-                    }
-                catch (SocketTimeoutException e)
-                    {
-                        try
-                            {
-                                if ( listener != null )
-                                    listener.close();
-                            }
-                        catch (Exception e2)
-                            {
-                                e2.printStackTrace();
-                                System.exit(1);
-                            }
+                        finished = true;
+                        break;
                     }
-                catch (ConnectException e)
+
+                // in EXISTS mode, one puzzle is all we need
+                if ( SEARCH_MODE == Preinitializer.SearchMode.EXISTS && EmptyBoundaryPatch.searchStopped() )
                     {
-                        System.out.println(e.getMessage());
+                        System.out.println("\nFound a completed puzzle.  Stopping the search.");
+                        finished = true;
+                        break;
                     }
-                catch (EOFException e)
+
+                try
                     {
-                        System.out.println("Connection to " + connection.getInetAddress() + " closed unexpectedly.");
-                        synchronized(LIVE_CONNECTIONS)
+                        // send units to the clients that have credit for them,
+                        // ask to write to the connections that have something to send,
+                        // and hang up on the ones that the ClientDatabase has given up on
+                        for (SelectionKey k : selector.keys())
+                            if ( k.attachment() != null )
+                                {
+                                    Connection c = (Connection)k.attachment();
+                                    if ( c.expired )
+                                        {
+                                            if ( c.open )
+                                                c.close();
+                                            continue;
+                                        }
+                                    c.pump();
+                                    c.updateInterest();
+                                }
+
+                        selector.select(TIMEOUT*1000);
+                        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                        while ( keys.hasNext() )
                             {
-                                LIVE_CONNECTIONS.remove(connectionThread);
+                                SelectionKey k = keys.next();
+                                keys.remove();
+                                if ( !k.isValid() )
+                                    continue;
+                                if ( k.isAcceptable() )
+                                    {
+                                        SocketChannel channel = listener.accept();
+                                        if ( channel == null )
+                                            continue;
+                                        channel.configureBlocking(false);
+                                        channel.socket().setTcpNoDelay(true);
+                                        Connection c = new Connection(channel);
+                                        c.key = channel.register(selector, SelectionKey.OP_READ, c);
+                                        System.out.print("[ " + new Date().toString() + " ] Opened a socket to " + c.address + " (" + channel.socket().getInetAddress() + ").\n");
+                                        continue;
+                                    }
+                                Connection c = (Connection)k.attachment();
+                                try
+                                    {
+                                        if ( k.isReadable() )
+                                            c.read();
+                                        if ( k.isValid() && k.isWritable() )
+                                            c.flush();
+                                    }
+                                catch (EOFException e)
+                                    {
+                                        System.out.println("Connection to " + c.address + " lost.");
+                                        c.close();
+                                    }
+                                catch (IOException e)
+                                    {
+                                        System.out.println("Connection to " + c.address + " lost: " + e.getMessage());
+                                        c.close();
+                                    }
+                                catch (Exception e)
+                                    {
+                                        System.out.println("Unexpected exception in Server.Connection of " + c.address + ":");
+                                        e.printStackTrace();
+                                        System.out.println();
+                                        c.close();
+                                    }
                             }
                     }
                 catch (Exception e)
@@ -127,52 +258,23 @@ public class Server
             }
 
         // write out all results
-        ConnectionThread.closeAllConnections();
+        Connection.closeAllConnections();
         threadMonitor.stop();
         pause(3000);
-        System.out.print("\nAll jobs complete!  Writing completed patches to disk...");
-        synchronized (completedPatches)
+        System.out.println("\nAll jobs complete!  Writing the rest of the completed patches to disk...");
+        try
             {
-                if ( completedPatches.size() == 0 ) {
-                    System.out.println("no results to write.");
-                    System.out.println(Server.totalFound + " results already written to /interim/.");
-                }
-                else
-                    {
-                        List<TriangleResults> interimResults = new LinkedList<>();
-                        synchronized (Server.completedPatches)
-                            {
-                                // split completedPatches into parts of size no more than MAX_DUMP
-                                // the upper bound for i here just tells us to round up
-                                for (int i = 0; i < (Server.completedPatches.size() + MAX_DUMP - 1)/MAX_DUMP; i++) {
-                                    interimResults.add(new TriangleResults(Server.completedPatches.subList(i*MAX_DUMP,Math.min((i+1)*MAX_DUMP,Server.completedPatches.size()))));
-                                }
-                                Server.totalFound += Server.completedPatches.size();
-                                Server.completedPatches.clear();
-                            }
-
-                        for (int i = 0; i < interimResults.size(); i++) {
-                            try
-                                {
-                                    String outputFilename = String.format("interim/tile%d-%08d-%s",Preinitializer.MY_TILE, Server.dumpCount,Preinitializer.INTERIM_RESULT_FILENAME);
-                                    FileOutputStream fileOut = new FileOutputStream(outputFilename);
-                                    Server.dumpCount++;
-                                    ObjectOutputStream out = new ObjectOutputStream(fileOut);
-                                    out.writeObject(interimResults.get(i));
-                                    out.close();
-                                    fileOut.close();
-                                    System.out.println("\nWrote " + interimResults.get(i).size()
-                                                       + " final results to " + outputFilename + ".\n");
-                                }
-                            catch (Exception e)
-                                {
-                                    System.out.println("\nError while writing final results to " + Preinitializer.INTERIM_RESULT_FILENAME + "!");
-                                    e.printStackTrace();
-                                }
-
-                        }
-                    }
+                completedPatches.close();
             }
+        catch (InterruptedException e)
+            {
+                e.printStackTrace();
+            }
+
+        // the results are all on disk now, so we can stop logging.
+        // if we finished the search, we don't need the log any more.
+        if ( frontierLog != null )
+            frontierLog.close(finished);
 
 
             // begin writing edge breakdowns
@@ -207,11 +309,29 @@ public class Server
 //                    e.printStackTrace();
 //                }
 
-        System.out.println(totalFound + " results found in total.");
+        if ( SEARCH_MODE == Preinitializer.SearchMode.COUNT )
+            System.out.println(completionCount() + " results counted in total.");
+        else
+            System.out.println(completedPatches.written() + " results written to interim/ in total.");
+        synchronized(LIVE_CONNECTIONS)
+            {
+                for (Connection c : ALL_CONNECTIONS)
+                    System.out.println("Sent to " + c.address + ": " + c.outbox + ".");
+            }
+        System.out.println("Units finished: " + clientDatabase.finishedSummary() + ".");
+        if ( completedPatches.dropped() > 0 )
+            System.out.println(completedPatches.dropped() + " results dropped as duplicates or grouped.");
         System.out.println("Have a nice day!");
+        executorService.close();
         System.exit(0);
     }
 
+    // the number of puzzles completed everywhere, in COUNT mode
+    public static long completionCount()
+    {
+        return EmptyBoundaryPatch.completionCount() + remoteCompletions.sum();
+    }
+
     public static void pause(long delay)
     {
                 try
@@ -223,42 +343,95 @@ public class Server
                     }
     }
 
-    public static class ConnectionThread extends Thread
-    { // begin ConnectionThread
-        private Socket connection = null;
-        private InputStream incomingStream;
-        private ObjectInputStream incomingObjectStream;
-        private OutputStream outgoingStream;
-        private ObjectOutputStream outgoingObjectStream;
-
-        public static final String HANDSHAKE = "TriangleHandshake";
-        public static final String CLOSE = "TriangleClose";
-        public static final Object sendLock = new Object();
+    // one of these for each client.  they don't have threads of their
+    // own: the loop in main() reads and writes for all of them, and
+    // anybody else who wants to say something puts a frame in the
+    // outbox and wakes the loop up.  control frames (like KILL) jump
+    // the queue ahead of the bulk ones (JOB_BATCH); see WireProtocol.
+    public static class Connection
+    { // begin Connection
+        private final SocketChannel channel;
+        private SelectionKey key = null;
+        private final WireProtocol.FrameReader reader = new WireProtocol.FrameReader();
+        private final WireProtocol.Outbox outbox = new WireProtocol.Outbox();
+        private ByteBuffer current = null; // what we're in the middle of writing
+
+        // have we had a HELLO yet?
+        private boolean greeted = false;
+
+        // how many units the client wants to have, and how many it has:
+        // the ones we've sent minus the ones it's sent results for.
+        // only the loop in main() touches these.
+        private int credit = 0;
+        private int outstanding = 0;
+        private volatile boolean open = true;
+
+        // has the ClientDatabase given up on this client?  the loop in
+        // main() hangs up on it the next time round.
+        private volatile boolean expired = false;
+
+        // when we last heard from this client, in ms
+        private volatile long lastHeard = System.currentTimeMillis();
+
         public final String address;
 
-        public ConnectionThread(Socket connection)
+        // the units whose checkpoints we've refused, because they'd gone
+        // to somebody else.  we ignore this client's results for them.
+        // only the loop in main() touches this.
+        private final Set<Long> stale = new HashSet<>();
+
+        // the ClientDatabase keeps track of clients by this
+        private static final AtomicLong ID_GENERATOR = new AtomicLong(0L);
+        public final long id = ID_GENERATOR.incrementAndGet();
+
+        public Connection(SocketChannel channel)
         {
-            this.connection = connection;
-            address = connection.getInetAddress().getCanonicalHostName();
+            this.channel = channel;
+            address = channel.socket().getInetAddress().getCanonicalHostName();
         }
 
-        // a method for dealing with incoming results
-        @SuppressWarnings("deprecation")
-        private void stashResult(EmptyWorkUnitResult result)
+        // a method for dealing with incoming results.
+        // return false if we already had the result for this unit.
+        private boolean stashResult(EmptyWorkUnitResult result)
         {
             // retrieve the contents of this EmptyWorkUnitResult
             Long jobID = result.uniqueID();
             //System.out.println("received ID " + jobID);
-            List<ImmutablePatch> localCompletedPatches = result.getLocalCompletedPatches();
 
-            // store results centrally
-            synchronized (completedPatches)
+            // if we turned down one of its checkpoints, the patches in
+            // that are missing from this, so somebody else has to do it
+            if ( stale.remove(jobID) )
                 {
-                    Server.completedPatches.addAll( localCompletedPatches );
+                    System.out.println("\nIgnoring result " + jobID + " from " + address + " after its checkpoint was refused.");
+                    return false;
                 }
 
-            // mark job as finished
-            clientDatabase.markAsFinished(this,jobID);
+            // mark job as finished.
+            // if somebody else has already finished it, this is a duplicate
+            if ( !clientDatabase.markAsFinished(this,jobID) )
+                {
+                    System.out.println("\nIgnoring duplicate result " + jobID + " from " + address + ".");
+                    return false;
+                }
+
+            store(result);
+            return true;
+        } // end stashResult
+
+        // store the patches in result centrally
+        @SuppressWarnings("deprecation")
+        private void store(EmptyWorkUnitResult result)
+        {
+            List<ImmutablePatch> localCompletedPatches = result.getLocalCompletedPatches();
+
+            // store results centrally
+            // in COUNT mode there's nothing to store but the count,
+            // and in EXISTS mode we only keep the first puzzle we hear about
+            if ( SEARCH_MODE == Preinitializer.SearchMode.COUNT )
+                remoteCompletions.add(result.getCompletedCount());
+            else if ( SEARCH_MODE == Preinitializer.SearchMode.ALL ||
+                      ( localCompletedPatches.size() > 0 && EmptyBoundaryPatch.stopSearch() ) )
+                completedPatches.addAll( localCompletedPatches.subList(0, ( SEARCH_MODE == Preinitializer.SearchMode.ALL ) ? localCompletedPatches.size() : 1) );
 
             // print a report
             Date currentDate = new Date();
@@ -271,168 +444,289 @@ public class Server
                     statusString = statusString + "from " + address;
                     System.out.println(statusString);
                 }*/
-        } // end stashResult
+        } // end store
 
-        // set streams and handshake
-        public void checkConnection() throws SocketException, ConnectException, SocketTimeoutException, IOException, ClassNotFoundException
+        // read whatever has arrived, and deal with every whole frame
+        private void read() throws IOException
         {
-            // set streams
-            outgoingStream = connection.getOutputStream();
-            outgoingStream.flush();
-            outgoingObjectStream = new ObjectOutputStream(outgoingStream);
-            incomingStream = connection.getInputStream();
-            incomingObjectStream = new ObjectInputStream(incomingStream);
-
-            // receive handshake
-            Object incomingObject = incomingObjectStream.readObject();
-            if ( incomingObject instanceof String )
-                {
-                    String thisString = (String)incomingObject;
-                    if ( ! thisString.equals(HANDSHAKE) )
-                        throw new ConnectException("Error handshaking -- wrong text!");
-                }
-            else
-                throw new ConnectException("Error handshaking -- wrong object type!");
-
-            // send handshake
-            outgoingObjectStream.writeObject(HANDSHAKE);
-            outgoingObjectStream.flush();
-            
-            // keep track of the live connections
-            synchronized(LIVE_CONNECTIONS)
+            WireProtocol.Frame frame;
+            while ( open && (frame = reader.read(channel)) != null )
                 {
-                    Server.LIVE_CONNECTIONS.add(this);
-                    Server.ALL_CONNECTIONS.add(this);
+                    lastHeard = System.currentTimeMillis();
+                    clientDatabase.renew(this);
+                    handle(frame);
                 }
+            pump();
         }
-    
-        @SuppressWarnings("deprecation")
-        public void run()
+
+        private void handle(WireProtocol.Frame frame) throws IOException
         {
-            while (true)
+            // the first frame has to be a handshake
+            if ( !greeted )
                 {
+                    if ( frame.getType() != WireProtocol.Type.HELLO )
+                        throw new IOException("Error handshaking -- got a " + frame + ".");
+                    boolean compress = false;
                     try
                         {
-                            //System.out.println("reading");
-                            Object incomingObject = incomingObjectStream.readObject();
-                            //System.out.println("read object");
-                            if ( incomingObject instanceof EmptyBatch )
-                                {
-                                    // this is a returning set of units and spawn
-                                    EmptyBatch batch = (EmptyBatch)incomingObject;
-
-                                    // mark jobs as finished
-                                    List<EmptyWorkUnitResult> results = batch.getResults();
-                                    for (EmptyWorkUnitResult res : results)
-                                        stashResult(res);
-
-                                    // add spawn to queue
-                                    for (EmptyBoundaryWorkUnit unit : batch.getNewUnits()) {
-                                        unit.setKillSwitch(new AtomicBoolean(false));
-                                        ThreadService.INSTANCE.getExecutor().submit(unit);
-                                    }
+                            compress = WireProtocol.checkHello(frame.getPayload());
+                        }
+                    catch (IllegalArgumentException e)
+                        {
+                            System.out.println("Error handshaking with " + address + ": " + e.getMessage());
+                            send(WireProtocol.Type.CLOSE, WireProtocol.EMPTY);
+                            flush();
+                            close();
+                            return;
+                        }
+                    send(WireProtocol.Type.HELLO, WireProtocol.hello());
+                    greeted = true;
 
-                                }
-                            else if ( incomingObject instanceof EmptyWorkUnitResult )
-                                {
-                                    // this is an incoming result
-                                    EmptyWorkUnitResult result = (EmptyWorkUnitResult)incomingObject;
-                                    
-                                    // file it away
-                                    stashResult(result);
+                    // deflate big frames, if the client can take them
+                    if ( compress )
+                        outbox.setCompression(Preinitializer.COMPRESSION_LEVEL);
 
-                                }
-                            else if ( incomingObject instanceof Integer )
+                    // keep track of the live connections
+                    synchronized(LIVE_CONNECTIONS)
+                        {
+                            Server.LIVE_CONNECTIONS.add(this);
+                            Server.ALL_CONNECTIONS.add(this);
+                        }
+                    System.out.println("Handshake successful" + (( compress ) ? ", compression on" : "") + ".\n");
+                    return;
+                }
+
+            switch ( frame.getType() )
+                {
+                case RESULT_BATCH:
+                    {
+                        // this is a returning set of results, and maybe some spawn
+                        EmptyBatch batch = WireProtocol.readResultBatch(frame.getPayload());
+
+                        // mark jobs as finished
+                        List<EmptyWorkUnitResult> fresh = new ArrayList<>();
+                        Set<Long> freshIDs = new HashSet<>();
+                        for (EmptyWorkUnitResult res : batch.getResults())
+                            if ( stashResult(res) )
                                 {
-                                    // this is a request for new jobs
-                                    //System.out.println("request for new jobs received");
-                                    int jobCount = (Integer)incomingObject;
-                                    for (int i=0; i < jobCount; i++)
-                                        {
-                                            // don't send out any new jobs until there's been enough time to build up more stuff in the queue
-                                            // if we are trying to send the first job and there aren't enjough jobs in the queue and
-                                            // it hasn't been that long since we last called for all the clients to respawn then ignore
-                                            // the request for new jobs
-                                            if ( i==0 &&
-                                                 ThreadService.INSTANCE.getExecutor().getQueue().size() < jobCount &&
-                                                 new Date().getTime() - Server.lastRespawn.getTime()< 3*Preinitializer.SPAWN_MIN_TIME )
-                                                break;
-
-
-                                            // attempt to send a job from the queue
-                                            // if there are no jobs in the queue, wait
-                                            Runnable r = null;
-                                            try
-                                                {
-                                                    r = ThreadService.INSTANCE.getExecutor().getQueue().poll(1000L, TimeUnit.MILLISECONDS);
-                                                }
-                                            catch (InterruptedException e)
-                                                {
-                                                }
-
-                                            // if there's nothing to send back, do nothing
-                                            if ( r == null )
-                                                break;
-
-                                            Map<RunnableFuture,EmptyBoundaryWorkUnit> jobMap = ThreadService.INSTANCE.getExecutor().jobMap;
-                                            EmptyBoundaryWorkUnit unit = null;
-                                            synchronized(jobMap)
-                                                {
-                                                    unit = jobMap.remove(r);
-                                                    unit.newEventualPatches();
-                                                    //System.out.println("removed unit " + unit.uniqueID());
-                                                }
-
-                                            try
-                                                {
-                                                    synchronized (sendLock)
-                                                        {
-                                                            //System.out.println("sending unit " + unit.uniqueID());
-                                                            outgoingObjectStream.writeObject(unit);
-                                                            //System.out.println("done sending unit " + unit.uniqueID());
-                                                            outgoingObjectStream.flush();
-                                                            outgoingObjectStream.reset();
-                                                        }
-                                                }
-                                            catch (IOException e)
-                                                {
-                                                    System.out.println("Error sending unit " + unit.uniqueID() + "!  Requeued.");
-
-                                                    // resubmit the unit to the local queue
-                                                    unit.serverEventualPatches();
-                                                    ThreadService.INSTANCE.getExecutor().submit(unit);
-                                                    continue;
-                                                }
-                                            
-                                            clientDatabase.markAsStarted(this,unit);
-                                        }
+                                    fresh.add(res);
+                                    freshIDs.add(res.uniqueID());
                                 }
+                        outstanding = Math.max(0, outstanding - batch.getResults().size());
+
+                        // the spawn comes from the units in this batch.
+                        // if a unit was done already, so is its spawn.
+                        List<EmptyBoundaryWorkUnit> newUnits = batch.getNewUnits(freshIDs);
+                        if ( newUnits.size() < batch.getPatches().size() )
+                            System.out.println("Ignoring " + (batch.getPatches().size() - newUnits.size()) + " spawn from duplicate results.");
+
+                        // add spawn to queue
+                        for (EmptyBoundaryWorkUnit unit : newUnits) {
+                            unit.setKillSwitch(new AtomicBoolean(false));
+                            if ( frontierLog != null )
+                                frontierLog.submitted(unit);
+                            ThreadService.INSTANCE.getExecutor().enqueue(unit);
                         }
-                    catch (EOFException | SocketException e)
-                        {
-                            System.out.println("Connection to " + address + " lost.");
-                            break;
-                        }
-                    catch (Exception e)
+
+                        // now that the spawn is in the log, the units that made it are done
+                        if ( frontierLog != null )
+                            for (EmptyWorkUnitResult res : fresh)
+                                frontierLog.done(res.uniqueID(), res.getCompletedCount());
+                        break;
+                    }
+                case CHECKPOINT:
+                    {
+                        // a unit that's still running, and what it's found so far.
+                        // if the client goes away, we requeue this instead.
+                        WireProtocol.Checkpoint c = WireProtocol.readCheckpoint(frame.getPayload());
+                        EmptyBoundaryWorkUnit unit = c.getUnit();
+                        if ( !clientDatabase.checkpoint(this,unit) )
+                            {
+                                System.out.println("\nIgnoring checkpoint of unit " + unit.uniqueID() + " from " + address + ".");
+                                stale.add(unit.uniqueID());
+                                break;
+                            }
+                        store(c.getResult());
+                        if ( frontierLog != null )
+                            frontierLog.checkpointed(unit, c.getResult().getCompletedCount());
+                        break;
+                    }
+                case JOB_REQUEST:
+                    dispatch(WireProtocol.readJobRequest(frame.getPayload()));
+                    break;
+                case CREDIT:
+                    credit = WireProtocol.readJobRequest(frame.getPayload());
+                    break;
+                case HEARTBEAT:
+                    break;
+                case CLOSE:
+                    System.out.println(address + " said goodbye.");
+                    close();
+                    break;
+                default:
+                    System.out.println("Unexpected " + frame + " from " + address + ".");
+                }
+        }
+
+        // top the client up to its credit, if we have the units.
+        // the loop in main() calls this every time round.
+        private void pump()
+        {
+            if ( greeted && open && outstanding < credit )
+                dispatch(credit - outstanding);
+        }
+
+        // this is a request for new jobs.
+        // send whatever we can find in the queue right now in one batch.
+        private void dispatch(int jobCount)
+        {
+            //System.out.println("request for new jobs received");
+
+            // don't send out any new jobs until there's been enough time to build up more stuff in the queue
+            // if there aren't enough jobs in the queue and it hasn't been that long since we last
+            // called for all the clients to respawn then ignore the request for new jobs
+            if ( ThreadService.INSTANCE.getExecutor().getQueue().size() < jobCount &&
+                 new Date().getTime() - Server.lastRespawn.getTime()< 3*Preinitializer.SPAWN_MIN_TIME )
+                return;
+
+            List<EmptyBoundaryWorkUnit> units = new ArrayList<>();
+            for (int i=0; i < jobCount; i++)
+                {
+                    // if there's nothing left in the queue, stop
+                    Runnable r = ThreadService.INSTANCE.getExecutor().getQueue().poll();
+                    if ( r == null )
+                        break;
+
+                    // everything in the Server's queue is a work unit
+                    EmptyBoundaryWorkUnit unit = ((ThreadService.UnitTask) r).getUnit();
+                    //System.out.println("removed unit " + unit.uniqueID());
+
+                    // a requeued unit might have come back in the meantime
+                    if ( clientDatabase.isFinished(unit.uniqueID()) )
                         {
-                            System.out.println("Unexpected exception in Server.ConnectionThread.run() of " + address + ":");
-                            e.printStackTrace();
-                            System.out.println();
-                            break;
+                            i--;
+                            continue;
                         }
-            }
+                    units.add(unit);
+                }
+            if ( units.isEmpty() )
+                return;
+
+            try
+                {
+                    send(WireProtocol.Type.JOB_BATCH, WireProtocol.jobBatch(units));
+                }
+            catch (IllegalArgumentException e)
+                {
+                    System.out.println("Error sending " + units.size() + " units!  Requeued.");
+                    e.printStackTrace();
+
+                    // resubmit the units to the local queue
+                    for (EmptyBoundaryWorkUnit unit : units)
+                        ThreadService.INSTANCE.getExecutor().enqueue(unit);
+                    return;
+                }
+
+            for (EmptyBoundaryWorkUnit unit : units)
+                {
+                    clientDatabase.markAsStarted(this,unit);
+                    if ( frontierLog != null )
+                        frontierLog.dispatched(unit.uniqueID(), id);
+                }
+            outstanding += units.size();
+        }
+
+        // queue a frame for this client.  anybody can call this.
+        public void send(WireProtocol.Type type, byte[] payload)
+        {
+            if ( !open )
+                return;
+            outbox.add(type, payload);
+            if ( SELECTOR != null )
+                SELECTOR.wakeup();
+        }
+
+        // write as much of the outbox as the socket will take.
+        // only the loop in main() calls this.
+        private void flush() throws IOException
+        {
+            while ( true )
+                {
+                    if ( current == null )
+                        current = outbox.poll();
+                    if ( current == null )
+                        return;
+                    channel.write(current);
+                    if ( current.hasRemaining() )
+                        return;
+                    current = null;
+                }
+        }
+
+        // only ask the Selector about writing when we have something to write
+        private void updateInterest()
+        {
+            if ( key == null || !key.isValid() )
+                return;
+            int ops = SelectionKey.OP_READ | (( current == null && outbox.isEmpty() ) ? 0 : SelectionKey.OP_WRITE);
+            if ( key.interestOps() != ops )
+                key.interestOps(ops);
+        }
 
+        private void close()
+        {
+            open = false;
+            if ( key != null )
+                key.cancel();
+            try
+                {
+                    channel.close();
+                }
+            catch (IOException e)
+                {
+                }
+            outbox.close();
+            reader.close();
             synchronized (LIVE_CONNECTIONS)
                 {
                     LIVE_CONNECTIONS.remove(this);
                 }
+
+            // whatever units this client had go back in the queue
+            clientDatabase.release(this);
+        }
+
+        // the ClientDatabase gave up on this client, so hang up.
+        // it might be hung, or the network might be down, so don't
+        // wait for it to hear anything.  this runs on the ThreadMonitor's
+        // thread, so just tell the loop in main() to do it: close()
+        // touches the channel, and requeues the units.
+        public void expire()
+        {
+            expired = true;
+            if ( SELECTOR != null )
+                SELECTOR.wakeup();
+        }
+
+        public boolean isExpired()
+        {
+            return expired;
+        }
+
+        // the ClientDatabase requeues the jobs of clients that aren't
+        public boolean isAlive()
+        {
+            return open;
         }
 
         public boolean isConnected()
         {
-            if ( connection == null || connection.isClosed() )
-                return false;
-            return true;
+            return open && channel.isConnected();
+        }
+
+        public long lastHeard()
+        {
+            return lastHeard;
         }
 
         public String getHostName()
@@ -440,33 +734,38 @@ public class Server
             return address;
         }
 
+        // tell all the clients to close, and give them a second to hear it
         public static void closeAllConnections()
         {
+            List<Connection> connections;
             synchronized(LIVE_CONNECTIONS)
                 {
-                    for (ConnectionThread t : LIVE_CONNECTIONS)
+                    connections = new ArrayList<>(LIVE_CONNECTIONS);
+                }
+            for (Connection c : connections)
+                {
+                    System.out.println("\nSignalling " + c.address + " to close.");
+                    c.send(WireProtocol.Type.CLOSE, WireProtocol.EMPTY);
+                }
+            long deadline = System.currentTimeMillis() + 1000L;
+            for (Connection c : connections)
+                {
+                    try
                         {
-                            if ( t.connection.isConnected() )
+                            c.flush();
+                            while ( (c.current != null || !c.outbox.isEmpty()) && System.currentTimeMillis() < deadline )
                                 {
-                                    System.out.println("\nSignalling " + t.address + " to close.");
-                                    try
-                                        {
-                                            synchronized(t.sendLock)
-                                                {
-                                                    t.outgoingObjectStream.writeObject(CLOSE);
-                                                    t.outgoingObjectStream.flush();
-                                                    t.outgoingObjectStream.close();
-                                                }
-                                        }
-                                    catch (Exception e)
-                                        {
-                                            e.printStackTrace();
-                                        }
+                                    pause(10);
+                                    c.flush();
                                 }
                         }
+                    catch (IOException e)
+                        {
+                        }
+                    c.close();
                 }
         }
-    } // end ConnectionThread
+    } // end Connection
 
     private static class ThreadMonitor
     {
@@ -477,12 +776,12 @@ public class Server
         private Date startTime = new Date();
         private EvictingQueue<Double> throughputs = EvictingQueue.create(500);
         private static AtomicBoolean cancelled = new AtomicBoolean();
-        private int lastNumberOfCompletedPatches = 0;
-        private final String INTERIM_RESULT_FILENAME = Preinitializer.INTERIM_RESULT_FILENAME;
-        private Date lastInterimWrite = new Date();
 
-        // a pointer that tells us which thread most recently sent back spawn
-        private ConnectionThread lastSpawned = null;
+        // a pointer that tells us which client most recently sent back spawn
+        private Connection lastSpawned = null;
+
+        // when we last checkpointed the frontier log
+        private long lastCheckpoint = System.currentTimeMillis();
 
         public ThreadMonitor(double updateInterval) // seconds
         {
@@ -513,8 +812,20 @@ public class Server
                 if ( killFile.isFile() )
                     {
                         System.out.println("Server has found kill file!  Shutting down!");
+                        if ( frontierLog != null )
+                            {
+                                frontierLog.checkpoint();
+                                System.out.println("Run Server -resume to carry on from " + frontierLog + ".");
+                            }
                         System.exit(1);
                     }
+
+                // write down the units that are done
+                if ( frontierLog != null && System.currentTimeMillis() - lastCheckpoint > Preinitializer.CHECKPOINT_TIME * 1000L )
+                    {
+                        lastCheckpoint = System.currentTimeMillis();
+                        frontierLog.checkpoint();
+                    }
                 
                 // if the queue is empty and no jobs are running, send a signal to all clients to spawn
                 Date currentTime = new Date();
@@ -530,82 +841,25 @@ public class Server
 
                                         // iterate lastSpawned
                                         int i = LIVE_CONNECTIONS.indexOf(lastSpawned);
-                                        if (lastSpawned==null||(!lastSpawned.connection.isConnected())||i<0||i>LIVE_CONNECTIONS.size()-2) {
+                                        if (lastSpawned==null||(!lastSpawned.isConnected())||i<0||i>LIVE_CONNECTIONS.size()-2) {
                                             lastSpawned = LIVE_CONNECTIONS.get(0);
                                         } else {
                                             lastSpawned = LIVE_CONNECTIONS.get(i+1);
                                         }
-                                        ConnectionThread t = lastSpawned;
+                                        Connection t = lastSpawned;
 
-                                        if ( t.connection.isConnected() )
+                                        if ( t.isConnected() )
                                             {
                                                 System.out.println("\nSignaling " + t.address + " to return spawn."); 
-                                                try
-                                                    {
-                                                        synchronized (t.sendLock)
-                                                            {
-                                                                t.outgoingObjectStream.writeObject(Client.RETURN);
-                                                                t.outgoingObjectStream.flush();
-                                                            }
-                                                    }
-                                                catch (Exception e)
-                                                    {
-                                                        e.printStackTrace();
-                                                    }
+                                                t.send(WireProtocol.Type.KILL, WireProtocol.EMPTY);
                                             }
                                     } // here ends if LIVE_CONNECTIONS not empty
                             }
                     }
 
-                // if a connection has died, re-queue the jobs that were dispatched
-                clientDatabase.requeueDead();
-
-                // periodically write interim results to disk
-                int numberOfCompletedPatches = 0;
-                synchronized ( Server.completedPatches )
-                    {
-                        numberOfCompletedPatches = Server.completedPatches.size();
-                    }
-
-                if (    Preinitializer.WRITE_INTERIM_RESULTS == true
-                     && numberOfCompletedPatches > 0
-                     && currentTime.getTime() - lastInterimWrite.getTime() > 30 * 1000 )
-                    {
-                        List<TriangleResults> interimResults = new LinkedList<>();
-                        Server.totalFound += numberOfCompletedPatches;
-                        synchronized (Server.completedPatches)
-                            {
-                                // split completedPatches into parts of size no more than MAX_DUMP
-                                // the upper bound for i here just tells us to round up
-                                for (int i = 0; i < (Server.completedPatches.size() + MAX_DUMP - 1)/MAX_DUMP; i++) {
-                                    interimResults.add(new TriangleResults(Server.completedPatches.subList(i*MAX_DUMP,Math.min((i+1)*MAX_DUMP,Server.completedPatches.size()))));
-                                }
-                                Server.completedPatches.clear();
-                            }
-
-                        for (int i = 0; i < interimResults.size(); i++) {
-                            try
-                                {
-                                    String outputFilename = String.format("interim/tile%d-%08d-%s",Preinitializer.MY_TILE, Server.dumpCount,INTERIM_RESULT_FILENAME);
-                                    FileOutputStream fileOut = new FileOutputStream(outputFilename);
-                                    Server.dumpCount++;
-                                    ObjectOutputStream out = new ObjectOutputStream(fileOut);
-                                    out.writeObject(interimResults.get(i));
-                                    out.close();
-                                    fileOut.close();
-                                    System.out.println("\nWrote " + interimResults.get(i).size()
-                                                       + " interim results to " + outputFilename + ".\n");
-                                }
-                            catch (Exception e)
-                                {
-                                    System.out.println("\nError while writing interim results to " + INTERIM_RESULT_FILENAME + "!");
-                                    e.printStackTrace();
-                                }
-
-                        }
-                        lastNumberOfCompletedPatches = numberOfCompletedPatches;
-                        lastInterimWrite = currentTime;
-                    }
+                // if a connection has died, or we haven't heard from it in a
+                // while, re-queue the jobs that were dispatched
+                clientDatabase.requeueExpired();
 
                 // compute statistics
                 // jobsRun is the number of jobs run in the last monitorInterval; simultaneously resets counter
@@ -638,7 +892,8 @@ public class Server
 
                 // print statistics
                 lastUpdateTime = currentTime;
-                ThreadService.INSTANCE.getExecutor().printQueues(throughput, average, totalTime, totalFound + completedPatches.size());
+                int found = ( SEARCH_MODE == Preinitializer.SearchMode.COUNT ) ? (int)completionCount() : (int)completedPatches.size();
+                ThreadService.INSTANCE.getExecutor().printQueues(throughput, average, totalTime, found);
             }
         }
     }
@@ -66,6 +66,12 @@ public class ShortPolynomial implements Serializable {
         return d;
     }
 
+    // return the coefficient of x^i (0 if i is bigger than the degree)
+    public short getCoefficient(int i) {
+        if (i < 0) throw new IllegalArgumentException("Can't get coefficient number " + i + ".");
+        return (i < coef.length) ? coef[i] : (short)0;
+    }
+
     // return c = a + b
     public ShortPolynomial plus(ShortPolynomial b) {
         ShortPolynomial a = this;
@@ -10,7 +10,8 @@ public class ThreadService
     private final static Logger log            = Logger.getLogger(ThreadService.class.getName());
     public static final ThreadService INSTANCE = new ThreadService();
     public final int NUMBER_OF_THREADS         = Preinitializer.NUMBER_OF_THREADS; //Runtime.getRuntime().availableProcessors();
-    public static final int JOB_CAPACITY              = 10000000;                                 // how many jobs can wait in the queue at a time
+    public static final int HOT_SIZE                  = Preinitializer.FRONTIER_HOT_SIZE;         // how many jobs wait in the queue as they are.  see FrontierQueue
+    public static final int SEGMENT_SIZE              = Preinitializer.FRONTIER_SEGMENT_SIZE;     // bytes of encoded jobs to keep in memory beyond those
     public static final String runningJobsCheckpointFilename = "runningJobs.chk";               // serialized checkpoints
     public static final String pendingJobsCheckpointFilename = "pendingJobs.chk";               // assumed to be in working directory
     public static final String errorsCheckpointFilename = "errors";               // assumed to be in working directory
@@ -45,13 +46,15 @@ public class ThreadService
         // this is an anonymous inner class that will log the start and finish of each job
         // when started, the executor service will create threads up to NUMBER_OF_THREADS
         // these threads will be kept running until the service is shut down
-        // if more than JOB_CAPACITY jobs is placed in the queue, then the rejected execution policy will decide what happens
-        // the "caller runs policy" returns the excess work to the calling thread
+        // the queue never fills up: past HOT_SIZE jobs, it keeps the ones nobody is waiting for
+        // as UnitCodec records, and spills those to disk.  so the rejected execution policy
+        // (the "caller runs policy" returns the excess work to the calling thread) only
+        // comes into it after a shutdown.
         executorService = new CustomThreadPoolExecutor(NUMBER_OF_THREADS,                                     // core pool size
                                                        NUMBER_OF_THREADS,                                     // maximum pool size
                                                        1L,                                                    // keep alive time
                                                        TimeUnit.MINUTES,                                      // keep alive time unit
-                                                       new ArrayBlockingQueue<Runnable>(JOB_CAPACITY,true),   // work queue
+                                                       FrontierQueue.createFrontierQueue(HOT_SIZE, SEGMENT_SIZE, new File(Preinitializer.FRONTIER_SPILL_DIRECTORY)), // work queue
                                                        new CustomThreadFactory("thread pool"),                // thread factory
                                                        new ThreadPoolExecutor.CallerRunsPolicy());            // rejected execution policy
     }
@@ -66,6 +69,39 @@ public class ThreadService
         return executorService;
     }
 
+    // delete whatever the queue has spilled to disk.
+    // call this on the way out.
+    public void close()
+    {
+        ((FrontierQueue)executorService.getQueue()).close();
+    }
+
+    // a job that runs a work unit.
+    // a detached one is a job that nobody holds the Future for, so the
+    // queue can turn it into a UnitCodec record and make a new one later.
+    public static class UnitTask extends FutureTask<Result>
+    {
+        private final EmptyBoundaryWorkUnit unit;
+        private final boolean detached;
+
+        UnitTask(EmptyBoundaryWorkUnit unit, boolean detached)
+        {
+            super(unit);
+            this.unit = unit;
+            this.detached = detached;
+        }
+
+        public EmptyBoundaryWorkUnit getUnit()
+        {
+            return unit;
+        }
+
+        public boolean isDetached()
+        {
+            return detached;
+        }
+    }
+
     protected static class CustomThreadPoolExecutor extends ThreadPoolExecutor
     {
         //private Map<Future<?>,Callable<?>> jobMap = Collections.synchronizedMap(new HashMap<Future<?>,Callable<?>>());
@@ -73,15 +109,13 @@ public class ThreadService
         //private List<Callable<?>> currentlyPendingJobs = Collections.synchronizedList(new ArrayList<Callable<?>>());
         //private Map<Callable<?>,Date> startTimes = Collections.synchronizedMap(new HashMap<Callable<?>,Date>());
 
-        public HashMap<RunnableFuture,EmptyBoundaryWorkUnit> jobMap = new HashMap<>();
-
         private List<AtomicInteger> listOfCounters = new ArrayList<AtomicInteger>();
         private AtomicInteger numberOfJobsRun = new AtomicInteger();
         private AtomicInteger numberOfRunningJobs = new AtomicInteger();
         public static final double GB = 1073741824.0; // bytes per GB
 
         public CustomThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
-                                        ArrayBlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler)
+                                        BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler)
         {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
         }
@@ -199,8 +233,8 @@ public class ThreadService
             catch (ExecutionException e)
                 {
                     // dump a picture of the error
-                    synchronized ( jobMap ) {
-                        EmptyBoundaryWorkUnit u = jobMap.get(r); 
+                    {
+                        EmptyBoundaryWorkUnit u = ( r instanceof UnitTask ) ? ((UnitTask)r).getUnit() : null;
                         try
                             {
                                 TriangleResults errorResults = new TriangleResults(ImmutableList.of(u.getPatch().dumpImmutablePatch()));
@@ -250,14 +284,6 @@ public class ThreadService
             catch (CancellationException e)
                 {
                 }
-            synchronized(jobMap)
-                {
-                    EmptyBoundaryWorkUnit u = jobMap.remove(r);
-                    /*if ( u!=null )
-                        System.out.println("success");
-                    else
-                        System.out.println("failure");*/
-                }
 
         }
 
@@ -286,17 +312,29 @@ public class ThreadService
             if ( task == null )
                 throw new NullPointerException();
             RunnableFuture<T> ftask = newTaskFor(task);
-            if ( task instanceof EmptyBoundaryWorkUnit)
-                {
-                    synchronized(jobMap)
-                        {
-                            jobMap.put(ftask,(EmptyBoundaryWorkUnit)task);
-                        }
-                }
             execute(ftask);
             return ftask;
         }
 
+        // work units get UnitTasks, so we can tell which unit a job is
+        @SuppressWarnings("unchecked")
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> task)
+        {
+            if ( task instanceof EmptyBoundaryWorkUnit )
+                return (RunnableFuture<T>) new UnitTask((EmptyBoundaryWorkUnit)task, false);
+            return super.newTaskFor(task);
+        }
+
+        // queue a work unit whose result nobody is going to wait for.
+        // the queue can then keep it as a UnitCodec record, or on disk,
+        // until it's time to run it (or send it to a client).
+        public void enqueue(EmptyBoundaryWorkUnit u)
+        {
+            if ( u == null )
+                throw new NullPointerException();
+            execute(new UnitTask(u, true));
+        }
+
         public void terminated()
         {
             log.log(Level.WARNING, "Executor service has been ordered to shut down.");
@@ -305,7 +343,7 @@ public class ThreadService
 
     public String toString()
     {
-        return "This is a ThreadService with a " + NUMBER_OF_THREADS + " thread pool with a maximum job capacity of " + JOB_CAPACITY;
+        return "This is a ThreadService with a " + NUMBER_OF_THREADS + " thread pool and a " + executorService.getQueue();
     }
 
     // custom formatting for logging messages
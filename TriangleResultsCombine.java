@@ -1,3 +1,14 @@
+/*************************************************************************
+ *  Compilation:  javac TriangleResultsCombine.java
+ *  Execution:    java TriangleResultsCombine prefix outfile
+ *                java TriangleResultsCombine directory outfile
+ *
+ *  Combine the interim files prefix-00000000-interim.chk, ...
+ *  and prefix-final.chk, or all the segments of a ResultStore
+ *  directory, into one TriangleResults file.
+ *
+ *************************************************************************/
+
 import java.io.*;
 import java.util.*;
 
@@ -13,6 +24,22 @@ public class TriangleResultsCombine {
         String filename = inPrefix + String.format("-%08d-interim.chk",i);
         List<ImmutablePatch> patches = new LinkedList<>();
 
+        if (new File(inPrefix).isDirectory()) { // a ResultStore, so read its segments
+            try
+                {
+                    for (ResultStore.Segment s : ResultStore.openResultStore(new File(inPrefix)).getSegments()) {
+                        for (ImmutablePatch p : s.patches()) patches.add(p);
+                        System.out.println((patches.size()-oldSize) + " completed patches have been read from " + s.getFile() + ".");
+                        oldSize = patches.size();
+                    }
+                }
+            catch (Exception e)
+                {
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+        } // here ends reading the ResultStore
+
         while (new File(filename).isFile()) { // here begins deserialization
             try
                 {
@@ -10,17 +10,17 @@ public class TriangleResultsMove
             String filename =   args[0];//
                               //"results/tile0-106.chk";
             String otherfilename = args[1];
-            List<ImmutablePatch> patches = null;
-            if ( ! new File(filename).isFile() )
+            List<ImmutablePatch> patches = new ArrayList<>();
+            if ( ! new File(filename).exists() )
                 {
                     System.out.println(filename + " not found!");
                     return;
                 }
             try
                 {
-                    FileInputStream fileIn = new FileInputStream(filename);
-                    ObjectInputStream in = new ObjectInputStream(fileIn);
-                    patches = ((TriangleResults)in.readObject()).getPatches();
+                    // a TriangleResults file, a segment, or a ResultStore directory
+                    for (ImmutablePatch p : ResultStore.read(filename))
+                        patches.add(p);
                     System.out.println(patches.size() + " completed patches have been read.");
                 }
             catch (Exception e)
@@ -29,17 +29,17 @@ public class TriangleResultsMove
                     System.exit(1);
                 }
 
-            List<ImmutablePatch> otherpatches = null;
-            if ( ! new File(otherfilename).isFile() )
+            List<ImmutablePatch> otherpatches = new ArrayList<>();
+            if ( ! new File(otherfilename).exists() )
                 {
-                    System.out.println(filename + " not found!");
+                    System.out.println(otherfilename + " not found!");
                     return;
                 }
             try
                 {
-                    FileInputStream fileIn = new FileInputStream(otherfilename);
-                    ObjectInputStream in = new ObjectInputStream(fileIn);
-                    otherpatches = ((TriangleResults)in.readObject()).getPatches();
+                    // a TriangleResults file, a segment, or a ResultStore directory
+                    for (ImmutablePatch p : ResultStore.read(otherfilename))
+                        otherpatches.add(p);
                     System.out.println(otherpatches.size() + " completed patches have been read.");
                 }
             catch (Exception e)
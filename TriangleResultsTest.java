@@ -10,70 +10,47 @@ public class TriangleResultsTest {
         String inPrefix = args[0];
         String outPrefix = args[1];
         BasicPrototile P = BasicPrototile.createBasicPrototile(Preinitializer.PROTOTILES.get(Integer.parseInt(inPrefix)));
-        int i = 0;
         int k = 0;
-        int oldSize = 0;
-        String filename = "interim/tile" + inPrefix + String.format("-%08d-interim.chk",i);
         String outName = outPrefix + String.format("-%08d-interim.chk",k);
-        List<ImmutablePatch> patches = new LinkedList<>();
         List<ImmutablePatch> isoPatches = new LinkedList<>();
 
-        while (new File(filename).isFile()) { // here begins deserialization
-
-            // de-serialize
+        // the interim files and the final file, or the ResultStore
+        // segments for this tile if that's what interim/ has
+        List<String> filenames = new ArrayList<>();
+        int i = 0;
+        String filename = "interim/tile" + inPrefix + String.format("-%08d-interim.chk",i);
+        while (new File(filename).isFile()) {
+            filenames.add(filename);
+            i++;
+            filename = "interim/tile" + inPrefix + String.format("-%08d-interim.chk",i);
+        }
+        filename = "interim/tile" + inPrefix + "-final.chk";
+        if (new File(filename).isFile()) filenames.add(filename);
+        if (filenames.isEmpty()) {
             try
                 {
-                    FileInputStream fileIn = new FileInputStream(filename);
-                    ObjectInputStream in = new ObjectInputStream(fileIn);
-                    patches = ((TriangleResults)in.readObject()).getPatches();
-                    System.out.println(patches.size() + " completed patches have been read from " + filename + ".");
+                    for (ResultStore.Segment s : ResultStore.openResultStore(new File("interim")).getSegments(Integer.parseInt(inPrefix)))
+                        filenames.add(s.getFile().getPath());
                 }
             catch (Exception e)
                 {
                     e.printStackTrace();
                     System.exit(1);
                 }
+        }
 
-            // select the patches that satisfy the isosceles condition
-            for (int j = 0; j < patches.size(); j++) {
-                ImmutablePatch p1 = patches.get(j);
-                if (p1.isosceles(P)) isoPatches.add(p1);
-            }
+        for (String f : filenames) { // here begins deserialization
 
-            // write them to disk
-            if (isoPatches.size()>0) {
-                try
-                    {
-                        TriangleResults triangleResults = new TriangleResults(isoPatches);
-                        FileOutputStream fileOut = new FileOutputStream(outName);
-                        ObjectOutputStream out = new ObjectOutputStream(fileOut);
-                        out.writeObject(triangleResults);
-                        out.close();
-                        fileOut.close();
-                        System.out.println(String.format("wrote %d results to %s.",isoPatches.size(),outName));
-                        k++;
-                        outName = outPrefix + String.format("-%08d-interim.chk",k);
-                        isoPatches.clear();
-                    }
-                catch (Exception e)
-                    {
-                        e.printStackTrace();
-                    }
-            } // here ends writing to disk
-
-            i++;
-            filename = "interim/tile" + inPrefix + String.format("-%08d-interim.chk",i);
-            //patches.clear();
-        } // here ends deserialization of interim files
-
-        filename = "interim/tile" + inPrefix + "-final.chk";
-        if (new File(filename).isFile()) { // here begins deserialization of final file
+            // select the patches that satisfy the isosceles condition,
+            // decoding them one at a time
+            int count = 0;
             try
                 {
-                    FileInputStream fileIn = new FileInputStream(filename);
-                    ObjectInputStream in = new ObjectInputStream(fileIn);
-                    patches = ((TriangleResults)in.readObject()).getPatches();
-                    System.out.println(patches.size() + " completed patches have been read from " + filename + ".");
+                    for (ImmutablePatch p1 : ResultStore.read(f)) {
+                        count++;
+                        if (p1.isosceles(P)) isoPatches.add(p1);
+                    }
+                    System.out.println(count + " completed patches have been read from " + f + ".");
                 }
             catch (Exception e)
                 {
@@ -81,12 +58,6 @@ public class TriangleResultsTest {
                     System.exit(1);
                 }
 
-            // select the patches that satisfy the isosceles condition
-            for (int j = 0; j < patches.size(); j++) {
-                ImmutablePatch p1 = patches.get(j);
-                if (p1.isosceles(P)) isoPatches.add(p1);
-            }
-
             // write them to disk
             if (isoPatches.size()>0) {
                 try
@@ -108,7 +79,7 @@ public class TriangleResultsTest {
                     }
             } // here ends writing to disk
 
-        } // here ends deserialization of final file
+        } // here ends deserialization of input files
 
     } // end of main
 } // end of class TriangleResultsTest
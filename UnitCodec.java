@@ -0,0 +1,236 @@
+/*************************************************************************
+ *  Compilation:  javac UnitCodec.java
+ *  Execution:    java UnitCodec [spawn delay in ms]
+ *
+ *  A compact binary format for the EmptyBoundaryPatches in work
+ *  units, so we can send them over the network without Java
+ *  serialization.
+ *
+ *  A patch in the middle of the search has a lot of state: the edge
+ *  list, the boundary, the orientation partition, the prototiles
+ *  that are left, and so on.  But all of it follows from the
+ *  triangles it has, placed one at a time on the starting edge it
+ *  came from.  So we only write:
+ *
+ *  - the number of the starting edge in EmptyBoundaryWorkUnitFactory.
+ *  - the triangles, from the bottom up, the same way PatchCodec
+ *    writes them: prototile, flip, angle, and root vertex.
+ *  - the step variables it starts with: prototile, secondEdge, flip.
+ *  - for a patch that was in the middle of its own search (an
+ *    EmptyBoundaryPatch.Snapshot), the number of triangles it
+ *    started with.  The triangles after those are the path it was
+ *    on, and it picks up from the top one.  Other patches leave
+ *    this out.
+ *
+ *  To decode, we get the starting patch from the factory and place
+ *  the triangles again.  See EmptyBoundaryPatch.rebuild() and
+ *  EmptyBoundaryPatch.resume().
+ *
+ *  Records don't have a header, and they only make sense for the
+ *  search that wrote them (the same N, INFL and MY_TILE).  Whoever
+ *  stores or sends them has to check that; see WireProtocol.
+ *
+ *  The test client spawns patches from each starting edge, sends
+ *  them through the codec, and checks that the decoded patches
+ *  look the same and find the same completed patches.  Then it
+ *  takes Snapshots of each starting edge as it runs, and checks
+ *  that what each Snapshot found before it was taken, plus what
+ *  its decoded patch finds, is what the whole search finds.
+ *
+ *************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class UnitCodec {
+
+    // private constructor
+    private UnitCodec() {
+    }
+
+    // encode one patch
+    public static byte[] encode(EmptyBoundaryPatch p) {
+        List<BasicTriangle> triangles = new ArrayList<>(p.getTriangles());
+        int start = triangles.size();
+        triangles.addAll(p.getResumePath());
+        return encode(p.getRoot(), triangles, start, p.getInitialPrototile(), p.getInitialSecondEdge(), p.getInitialFlip());
+    }
+
+    // encode a patch that picks up where s left off
+    public static byte[] encode(EmptyBoundaryPatch.Snapshot s) {
+        return encode(s.getRoot(), s.getPath(), s.getStart(), s.getInitialPrototile(), s.getInitialSecondEdge(), s.getInitialFlip());
+    }
+
+    private static byte[] encode(int root, List<BasicTriangle> triangles, int start, BasicPrototile initialPrototile, boolean initialSecondEdge, boolean initialFlip) {
+        if (root < 0) throw new IllegalArgumentException("Can't encode a patch that didn't come from EmptyBoundaryWorkUnitFactory.");
+        PatchCodec.Writer w = new PatchCodec.Writer();
+        w.writeVarint(root);
+
+        w.writeVarint(triangles.size());
+        for (BasicTriangle t : triangles) {
+            int a = PatchCodec.angle(t);
+            if (a == -1) throw new IllegalArgumentException("Can't encode a triangle that BasicPrototile.place() didn't make:\n" + t);
+            w.writeVarint(2*BasicPrototile.ALL_PROTOTILES.indexOf(t.getPrototile()) + ((t.getFlip()) ? 1 : 0));
+            w.writeVarint(a);
+            w.writePoint(t.getVertices()[1]);
+            for (BytePoint v : t.getVertices()) w.addPoint(v);
+        }
+
+        w.writeVarint(4*BasicPrototile.ALL_PROTOTILES.indexOf(initialPrototile) + ((initialSecondEdge) ? 2 : 0) + ((initialFlip) ? 1 : 0));
+        if (start < triangles.size()) w.writeVarint(start);
+        return w.toByteArray();
+    }
+
+    // decode one patch.
+    // the caller has to set the kill switch.
+    public static EmptyBoundaryPatch decode(byte[] bytes) {
+        PatchCodec.Reader r = new PatchCodec.Reader(bytes);
+        EmptyBoundaryPatch root = EmptyBoundaryWorkUnitFactory.rootPatch(r.readVarint());
+
+        int n = r.readVarint();
+        List<BasicTriangle> triangles = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int k = r.readVarint();
+            if (k/2 >= BasicPrototile.ALL_PROTOTILES.size()) throw new IllegalArgumentException("Bad prototile " + k/2 + ".");
+            BasicPrototile tile = BasicPrototile.ALL_PROTOTILES.get(k/2);
+            BasicAngle a = BasicAngle.createBasicAngle(r.readVarint());
+            BasicTriangle t = tile.place(r.readPoint(), a, k % 2 == 1);
+            for (BytePoint v : t.getVertices()) r.addPoint(v);
+            triangles.add(t);
+        }
+
+        int s = r.readVarint();
+        if (s/4 >= BasicPrototile.ALL_PROTOTILES.size()) throw new IllegalArgumentException("Bad prototile " + s/4 + ".");
+        int start = n;
+        if (!r.finished()) {
+            start = r.readVarint();
+            if (start >= n) throw new IllegalArgumentException("Bad starting depth " + start + " for " + n + " triangles.");
+        }
+        if (!r.finished()) throw new IllegalArgumentException("Extra bytes at the end of a unit record.");
+        EmptyBoundaryPatch output = EmptyBoundaryPatch.rebuild(root, triangles.subList(0, start), BasicPrototile.ALL_PROTOTILES.get(s/4), (s & 2) != 0, (s & 1) != 0);
+        output.setResumePath(new ArrayList<>(triangles.subList(start, n)));
+        return output;
+    }
+
+    // run p to the end and return the completed patches it finds
+    private static List<ImmutablePatch> finish(EmptyBoundaryPatch p) {
+        p.setKillSwitch(new AtomicBoolean(false));
+        p.solve();
+        return p.getLocalCompletedPatches();
+    }
+
+    // do x and y have the same patches in the same order?
+    private static boolean same(List<ImmutablePatch> x, List<ImmutablePatch> y) {
+        if (x.size() != y.size()) return false;
+        for (int i = 0; i < x.size(); i++) {
+            if (!Arrays.equals(PatchCodec.encode(x.get(i)), PatchCodec.encode(y.get(i)))) return false;
+        }
+        return true;
+    }
+
+    // test client
+    public static void main(String[] args) throws Exception {
+
+        final long delay = (args.length > 0) ? Long.parseLong(args[0]) : 5L;
+        EmptyBoundaryWorkUnitFactory f = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+        int units = 0;
+        int failures = 0;
+        long bytes = 0L;
+        long found = 0L;
+        int deepest = 0;
+        while (f.notDone()) {
+
+            // spawn a generation of patches, and then another one
+            List<EmptyBoundaryPatch> spawn = new ArrayList<>();
+            spawn.add(f.nextPatch());
+            for (int generation = 0; generation < 2; generation++) {
+                List<EmptyBoundaryPatch> next = new ArrayList<>();
+                for (EmptyBoundaryPatch p : spawn) {
+                    final AtomicBoolean die = new AtomicBoolean(false);
+                    p.setKillSwitch(die);
+                    Timer timer = new Timer(true);
+                    timer.schedule(new TimerTask() {
+                        public void run() {
+                            die.set(true);
+                        }
+                    }, delay);
+                    next.addAll(p.solve());
+                    timer.cancel();
+                    found += p.getLocalCompletedPatches().size();
+                }
+                spawn = next;
+            }
+
+            for (EmptyBoundaryPatch p : spawn) {
+                byte[] b = encode(p);
+                EmptyBoundaryPatch q = decode(b);
+                units++;
+                bytes += b.length;
+                deepest = Math.max(deepest, p.getTriangles().size());
+                if (!Arrays.equals(b, encode(q)) || !Arrays.equals(PatchCodec.encode(p.dumpImmutablePatch()), PatchCodec.encode(q.dumpImmutablePatch()))) {
+                    failures++;
+                    continue;
+                }
+                List<ImmutablePatch> x = finish(p);
+                List<ImmutablePatch> y = finish(q);
+                found += x.size();
+                if (x.size() != y.size()) {
+                    failures++;
+                    continue;
+                }
+                for (int i = 0; i < x.size(); i++) {
+                    if (!Arrays.equals(PatchCodec.encode(x.get(i)), PatchCodec.encode(y.get(i)))) {
+                        failures++;
+                        break;
+                    }
+                }
+            }
+        }
+        System.out.println(units + " spawned patches (up to " + deepest + " triangles), " + failures + " round trip failures.");
+        System.out.println(String.format("%d bytes (%.1f per patch).  %d completed patches found.", bytes, bytes/(double)Math.max(units,1), found));
+
+        // take Snapshots of each starting edge as it runs, the way a
+        // Client does, and pick the search up from each one
+        EmptyBoundaryWorkUnitFactory g = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+        int snapshots = 0;
+        failures = 0;
+        while (g.notDone()) {
+            final EmptyBoundaryPatch p = g.nextPatch();
+            List<ImmutablePatch> whole = finish(EmptyBoundaryWorkUnitFactory.rootPatch(p.getRoot()));
+            final List<EmptyBoundaryPatch.Snapshot> taken = new ArrayList<>();
+            Timer timer = new Timer(true);
+            timer.schedule(new TimerTask() {
+                public void run() {
+                    synchronized (taken) {
+                        EmptyBoundaryPatch.Snapshot s = p.takeSnapshot();
+                        if (s != null) taken.add(s);
+                        p.requestSnapshot();
+                    }
+                }
+            }, 10*delay, 10*delay);
+            List<ImmutablePatch> rest = finish(p);
+            timer.cancel();
+            synchronized (taken) {
+                EmptyBoundaryPatch.Snapshot s = p.takeSnapshot();
+                if (s != null) taken.add(s);
+            }
+
+            List<ImmutablePatch> before = new ArrayList<>();
+            for (EmptyBoundaryPatch.Snapshot s : taken) {
+                before.addAll(s.getPatches());
+                byte[] b = encode(s);
+                EmptyBoundaryPatch q = decode(b);
+                List<ImmutablePatch> all = new ArrayList<>(before);
+                if (!Arrays.equals(b, encode(q))) failures++;
+                all.addAll(finish(q));
+                if (!same(all, whole)) failures++;
+                snapshots++;
+            }
+            before.addAll(rest);
+            if (!same(before, whole)) failures++;
+        }
+        System.out.println(snapshots + " Snapshots, " + failures + " resume failures.");
+
+    }
+
+} // end of class UnitCodec
@@ -0,0 +1,728 @@
+/*************************************************************************
+ *  Compilation:  javac WireProtocol.java
+ *  Execution:    java WireProtocol
+ *
+ *  What the Server and the Clients say to each other.
+ *
+ *  Everything goes in frames: a four-byte payload length, a one-byte
+ *  frame Type, and then the payload.  There's no Java serialization
+ *  anywhere, so there are no stream headers or class descriptors,
+ *  and either side can tell where a frame ends without reading it.
+ *  That's what lets the Server handle all of its Clients from one
+ *  thread with a Selector.
+ *
+ *  The first frame each way is a HELLO, with MAGIC, VERSION, the
+ *  PatchCodec header (its version and the search configuration),
+ *  the tile we're searching and the search mode.  The Server hangs
+ *  up on a Client that doesn't match.  Change VERSION whenever the
+ *  frames change.
+ *
+ *  The payloads:
+ *
+ *  - JOB_REQUEST: the number of units the Client wants, once.
+ *  - CREDIT: the number of units the Client wants to have at any
+ *    one time.  The Server keeps sending units, whenever it has
+ *    them, until that many are out, and sends more as the results
+ *    come back.  See Client.TaskMonitor for how the Clients work it
+ *    out, and Server.Connection.pump() for the other end.
+ *  - JOB_BATCH: some units, each one its ID and its UnitCodec record.
+ *  - RESULT_BATCH: some results, each one its unit ID, the number of
+ *    puzzles it completed and its completed patches (PatchCodec
+ *    records), and then the spawn that the Client is handing back,
+ *    each one the ID of the result it came from and its UnitCodec
+ *    record.  The Server drops the spawn of results it already has.
+ *    This is an EmptyBatch on either side.
+ *  - CHECKPOINT: a Snapshot of a unit that's still running: its ID,
+ *    the UnitCodec record of a patch that picks up where it is, the
+ *    number of puzzles it completed since the last one, and their
+ *    patches.  If the Client goes away, the Server requeues that
+ *    instead of the unit it sent.  See EmptyBoundaryPatch.Snapshot.
+ *  - HEARTBEAT, KILL (the old "return your spawn" signal) and CLOSE
+ *    are empty.
+ *
+ *  Lengths and counts are ints, and IDs and completion counts are
+ *  longs, written big-end first, as DataOutputStream does.
+ *
+ *  JOB_BATCH, RESULT_BATCH and CHECKPOINT frames are bulk: they can be megabytes
+ *  long.  Everything else is control, and is only a few bytes.  So
+ *  that a big upload doesn't hold up a CREDIT or a KILL, each side
+ *  sends through an Outbox, which keeps two queues.  Control frames
+ *  always go first, and bulk frames bigger than CHUNK_SIZE go in
+ *  CHUNK frames (the inner Type, a byte that says whether this is
+ *  the last chunk, and the next piece of the payload), so a control
+ *  frame never waits for more than one chunk.  The FrameReader puts
+ *  the chunks back together, so nobody else ever sees them.
+ *
+ *  The patch records are very repetitive (the same prototiles, the
+ *  same sorts of coordinates, the same partitions), so frames can
+ *  also be deflated.  The HELLO says whether we'll take DEFLATED
+ *  frames (Preinitializer.COMPRESS_FRAMES), and if both ends will,
+ *  each Outbox deflates the frames of at least COMPRESSION_THRESHOLD
+ *  bytes at COMPRESSION_LEVEL.  A DEFLATED frame is the inner Type,
+ *  the inflated length, and the deflated payload, and it gets
+ *  chunked like any other.  If deflating doesn't make a frame
+ *  smaller, we send it as it was.  Small frames aren't worth the
+ *  trouble, so they always go as they are.
+ *
+ *  The test client sends some units and results through the frames
+ *  and checks that they come out the same.
+ *
+ *************************************************************************/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.*;
+
+public class WireProtocol {
+
+    // the first thing in a HELLO, so we know it's one of us
+    public static final int MAGIC = 0x54524953;
+
+    // the version of the protocol
+    public static final int VERSION = 6;
+
+    // the bytes in front of every payload: its length and its Type
+    public static final int HEADER_SIZE = 5;
+
+    // refuse frames bigger than this, in bytes
+    public static final int MAX_FRAME = 1 << 28;
+
+    // the most payload we put in one CHUNK
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    // don't bother deflating frames smaller than this
+    public static final int COMPRESSION_THRESHOLD = 512;
+
+    // the kinds of frames.
+    // the code of each one is its ordinal, so only add new ones at the end.
+    public enum Type {
+        HELLO, JOB_REQUEST, JOB_BATCH, RESULT_BATCH, HEARTBEAT, KILL, CLOSE, CREDIT, CHUNK, DEFLATED, CHECKPOINT;
+
+        private static final Type[] ALL = values();
+
+        // does this go in the bulk queue?
+        public boolean isBulk() {
+            return this == JOB_BATCH || this == RESULT_BATCH || this == CHECKPOINT;
+        }
+
+        static Type of(int code) throws IOException {
+            if (code < 0 || code >= ALL.length) throw new IOException("Unknown frame type " + code + ".");
+            return ALL[code];
+        }
+    } // end of enum Type
+
+    // a frame, minus its header
+    public static final class Frame {
+
+        private final Type type;
+        private final byte[] payload;
+
+        Frame(Type type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public String toString() {
+            return type + " frame (" + payload.length + " bytes)";
+        }
+
+    } // end of class Frame
+
+    // reads frames, either from a non-blocking channel, a bit at a
+    // time, or from a stream.  either way, it puts CHUNKs back
+    // together and only hands out whole frames.
+    public static final class FrameReader {
+
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        private ByteBuffer body = null;
+        private Type type = null;
+
+        // the bulk frame we're putting together, if any
+        private Type bulkType = null;
+        private byte[] bulk = null;
+        private int bulkSize = 0;
+
+        // for DEFLATED frames, until we're closed
+        private final Inflater inflater = new Inflater();
+        private boolean closed = false;
+
+        // the next whole frame, or null if it isn't all here yet.
+        // throws EOFException if the other end has hung up.
+        public Frame read(ReadableByteChannel channel) throws IOException {
+            while (true) {
+                if (body == null) {
+                    if (channel.read(header) < 0) throw new EOFException("Connection closed.");
+                    if (header.hasRemaining()) return null;
+                    header.flip();
+                    int length = header.getInt();
+                    type = Type.of(header.get());
+                    header.clear();
+                    if (length < 0 || length > MAX_FRAME) throw new IOException("Bad frame length " + length + ".");
+                    body = ByteBuffer.allocate(length);
+                }
+                if (body.hasRemaining() && channel.read(body) < 0) throw new EOFException("Connection closed.");
+                if (body.hasRemaining()) return null;
+                Frame output = assemble(new Frame(type, body.array()));
+                body = null;
+                type = null;
+                if (output != null) return output;
+            }
+        }
+
+        // the next whole frame, waiting until it's all here
+        public Frame read(DataInputStream in) throws IOException {
+            while (true) {
+                int length = in.readInt();
+                Type t = Type.of(in.readUnsignedByte());
+                if (length < 0 || length > MAX_FRAME) throw new IOException("Bad frame length " + length + ".");
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                Frame output = assemble(new Frame(t, payload));
+                if (output != null) return output;
+            }
+        }
+
+        // f, unless it's a CHUNK.  then the whole frame if this is the
+        // last chunk, and null if it isn't.  either way, inflate it if
+        // it's DEFLATED.
+        private Frame assemble(Frame f) throws IOException {
+            if (f.type == Type.DEFLATED) return inflate(f.payload);
+            if (f.type != Type.CHUNK) return f;
+            byte[] p = f.payload;
+            if (p.length < 2) throw new IOException("Chunk of " + p.length + " bytes.");
+            Type t = Type.of(p[0]);
+            if (bulkType == null) {
+                bulkType = t;
+                bulk = new byte[Math.max(CHUNK_SIZE, p.length-2)];
+                bulkSize = 0;
+            } else if (t != bulkType) {
+                throw new IOException("Chunk of a " + t + " frame in the middle of a " + bulkType + " frame.");
+            }
+            if (bulkSize + p.length - 2 > MAX_FRAME) throw new IOException("Chunked frame is too big.");
+            if (bulkSize + p.length - 2 > bulk.length) bulk = Arrays.copyOf(bulk, Math.max(2*bulk.length, bulkSize + p.length - 2));
+            System.arraycopy(p, 2, bulk, bulkSize, p.length - 2);
+            bulkSize += p.length - 2;
+            if (p[1] == 0) return null;
+            Frame output = new Frame(bulkType, Arrays.copyOf(bulk, bulkSize));
+            bulkType = null;
+            bulk = null;
+            return (output.type == Type.DEFLATED) ? inflate(output.payload) : output;
+        }
+
+        // the frame inside a DEFLATED one
+        private synchronized Frame inflate(byte[] p) throws IOException {
+            if (closed) throw new EOFException("FrameReader closed.");
+            if (p.length < 5) throw new IOException("Deflated frame of " + p.length + " bytes.");
+            Type t = Type.of(p[0]);
+            int length = ByteBuffer.wrap(p, 1, 4).getInt();
+            if (t == Type.CHUNK || t == Type.DEFLATED || length < 0 || length > MAX_FRAME)
+                throw new IOException("Bad deflated " + t + " frame of " + length + " bytes.");
+            byte[] output = new byte[length];
+            inflater.reset();
+            inflater.setInput(p, 5, p.length - 5);
+            try {
+                int n = 0;
+                while (n < length) {
+                    int k = inflater.inflate(output, n, length - n);
+                    if (k == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                    n += k;
+                }
+                if (n != length || !inflater.finished()) throw new IOException("Deflated " + t + " frame should have " + length + " bytes, but has " + n + ".");
+            } catch (DataFormatException e) {
+                throw new IOException("Bad deflated " + t + " frame: " + e.getMessage());
+            }
+            return new Frame(t, output);
+        }
+
+        // let go of the Inflater's memory now, instead of when we're
+        // garbage collected.  call this when the connection closes.
+        public synchronized void close() {
+            if (closed) return;
+            closed = true;
+            inflater.end();
+        }
+
+    } // end of class FrameReader
+
+    // frames waiting to be written: control frames first, then the
+    // bulk frames, a chunk at a time.  anybody can add frames, and
+    // whoever does the writing takes them out with poll() or take().
+    public static final class Outbox {
+
+        private final ArrayDeque<ByteBuffer> control = new ArrayDeque<>();
+        private final ArrayDeque<Frame> bulk = new ArrayDeque<>();
+
+        // how much of the first bulk frame we've handed out
+        private int bulkOffset = 0;
+
+        // counts of what's gone through, for reports
+        private long controlFrames = 0L;
+        private long bulkFrames = 0L;
+        private long chunks = 0L;
+
+        // if we're deflating big frames, and how it's going:
+        // the frames we tried, how many bytes they had, and how many we sent.
+        private Deflater deflater = null;
+        private boolean deflating = false;
+        private long deflatedFrames = 0L;
+
+        // after close(), we drop everything
+        private boolean closed = false;
+        private long bytesIn = 0L;
+        private long bytesOut = 0L;
+
+        // deflate big frames from now on, at this level.
+        // only do this if the other end said it could take them.
+        public synchronized void setCompression(int level) {
+            if (deflater != null) deflater.end();
+            deflater = new Deflater(level);
+            deflating = true;
+        }
+
+        // throw away whatever hasn't been written and let go of the
+        // Deflater's memory.  call this when the connection closes;
+        // anything added after this goes nowhere.
+        public synchronized void close() {
+            closed = true;
+            if (deflater != null) deflater.end();
+            deflater = null;
+            control.clear();
+            bulk.clear();
+            bulkOffset = 0;
+            notifyAll();
+        }
+
+        public synchronized void add(Type type, byte[] payload) {
+            if (type == Type.CHUNK || type == Type.DEFLATED) throw new IllegalArgumentException("Only the Outbox makes " + type + " frames.");
+            if (payload.length > MAX_FRAME) throw new IllegalArgumentException("Frame of " + payload.length + " bytes is too big.");
+            if (closed) return;
+            Frame f = deflate(type, payload);
+            if (type.isBulk()) {
+                bulk.add(f);
+            } else {
+                control.add(frame(f.type, f.payload));
+                controlFrames++;
+            }
+            notifyAll();
+        }
+
+        // the frame to send for this payload: a DEFLATED one if that helps
+        private Frame deflate(Type type, byte[] payload) {
+            if (deflater == null || payload.length < COMPRESSION_THRESHOLD) return new Frame(type, payload);
+            deflater.reset();
+            deflater.setInput(payload);
+            deflater.finish();
+            byte[] output = new byte[5 + payload.length];
+            output[0] = (byte) type.ordinal();
+            ByteBuffer.wrap(output, 1, 4).putInt(payload.length);
+            int n = 5;
+            while (!deflater.finished() && n < output.length) n += deflater.deflate(output, n, output.length - n);
+            bytesIn += payload.length;
+            if (!deflater.finished()) {
+                // it got bigger, so send it as it was
+                bytesOut += payload.length;
+                return new Frame(type, payload);
+            }
+            deflatedFrames++;
+            bytesOut += n;
+            return new Frame(Type.DEFLATED, Arrays.copyOf(output, n));
+        }
+
+        // bytes sent over bytes we'd have sent without deflating,
+        // for the frames we tried to deflate
+        public synchronized double compressionRatio() {
+            return (bytesIn == 0L) ? 1.0 : bytesOut / (double) bytesIn;
+        }
+
+        // the next thing to write, or null if there's nothing
+        public synchronized ByteBuffer poll() {
+            if (!control.isEmpty()) return control.poll();
+            Frame f = bulk.peek();
+            if (f == null) return null;
+            if (bulkOffset == 0 && f.payload.length <= CHUNK_SIZE) {
+                bulk.poll();
+                bulkFrames++;
+                return frame(f.type, f.payload);
+            }
+            int n = Math.min(CHUNK_SIZE, f.payload.length - bulkOffset);
+            boolean last = (bulkOffset + n == f.payload.length);
+            ByteBuffer output = ByteBuffer.allocate(HEADER_SIZE + 2 + n);
+            output.putInt(2 + n);
+            output.put((byte) Type.CHUNK.ordinal());
+            output.put((byte) f.type.ordinal());
+            output.put((byte) ((last) ? 1 : 0));
+            output.put(f.payload, bulkOffset, n);
+            output.flip();
+            chunks++;
+            bulkOffset += n;
+            if (last) {
+                bulk.poll();
+                bulkFrames++;
+                bulkOffset = 0;
+            }
+            return output;
+        }
+
+        // the next thing to write, waiting until there is one
+        public synchronized ByteBuffer take() throws InterruptedException {
+            ByteBuffer output;
+            while ((output = poll()) == null) wait();
+            return output;
+        }
+
+        public synchronized boolean isEmpty() {
+            return control.isEmpty() && bulk.isEmpty();
+        }
+
+        // the number of bulk frames that haven't all gone yet
+        public synchronized int bulkWaiting() {
+            return bulk.size();
+        }
+
+        public synchronized String toString() {
+            String output = controlFrames + " control frames, " + bulkFrames + " bulk frames in " + chunks + " chunks";
+            if (deflating) output += String.format(", %d deflated (%d bytes to %d, %.1f%%)", deflatedFrames, bytesIn, bytesOut, 100.0*compressionRatio());
+            return output;
+        }
+
+    } // end of class Outbox
+
+    // an empty payload
+    public static final byte[] EMPTY = new byte[0];
+
+    // private constructor
+    private WireProtocol() {
+    }
+
+    // a whole frame, ready to write to a channel
+    public static ByteBuffer frame(Type type, byte[] payload) {
+        if (payload.length > MAX_FRAME) throw new IllegalArgumentException("Frame of " + payload.length + " bytes is too big.");
+        ByteBuffer output = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        output.putInt(payload.length);
+        output.put((byte) type.ordinal());
+        output.put(payload);
+        output.flip();
+        return output;
+    }
+
+    // the payload of a HELLO
+    public static byte[] hello() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            PatchCodec.writeHeader(out);
+            out.writeInt(Preinitializer.MY_TILE);
+            out.writeInt(Preinitializer.SEARCH_MODE.ordinal());
+            out.writeBoolean(Preinitializer.COMPRESS_FRAMES);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write to a byte array?", e);
+        }
+    }
+
+    // check that a HELLO came from a compatible search.
+    // throws IllegalArgumentException if it didn't.
+    // returns true if we should deflate the frames we send back.
+    public static boolean checkHello(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (in.readInt() != MAGIC) throw new IllegalArgumentException("Handshake from something that doesn't speak this protocol.");
+        int version = in.readInt();
+        if (version != VERSION) throw new IllegalArgumentException("Other end speaks protocol version " + version + ", but this is version " + VERSION + ".");
+        PatchCodec.readHeader(in);
+        int tile = in.readInt();
+        int mode = in.readInt();
+        if (tile != Preinitializer.MY_TILE || mode != Preinitializer.SEARCH_MODE.ordinal())
+            throw new IllegalArgumentException("Other end is searching tile " + tile + " in mode " + mode + ", but we're searching tile " + Preinitializer.MY_TILE + " in mode " + Preinitializer.SEARCH_MODE.ordinal() + ".");
+        return in.readBoolean() && Preinitializer.COMPRESS_FRAMES;
+    }
+
+    // the payload of a JOB_REQUEST or a CREDIT
+    public static byte[] jobRequest(int n) {
+        return ByteBuffer.allocate(4).putInt(n).array();
+    }
+
+    public static int readJobRequest(byte[] payload) throws IOException {
+        if (payload.length != 4) throw new IOException("Job request of " + payload.length + " bytes.");
+        return ByteBuffer.wrap(payload).getInt();
+    }
+
+    // the payload of a JOB_BATCH
+    public static byte[] jobBatch(List<EmptyBoundaryWorkUnit> units) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(units.size());
+            for (EmptyBoundaryWorkUnit u : units) {
+                out.writeLong(u.uniqueID());
+                writeRecord(out, UnitCodec.encode(u.getPatch()));
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write to a byte array?", e);
+        }
+    }
+
+    // the units in a JOB_BATCH, with the IDs the Server gave them.
+    // each one gets its own kill switch, which the caller can replace.
+    public static List<EmptyBoundaryWorkUnit> readJobBatch(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int n = in.readInt();
+        List<EmptyBoundaryWorkUnit> output = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long id = in.readLong();
+            EmptyBoundaryPatch p = UnitCodec.decode(readRecord(in));
+            AtomicBoolean kill = new AtomicBoolean();
+            p.setKillSwitch(kill);
+            output.add(EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(p, kill, id));
+        }
+        return output;
+    }
+
+    // the payload of a RESULT_BATCH.
+    // parents.get(i) is the ID of the result that spawn.get(i) came from.
+    public static byte[] resultBatch(List<EmptyWorkUnitResult> results, List<EmptyBoundaryPatch> spawn, List<Long> parents) {
+        if (spawn.size() != parents.size()) throw new IllegalArgumentException(spawn.size() + " spawn, but " + parents.size() + " parents.");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(results.size());
+            for (EmptyWorkUnitResult r : results) {
+                out.writeLong(r.uniqueID());
+                out.writeLong(r.getCompletedCount());
+                List<ImmutablePatch> patches = r.getLocalCompletedPatches();
+                out.writeInt((patches == null) ? 0 : patches.size());
+                if (patches != null) for (ImmutablePatch p : patches) writeRecord(out, PatchCodec.encode(p));
+            }
+            out.writeInt(spawn.size());
+            for (int i = 0; i < spawn.size(); i++) {
+                out.writeLong(parents.get(i));
+                writeRecord(out, UnitCodec.encode(spawn.get(i)));
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write to a byte array?", e);
+        }
+    }
+
+    public static EmptyBatch readResultBatch(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int n = in.readInt();
+        List<EmptyWorkUnitResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long id = in.readLong();
+            long count = in.readLong();
+            int m = in.readInt();
+            List<ImmutablePatch> patches = new ArrayList<>(m);
+            for (int j = 0; j < m; j++) patches.add(PatchCodec.decode(readRecord(in)));
+            results.add(new EmptyWorkUnitResult(Long.valueOf(id), patches, count));
+        }
+        n = in.readInt();
+        List<EmptyBoundaryPatch> spawn = new ArrayList<>(n);
+        List<Long> parents = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            parents.add(in.readLong());
+            spawn.add(UnitCodec.decode(readRecord(in)));
+        }
+        return new EmptyBatch(results, spawn, parents);
+    }
+
+    // the unit and the patches in a CHECKPOINT
+    public static final class Checkpoint {
+
+        private final EmptyBoundaryWorkUnit unit;
+        private final EmptyWorkUnitResult result;
+
+        Checkpoint(EmptyBoundaryWorkUnit unit, EmptyWorkUnitResult result) {
+            this.unit = unit;
+            this.result = result;
+        }
+
+        // a unit that picks up where the Snapshot was taken
+        public EmptyBoundaryWorkUnit getUnit() {
+            return unit;
+        }
+
+        // what the unit found before that
+        public EmptyWorkUnitResult getResult() {
+            return result;
+        }
+
+    } // end of class Checkpoint
+
+    // the payload of a CHECKPOINT
+    public static byte[] checkpoint(long id, EmptyBoundaryPatch.Snapshot snapshot) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(id);
+            writeRecord(out, UnitCodec.encode(snapshot));
+            out.writeLong(snapshot.getNumCompleted());
+            List<ImmutablePatch> patches = snapshot.getPatches();
+            out.writeInt(patches.size());
+            for (ImmutablePatch p : patches) writeRecord(out, PatchCodec.encode(p));
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write to a byte array?", e);
+        }
+    }
+
+    public static Checkpoint readCheckpoint(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long id = in.readLong();
+        EmptyBoundaryPatch p = UnitCodec.decode(readRecord(in));
+        AtomicBoolean kill = new AtomicBoolean();
+        p.setKillSwitch(kill);
+        EmptyBoundaryWorkUnit unit = EmptyBoundaryWorkUnit.createEmptyBoundaryWorkUnit(p, kill, id);
+        long count = in.readLong();
+        int m = in.readInt();
+        List<ImmutablePatch> patches = new ArrayList<>(m);
+        for (int j = 0; j < m; j++) patches.add(PatchCodec.decode(readRecord(in)));
+        return new Checkpoint(unit, new EmptyWorkUnitResult(Long.valueOf(id), patches, count));
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+        out.writeInt(record.length);
+        out.write(record);
+    }
+
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) throw new IOException("Bad record length " + length + ".");
+        byte[] output = new byte[length];
+        in.readFully(output);
+        return output;
+    }
+
+    // test client
+    public static void main(String[] args) throws Exception {
+
+        // some units, and a unit's worth of results and spawn
+        EmptyBoundaryWorkUnitFactory f = EmptyBoundaryWorkUnitFactory.createEmptyBoundaryWorkUnitFactory();
+        List<EmptyBoundaryWorkUnit> units = new ArrayList<>();
+        List<EmptyBoundaryPatch> spawn = new ArrayList<>();
+        List<Long> parents = new ArrayList<>();
+        List<EmptyWorkUnitResult> results = new ArrayList<>();
+        while (f.notDone()) {
+            EmptyBoundaryWorkUnit u = f.nextWorkUnit();
+            units.add(u);
+            EmptyBoundaryPatch p = EmptyBoundaryWorkUnitFactory.rootPatch(u.getPatch().getRoot());
+            p.setKillSwitch(new AtomicBoolean(true));
+            for (EmptyBoundaryPatch s : p.solve()) {
+                spawn.add(s);
+                parents.add(u.uniqueID());
+            }
+            EmptyBoundaryPatch q = EmptyBoundaryWorkUnitFactory.rootPatch(u.getPatch().getRoot());
+            q.setKillSwitch(new AtomicBoolean(false));
+            q.solve();
+            results.add(new EmptyWorkUnitResult(u.uniqueID(), q.getLocalCompletedPatches(), q.getNumCompleted()));
+        }
+
+        // lots of copies of the results, so they take a few chunks
+        // even when they're deflated
+        List<EmptyWorkUnitResult> many = new ArrayList<>();
+        for (int i = 0; i < 20; i++) many.addAll(results);
+
+        // through an Outbox.  send a HEARTBEAT in the middle of the
+        // results, and check that it gets there first.
+        Outbox outbox = new Outbox();
+        outbox.add(Type.HELLO, hello());
+        outbox.setCompression(Preinitializer.COMPRESSION_LEVEL);
+        outbox.add(Type.JOB_BATCH, jobBatch(units));
+        outbox.add(Type.RESULT_BATCH, resultBatch(many, spawn, parents));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer b = outbox.poll();
+            bytes.write(b.array(), b.position(), b.remaining());
+        }
+        outbox.add(Type.HEARTBEAT, EMPTY);
+        ByteBuffer b;
+        while ((b = outbox.poll()) != null) bytes.write(b.array(), b.position(), b.remaining());
+
+        // through a stream, the way the Client sees them
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        FrameReader streamReader = new FrameReader();
+        int failures = 0;
+        Frame hello = streamReader.read(in);
+        checkHello(hello.getPayload());
+        List<EmptyBoundaryWorkUnit> u2 = readJobBatch(streamReader.read(in).getPayload());
+        for (int i = 0; i < units.size(); i++) {
+            if (!units.get(i).uniqueID().equals(u2.get(i).uniqueID())) failures++;
+            if (!Arrays.equals(UnitCodec.encode(units.get(i).getPatch()), UnitCodec.encode(u2.get(i).getPatch()))) failures++;
+        }
+
+        // through a channel, a few bytes at a time, the way the Server sees them
+        final byte[] all = bytes.toByteArray();
+        ReadableByteChannel trickle = new ReadableByteChannel() {
+            int position = 0;
+            public int read(ByteBuffer b) {
+                if (position == all.length) return -1;
+                int n = Math.min(Math.min(b.remaining(), 7), all.length - position);
+                b.put(all, position, n);
+                position += n;
+                return n;
+            }
+            public boolean isOpen() {
+                return true;
+            }
+            public void close() {
+            }
+        };
+        FrameReader reader = new FrameReader();
+        List<Frame> frames = new ArrayList<>();
+        try {
+            while (true) {
+                Frame frame = reader.read(trickle);
+                if (frame != null) frames.add(frame);
+            }
+        } catch (EOFException e) {
+        }
+        if (frames.size() != 4 || frames.get(2).getType() != Type.HEARTBEAT) failures++;
+        EmptyBatch batch = readResultBatch(frames.get(3).getPayload());
+        if (batch.getResults().size() != many.size()) failures++;
+        for (int i = 0; i < many.size(); i++) {
+            EmptyWorkUnitResult r = many.get(i);
+            EmptyWorkUnitResult s = batch.getResults().get(i);
+            if (!r.uniqueID().equals(s.uniqueID()) || r.getCompletedCount() != s.getCompletedCount() || r.getLocalCompletedPatches().size() != s.getLocalCompletedPatches().size()) failures++;
+        }
+        for (int i = 0; i < spawn.size(); i++) {
+            if (!Arrays.equals(UnitCodec.encode(spawn.get(i)), UnitCodec.encode(batch.getPatches().get(i)))) failures++;
+            if (!parents.get(i).equals(batch.getParents().get(i))) failures++;
+        }
+
+        // a Snapshot, taken as soon as a patch gets going
+        EmptyBoundaryPatch.Snapshot snapshot = null;
+        for (int i = 0; snapshot == null; i++) {
+            EmptyBoundaryPatch p = EmptyBoundaryWorkUnitFactory.rootPatch(units.get(i).getPatch().getRoot());
+            p.setKillSwitch(new AtomicBoolean(false));
+            p.requestSnapshot();
+            p.solve();
+            snapshot = p.takeSnapshot();
+        }
+        Checkpoint c = readCheckpoint(checkpoint(17L, snapshot));
+        if (c.getUnit().uniqueID() != 17L || c.getResult().getCompletedCount() != snapshot.getNumCompleted() || c.getResult().getLocalCompletedPatches().size() != snapshot.getPatches().size()) failures++;
+        if (!Arrays.equals(UnitCodec.encode(snapshot), UnitCodec.encode(c.getUnit().getPatch()))) failures++;
+
+        System.out.println(frames.size() + " frames, " + all.length + " bytes: " + frames);
+        System.out.println("Outbox: " + outbox + ".");
+        System.out.println(units.size() + " units, " + results.size() + " results, " + spawn.size() + " spawn, " + failures + " failures.");
+
+    }
+
+} // end of class WireProtocol
@@ -0,0 +1,106 @@
+/*************************************************************************
+ *  Compilation:  javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorPointKernels.java
+ *                (from the main directory, after compiling everything else)
+ *  Execution:    java --add-modules jdk.incubator.vector PointKernels
+ *
+ *  Versions of the kernels in PointKernels that use the
+ *  jdk.incubator.vector module.  A point has N-1 coordinates,
+ *  which fit in a 128-bit vector of bytes with a mask.
+ *  PointKernels loads this class by name, so nothing else
+ *  needs the module to compile or run.
+ *
+ *************************************************************************/
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorPointKernels extends PointKernels {
+
+    private static final VectorSpecies<Byte> B = ByteVector.SPECIES_128;
+    private static final VectorSpecies<Integer> I = IntVector.SPECIES_PREFERRED;
+
+    // public constructor, so that PointKernels can find it
+    public VectorPointKernels() {
+    }
+
+    public String name() {
+        return "vector";
+    }
+
+    public byte[] add(byte[] p0, byte[] p1) {
+        byte[] q = new byte[p0.length];
+        for (int i = 0; i < q.length; i += B.length()) {
+            VectorMask<Byte> m = B.indexInRange(i,q.length);
+            ByteVector.fromArray(B,p0,i,m).add(ByteVector.fromArray(B,p1,i,m)).intoArray(q,i,m);
+        }
+        return q;
+    }
+
+    public byte[] subtract(byte[] p0, byte[] p1) {
+        byte[] q = new byte[p0.length];
+        for (int i = 0; i < q.length; i += B.length()) {
+            VectorMask<Byte> m = B.indexInRange(i,q.length);
+            ByteVector.fromArray(B,p0,i,m).sub(ByteVector.fromArray(B,p1,i,m)).intoArray(q,i,m);
+        }
+        return q;
+    }
+
+    public boolean equal(byte[] p0, byte[] p1) {
+        for (int i = 0; i < p0.length; i += B.length()) {
+            VectorMask<Byte> m = B.indexInRange(i,p0.length);
+            if (ByteVector.fromArray(B,p0,i,m).compare(VectorOperators.NE,ByteVector.fromArray(B,p1,i,m)).anyTrue())
+                return false;
+        }
+        return true;
+    }
+
+    // byte arithmetic wraps around, so we get the same
+    // answer as the scalar version, which casts at the end
+    public byte[] rowTimes(byte[][] data, byte[] v) {
+        int n = data[0].length;
+        byte[] row = new byte[n];
+        for (int k = 0; k < n; k += B.length()) {
+            VectorMask<Byte> m = B.indexInRange(k,n);
+            ByteVector sum = ByteVector.zero(B);
+            for (int l = 0; l < v.length; l++)
+                sum = sum.add(ByteVector.fromArray(B,data[l],k,m).mul(v[l]));
+            sum.intoArray(row,k,m);
+        }
+        return row;
+    }
+
+    public int[] crossCoefficients(byte[] p0, byte[] p1) {
+        return coefficients(p0,p1,CROSS_INDEX_A,CROSS_SIGN_A,CROSS_INDEX_B,CROSS_SIGN_B);
+    }
+
+    public int[] dotCoefficients(byte[] p0, byte[] p1) {
+        return coefficients(p0,p1,DOT_INDEX_A,DOT_SIGN_A,DOT_INDEX_B,DOT_SIGN_B);
+    }
+
+    // widen to ints, then gather p1 through the index tables
+    private static int[] coefficients(byte[] p0, byte[] p1, int[][] indexA, int[][] signA, int[][] indexB, int[][] signB) {
+        int n = p0.length;
+        int[] a = new int[n];
+        int[] b = new int[n];
+        for (int j = 0; j < n; j++) {
+            a[j] = p0[j];
+            b[j] = p1[j];
+        }
+        int[] coeffs = new int[indexA.length];
+        for (int i = 0; i < coeffs.length; i++) {
+            IntVector sum = IntVector.zero(I);
+            for (int j = 0; j < n; j += I.length()) {
+                VectorMask<Integer> m = I.indexInRange(j,n);
+                IntVector termA = IntVector.fromArray(I,b,0,indexA[i],j,m).mul(IntVector.fromArray(I,signA[i],j,m));
+                IntVector termB = IntVector.fromArray(I,b,0,indexB[i],j,m).mul(IntVector.fromArray(I,signB[i],j,m));
+                sum = sum.add(IntVector.fromArray(I,a,j,m).mul(termA.add(termB)));
+            }
+            coeffs[i] = sum.reduceLanes(VectorOperators.ADD);
+        }
+        return coeffs;
+    }
+
+} // end of class VectorPointKernels